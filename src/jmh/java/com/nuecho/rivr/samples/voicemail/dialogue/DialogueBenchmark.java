@@ -0,0 +1,149 @@
+/*
+ * Copyright (c) 2013 Nu Echo Inc. All rights reserved.
+ */
+
+package com.nuecho.rivr.samples.voicemail.dialogue;
+
+import java.io.*;
+import java.nio.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+import org.openjdk.jmh.annotations.*;
+
+import com.nuecho.rivr.core.channel.synchronous.step.*;
+import com.nuecho.rivr.core.dialogue.*;
+import com.nuecho.rivr.core.util.*;
+import com.nuecho.rivr.samples.voicemail.store.*;
+import com.nuecho.rivr.voicexml.dialogue.*;
+import com.nuecho.rivr.voicexml.servlet.*;
+import com.nuecho.rivr.voicexml.turn.input.*;
+import com.nuecho.rivr.voicexml.turn.last.*;
+import com.nuecho.rivr.voicexml.turn.output.*;
+import com.nuecho.rivr.voicexml.util.json.*;
+
+/**
+ * Throughput and allocation of the dialogue turns, measured by driving {@link VoicemailDialogue} through the same
+ * {@link TestDialogueChannel} as the {@link DialogueTests}.
+ * <p>
+ * Each benchmark runs a complete call, from the first turn to the hang-up, and its score is reported per input turn.
+ * Run with <code>gradle jmh</code>: the results are written as JSON to <code>build/reports/jmh/results.json</code>,
+ * and the <code>gc</code> profiler reports the bytes allocated per turn as <code>gc.alloc.rate.norm</code>. Use
+ * <code>-PjmhInclude=&lt;regexp&gt;</code> to run a subset of the benchmarks.
+ *
+ * @author Nu Echo Inc.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 10, time = 2)
+@Fork(1)
+public class DialogueBenchmark {
+    private static final int LOGIN_TURNS = 3;
+    private static final int MAIN_MENU_TURNS = 6;
+    private static final int MESSAGE_PLAYBACK_TURNS = 7;
+    private static final int RECORDING_TURNS = 7;
+
+    private static final int RECORDING_SIZE = 8000;
+    private static final String MAILBOX = "4069";
+    private static final String CONTENT_TYPE = "audio/basic";
+
+    private File mStoreDirectory;
+    private MessageStore mMessageStore;
+    private TestDialogueChannel mChannel;
+    private RecordingInfo mRecording;
+
+    @Setup(Level.Trial)
+    public void setUpTrial() throws IOException, DialogueFactoryException {
+        mStoreDirectory = File.createTempFile("dialogue-benchmark", "");
+        mStoreDirectory.delete();
+        mMessageStore = new MessageStore(mStoreDirectory,
+                                         MessageStore.DEFAULT_SEGMENT_SIZE,
+                                         MessageStore.DEFAULT_COMPACTION_THRESHOLD);
+        MessageStores.setMessageStore(mMessageStore);
+        // Played by messagePlayback. It is moved to the old messages on the first call and played from there after.
+        mMessageStore.deposit(MAILBOX, CONTENT_TYPE, ByteBuffer.wrap(new byte[RECORDING_SIZE]));
+
+        mChannel = new TestDialogueChannel(new SimpleVoiceXmlDialogueFactory(VoicemailDialogue.class));
+
+        FileUpload file = new FileUpload("name",
+                                         CONTENT_TYPE,
+                                         new byte[RECORDING_SIZE],
+                                         new HashMap<String, String>());
+        mRecording = new RecordingInfo(file, Duration.seconds(1), false, "#");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDownTrial() {
+        MessageStores.setMessageStore(null);
+        mMessageStore.close();
+        File[] files = mStoreDirectory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        mStoreDirectory.delete();
+    }
+
+    @Setup(Level.Invocation)
+    public void startCall() throws DialogueFactoryException {
+        mChannel.start();
+    }
+
+    @TearDown(Level.Invocation)
+    public void endCall() {
+        mChannel.dispose();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LOGIN_TURNS)
+    public Step<VoiceXmlOutputTurn, VoiceXmlLastTurn> login() {
+        sendLogin();
+        return mChannel.processHangup();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(MAIN_MENU_TURNS)
+    public Step<VoiceXmlOutputTurn, VoiceXmlLastTurn> mainMenu() {
+        sendLogin();
+        sendDtmfAnswer("0");
+        sendDtmfAnswer("*");
+        sendDtmfAnswer("#");
+        return mChannel.processNoInput();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(MESSAGE_PLAYBACK_TURNS)
+    public Step<VoiceXmlOutputTurn, VoiceXmlLastTurn> messagePlayback() {
+        sendLogin();
+        sendDtmfAnswer("1");
+        mChannel.processNoInput();
+        sendDtmfAnswer("5");
+        mChannel.processNoInput();
+        return mChannel.processHangup();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(RECORDING_TURNS)
+    public Step<VoiceXmlOutputTurn, VoiceXmlLastTurn> recording() {
+        sendLogin();
+        sendDtmfAnswer("3");
+        sendDtmfAnswer("5");
+        sendDtmfAnswer("1234");
+        mChannel.processRecording(mRecording);
+        return mChannel.processHangup();
+    }
+
+    private void sendLogin() {
+        sendDtmfAnswer(MAILBOX);
+        sendDtmfAnswer("6522");
+    }
+
+    private Step<VoiceXmlOutputTurn, VoiceXmlLastTurn> sendDtmfAnswer(String dtmfs) {
+        StringBuilder builder = new StringBuilder();
+        StringUtils.join(builder, dtmfs.toCharArray(), " ");
+        return mChannel.processDtmfRecognition(builder.toString(), JsonUtils.wrap(dtmfs), null);
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright (c) 2013 Nu Echo Inc. All rights reserved.
+ */
+
+package com.nuecho.rivr.samples.voicemail.prompt;
+
+import java.util.concurrent.*;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.*;
+
+/**
+ * Allocation of the output turns of a scripted call, taken from the shared {@link PromptCatalog} or rebuilt on every
+ * visit of a menu as the dialogue did before the catalog.
+ * <p>
+ * Each benchmark goes through the turns of one call logging in, saving a message, recording a name, leaving a message
+ * and hanging up, so its score is per call. Run with <code>gradle jmh -PjmhInclude=PromptCatalogBenchmark</code>: the
+ * <code>gc</code> profiler reports the bytes allocated per call as <code>gc.alloc.rate.norm</code>. The turns
+ * playing a stored message are built for each message either way and are left out.
+ *
+ * @author Nu Echo Inc.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class PromptCatalogBenchmark {
+    private static final String CONTEXT_PATH = "/rivr-voicemail";
+    private static final TurnId[] CALL_TURNS = {TurnId.ASK_LOGIN,
+                                                TurnId.ASK_PASSWORD,
+                                                TurnId.MAIN_MENU,
+                                                TurnId.CALL_MENU,
+                                                TurnId.ASK_FOLDER_TO_SAVE,
+                                                TurnId.MESSAGE_SAVED,
+                                                TurnId.MAIN_MENU,
+                                                TurnId.MAILBOX_OPTIONS,
+                                                TurnId.RECORD_NAME,
+                                                TurnId.CONFIRM_NAME,
+                                                TurnId.NAME_SAVED,
+                                                TurnId.MAIN_MENU,
+                                                TurnId.ADVANCED_OPTIONS,
+                                                TurnId.ASK_EXTENSION,
+                                                TurnId.ASK_MESSAGE,
+                                                TurnId.MAIN_MENU,
+                                                TurnId.GOOD_BYE};
+
+    private PromptCatalog mCatalog;
+
+    @Setup(Level.Trial)
+    public void setUpTrial() {
+        mCatalog = PromptCatalog.create(CONTEXT_PATH, PromptSet.ORIGINAL, false);
+    }
+
+    @Benchmark
+    public void prebuiltTurns(Blackhole blackhole) {
+        for (TurnId turnId : CALL_TURNS) {
+            blackhole.consume(mCatalog.getTurn(turnId));
+        }
+    }
+
+    @Benchmark
+    public void rebuiltTurns(Blackhole blackhole) {
+        for (TurnId turnId : CALL_TURNS) {
+            blackhole.consume(mCatalog.createTurn(turnId));
+        }
+    }
+}
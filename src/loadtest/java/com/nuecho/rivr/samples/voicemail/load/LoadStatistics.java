@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) 2013 Nu Echo Inc. All rights reserved.
+ */
+
+package com.nuecho.rivr.samples.voicemail.load;
+
+import java.util.concurrent.atomic.*;
+
+import com.nuecho.rivr.samples.voicemail.metrics.*;
+
+/**
+ * Counters and turn latencies shared by the synthetic callers. Latencies are kept both for the whole run and for the
+ * current reporting interval, whose histogram is replaced each time it is {@link #takeInterval() taken}.
+ *
+ * @author Nu Echo Inc.
+ */
+final class LoadStatistics {
+    private final AtomicLong mStartedCalls = new AtomicLong();
+    private final AtomicLong mCompletedCalls = new AtomicLong();
+    private final AtomicLong mFailedCalls = new AtomicLong();
+    private final AtomicLong mTurns = new AtomicLong();
+    private final AtomicInteger mActiveCalls = new AtomicInteger();
+    private final LatencyHistogram mTotalLatency = new LatencyHistogram();
+    private final AtomicReference<LatencyHistogram> mIntervalLatency;
+
+    public LoadStatistics() {
+        mIntervalLatency = new AtomicReference<LatencyHistogram>(new LatencyHistogram());
+    }
+
+    public void callStarted() {
+        mStartedCalls.incrementAndGet();
+        mActiveCalls.incrementAndGet();
+    }
+
+    public void callEnded(boolean failed) {
+        mActiveCalls.decrementAndGet();
+        if (failed) {
+            mFailedCalls.incrementAndGet();
+        } else {
+            mCompletedCalls.incrementAndGet();
+        }
+    }
+
+    public void turn(long nanos) {
+        mTurns.incrementAndGet();
+        mTotalLatency.record(nanos);
+        mIntervalLatency.get().record(nanos);
+    }
+
+    /**
+     * @return the latencies recorded since the previous call
+     */
+    public LatencyHistogram takeInterval() {
+        return mIntervalLatency.getAndSet(new LatencyHistogram());
+    }
+
+    public LatencyHistogram getTotalLatency() {
+        return mTotalLatency;
+    }
+
+    public long getStartedCalls() {
+        return mStartedCalls.get();
+    }
+
+    public long getCompletedCalls() {
+        return mCompletedCalls.get();
+    }
+
+    public long getFailedCalls() {
+        return mFailedCalls.get();
+    }
+
+    public long getTurns() {
+        return mTurns.get();
+    }
+
+    public int getActiveCalls() {
+        return mActiveCalls.get();
+    }
+}
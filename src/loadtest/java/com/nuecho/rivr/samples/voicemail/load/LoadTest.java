@@ -0,0 +1,235 @@
+/*
+ * Copyright (c) 2013 Nu Echo Inc. All rights reserved.
+ */
+
+package com.nuecho.rivr.samples.voicemail.load;
+
+import java.io.*;
+import java.lang.management.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+import com.nuecho.rivr.core.util.*;
+import com.nuecho.rivr.samples.voicemail.metrics.*;
+import com.nuecho.rivr.samples.voicemail.store.*;
+import com.nuecho.rivr.voicexml.turn.input.*;
+
+/**
+ * Starts synthetic callers at a fixed arrival rate, each on its own thread and with its own dialogue, and reports
+ * throughput, turn latency percentiles, live threads and heap use at regular intervals. As every caller holds its
+ * dialogue for the duration of its scenario, the number of simultaneous calls is roughly the arrival rate times the
+ * call duration, which the think time controls.
+ * <p>
+ * Run with <code>gradle loadTest -PloadTestArgs="--calls=5000 --rate=100"</code>. Options:
+ * <ul>
+ * <li><code>--calls</code>: number of calls to place (default 1000);</li>
+ * <li><code>--rate</code>: new calls per second (default 50);</li>
+ * <li><code>--think</code>: milliseconds the caller waits before each input turn (default 1000);</li>
+ * <li><code>--scenarios</code>: comma-separated {@link Scenario} names, played in turn, or <code>all</code>
+ * (default);</li>
+ * <li><code>--report</code>: seconds between reports (default 5);</li>
+ * <li><code>--timeout</code>: seconds to wait for a turn before the call fails (default 30);</li>
+ * <li><code>--recording-size</code>: bytes of audio in each recording (default 16000, two seconds);</li>
+ * <li><code>--threads</code>: <code>platform</code> (default) or <code>virtual</code>, the kind of thread running each
+ * synthetic caller.</li>
+ * </ul>
+ * The option only changes the threads of the synthetic callers: each dialogue still runs on the platform thread Rivr
+ * creates for it, so a <code>virtual</code> run doesn't tell what virtual threads would save on the dialogues.
+ * Recordings are deposited in a {@link MessageStore} created in a temporary directory, deleted at the end of the run.
+ *
+ * @author Nu Echo Inc.
+ */
+public final class LoadTest {
+    private static final double NANOS_PER_SECOND = 1e9;
+    private static final double MICROS_PER_MILLI = 1e3;
+    private static final long BYTES_PER_MEGABYTE = 1024 * 1024;
+
+    private final int mCalls;
+    private final double mRate;
+    private final long mThinkTimeMillis;
+    private final List<Scenario> mScenarios;
+    private final long mReportSeconds;
+    private final Duration mTimeout;
+    private final RecordingInfo mRecording;
+    private final boolean mVirtualThreads;
+    private final LoadStatistics mStatistics = new LoadStatistics();
+    private final PrintStream mOut;
+    private int mPeakActiveCalls;
+    private long mHeapAtPeak;
+
+    private LoadTest(Map<String, String> options, PrintStream out) {
+        mCalls = Integer.parseInt(option(options, "calls", "1000"));
+        mRate = Double.parseDouble(option(options, "rate", "50"));
+        mThinkTimeMillis = Long.parseLong(option(options, "think", "1000"));
+        mScenarios = Scenario.parse(option(options, "scenarios", "all"));
+        mReportSeconds = Long.parseLong(option(options, "report", "5"));
+        mTimeout = Duration.seconds(Long.parseLong(option(options, "timeout", "30")));
+        mRecording = SyntheticCaller.createRecording(Integer.parseInt(option(options, "recording-size", "16000")));
+        String threads = option(options, "threads", "platform");
+        mVirtualThreads = threads.equals("virtual");
+        mOut = out;
+
+        if (!options.isEmpty()) throw new IllegalArgumentException("Unknown options: " + options.keySet());
+        if (mCalls <= 0 || mRate <= 0 || mThinkTimeMillis < 0 || mReportSeconds <= 0)
+            throw new IllegalArgumentException("calls, rate and report must be positive and think can't be negative");
+        if (!mVirtualThreads && !threads.equals("platform"))
+            throw new IllegalArgumentException("threads must be platform or virtual: " + threads);
+    }
+
+    public static void main(String[] arguments) throws IOException, InterruptedException {
+        Map<String, String> options = new HashMap<String, String>();
+        for (String argument : arguments) {
+            int equals = argument.indexOf('=');
+            if (!argument.startsWith("--") || equals < 0)
+                throw new IllegalArgumentException("Expected --name=value: " + argument);
+            options.put(argument.substring(2, equals), argument.substring(equals + 1));
+        }
+
+        File storeDirectory = File.createTempFile("rivr-voicemail-load", "");
+        storeDirectory.delete();
+        MessageStore messageStore = new MessageStore(storeDirectory,
+                                                     MessageStore.DEFAULT_SEGMENT_SIZE,
+                                                     MessageStore.DEFAULT_COMPACTION_THRESHOLD);
+        MessageStores.setMessageStore(messageStore);
+        try {
+            new LoadTest(options, System.out).run();
+        } finally {
+            MessageStores.setMessageStore(null);
+            messageStore.close();
+            delete(storeDirectory);
+        }
+    }
+
+    private void run() throws InterruptedException {
+        final ExecutorService callers = mVirtualThreads
+                ? Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("caller-", 1).factory())
+                : Executors.newCachedThreadPool(new CallerThreadFactory());
+        ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(1);
+        final CountDownLatch allStarted = new CountDownLatch(1);
+        final AtomicInteger placed = new AtomicInteger();
+
+        long periodNanos = Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) / mRate));
+        ScheduledFuture<?> arrivals = scheduler.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                int call = placed.getAndIncrement();
+                if (call >= mCalls) {
+                    allStarted.countDown();
+                    return;
+                }
+                Scenario scenario = mScenarios.get(call % mScenarios.size());
+                callers.execute(new SyntheticCaller(scenario, mStatistics, mThinkTimeMillis, mTimeout, mRecording));
+            }
+        }, 0, periodNanos, TimeUnit.NANOSECONDS);
+
+        final long startNanos = System.nanoTime();
+        printHeader();
+        ScheduledFuture<?> reports = scheduler.scheduleAtFixedRate(new Runnable() {
+            private long mPreviousTurns;
+
+            @Override
+            public void run() {
+                long turns = mStatistics.getTurns();
+                printReport(startNanos, turns - mPreviousTurns, mStatistics.takeInterval());
+                mPreviousTurns = turns;
+            }
+        }, mReportSeconds, mReportSeconds, TimeUnit.SECONDS);
+
+        allStarted.await();
+        arrivals.cancel(false);
+        callers.shutdown();
+        callers.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        reports.cancel(false);
+        scheduler.shutdown();
+        scheduler.awaitTermination(mReportSeconds, TimeUnit.SECONDS);
+
+        printSummary(System.nanoTime() - startNanos);
+    }
+
+    private void printHeader() {
+        mOut.printf("%8s %7s %8s %9s %7s %9s %9s %9s %8s %9s%n",
+                    "elapsed",
+                    "active",
+                    "started",
+                    "completed",
+                    "failed",
+                    "turns/s",
+                    "p50 ms",
+                    "p99 ms",
+                    "threads",
+                    "heap MB");
+    }
+
+    private void printReport(long startNanos, long intervalTurns, LatencyHistogram intervalLatency) {
+        MemoryUsage heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+        int activeCalls = mStatistics.getActiveCalls();
+        if (activeCalls > mPeakActiveCalls) {
+            mPeakActiveCalls = activeCalls;
+            mHeapAtPeak = heap.getUsed();
+        }
+        mOut.printf("%7ds %7d %8d %9d %7d %9.1f %9.2f %9.2f %8d %9d%n",
+                    TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - startNanos),
+                    activeCalls,
+                    mStatistics.getStartedCalls(),
+                    mStatistics.getCompletedCalls(),
+                    mStatistics.getFailedCalls(),
+                    (double) intervalTurns / mReportSeconds,
+                    intervalLatency.getQuantileMicros(0.5) / MICROS_PER_MILLI,
+                    intervalLatency.getQuantileMicros(0.99) / MICROS_PER_MILLI,
+                    ManagementFactory.getThreadMXBean().getThreadCount(),
+                    heap.getUsed() / BYTES_PER_MEGABYTE);
+    }
+
+    private void printSummary(long elapsedNanos) {
+        double seconds = elapsedNanos / NANOS_PER_SECOND;
+        LatencyHistogram latency = mStatistics.getTotalLatency();
+        mOut.println();
+        mOut.printf("calls:      %d completed, %d failed in %.1f s (%.1f calls/s)%n",
+                    mStatistics.getCompletedCalls(),
+                    mStatistics.getFailedCalls(),
+                    seconds,
+                    (mStatistics.getCompletedCalls() + mStatistics.getFailedCalls()) / seconds);
+        mOut.printf("turns:      %d (%.1f turns/s)%n", mStatistics.getTurns(), mStatistics.getTurns() / seconds);
+        mOut.printf("latency:    p50 %.2f ms, p90 %.2f ms, p99 %.2f ms, p99.9 %.2f ms%n",
+                    latency.getQuantileMicros(0.5) / MICROS_PER_MILLI,
+                    latency.getQuantileMicros(0.9) / MICROS_PER_MILLI,
+                    latency.getQuantileMicros(0.99) / MICROS_PER_MILLI,
+                    latency.getQuantileMicros(0.999) / MICROS_PER_MILLI);
+        mOut.printf("threads:    %s callers, %d peak%n",
+                    mVirtualThreads ? "virtual" : "platform",
+                    ManagementFactory.getThreadMXBean().getPeakThreadCount());
+        if (mPeakActiveCalls > 0) {
+            mOut.printf("peak calls: %d, %d MB heap (%d KB per call)%n",
+                        mPeakActiveCalls,
+                        mHeapAtPeak / BYTES_PER_MEGABYTE,
+                        mHeapAtPeak / mPeakActiveCalls / 1024);
+        }
+    }
+
+    private static String option(Map<String, String> options, String name, String defaultValue) {
+        String value = options.remove(name);
+        return value == null ? defaultValue : value;
+    }
+
+    private static void delete(File directory) {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    private static final class CallerThreadFactory implements ThreadFactory {
+        private final AtomicInteger mThreadCount = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "caller-" + mThreadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright (c) 2013 Nu Echo Inc. All rights reserved.
+ */
+
+package com.nuecho.rivr.samples.voicemail.load;
+
+import java.util.*;
+
+/**
+ * Scripts played by the synthetic callers, following the scenarios of the <code>DialogueTests</code>. Each action of
+ * a script is either a DTMF string or one of {@link #RECORDING}, {@link #NO_INPUT} and {@link #HANG_UP}.
+ *
+ * @author Nu Echo Inc.
+ */
+public enum Scenario {
+    LOGIN("4069", "6522", Scenario.HANG_UP),
+    LOGIN_INCORRECT("4069", "4243", "4069", "6522", Scenario.HANG_UP),
+    EXIT_ON_POUND("4069", "6522", "#", Scenario.NO_INPUT),
+    CHANGE_MAILBOX_NAME("4069",
+                        "6522",
+                        "0",
+                        "3",
+                        Scenario.RECORDING,
+                        "1",
+                        Scenario.NO_INPUT,
+                        "*",
+                        Scenario.HANG_UP),
+    LEAVE_MESSAGE("4069", "6522", "3", "5", "1234", Scenario.RECORDING, Scenario.HANG_UP),
+    LISTEN_MESSAGE("4069", "6522", "1", Scenario.NO_INPUT, "5", Scenario.NO_INPUT, "*", Scenario.HANG_UP),
+    SAVE_MESSAGE("4069", "6522", "1", Scenario.NO_INPUT, "9", "1", Scenario.NO_INPUT, Scenario.HANG_UP);
+
+    public static final String RECORDING = "recording";
+    public static final String NO_INPUT = "noinput";
+    public static final String HANG_UP = "hangup";
+
+    private final List<String> mActions;
+
+    private Scenario(String... actions) {
+        mActions = Collections.unmodifiableList(Arrays.asList(actions));
+    }
+
+    public List<String> getActions() {
+        return mActions;
+    }
+
+    /**
+     * @param names Comma-separated scenario names, case insensitive, or <code>all</code>.
+     * @return the scenarios
+     */
+    public static List<Scenario> parse(String names) {
+        if (names.equalsIgnoreCase("all")) return Arrays.asList(values());
+
+        List<Scenario> scenarios = new ArrayList<Scenario>();
+        for (String name : names.split(",")) {
+            scenarios.add(valueOf(name.trim().toUpperCase(Locale.ENGLISH).replace('-', '_')));
+        }
+        return scenarios;
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright (c) 2013 Nu Echo Inc. All rights reserved.
+ */
+
+package com.nuecho.rivr.samples.voicemail.load;
+
+import java.util.*;
+
+import com.nuecho.rivr.core.channel.synchronous.step.*;
+import com.nuecho.rivr.core.util.*;
+import com.nuecho.rivr.samples.voicemail.dialogue.*;
+import com.nuecho.rivr.voicexml.dialogue.*;
+import com.nuecho.rivr.voicexml.servlet.*;
+import com.nuecho.rivr.voicexml.turn.input.*;
+import com.nuecho.rivr.voicexml.turn.last.*;
+import com.nuecho.rivr.voicexml.turn.output.*;
+import com.nuecho.rivr.voicexml.util.json.*;
+
+/**
+ * A caller playing a {@link Scenario} against its own {@link VoicemailDialogue}, through the
+ * {@link TestDialogueChannel}. The latency of a turn is the time between sending the input turn and getting the next
+ * step back, which includes the dialogue's server time but none of the caller's think time.
+ *
+ * @author Nu Echo Inc.
+ */
+final class SyntheticCaller implements Runnable {
+    private static final VoiceXmlDialogueFactory DIALOGUE_FACTORY;
+
+    static {
+        DIALOGUE_FACTORY = new SimpleVoiceXmlDialogueFactory(VoicemailDialogue.class);
+    }
+
+    private final Scenario mScenario;
+    private final LoadStatistics mStatistics;
+    private final long mThinkTimeMillis;
+    private final Duration mTimeout;
+    private final RecordingInfo mRecording;
+
+    public SyntheticCaller(Scenario scenario,
+                           LoadStatistics statistics,
+                           long thinkTimeMillis,
+                           Duration timeout,
+                           RecordingInfo recording) {
+        mScenario = scenario;
+        mStatistics = statistics;
+        mThinkTimeMillis = thinkTimeMillis;
+        mTimeout = timeout;
+        mRecording = recording;
+    }
+
+    /**
+     * @param size The size of the recording, in bytes of 8 kHz mu-law audio.
+     * @return the recording sent by the callers
+     */
+    public static RecordingInfo createRecording(int size) {
+        byte[] audio = new byte[size];
+        Arrays.fill(audio, (byte) 0xFF);
+        FileUpload file = new FileUpload("recording", "audio/basic", audio, new HashMap<String, String>());
+        return new RecordingInfo(file, Duration.milliseconds(size / 8), false, "#");
+    }
+
+    @Override
+    public void run() {
+        mStatistics.callStarted();
+        boolean failed = false;
+        TestDialogueChannel channel = new TestDialogueChannel(DIALOGUE_FACTORY, mTimeout, null);
+        try {
+            channel.start();
+            for (String action : mScenario.getActions()) {
+                Thread.sleep(mThinkTimeMillis);
+
+                long start = System.nanoTime();
+                Step<VoiceXmlOutputTurn, VoiceXmlLastTurn> step = perform(channel, action);
+                mStatistics.turn(System.nanoTime() - start);
+
+                if (step instanceof ErrorStep) {
+                    failed = true;
+                    break;
+                }
+            }
+        } catch (InterruptedException exception) {
+            failed = true;
+            Thread.currentThread().interrupt();
+        } catch (Exception exception) {
+            failed = true;
+        } finally {
+            channel.dispose();
+            mStatistics.callEnded(failed);
+        }
+    }
+
+    private Step<VoiceXmlOutputTurn, VoiceXmlLastTurn> perform(TestDialogueChannel channel, String action) {
+        if (action.equals(Scenario.RECORDING)) return channel.processRecording(mRecording);
+        if (action.equals(Scenario.NO_INPUT)) return channel.processNoInput();
+        if (action.equals(Scenario.HANG_UP)) return channel.processHangup();
+
+        StringBuilder builder = new StringBuilder();
+        StringUtils.join(builder, action.toCharArray(), " ");
+        return channel.processDtmfRecognition(builder.toString(), JsonUtils.wrap(action), null);
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright (c) 2013 Nu Echo Inc. All rights reserved.
+ */
+
+package com.nuecho.rivr.samples.voicemail.admission;
+
+import java.util.concurrent.*;
+
+/**
+ * Limits the number of concurrent dialogues, so that the admitted calls keep their latency budget when the node
+ * saturates instead of every call slowing down.
+ * <p>
+ * A new dialogue is admitted right away while there are fewer active dialogues than the limit. Otherwise it waits in a
+ * short queue for a dialogue to end, and is rejected if the queue is full or the wait times out.
+ * <p>
+ * The limit adapts to the server time of the turns: after every {@link #WINDOW_SAMPLES} turns, it is decreased by 10%
+ * if their average exceeds the latency target, and increased by one if it didn't and some dialogue had to wait. It
+ * stays between the configured minimum and maximum.
+ *
+ * @author Nu Echo Inc.
+ */
+public final class AdmissionController {
+    public static final int WINDOW_SAMPLES = 50;
+
+    private static final double DECREASE_FACTOR = 0.9;
+
+    private final int mMinLimit;
+    private final int mMaxLimit;
+    private final int mQueueSize;
+    private final long mQueueTimeoutNanos;
+    private final long mLatencyTargetNanos;
+
+    private int mLimit;
+    private int mActive;
+    private int mWaiting;
+    private boolean mSaturated;
+    private long mRejected;
+
+    private long mWindowNanos;
+    private int mWindowSamples;
+
+    /**
+     * @param minLimit The smallest limit the adaptation can reach.
+     * @param maxLimit The initial and largest limit.
+     * @param queueSize How many dialogues can wait for admission.
+     * @param queueTimeoutMillis How long a dialogue waits for admission.
+     * @param latencyTargetMillis The average server time per turn to stay under.
+     */
+    public AdmissionController(int minLimit,
+                               int maxLimit,
+                               int queueSize,
+                               long queueTimeoutMillis,
+                               long latencyTargetMillis) {
+        if (minLimit < 1 || maxLimit < minLimit)
+            throw new IllegalArgumentException("Invalid limits: " + minLimit + ".." + maxLimit);
+        mMinLimit = minLimit;
+        mMaxLimit = maxLimit;
+        mQueueSize = queueSize;
+        mQueueTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(queueTimeoutMillis);
+        mLatencyTargetNanos = TimeUnit.MILLISECONDS.toNanos(latencyTargetMillis);
+        mLimit = maxLimit;
+    }
+
+    /**
+     * Admits a new dialogue, waiting in the queue if needed. An admitted dialogue must be {@link #release() released}
+     * when it ends.
+     *
+     * @return whether the dialogue is admitted
+     * @throws InterruptedException if interrupted while waiting in the queue
+     */
+    public synchronized boolean acquire() throws InterruptedException {
+        if (mActive < mLimit) {
+            mActive++;
+            return true;
+        }
+
+        mSaturated = true;
+        if (mWaiting >= mQueueSize) {
+            mRejected++;
+            return false;
+        }
+
+        mWaiting++;
+        try {
+            long deadline = System.nanoTime() + mQueueTimeoutNanos;
+            while (mActive >= mLimit) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    mRejected++;
+                    return false;
+                }
+                TimeUnit.NANOSECONDS.timedWait(this, remaining);
+            }
+        } finally {
+            mWaiting--;
+        }
+        mActive++;
+        return true;
+    }
+
+    public synchronized void release() {
+        if (mActive > 0) {
+            mActive--;
+            notify();
+        }
+    }
+
+    /**
+     * Records the server time of a turn of an admitted dialogue.
+     */
+    public synchronized void recordLatency(long nanos) {
+        mWindowNanos += nanos;
+        mWindowSamples++;
+        if (mWindowSamples < WINDOW_SAMPLES) return;
+
+        long average = mWindowNanos / mWindowSamples;
+        if (average > mLatencyTargetNanos) {
+            mLimit = Math.max(mMinLimit, (int) (mLimit * DECREASE_FACTOR));
+        } else if (mSaturated && mLimit < mMaxLimit) {
+            mLimit++;
+            notify();
+        }
+        mWindowNanos = 0;
+        mWindowSamples = 0;
+        mSaturated = false;
+    }
+
+    public synchronized int getLimit() {
+        return mLimit;
+    }
+
+    public synchronized int getActive() {
+        return mActive;
+    }
+
+    public synchronized int getWaiting() {
+        return mWaiting;
+    }
+
+    /**
+     * @return the number of dialogues rejected so far
+     */
+    public synchronized long getRejected() {
+        return mRejected;
+    }
+}
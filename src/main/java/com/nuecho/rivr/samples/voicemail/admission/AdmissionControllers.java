@@ -0,0 +1,27 @@
+/*
+ * Copyright (c) 2013 Nu Echo Inc. All rights reserved.
+ */
+
+package com.nuecho.rivr.samples.voicemail.admission;
+
+/**
+ * Holds the {@link AdmissionController} of the dialogues, if any. Without one, every call is admitted.
+ *
+ * @author Nu Echo Inc.
+ */
+public final class AdmissionControllers {
+    private static volatile AdmissionController sAdmissionController;
+
+    private AdmissionControllers() {}
+
+    /**
+     * @return the admission controller, or <code>null</code> if there is none
+     */
+    public static AdmissionController getAdmissionController() {
+        return sAdmissionController;
+    }
+
+    public static void setAdmissionController(AdmissionController admissionController) {
+        sAdmissionController = admissionController;
+    }
+}
@@ -0,0 +1,27 @@
+/*
+ * Copyright (c) 2013 Nu Echo Inc. All rights reserved.
+ */
+
+package com.nuecho.rivr.samples.voicemail.auth;
+
+/**
+ * Outcome of a mailbox login.
+ *
+ * @author Nu Echo Inc.
+ */
+public enum AuthenticationResult {
+    /**
+     * The mailbox exists and the PIN is valid.
+     */
+    SUCCESS,
+
+    /**
+     * The mailbox doesn't exist or the PIN is invalid.
+     */
+    INVALID,
+
+    /**
+     * Too many failed attempts were made on the mailbox. Further attempts are refused until the lockout expires.
+     */
+    LOCKED_OUT
+}
@@ -0,0 +1,22 @@
+/*
+ * Copyright (c) 2013 Nu Echo Inc. All rights reserved.
+ */
+
+package com.nuecho.rivr.samples.voicemail.auth;
+
+/**
+ * Validates mailbox logins. Implementations are shared by all dialogues and must be thread-safe.
+ *
+ * @author Nu Echo Inc.
+ */
+public interface Authenticator {
+
+    /**
+     * Checks a login. The mailbox and the PIN are only read during the call, so that the sequences decoding the DTMF
+     * input of the caller can be passed as is, without converting them to strings.
+     *
+     * @param mailbox The mailbox number entered by the caller.
+     * @param pin The PIN entered by the caller.
+     */
+    AuthenticationResult authenticate(CharSequence mailbox, CharSequence pin);
+}
@@ -0,0 +1,33 @@
+/*
+ * Copyright (c) 2013 Nu Echo Inc. All rights reserved.
+ */
+
+package com.nuecho.rivr.samples.voicemail.auth;
+
+/**
+ * Holds the {@link Authenticator} used by the dialogues.
+ * <p>
+ * Until another one is installed, logins are checked against an in-memory store holding only the demonstration
+ * mailbox (4069, PIN 6522).
+ *
+ * @author Nu Echo Inc.
+ */
+public final class Authenticators {
+    private static volatile Authenticator sAuthenticator = createDemoAuthenticator();
+
+    private Authenticators() {}
+
+    public static Authenticator getAuthenticator() {
+        return sAuthenticator;
+    }
+
+    public static void setAuthenticator(Authenticator authenticator) {
+        sAuthenticator = authenticator;
+    }
+
+    private static Authenticator createDemoAuthenticator() {
+        InMemoryMailboxStore store = new InMemoryMailboxStore();
+        store.putMailbox("4069", "6522");
+        return new StoreAuthenticator(store);
+    }
+}
@@ -0,0 +1,170 @@
+/*
+ * Copyright (c) 2013 Nu Echo Inc. All rights reserved.
+ */
+
+package com.nuecho.rivr.samples.voicemail.auth;
+
+import static java.lang.String.format;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.charset.*;
+import java.util.*;
+
+/**
+ * {@link MailboxStore} backed by a file of fixed-length records sorted by mailbox.
+ * <p>
+ * Each record is a line made of the mailbox padded with spaces to {@link #MAILBOX_LENGTH} characters, the hexadecimal
+ * salt and the hexadecimal hash, separated by spaces. Lookups binary search the file with positional reads, so the
+ * file is never loaded in memory and concurrent lookups don't contend.
+ * <p>
+ * The file is created from a properties file mapping mailboxes to PINs with:
+ *
+ * <pre>
+ * java ... FileMailboxStore &lt;mailboxes.properties&gt; &lt;mailboxes.db&gt;
+ * </pre>
+ *
+ * @author Nu Echo Inc.
+ */
+public final class FileMailboxStore implements MailboxStore, Closeable {
+    /**
+     * Maximum length of a mailbox.
+     */
+    public static final int MAILBOX_LENGTH = 20;
+
+    private static final int SALT_OFFSET = MAILBOX_LENGTH + 1;
+    private static final int HASH_OFFSET = SALT_OFFSET + PinHash.SALT_LENGTH * 2 + 1;
+    private static final int RECORD_LENGTH = HASH_OFFSET + PinHash.HASH_LENGTH * 2 + 1;
+
+    private static final Charset CHARSET = Charset.forName("US-ASCII");
+
+    private final RandomAccessFile mFile;
+    private final FileChannel mChannel;
+    private final long mRecordCount;
+
+    public FileMailboxStore(File file) throws IOException {
+        mFile = new RandomAccessFile(file, "r");
+        mChannel = mFile.getChannel();
+        long size = mChannel.size();
+        if (size % RECORD_LENGTH != 0) {
+            mFile.close();
+            throw new IOException(format("Invalid mailbox store %s: size %d is not a multiple of %d",
+                                         file,
+                                         size,
+                                         RECORD_LENGTH));
+        }
+        mRecordCount = size / RECORD_LENGTH;
+    }
+
+    @Override
+    public PinHash getPinHash(CharSequence mailbox) throws IOException {
+        if (mailbox.length() > MAILBOX_LENGTH) return null;
+        ByteBuffer record = ByteBuffer.allocate(RECORD_LENGTH);
+
+        long low = 0;
+        long high = mRecordCount - 1;
+        while (low <= high) {
+            long middle = (low + high) >>> 1;
+            readRecord(middle, record);
+            int comparison = compareKey(record, mailbox);
+            if (comparison < 0) {
+                low = middle + 1;
+            } else if (comparison > 0) {
+                high = middle - 1;
+            } else {
+                return PinHash.fromHex(field(record, SALT_OFFSET, PinHash.SALT_LENGTH * 2),
+                                       field(record, HASH_OFFSET, PinHash.HASH_LENGTH * 2));
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public void close() throws IOException {
+        mFile.close();
+    }
+
+    /**
+     * Writes a mailbox store file.
+     *
+     * @param file The file to write.
+     * @param pinHashes The PIN hashes of the mailboxes.
+     * @throws IOException if the file cannot be written
+     * @throws IllegalArgumentException if a mailbox is too long or contains spaces
+     */
+    public static void write(File file, Map<String, PinHash> pinHashes) throws IOException {
+        SortedMap<String, PinHash> sorted = new TreeMap<String, PinHash>(pinHashes);
+        Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), CHARSET));
+        try {
+            for (Map.Entry<String, PinHash> entry : sorted.entrySet()) {
+                String mailbox = entry.getKey();
+                if (mailbox.length() > MAILBOX_LENGTH || mailbox.indexOf(' ') >= 0) {
+                    throw new IllegalArgumentException("Invalid mailbox: " + mailbox);
+                }
+                writer.write(pad(mailbox));
+                writer.write(' ');
+                writer.write(entry.getValue().getHexSalt());
+                writer.write(' ');
+                writer.write(entry.getValue().getHexHash());
+                writer.write('\n');
+            }
+        } finally {
+            writer.close();
+        }
+    }
+
+    public static void main(String[] arguments) throws IOException {
+        if (arguments.length != 2) {
+            System.err.println("Usage: FileMailboxStore <mailboxes.properties> <mailboxes.db>");
+            System.exit(1);
+        }
+
+        Properties pins = new Properties();
+        InputStream input = new FileInputStream(arguments[0]);
+        try {
+            pins.load(input);
+        } finally {
+            input.close();
+        }
+
+        Map<String, PinHash> pinHashes = new HashMap<String, PinHash>();
+        for (String mailbox : pins.stringPropertyNames()) {
+            pinHashes.put(mailbox, PinHash.create(pins.getProperty(mailbox).trim()));
+        }
+        write(new File(arguments[1]), pinHashes);
+    }
+
+    private void readRecord(long index, ByteBuffer record) throws IOException {
+        record.clear();
+        long position = index * RECORD_LENGTH;
+        while (record.hasRemaining()) {
+            int read = mChannel.read(record, position + record.position());
+            if (read < 0) throw new EOFException("Truncated mailbox store");
+        }
+    }
+
+    /**
+     * Compares the mailbox of a record with a mailbox, as if it were padded like the record.
+     */
+    private static int compareKey(ByteBuffer record, CharSequence mailbox) {
+        for (int i = 0; i < MAILBOX_LENGTH; i++) {
+            int difference = (record.get(i) & 0xff) - (i < mailbox.length() ? mailbox.charAt(i) : ' ');
+            if (difference != 0) return difference;
+        }
+        return 0;
+    }
+
+    private static String field(ByteBuffer record, int offset, int length) {
+        return new String(record.array(), offset, length, CHARSET);
+    }
+
+    private static String pad(String mailbox) {
+        StringBuilder builder = new StringBuilder(MAILBOX_LENGTH);
+        builder.append(mailbox);
+        while (builder.length() < MAILBOX_LENGTH) {
+            builder.append(' ');
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,29 @@
+/*
+ * Copyright (c) 2013 Nu Echo Inc. All rights reserved.
+ */
+
+package com.nuecho.rivr.samples.voicemail.auth;
+
+import java.util.concurrent.*;
+
+/**
+ * {@link MailboxStore} kept entirely in memory. Suited for tests and demonstrations.
+ *
+ * @author Nu Echo Inc.
+ */
+public final class InMemoryMailboxStore implements MailboxStore {
+
+    private final ConcurrentMap<String, PinHash> mPinHashes = new ConcurrentHashMap<String, PinHash>();
+
+    /**
+     * Adds a mailbox, or changes its PIN.
+     */
+    public void putMailbox(String mailbox, String pin) {
+        mPinHashes.put(mailbox, PinHash.create(pin));
+    }
+
+    @Override
+    public PinHash getPinHash(CharSequence mailbox) {
+        return mPinHashes.get(mailbox.toString());
+    }
+}
@@ -0,0 +1,196 @@
+/*
+ * Copyright (c) 2013 Nu Echo Inc. All rights reserved.
+ */
+
+package com.nuecho.rivr.samples.voicemail.auth;
+
+import java.util.concurrent.atomic.*;
+
+import com.nuecho.rivr.samples.voicemail.util.*;
+
+/**
+ * Counts failed login attempts per mailbox to cut off brute-force callers.
+ * <p>
+ * Counts are kept in a fixed table of slots, each holding an immutable entry with the mailbox, the number of failures,
+ * the time of the first one and, once the mailbox is locked out, the time the lockout started. A mailbox is looked up
+ * in a few consecutive slots from the hash of its characters, comparing the full mailbox so that colliding mailboxes
+ * never share a count, and entries are replaced with a compare-and-set, so that no caller ever waits on another. The
+ * mailbox entered by the caller is looked up as is: it is only converted to a string to count its first failure.
+ * <p>
+ * A mailbox is locked out once it reaches the maximum number of failures within the lockout period, and stays locked
+ * out for the lockout period from then on. The table never grows: a new mailbox takes a free or expired slot, or else
+ * the slot of the mailbox with the fewest failures that is not locked out. A locked-out mailbox is never displaced; if
+ * all its slots are locked out, the failures of a new mailbox are not counted.
+ *
+ * @author Nu Echo Inc.
+ */
+final class LoginAttemptCounters {
+    private static final int PROBES = 8;
+
+    private final AtomicReferenceArray<Failures> mSlots;
+    private final int mMask;
+    private final int mMaxFailures;
+    private final long mLockoutSeconds;
+
+    private static final class Failures {
+        final String mMailbox;
+        final int mCount;
+        final long mSince;
+        final long mLockedSince;
+
+        Failures(String mailbox, int count, long since, long lockedSince) {
+            mMailbox = mailbox;
+            mCount = count;
+            mSince = since;
+            mLockedSince = lockedSince;
+        }
+
+        boolean isLockedOut() {
+            return mLockedSince >= 0;
+        }
+    }
+
+    /**
+     * @param capacity The number of mailboxes whose failures are kept, rounded up to a power of two.
+     * @param maxFailures The number of failures locking out a mailbox.
+     * @param lockoutSeconds How long failures are remembered, and how long a mailbox stays locked out.
+     */
+    LoginAttemptCounters(int capacity, int maxFailures, long lockoutSeconds) {
+        int size = capacity <= PROBES ? PROBES : Integer.highestOneBit(capacity - 1) << 1;
+        mSlots = new AtomicReferenceArray<Failures>(size);
+        mMask = size - 1;
+        mMaxFailures = maxFailures;
+        mLockoutSeconds = lockoutSeconds;
+    }
+
+    boolean isLockedOut(CharSequence mailbox) {
+        return isLockedOut(mailbox, now());
+    }
+
+    /**
+     * @param now The current time, in seconds.
+     */
+    boolean isLockedOut(CharSequence mailbox, long now) {
+        int start = index(mailbox);
+        for (int probe = 0; probe < PROBES; probe++) {
+            Failures failures = mSlots.get(start + probe & mMask);
+            if (failures != null && failures.mMailbox.contentEquals(mailbox)) {
+                return failures.isLockedOut() && !isExpired(failures, now);
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Records a failed attempt.
+     *
+     * @return whether the mailbox is now locked out
+     */
+    boolean recordFailure(CharSequence mailbox) {
+        return recordFailure(mailbox, now());
+    }
+
+    /**
+     * @param now The current time, in seconds.
+     */
+    boolean recordFailure(CharSequence mailbox, long now) {
+        int start = index(mailbox);
+        while (true) {
+            int found = -1;
+            int victim = -1;
+            Failures victimFailures = null;
+            for (int probe = 0; probe < PROBES; probe++) {
+                int index = start + probe & mMask;
+                Failures failures = mSlots.get(index);
+                if (failures != null && failures.mMailbox.contentEquals(mailbox)) {
+                    found = index;
+                    break;
+                }
+                // The first free slot, or else the one with the fewest failures that is not locked out.
+                boolean better;
+                if (isFree(failures, now)) {
+                    better = victim < 0 || !isFree(victimFailures, now);
+                } else {
+                    better = !failures.isLockedOut()
+                             && (victim < 0 || !isFree(victimFailures, now) && failures.mCount < victimFailures.mCount);
+                }
+                if (better) {
+                    victim = index;
+                    victimFailures = failures;
+                }
+            }
+
+            if (found >= 0) {
+                Failures failures = mSlots.get(found);
+                if (failures == null || !failures.mMailbox.contentEquals(mailbox)) continue;
+                Failures next = isExpired(failures, now) ? first(failures.mMailbox, now) : next(failures, now);
+                if (mSlots.compareAndSet(found, failures, next)) return next.isLockedOut();
+            } else {
+                if (victim < 0) return false;
+                Failures next = first(mailbox.toString(), now);
+                if (mSlots.compareAndSet(victim, victimFailures, next)) return next.isLockedOut();
+            }
+        }
+    }
+
+    /**
+     * Forgets the failed attempts of a mailbox, typically after a successful login.
+     */
+    void reset(CharSequence mailbox) {
+        int start = index(mailbox);
+        for (int probe = 0; probe < PROBES; probe++) {
+            int index = start + probe & mMask;
+            Failures failures = mSlots.get(index);
+            if (failures != null && failures.mMailbox.contentEquals(mailbox)) {
+                mSlots.compareAndSet(index, failures, null);
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return the number of mailboxes whose failures are kept, expired ones included
+     */
+    int size() {
+        int size = 0;
+        for (int index = 0; index < mSlots.length(); index++) {
+            if (mSlots.get(index) != null) {
+                size++;
+            }
+        }
+        return size;
+    }
+
+    private Failures first(String mailbox, long now) {
+        return new Failures(mailbox, 1, now, 1 >= mMaxFailures ? now : -1);
+    }
+
+    private Failures next(Failures failures, long now) {
+        int count = failures.mCount + 1;
+        long lockedSince = failures.isLockedOut() ? failures.mLockedSince : count >= mMaxFailures ? now : -1;
+        return new Failures(failures.mMailbox, count, failures.mSince, lockedSince);
+    }
+
+    private boolean isFree(Failures failures, long now) {
+        return failures == null || isExpired(failures, now);
+    }
+
+    /**
+     * Failures expire with the lockout period from the first one, or from the start of the lockout once the mailbox
+     * is locked out.
+     */
+    private boolean isExpired(Failures failures, long now) {
+        long since = failures.isLockedOut() ? failures.mLockedSince : failures.mSince;
+        return now - since >= mLockoutSeconds;
+    }
+
+    private int index(CharSequence mailbox) {
+        int hash = CharSequenceUtils.hashCode(mailbox);
+        hash ^= hash >>> 16;
+        return hash & mMask;
+    }
+
+    private static long now() {
+        return System.currentTimeMillis() / 1000;
+    }
+}
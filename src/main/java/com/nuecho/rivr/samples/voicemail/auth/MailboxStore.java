@@ -0,0 +1,22 @@
+/*
+ * Copyright (c) 2013 Nu Echo Inc. All rights reserved.
+ */
+
+package com.nuecho.rivr.samples.voicemail.auth;
+
+import java.io.*;
+
+/**
+ * Persistent store of the mailbox PIN hashes. Implementations must be thread-safe.
+ *
+ * @author Nu Echo Inc.
+ */
+public interface MailboxStore {
+
+    /**
+     * @param mailbox The mailbox, only read during the call.
+     * @return the PIN hash of the mailbox, or <code>null</code> if the mailbox doesn't exist
+     * @throws IOException if the store cannot be read
+     */
+    PinHash getPinHash(CharSequence mailbox) throws IOException;
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright (c) 2013 Nu Echo Inc. All rights reserved.
+ */
+
+package com.nuecho.rivr.samples.voicemail.auth;
+
+import java.security.*;
+
+/**
+ * Salted SHA-256 hash of a mailbox PIN. The PIN itself is never kept.
+ *
+ * @author Nu Echo Inc.
+ */
+public final class PinHash {
+    /**
+     * Length, in bytes, of the salt.
+     */
+    public static final int SALT_LENGTH = 16;
+
+    /**
+     * Length, in bytes, of the hash.
+     */
+    public static final int HASH_LENGTH = 32;
+
+    private static final String ALGORITHM = "SHA-256";
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private static final ThreadLocal<MessageDigest> DIGESTS = new ThreadLocal<MessageDigest>() {
+        @Override
+        protected MessageDigest initialValue() {
+            try {
+                return MessageDigest.getInstance(ALGORITHM);
+            } catch (NoSuchAlgorithmException exception) {
+                throw new IllegalStateException(ALGORITHM + " is not supported", exception);
+            }
+        }
+    };
+
+    private final byte[] mSalt;
+    private final byte[] mHash;
+
+    private PinHash(byte[] salt, byte[] hash) {
+        mSalt = salt;
+        mHash = hash;
+    }
+
+    /**
+     * Hashes a PIN with a new random salt.
+     */
+    public static PinHash create(CharSequence pin) {
+        byte[] salt = new byte[SALT_LENGTH];
+        RANDOM.nextBytes(salt);
+        return new PinHash(salt, hash(salt, pin));
+    }
+
+    /**
+     * Creates a PIN hash from its hexadecimal salt and hash, as returned by {@link #getHexSalt()} and
+     * {@link #getHexHash()}.
+     *
+     * @throws IllegalArgumentException if the salt or the hash are malformed
+     */
+    public static PinHash fromHex(String salt, String hash) {
+        return new PinHash(fromHex(salt, SALT_LENGTH), fromHex(hash, HASH_LENGTH));
+    }
+
+    /**
+     * Checks a PIN against this hash. The PIN is hashed from its characters, without converting it to a string, and
+     * the comparison takes the same time wherever the hashes differ.
+     */
+    public boolean matches(CharSequence pin) {
+        return constantTimeEquals(mHash, hash(mSalt, pin));
+    }
+
+    public String getHexSalt() {
+        return toHex(mSalt);
+    }
+
+    public String getHexHash() {
+        return toHex(mHash);
+    }
+
+    /**
+     * Hashes the salt followed by the PIN, one US-ASCII byte per character. Characters outside US-ASCII, which a DTMF
+     * PIN never has, are hashed as <code>?</code>.
+     */
+    private static byte[] hash(byte[] salt, CharSequence pin) {
+        MessageDigest digest = DIGESTS.get();
+        digest.update(salt);
+        for (int i = 0; i < pin.length(); i++) {
+            char character = pin.charAt(i);
+            digest.update(character < 0x80 ? (byte) character : (byte) '?');
+        }
+        return digest.digest();
+    }
+
+    private static boolean constantTimeEquals(byte[] expected, byte[] actual) {
+        if (expected.length != actual.length) return false;
+        int difference = 0;
+        for (int i = 0; i < expected.length; i++) {
+            difference |= expected[i] ^ actual[i];
+        }
+        return difference == 0;
+    }
+
+    private static String toHex(byte[] bytes) {
+        char[] hex = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            hex[2 * i] = HEX_DIGITS[(bytes[i] >> 4) & 0xf];
+            hex[2 * i + 1] = HEX_DIGITS[bytes[i] & 0xf];
+        }
+        return new String(hex);
+    }
+
+    private static byte[] fromHex(String hex, int length) {
+        if (hex.length() != length * 2) throw new IllegalArgumentException("Invalid length: " + hex);
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            int high = Character.digit(hex.charAt(2 * i), 16);
+            int low = Character.digit(hex.charAt(2 * i + 1), 16);
+            if (high < 0 || low < 0) throw new IllegalArgumentException("Invalid hexadecimal string: " + hex);
+            bytes[i] = (byte) ((high << 4) | low);
+        }
+        return bytes;
+    }
+}
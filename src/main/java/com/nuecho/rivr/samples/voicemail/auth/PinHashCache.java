@@ -0,0 +1,77 @@
+/*
+ * Copyright (c) 2013 Nu Echo Inc. All rights reserved.
+ */
+
+package com.nuecho.rivr.samples.voicemail.auth;
+
+import java.util.concurrent.atomic.*;
+
+import com.nuecho.rivr.samples.voicemail.util.*;
+
+/**
+ * Bounded cache of PIN hashes.
+ * <p>
+ * Entries are kept in a fixed table of slots. A mailbox is looked up in a few consecutive slots from the hash of its
+ * characters, comparing the full mailbox, so that the mailbox entered by the caller is looked up as is, without
+ * converting it to a string, and lookups neither lock nor allocate. A new entry takes a free slot of its mailbox or,
+ * when they are all taken, replaces one of them in turn.
+ *
+ * @author Nu Echo Inc.
+ */
+final class PinHashCache {
+    private static final int PROBES = 4;
+
+    private final AtomicReferenceArray<Entry> mSlots;
+    private final int mMask;
+    private final AtomicInteger mEvictions = new AtomicInteger();
+
+    private static final class Entry {
+        final String mMailbox;
+        final PinHash mPinHash;
+
+        Entry(String mailbox, PinHash pinHash) {
+            mMailbox = mailbox;
+            mPinHash = pinHash;
+        }
+    }
+
+    /**
+     * @param capacity The maximum number of entries, rounded up to a power of two.
+     */
+    PinHashCache(int capacity) {
+        int size = capacity <= PROBES ? PROBES : Integer.highestOneBit(capacity - 1) << 1;
+        mSlots = new AtomicReferenceArray<Entry>(size);
+        mMask = size - 1;
+    }
+
+    PinHash get(CharSequence mailbox) {
+        int start = index(mailbox);
+        for (int probe = 0; probe < PROBES; probe++) {
+            Entry entry = mSlots.get(start + probe & mMask);
+            if (entry != null && entry.mMailbox.contentEquals(mailbox)) return entry.mPinHash;
+        }
+        return null;
+    }
+
+    void put(String mailbox, PinHash pinHash) {
+        Entry entry = new Entry(mailbox, pinHash);
+        int start = index(mailbox);
+        for (int probe = 0; probe < PROBES; probe++) {
+            int index = start + probe & mMask;
+            Entry current = mSlots.get(index);
+            if (current == null) {
+                if (mSlots.compareAndSet(index, null, entry)) return;
+            } else if (current.mMailbox.equals(mailbox)) {
+                mSlots.set(index, entry);
+                return;
+            }
+        }
+        mSlots.set(start + (mEvictions.getAndIncrement() & PROBES - 1) & mMask, entry);
+    }
+
+    private int index(CharSequence mailbox) {
+        int hash = CharSequenceUtils.hashCode(mailbox);
+        hash ^= hash >>> 16;
+        return hash & mMask;
+    }
+}
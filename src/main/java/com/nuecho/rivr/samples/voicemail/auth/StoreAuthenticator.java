@@ -0,0 +1,93 @@
+/*
+ * Copyright (c) 2013 Nu Echo Inc. All rights reserved.
+ */
+
+package com.nuecho.rivr.samples.voicemail.auth;
+
+import java.io.*;
+
+import org.slf4j.*;
+
+/**
+ * {@link Authenticator} checking PINs against the hashes of a {@link MailboxStore}.
+ * <p>
+ * Recently used hashes, including the absence of a mailbox, are kept in a bounded cache so that most logins never
+ * reach the store. The mailbox and the PIN are read as entered: a login served from the cache doesn't convert them to
+ * strings. Failed attempts are counted per mailbox and a mailbox reaching the maximum number of failures is
+ * locked out for the lockout period, whether the PIN is valid or not. Attempts on mailboxes that don't exist are not
+ * counted, so that they can't fill the table of counters.
+ *
+ * @author Nu Echo Inc.
+ */
+public final class StoreAuthenticator implements Authenticator {
+    public static final int DEFAULT_CACHE_SIZE = 100000;
+    public static final int DEFAULT_MAX_FAILURES = 5;
+    public static final long DEFAULT_LOCKOUT_SECONDS = 15 * 60;
+
+    private static final int COUNTER_CAPACITY = 1 << 16;
+
+    /**
+     * Cached in place of mailboxes that don't exist. Checking a PIN against it takes as long as checking an existing
+     * mailbox but never succeeds.
+     */
+    private static final PinHash UNKNOWN_MAILBOX = PinHash.create("");
+
+    private final Logger mLog = LoggerFactory.getLogger(getClass());
+
+    private final MailboxStore mStore;
+    private final PinHashCache mCache;
+    private final LoginAttemptCounters mAttempts;
+
+    public StoreAuthenticator(MailboxStore store) {
+        this(store, DEFAULT_CACHE_SIZE, DEFAULT_MAX_FAILURES, DEFAULT_LOCKOUT_SECONDS);
+    }
+
+    /**
+     * @param store The store of the PIN hashes.
+     * @param cacheSize The maximum number of cached PIN hashes.
+     * @param maxFailures The number of failed attempts locking out a mailbox.
+     * @param lockoutSeconds How long, in seconds, failed attempts are remembered.
+     */
+    public StoreAuthenticator(MailboxStore store, int cacheSize, int maxFailures, long lockoutSeconds) {
+        mStore = store;
+        mCache = new PinHashCache(cacheSize);
+        mAttempts = new LoginAttemptCounters(COUNTER_CAPACITY, maxFailures, lockoutSeconds);
+    }
+
+    @Override
+    public AuthenticationResult authenticate(CharSequence mailbox, CharSequence pin) {
+        if (mAttempts.isLockedOut(mailbox)) return AuthenticationResult.LOCKED_OUT;
+
+        PinHash pinHash = getPinHash(mailbox);
+        boolean matches = pinHash.matches(pin);
+        if (pinHash == UNKNOWN_MAILBOX) return AuthenticationResult.INVALID;
+        if (matches) {
+            mAttempts.reset(mailbox);
+            return AuthenticationResult.SUCCESS;
+        }
+
+        if (mAttempts.recordFailure(mailbox)) {
+            mLog.warn("Mailbox [{}] locked out after too many failed logins", mailbox);
+            return AuthenticationResult.LOCKED_OUT;
+        }
+        return AuthenticationResult.INVALID;
+    }
+
+    private PinHash getPinHash(CharSequence mailbox) {
+        PinHash pinHash = mCache.get(mailbox);
+        if (pinHash == null) {
+            try {
+                pinHash = mStore.getPinHash(mailbox);
+            } catch (IOException exception) {
+                // Not cached: the mailbox may well exist once the store is readable again.
+                mLog.error("Unable to read PIN hash of mailbox " + mailbox, exception);
+                return UNKNOWN_MAILBOX;
+            }
+            if (pinHash == null) {
+                pinHash = UNKNOWN_MAILBOX;
+            }
+            mCache.put(mailbox.toString(), pinHash);
+        }
+        return pinHash;
+    }
+}
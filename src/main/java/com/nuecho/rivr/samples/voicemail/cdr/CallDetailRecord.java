@@ -0,0 +1,138 @@
+/*
+ * Copyright (c) 2013 Nu Echo Inc. All rights reserved.
+ */
+
+package com.nuecho.rivr.samples.voicemail.cdr;
+
+import java.util.*;
+
+/**
+ * Call detail record: what happened on a call, recorded once when the dialogue ends.
+ *
+ * @author Nu Echo Inc.
+ */
+public final class CallDetailRecord {
+    private final long mStartTime;
+    private final String mDnis;
+    private final String mMailbox;
+    private final int mLoginAttempts;
+    private final List<String> mMenuPath;
+    private final long mDurationMillis;
+    private final long mServerMillis;
+    private final long mBrowserMillis;
+    private final String mStatus;
+
+    /**
+     * @param dnis The DNIS, or <code>null</code> if it wasn't obtained.
+     * @param mailbox The mailbox logged in, or <code>null</code> if the login failed.
+     * @param menuPath The names of the call flow nodes visited, in order.
+     */
+    public CallDetailRecord(long startTime,
+                            String dnis,
+                            String mailbox,
+                            int loginAttempts,
+                            List<String> menuPath,
+                            long durationMillis,
+                            long serverMillis,
+                            long browserMillis,
+                            String status) {
+        if (menuPath == null) throw new IllegalArgumentException("menuPath cannot be null");
+        if (status == null) throw new IllegalArgumentException("status cannot be null");
+        mStartTime = startTime;
+        mDnis = dnis;
+        mMailbox = mailbox;
+        mLoginAttempts = loginAttempts;
+        mMenuPath = Collections.unmodifiableList(new ArrayList<String>(menuPath));
+        mDurationMillis = durationMillis;
+        mServerMillis = serverMillis;
+        mBrowserMillis = browserMillis;
+        mStatus = status;
+    }
+
+    /**
+     * @return when the call started, in milliseconds since the epoch
+     */
+    public long getStartTime() {
+        return mStartTime;
+    }
+
+    /**
+     * @return the DNIS, or <code>null</code> if it wasn't obtained
+     */
+    public String getDnis() {
+        return mDnis;
+    }
+
+    /**
+     * @return the mailbox logged in, or <code>null</code> if the login failed
+     */
+    public String getMailbox() {
+        return mMailbox;
+    }
+
+    public int getLoginAttempts() {
+        return mLoginAttempts;
+    }
+
+    /**
+     * @return the names of the call flow nodes visited, in order
+     */
+    public List<String> getMenuPath() {
+        return mMenuPath;
+    }
+
+    public long getDurationMillis() {
+        return mDurationMillis;
+    }
+
+    /**
+     * @return the time spent by the server preparing the turns
+     */
+    public long getServerMillis() {
+        return mServerMillis;
+    }
+
+    /**
+     * @return the time spent waiting for the VoiceXML browser, playing prompts and collecting input
+     */
+    public long getBrowserMillis() {
+        return mBrowserMillis;
+    }
+
+    /**
+     * @return the exit status of the dialogue
+     */
+    public String getStatus() {
+        return mStatus;
+    }
+
+    @Override
+    public boolean equals(Object object) {
+        if (this == object) return true;
+        if (!(object instanceof CallDetailRecord)) return false;
+        CallDetailRecord other = (CallDetailRecord) object;
+        return mStartTime == other.mStartTime
+               && equal(mDnis, other.mDnis)
+               && equal(mMailbox, other.mMailbox)
+               && mLoginAttempts == other.mLoginAttempts
+               && mMenuPath.equals(other.mMenuPath)
+               && mDurationMillis == other.mDurationMillis
+               && mServerMillis == other.mServerMillis
+               && mBrowserMillis == other.mBrowserMillis
+               && mStatus.equals(other.mStatus);
+    }
+
+    @Override
+    public int hashCode() {
+        return (int) (mStartTime ^ mStartTime >>> 32) * 31 + mStatus.hashCode();
+    }
+
+    private static boolean equal(String first, String second) {
+        return first == null ? second == null : first.equals(second);
+    }
+
+    @Override
+    public String toString() {
+        return "CallDetailRecord[" + mStartTime + ", mailbox " + mMailbox + ", " + mStatus + "]";
+    }
+}
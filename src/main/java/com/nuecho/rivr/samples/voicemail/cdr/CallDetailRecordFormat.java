@@ -0,0 +1,197 @@
+/*
+ * Copyright (c) 2013 Nu Echo Inc. All rights reserved.
+ */
+
+package com.nuecho.rivr.samples.voicemail.cdr;
+
+import java.io.*;
+import java.util.*;
+import java.util.zip.*;
+
+/**
+ * Binary format of the call detail record files. A file is a sequence of independent blocks, appended as batches are
+ * written:
+ *
+ * <pre>
+ * block   = magic:int length:int crc32:int payload[length]
+ * payload = version:byte stringCount:varint string* recordCount:varint record*
+ * string  = modified UTF-8, as written by DataOutput.writeUTF
+ * record  = startTimeDelta:zigzag-varint durationMillis:varint serverMillis:varint browserMillis:varint
+ *           dnis:varint mailbox:varint loginAttempts:varint status:varint pathLength:varint node:varint*
+ * </pre>
+ *
+ * Strings are referenced by their index in the block's string table, plus one for the nullable DNIS and mailbox (0
+ * standing for <code>null</code>), so that statuses and node names repeated on every call take a byte or two. Start
+ * times are relative to the previous record of the block, the first one to 0. A block cut short by a crash fails its
+ * length or checksum and ends the file, until the writer opens the file again and truncates it.
+ *
+ * @author Nu Echo Inc.
+ */
+final class CallDetailRecordFormat {
+    static final int MAGIC = 0x43445231; // CDR1
+    static final int HEADER_SIZE = 12;
+
+    private static final int VERSION = 1;
+
+    private CallDetailRecordFormat() {}
+
+    /**
+     * @return the block holding the records, header included
+     */
+    static byte[] encode(List<CallDetailRecord> records) {
+        Map<String, Integer> strings = new LinkedHashMap<String, Integer>();
+        for (CallDetailRecord record : records) {
+            intern(strings, record.getDnis());
+            intern(strings, record.getMailbox());
+            intern(strings, record.getStatus());
+            for (String node : record.getMenuPath()) {
+                intern(strings, node);
+            }
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(HEADER_SIZE + 64 * records.size());
+        DataOutputStream output = new DataOutputStream(bytes);
+        try {
+            output.writeInt(MAGIC);
+            output.writeInt(0);
+            output.writeInt(0);
+            output.writeByte(VERSION);
+            writeVarLong(output, strings.size());
+            for (String string : strings.keySet()) {
+                output.writeUTF(string);
+            }
+            writeVarLong(output, records.size());
+            long previousStartTime = 0;
+            for (CallDetailRecord record : records) {
+                long delta = record.getStartTime() - previousStartTime;
+                previousStartTime = record.getStartTime();
+                writeVarLong(output, delta << 1 ^ delta >> 63);
+                writeVarLong(output, record.getDurationMillis());
+                writeVarLong(output, record.getServerMillis());
+                writeVarLong(output, record.getBrowserMillis());
+                writeVarLong(output, record.getDnis() == null ? 0 : strings.get(record.getDnis()) + 1);
+                writeVarLong(output, record.getMailbox() == null ? 0 : strings.get(record.getMailbox()) + 1);
+                writeVarLong(output, record.getLoginAttempts());
+                writeVarLong(output, strings.get(record.getStatus()));
+                writeVarLong(output, record.getMenuPath().size());
+                for (String node : record.getMenuPath()) {
+                    writeVarLong(output, strings.get(node));
+                }
+            }
+            output.flush();
+        } catch (IOException exception) {
+            throw new IllegalStateException(exception);
+        }
+
+        byte[] block = bytes.toByteArray();
+        int length = block.length - HEADER_SIZE;
+        CRC32 crc = new CRC32();
+        crc.update(block, HEADER_SIZE, length);
+        putInt(block, 4, length);
+        putInt(block, 8, (int) crc.getValue());
+        return block;
+    }
+
+    /**
+     * Decodes the payload of a block whose header and checksum were verified.
+     *
+     * @throws IOException if the payload is invalid
+     */
+    static List<CallDetailRecord> decode(byte[] payload) throws IOException {
+        DataInputStream input = new DataInputStream(new ByteArrayInputStream(payload));
+        int version = input.readUnsignedByte();
+        if (version != VERSION) throw new IOException("Unsupported call detail record version " + version);
+
+        String[] strings = new String[readCount(input)];
+        for (int index = 0; index < strings.length; index++) {
+            strings[index] = input.readUTF();
+        }
+
+        int recordCount = readCount(input);
+        List<CallDetailRecord> records = new ArrayList<CallDetailRecord>(recordCount);
+        long startTime = 0;
+        for (int index = 0; index < recordCount; index++) {
+            long zigzag = readVarLong(input);
+            startTime += zigzag >>> 1 ^ -(zigzag & 1);
+            long durationMillis = readVarLong(input);
+            long serverMillis = readVarLong(input);
+            long browserMillis = readVarLong(input);
+            String dnis = readNullableString(input, strings);
+            String mailbox = readNullableString(input, strings);
+            int loginAttempts = (int) readVarLong(input);
+            String status = readString(input, strings);
+            String[] menuPath = new String[readCount(input)];
+            for (int node = 0; node < menuPath.length; node++) {
+                menuPath[node] = readString(input, strings);
+            }
+            records.add(new CallDetailRecord(startTime,
+                                             dnis,
+                                             mailbox,
+                                             loginAttempts,
+                                             Arrays.asList(menuPath),
+                                             durationMillis,
+                                             serverMillis,
+                                             browserMillis,
+                                             status));
+        }
+        return records;
+    }
+
+    static int getInt(byte[] bytes, int offset) {
+        return (bytes[offset] & 0xff) << 24
+               | (bytes[offset + 1] & 0xff) << 16
+               | (bytes[offset + 2] & 0xff) << 8
+               | bytes[offset + 3] & 0xff;
+    }
+
+    private static void putInt(byte[] bytes, int offset, int value) {
+        bytes[offset] = (byte) (value >>> 24);
+        bytes[offset + 1] = (byte) (value >>> 16);
+        bytes[offset + 2] = (byte) (value >>> 8);
+        bytes[offset + 3] = (byte) value;
+    }
+
+    private static void intern(Map<String, Integer> strings, String string) {
+        if (string != null && !strings.containsKey(string)) {
+            strings.put(string, strings.size());
+        }
+    }
+
+    private static String readNullableString(DataInput input, String[] strings) throws IOException {
+        long index = readVarLong(input);
+        return index == 0 ? null : getString(strings, index - 1);
+    }
+
+    private static String readString(DataInput input, String[] strings) throws IOException {
+        return getString(strings, readVarLong(input));
+    }
+
+    private static String getString(String[] strings, long index) throws IOException {
+        if (index < 0 || index >= strings.length) throw new IOException("Invalid string index " + index);
+        return strings[(int) index];
+    }
+
+    private static int readCount(DataInput input) throws IOException {
+        long count = readVarLong(input);
+        if (count < 0 || count > Integer.MAX_VALUE) throw new IOException("Invalid count " + count);
+        return (int) count;
+    }
+
+    private static void writeVarLong(DataOutput output, long value) throws IOException {
+        while ((value & ~0x7fL) != 0) {
+            output.writeByte((int) (value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        output.writeByte((int) value);
+    }
+
+    private static long readVarLong(DataInput input) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int nextByte = input.readUnsignedByte();
+            value |= (long) (nextByte & 0x7f) << shift;
+            if ((nextByte & 0x80) == 0) return value;
+        }
+        throw new IOException("Invalid variable-length integer");
+    }
+}
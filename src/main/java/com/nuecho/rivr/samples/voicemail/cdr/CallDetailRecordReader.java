@@ -0,0 +1,210 @@
+/*
+ * Copyright (c) 2013 Nu Echo Inc. All rights reserved.
+ */
+
+package com.nuecho.rivr.samples.voicemail.cdr;
+
+import java.io.*;
+import java.text.*;
+import java.util.*;
+import java.util.zip.*;
+
+/**
+ * Reads the call detail records written by the {@link CallDetailRecordWriter}, block by block, so that files of tens
+ * of millions of calls are streamed rather than loaded.
+ * <p>
+ * As a tool, prints the records of a file as tab-separated values, or a summary per exit status with
+ * <code>--summary</code>:
+ *
+ * <pre>
+ * java com.nuecho.rivr.samples.voicemail.cdr.CallDetailRecordReader [--summary] &lt;file&gt;
+ * </pre>
+ *
+ * @author Nu Echo Inc.
+ */
+public final class CallDetailRecordReader implements Closeable {
+    private static final int MAX_BLOCK_SIZE = 64 * 1024 * 1024;
+    private static final String SUMMARY_OPTION = "--summary";
+
+    private final DataInputStream mInput;
+    private long mOffset;
+    private boolean mTruncated;
+
+    /**
+     * @throws IOException if the file cannot be opened
+     */
+    public CallDetailRecordReader(File file) throws IOException {
+        mInput = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 64 * 1024));
+    }
+
+    /**
+     * @return the records of the next block, or <code>null</code> at the end of the file or at a block cut short
+     * @throws IOException if the file cannot be read or a complete block is invalid
+     */
+    public List<CallDetailRecord> readBlock() throws IOException {
+        byte[] payload = readPayload();
+        return payload == null ? null : CallDetailRecordFormat.decode(payload);
+    }
+
+    /**
+     * @return the length of the valid blocks at the start of a file, whose end is where blocks can be appended
+     * @throws IOException if the file cannot be read
+     */
+    static long getValidLength(File file) throws IOException {
+        if (!file.exists()) return 0;
+        CallDetailRecordReader reader = new CallDetailRecordReader(file);
+        try {
+            while (reader.readPayload() != null) {}
+            return reader.getOffset();
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * @return the payload of the next block, its header and checksum verified, or <code>null</code> at the end of the
+     *         file or at a block cut short
+     */
+    private byte[] readPayload() throws IOException {
+        if (mTruncated) return null;
+        byte[] header = new byte[CallDetailRecordFormat.HEADER_SIZE];
+        int read = readFully(header);
+        if (read == 0) return null;
+        int length = CallDetailRecordFormat.getInt(header, 4);
+        if (read < header.length
+            || CallDetailRecordFormat.getInt(header, 0) != CallDetailRecordFormat.MAGIC
+            || length <= 0
+            || length > MAX_BLOCK_SIZE) return truncate();
+
+        byte[] payload = new byte[length];
+        if (readFully(payload) < length) return truncate();
+        CRC32 crc = new CRC32();
+        crc.update(payload, 0, length);
+        if ((int) crc.getValue() != CallDetailRecordFormat.getInt(header, 8)) return truncate();
+
+        mOffset += header.length + length;
+        return payload;
+    }
+
+    /**
+     * @return whether reading stopped at a block cut short or corrupted, rather than at the end of the file
+     */
+    public boolean isTruncated() {
+        return mTruncated;
+    }
+
+    /**
+     * @return the offset of the first byte not read as part of a valid block
+     */
+    public long getOffset() {
+        return mOffset;
+    }
+
+    @Override
+    public void close() throws IOException {
+        mInput.close();
+    }
+
+    private byte[] truncate() {
+        mTruncated = true;
+        return null;
+    }
+
+    private int readFully(byte[] bytes) throws IOException {
+        int offset = 0;
+        while (offset < bytes.length) {
+            int read = mInput.read(bytes, offset, bytes.length - offset);
+            if (read < 0) break;
+            offset += read;
+        }
+        return offset;
+    }
+
+    public static void main(String[] arguments) throws IOException {
+        boolean summary = arguments.length == 2 && arguments[0].equals(SUMMARY_OPTION);
+        if (arguments.length != 1 && !summary) {
+            System.err.println("Usage: CallDetailRecordReader [" + SUMMARY_OPTION + "] <file>");
+            System.exit(1);
+        }
+
+        File file = new File(arguments[arguments.length - 1]);
+        PrintStream output = new PrintStream(new BufferedOutputStream(System.out, 64 * 1024), false, "UTF-8");
+        CallDetailRecordReader reader = new CallDetailRecordReader(file);
+        try {
+            if (summary) {
+                printSummary(reader, output);
+            } else {
+                printRecords(reader, output);
+            }
+            if (reader.isTruncated()) {
+                System.err.println("Ignored the data from offset " + reader.getOffset()
+                                   + ": block cut short or corrupted");
+            }
+        } finally {
+            reader.close();
+            output.flush();
+        }
+    }
+
+    private static void printRecords(CallDetailRecordReader reader, PrintStream output) throws IOException {
+        DateFormat timeFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'", Locale.US);
+        timeFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+        output.println("start\tdnis\tmailbox\tloginAttempts\tmenuPath\t"
+                       + "durationMillis\tserverMillis\tbrowserMillis\tstatus");
+        List<CallDetailRecord> records;
+        while ((records = reader.readBlock()) != null) {
+            for (CallDetailRecord record : records) {
+                output.print(timeFormat.format(new Date(record.getStartTime())));
+                output.print('\t');
+                output.print(record.getDnis() == null ? "" : record.getDnis());
+                output.print('\t');
+                output.print(record.getMailbox() == null ? "" : record.getMailbox());
+                output.print('\t');
+                output.print(record.getLoginAttempts());
+                output.print('\t');
+                List<String> menuPath = record.getMenuPath();
+                for (int index = 0; index < menuPath.size(); index++) {
+                    if (index > 0) {
+                        output.print('>');
+                    }
+                    output.print(menuPath.get(index));
+                }
+                output.print('\t');
+                output.print(record.getDurationMillis());
+                output.print('\t');
+                output.print(record.getServerMillis());
+                output.print('\t');
+                output.print(record.getBrowserMillis());
+                output.print('\t');
+                output.println(record.getStatus());
+            }
+        }
+    }
+
+    private static void printSummary(CallDetailRecordReader reader, PrintStream output) throws IOException {
+        // Per status: calls, total duration, total server time, total browser time.
+        SortedMap<String, long[]> totals = new TreeMap<String, long[]>();
+        List<CallDetailRecord> records;
+        while ((records = reader.readBlock()) != null) {
+            for (CallDetailRecord record : records) {
+                long[] statusTotals = totals.get(record.getStatus());
+                if (statusTotals == null) {
+                    statusTotals = new long[4];
+                    totals.put(record.getStatus(), statusTotals);
+                }
+                statusTotals[0]++;
+                statusTotals[1] += record.getDurationMillis();
+                statusTotals[2] += record.getServerMillis();
+                statusTotals[3] += record.getBrowserMillis();
+            }
+        }
+
+        output.println("status\tcalls\tdurationSeconds\tmeanDurationMillis\tmeanServerMillis\tmeanBrowserMillis");
+        for (Map.Entry<String, long[]> entry : totals.entrySet()) {
+            long[] statusTotals = entry.getValue();
+            long calls = statusTotals[0];
+            output.println(entry.getKey() + "\t" + calls + "\t" + statusTotals[1] / 1000 + "\t"
+                           + statusTotals[1] / calls + "\t" + statusTotals[2] / calls + "\t" + statusTotals[3] / calls);
+        }
+    }
+}
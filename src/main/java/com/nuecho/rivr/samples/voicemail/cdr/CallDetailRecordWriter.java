@@ -0,0 +1,179 @@
+/*
+ * Copyright (c) 2013 Nu Echo Inc. All rights reserved.
+ */
+
+package com.nuecho.rivr.samples.voicemail.cdr;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+import org.slf4j.*;
+
+/**
+ * Appends the call detail records to a file in the {@link CallDetailRecordFormat}, from a background thread.
+ * <p>
+ * Dialogues hand their record to a bounded queue without waiting; a record that doesn't fit is dropped and counted.
+ * The thread writes the queued records as one block when the batch is full or when the oldest record has waited for
+ * the flush period, so that a file of tens of millions of calls holds a few blocks per second of traffic.
+ * <p>
+ * The file is checked block by block when it is opened, and a last block cut short by a crash is truncated, so that
+ * the blocks appended after it can be read. The thread writes the records still queued and closes the file when it is
+ * shut down.
+ *
+ * @author Nu Echo Inc.
+ */
+public final class CallDetailRecordWriter {
+    public static final int DEFAULT_QUEUE_SIZE = 10000;
+    public static final long DEFAULT_FLUSH_PERIOD = 1000;
+
+    private static final int BATCH_SIZE = 1000;
+    private static final long SHUTDOWN_MILLIS = 5000;
+    // Longest wait for a record, bounding how long the thread takes to notice a shutdown.
+    private static final long POLL_MILLIS = 100;
+
+    private final Logger mLog = LoggerFactory.getLogger(getClass());
+
+    private final File mFile;
+    private final long mFlushPeriod;
+    private final BlockingQueue<CallDetailRecord> mQueue;
+    private final FileChannel mChannel;
+    private final List<CallDetailRecord> mBatch = new ArrayList<CallDetailRecord>(BATCH_SIZE);
+    private final AtomicLong mDropped = new AtomicLong();
+    private final AtomicLong mWritten = new AtomicLong();
+    private final Thread mThread;
+    private volatile boolean mRunning = true;
+
+    /**
+     * @param flushPeriod The longest time, in milliseconds, a record waits to be written.
+     * @throws IOException if the file cannot be opened
+     */
+    public CallDetailRecordWriter(File file, int queueSize, long flushPeriod) throws IOException {
+        mFile = file;
+        mFlushPeriod = flushPeriod;
+        mQueue = new ArrayBlockingQueue<CallDetailRecord>(queueSize);
+        File directory = file.getAbsoluteFile().getParentFile();
+        if (!directory.isDirectory() && !directory.mkdirs())
+            throw new IOException("Unable to create directory " + directory);
+        long validLength = CallDetailRecordReader.getValidLength(file);
+        mChannel = new FileOutputStream(file, true).getChannel();
+        if (mChannel.size() > validLength) {
+            mLog.warn("Truncating call detail record file {} from {} to {} bytes: last block cut short or corrupted",
+                      new Object[] {file, mChannel.size(), validLength});
+            mChannel.truncate(validLength);
+        }
+
+        mThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                write();
+            }
+        }, "call-detail-record-writer");
+        mThread.setDaemon(true);
+        mThread.start();
+    }
+
+    /**
+     * Queues a record to be written. Never waits.
+     *
+     * @return whether the record was queued
+     */
+    public boolean record(CallDetailRecord record) {
+        if (mRunning && mQueue.offer(record)) return true;
+        mDropped.incrementAndGet();
+        return false;
+    }
+
+    /**
+     * Stops the thread, which writes the queued records and closes the file, and waits for it.
+     */
+    public void shutdown() {
+        // Not interrupted: an interrupt during a write would close the channel.
+        mRunning = false;
+        try {
+            mThread.join(SHUTDOWN_MILLIS);
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        }
+        if (mThread.isAlive()) {
+            mLog.warn("Call detail record writer still writing to {} after {} ms", mFile, SHUTDOWN_MILLIS);
+        }
+    }
+
+    public File getFile() {
+        return mFile;
+    }
+
+    /**
+     * @return the number of records dropped because the queue was full
+     */
+    public long getDropped() {
+        return mDropped.get();
+    }
+
+    /**
+     * @return the number of records written
+     */
+    public long getWritten() {
+        return mWritten.get();
+    }
+
+    private void write() {
+        long deadline = 0;
+        while (mRunning) {
+            try {
+                long timeout = mBatch.isEmpty() ? POLL_MILLIS : deadline - System.currentTimeMillis();
+                timeout = Math.max(0, Math.min(POLL_MILLIS, timeout));
+                CallDetailRecord record = mQueue.poll(timeout, TimeUnit.MILLISECONDS);
+                if (record != null) {
+                    if (mBatch.isEmpty()) {
+                        deadline = System.currentTimeMillis() + mFlushPeriod;
+                    }
+                    mBatch.add(record);
+                    mQueue.drainTo(mBatch, BATCH_SIZE - mBatch.size());
+                }
+                if (mBatch.size() >= BATCH_SIZE || !mBatch.isEmpty() && System.currentTimeMillis() >= deadline) {
+                    writeBatch();
+                }
+            } catch (InterruptedException exception) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (IOException exception) {
+                mLog.error("Unable to write " + mBatch.size() + " call detail records to " + mFile, exception);
+                mBatch.clear();
+            }
+        }
+
+        try {
+            mQueue.drainTo(mBatch);
+            writeBatch();
+        } catch (IOException exception) {
+            mLog.error("Unable to write " + mBatch.size() + " call detail records to " + mFile, exception);
+        }
+        try {
+            mChannel.close();
+        } catch (IOException exception) {
+            mLog.warn("Unable to close call detail record file " + mFile, exception);
+        }
+    }
+
+    private void writeBatch() throws IOException {
+        if (mBatch.isEmpty()) return;
+        ByteBuffer block = ByteBuffer.wrap(CallDetailRecordFormat.encode(mBatch));
+        long size = mChannel.size();
+        try {
+            while (block.hasRemaining()) {
+                mChannel.write(block);
+            }
+        } catch (IOException exception) {
+            // A partial block would hide the blocks appended after it from the reader.
+            mChannel.truncate(size);
+            throw exception;
+        }
+        mWritten.addAndGet(mBatch.size());
+        mBatch.clear();
+    }
+}
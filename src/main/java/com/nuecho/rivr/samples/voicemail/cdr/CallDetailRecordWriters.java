@@ -0,0 +1,27 @@
+/*
+ * Copyright (c) 2013 Nu Echo Inc. All rights reserved.
+ */
+
+package com.nuecho.rivr.samples.voicemail.cdr;
+
+/**
+ * Holds the {@link CallDetailRecordWriter} of the dialogues, if any. Without one, no call detail record is kept.
+ *
+ * @author Nu Echo Inc.
+ */
+public final class CallDetailRecordWriters {
+    private static volatile CallDetailRecordWriter sWriter;
+
+    private CallDetailRecordWriters() {}
+
+    /**
+     * @return the call detail record writer, or <code>null</code> if there is none
+     */
+    public static CallDetailRecordWriter getWriter() {
+        return sWriter;
+    }
+
+    public static void setWriter(CallDetailRecordWriter writer) {
+        sWriter = writer;
+    }
+}
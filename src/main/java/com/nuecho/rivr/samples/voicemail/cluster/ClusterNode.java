@@ -0,0 +1,45 @@
+/*
+ * Copyright (c) 2013 Nu Echo Inc. All rights reserved.
+ */
+
+package com.nuecho.rivr.samples.voicemail.cluster;
+
+/**
+ * A node of the cluster, as last announced in the {@link DialogueRegistry}.
+ *
+ * @author Nu Echo Inc.
+ */
+public final class ClusterNode {
+    private final String mId;
+    private final String mUrl;
+    private final long mHeartbeat;
+
+    /**
+     * @param id The unique id of the node.
+     * @param url The URL of the web application on the node, without trailing slash, e.g.
+     *            <code>http://node1:8080/rivr-voicemail</code>.
+     * @param heartbeat When the node last announced itself, in milliseconds since the epoch.
+     */
+    public ClusterNode(String id, String url, long heartbeat) {
+        mId = id;
+        mUrl = url;
+        mHeartbeat = heartbeat;
+    }
+
+    public String getId() {
+        return mId;
+    }
+
+    public String getUrl() {
+        return mUrl;
+    }
+
+    public long getHeartbeat() {
+        return mHeartbeat;
+    }
+
+    @Override
+    public String toString() {
+        return mId + " (" + mUrl + ")";
+    }
+}
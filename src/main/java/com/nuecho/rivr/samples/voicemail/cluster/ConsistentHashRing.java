@@ -0,0 +1,90 @@
+/*
+ * Copyright (c) 2013 Nu Echo Inc. All rights reserved.
+ */
+
+package com.nuecho.rivr.samples.voicemail.cluster;
+
+import java.nio.charset.*;
+import java.util.*;
+
+/**
+ * Immutable consistent-hash ring of node ids. Each node is placed at {@link #VIRTUAL_NODES} points of the ring and a
+ * key belongs to the node of the first point following the hash of the key, so that adding or removing one node out of
+ * <i>n</i> only moves about <i>1/n</i> of the keys.
+ *
+ * @author Nu Echo Inc.
+ */
+public final class ConsistentHashRing {
+    public static final int VIRTUAL_NODES = 160;
+
+    private static final Charset CHARSET = Charset.forName("UTF-8");
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private final long[] mPoints;
+    private final String[] mNodes;
+    private final Set<String> mNodeIds;
+
+    public ConsistentHashRing(Collection<String> nodeIds) {
+        mNodeIds = Collections.unmodifiableSet(new TreeSet<String>(nodeIds));
+        TreeMap<Long, String> ring = new TreeMap<Long, String>();
+        for (String nodeId : mNodeIds) {
+            for (int i = 0; i < VIRTUAL_NODES; i++) {
+                long point = hash(nodeId + "#" + i);
+                String existing = ring.get(point);
+                // Ties, however unlikely, go to the smallest id so that every node builds the same ring.
+                if (existing == null || existing.compareTo(nodeId) > 0) {
+                    ring.put(point, nodeId);
+                }
+            }
+        }
+
+        mPoints = new long[ring.size()];
+        mNodes = new String[ring.size()];
+        int index = 0;
+        for (Map.Entry<Long, String> entry : ring.entrySet()) {
+            mPoints[index] = entry.getKey();
+            mNodes[index] = entry.getValue();
+            index++;
+        }
+    }
+
+    /**
+     * @return the ids of the nodes of the ring
+     */
+    public Set<String> getNodeIds() {
+        return mNodeIds;
+    }
+
+    /**
+     * @return the id of the node owning the key, or <code>null</code> if the ring is empty
+     */
+    public String getNode(String key) {
+        if (mPoints.length == 0) return null;
+        int index = Arrays.binarySearch(mPoints, hash(key));
+        if (index < 0) {
+            index = -index - 1;
+            if (index == mPoints.length) {
+                index = 0;
+            }
+        }
+        return mNodes[index];
+    }
+
+    /**
+     * 64-bit FNV-1a followed by the MurmurHash3 finalizer, which spreads similar keys over the whole ring.
+     */
+    static long hash(String key) {
+        long hash = FNV_OFFSET_BASIS;
+        for (byte b : key.getBytes(CHARSET)) {
+            hash ^= b & 0xff;
+            hash *= FNV_PRIME;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
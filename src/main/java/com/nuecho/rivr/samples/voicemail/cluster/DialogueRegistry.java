@@ -0,0 +1,57 @@
+/*
+ * Copyright (c) 2013 Nu Echo Inc. All rights reserved.
+ */
+
+package com.nuecho.rivr.samples.voicemail.cluster;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * Store shared by the nodes of a cluster, recording the live nodes and the node running each dialogue.
+ * Implementations must be thread-safe.
+ *
+ * @author Nu Echo Inc.
+ */
+public interface DialogueRegistry {
+
+    /**
+     * Adds or refreshes a node.
+     *
+     * @throws IOException if the registry cannot be written
+     */
+    void putNode(ClusterNode node) throws IOException;
+
+    /**
+     * @return every node, live or not
+     * @throws IOException if the registry cannot be read
+     */
+    Collection<ClusterNode> getNodes() throws IOException;
+
+    /**
+     * Removes a node, when it shuts down.
+     *
+     * @throws IOException if the registry cannot be written
+     */
+    void removeNode(String nodeId) throws IOException;
+
+    /**
+     * Records the node running a dialogue.
+     *
+     * @throws IOException if the registry cannot be written
+     */
+    void putDialogue(String dialogueId, String nodeId) throws IOException;
+
+    /**
+     * @return the id of the node running the dialogue, or <code>null</code> if the dialogue isn't registered
+     * @throws IOException if the registry cannot be read
+     */
+    String getDialogueNode(String dialogueId) throws IOException;
+
+    /**
+     * Removes a dialogue, when it ends.
+     *
+     * @throws IOException if the registry cannot be written
+     */
+    void removeDialogue(String dialogueId) throws IOException;
+}
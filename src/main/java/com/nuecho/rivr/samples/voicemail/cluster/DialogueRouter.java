@@ -0,0 +1,191 @@
+/*
+ * Copyright (c) 2013 Nu Echo Inc. All rights reserved.
+ */
+
+package com.nuecho.rivr.samples.voicemail.cluster;
+
+import java.io.*;
+import java.util.*;
+
+import org.slf4j.*;
+
+/**
+ * Decides which node of the cluster serves a request for a dialogue.
+ * <p>
+ * A dialogue is {@link #register(String) registered} by the node that starts it and requests for it go to that node
+ * as long as it is live. A dialogue without a live node, because its node died or the registry lost it, is given to a
+ * node chosen by a {@link ConsistentHashRing} of the live nodes, so that every node picks the same one and adding a
+ * node only moves a fraction of those dialogues. That node restarts the call: the dialogue was lost with its node.
+ * <p>
+ * The live nodes are read from the {@link DialogueRegistry} at each {@link #heartbeat()}, not at each request.
+ *
+ * @author Nu Echo Inc.
+ */
+public final class DialogueRouter {
+    /**
+     * How a request for a dialogue is served.
+     */
+    public enum Decision {
+        /**
+         * The dialogue runs on this node.
+         */
+        LOCAL,
+
+        /**
+         * The request is forwarded to the {@link Route#getNode() node} of the route.
+         */
+        FORWARD,
+
+        /**
+         * The dialogue has no live node and this node must restart the call.
+         */
+        RESTART
+    }
+
+    /**
+     * Decision and target node of a request.
+     */
+    public static final class Route {
+        private final Decision mDecision;
+        private final ClusterNode mNode;
+
+        Route(Decision decision, ClusterNode node) {
+            mDecision = decision;
+            mNode = node;
+        }
+
+        public Decision getDecision() {
+            return mDecision;
+        }
+
+        /**
+         * @return the node serving the request
+         */
+        public ClusterNode getNode() {
+            return mNode;
+        }
+    }
+
+    private final Logger mLog = LoggerFactory.getLogger(getClass());
+
+    private final DialogueRegistry mRegistry;
+    private final String mLocalNodeId;
+    private final String mLocalUrl;
+    private final long mNodeTimeoutMillis;
+
+    private volatile Membership mMembership;
+
+    /**
+     * @param registry The registry shared by the nodes.
+     * @param localNodeId The id of this node.
+     * @param localUrl The URL of the web application on this node.
+     * @param nodeTimeoutMillis How long after its last heartbeat a node is considered dead.
+     * @throws IOException if the registry cannot be written
+     */
+    public DialogueRouter(DialogueRegistry registry, String localNodeId, String localUrl, long nodeTimeoutMillis)
+            throws IOException {
+        mRegistry = registry;
+        mLocalNodeId = localNodeId;
+        mLocalUrl = localUrl;
+        mNodeTimeoutMillis = nodeTimeoutMillis;
+        heartbeat();
+    }
+
+    public String getLocalNodeId() {
+        return mLocalNodeId;
+    }
+
+    /**
+     * Announces this node in the registry and refreshes the live nodes. Must be called more often than the node
+     * timeout.
+     *
+     * @throws IOException if the registry cannot be accessed
+     */
+    public void heartbeat() throws IOException {
+        long now = System.currentTimeMillis();
+        ClusterNode localNode = new ClusterNode(mLocalNodeId, mLocalUrl, now);
+        mRegistry.putNode(localNode);
+
+        Map<String, ClusterNode> liveNodes = new HashMap<String, ClusterNode>();
+        for (ClusterNode node : mRegistry.getNodes()) {
+            if (now - node.getHeartbeat() <= mNodeTimeoutMillis) {
+                liveNodes.put(node.getId(), node);
+            }
+        }
+        liveNodes.put(mLocalNodeId, localNode);
+
+        Membership membership = mMembership;
+        ConsistentHashRing ring;
+        if (membership != null && membership.mRing.getNodeIds().equals(liveNodes.keySet())) {
+            ring = membership.mRing;
+        } else {
+            ring = new ConsistentHashRing(liveNodes.keySet());
+            mLog.info("Live nodes: {}", ring.getNodeIds());
+        }
+        mMembership = new Membership(liveNodes, ring);
+    }
+
+    /**
+     * Records that a dialogue runs on this node.
+     */
+    public void register(String dialogueId) {
+        try {
+            mRegistry.putDialogue(dialogueId, mLocalNodeId);
+        } catch (IOException exception) {
+            mLog.error("Unable to register dialogue " + dialogueId, exception);
+        }
+    }
+
+    /**
+     * Records that a dialogue ended.
+     */
+    public void unregister(String dialogueId) {
+        try {
+            mRegistry.removeDialogue(dialogueId);
+        } catch (IOException exception) {
+            mLog.error("Unable to unregister dialogue " + dialogueId, exception);
+        }
+    }
+
+    /**
+     * @throws IOException if the registry cannot be read
+     */
+    public Route route(String dialogueId) throws IOException {
+        Membership membership = mMembership;
+        Map<String, ClusterNode> liveNodes = membership.mLiveNodes;
+        String owner = mRegistry.getDialogueNode(dialogueId);
+        if (owner != null) {
+            if (owner.equals(mLocalNodeId)) return new Route(Decision.LOCAL, liveNodes.get(mLocalNodeId));
+            ClusterNode ownerNode = liveNodes.get(owner);
+            if (ownerNode != null) return new Route(Decision.FORWARD, ownerNode);
+        }
+
+        ClusterNode node = liveNodes.get(membership.mRing.getNode(dialogueId));
+        if (node.getId().equals(mLocalNodeId)) return new Route(Decision.RESTART, node);
+        return new Route(Decision.FORWARD, node);
+    }
+
+    /**
+     * Removes this node from the registry.
+     */
+    public void shutdown() {
+        try {
+            mRegistry.removeNode(mLocalNodeId);
+        } catch (IOException exception) {
+            mLog.warn("Unable to remove node " + mLocalNodeId + " from the registry", exception);
+        }
+    }
+
+    /**
+     * Live nodes and their ring, replaced together so that the ring never names a node missing from the map.
+     */
+    private static final class Membership {
+        private final Map<String, ClusterNode> mLiveNodes;
+        private final ConsistentHashRing mRing;
+
+        public Membership(Map<String, ClusterNode> liveNodes, ConsistentHashRing ring) {
+            mLiveNodes = liveNodes;
+            mRing = ring;
+        }
+    }
+}
@@ -0,0 +1,27 @@
+/*
+ * Copyright (c) 2013 Nu Echo Inc. All rights reserved.
+ */
+
+package com.nuecho.rivr.samples.voicemail.cluster;
+
+/**
+ * Holds the {@link DialogueRouter} of this node, if it is part of a cluster.
+ *
+ * @author Nu Echo Inc.
+ */
+public final class DialogueRouters {
+    private static volatile DialogueRouter sRouter;
+
+    private DialogueRouters() {}
+
+    /**
+     * @return the router, or <code>null</code> if this node isn't part of a cluster
+     */
+    public static DialogueRouter getRouter() {
+        return sRouter;
+    }
+
+    public static void setRouter(DialogueRouter router) {
+        sRouter = router;
+    }
+}
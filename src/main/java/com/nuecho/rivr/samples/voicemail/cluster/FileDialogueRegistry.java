@@ -0,0 +1,117 @@
+/*
+ * Copyright (c) 2013 Nu Echo Inc. All rights reserved.
+ */
+
+package com.nuecho.rivr.samples.voicemail.cluster;
+
+import java.io.*;
+import java.nio.charset.*;
+import java.util.*;
+
+import com.nuecho.rivr.samples.voicemail.util.*;
+
+/**
+ * {@link DialogueRegistry} kept in a directory shared by the nodes, a network file system mount for instance. Each
+ * node and each dialogue is a small file named after the hexadecimal form of its id, in the <code>nodes</code> and
+ * <code>dialogues</code> subdirectories. Files are written to a temporary file renamed into place, so readers never
+ * see them half written.
+ * <p>
+ * This is a stand-in for a real distributed store: it is simple to set up and to inspect, not fast.
+ *
+ * @author Nu Echo Inc.
+ */
+public final class FileDialogueRegistry implements DialogueRegistry {
+    private static final String TEMPORARY_EXTENSION = ".tmp";
+    private static final Charset CHARSET = Charset.forName("UTF-8");
+
+    private final File mNodeDirectory;
+    private final File mDialogueDirectory;
+
+    public FileDialogueRegistry(File directory) throws IOException {
+        mNodeDirectory = createDirectory(new File(directory, "nodes"));
+        mDialogueDirectory = createDirectory(new File(directory, "dialogues"));
+    }
+
+    @Override
+    public void putNode(ClusterNode node) throws IOException {
+        write(new File(mNodeDirectory, FileUtils.toFileName(node.getId())),
+              node.getId() + "\n" + node.getUrl() + "\n" + node.getHeartbeat());
+    }
+
+    @Override
+    public Collection<ClusterNode> getNodes() throws IOException {
+        List<ClusterNode> nodes = new ArrayList<ClusterNode>();
+        File[] files = mNodeDirectory.listFiles();
+        if (files == null) return nodes;
+
+        for (File file : files) {
+            if (file.getName().endsWith(TEMPORARY_EXTENSION)) continue;
+            String content = read(file);
+            if (content == null) continue;
+            String[] lines = content.split("\n");
+            if (lines.length != 3) throw new IOException("Invalid node file " + file);
+            nodes.add(new ClusterNode(lines[0], lines[1], Long.parseLong(lines[2])));
+        }
+        return nodes;
+    }
+
+    @Override
+    public void removeNode(String nodeId) {
+        new File(mNodeDirectory, FileUtils.toFileName(nodeId)).delete();
+    }
+
+    @Override
+    public void putDialogue(String dialogueId, String nodeId) throws IOException {
+        write(new File(mDialogueDirectory, FileUtils.toFileName(dialogueId)), nodeId);
+    }
+
+    @Override
+    public String getDialogueNode(String dialogueId) throws IOException {
+        return read(new File(mDialogueDirectory, FileUtils.toFileName(dialogueId)));
+    }
+
+    @Override
+    public void removeDialogue(String dialogueId) {
+        new File(mDialogueDirectory, FileUtils.toFileName(dialogueId)).delete();
+    }
+
+    private static File createDirectory(File directory) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs())
+            throw new IOException("Unable to create directory " + directory);
+        return directory;
+    }
+
+    private static void write(File file, String content) throws IOException {
+        File temporary = new File(file.getPath() + TEMPORARY_EXTENSION);
+        OutputStream output = new FileOutputStream(temporary);
+        try {
+            output.write(content.getBytes(CHARSET));
+        } finally {
+            output.close();
+        }
+        FileUtils.replace(temporary, file);
+    }
+
+    /**
+     * @return the content of the file, or <code>null</code> if it doesn't exist
+     */
+    private static String read(File file) throws IOException {
+        InputStream input;
+        try {
+            input = new FileInputStream(file);
+        } catch (FileNotFoundException exception) {
+            return null;
+        }
+        try {
+            ByteArrayOutputStream content = new ByteArrayOutputStream(64);
+            byte[] buffer = new byte[256];
+            int read;
+            while ((read = input.read(buffer)) >= 0) {
+                content.write(buffer, 0, read);
+            }
+            return new String(content.toByteArray(), CHARSET);
+        } finally {
+            input.close();
+        }
+    }
+}
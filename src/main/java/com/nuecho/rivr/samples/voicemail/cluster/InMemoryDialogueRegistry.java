@@ -0,0 +1,49 @@
+/*
+ * Copyright (c) 2013 Nu Echo Inc. All rights reserved.
+ */
+
+package com.nuecho.rivr.samples.voicemail.cluster;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * {@link DialogueRegistry} held in memory, for a single node or for tests sharing one instance between several
+ * routers.
+ *
+ * @author Nu Echo Inc.
+ */
+public final class InMemoryDialogueRegistry implements DialogueRegistry {
+    private final ConcurrentMap<String, ClusterNode> mNodes = new ConcurrentHashMap<String, ClusterNode>();
+    private final ConcurrentMap<String, String> mDialogues = new ConcurrentHashMap<String, String>();
+
+    @Override
+    public void putNode(ClusterNode node) {
+        mNodes.put(node.getId(), node);
+    }
+
+    @Override
+    public Collection<ClusterNode> getNodes() {
+        return new ArrayList<ClusterNode>(mNodes.values());
+    }
+
+    @Override
+    public void removeNode(String nodeId) {
+        mNodes.remove(nodeId);
+    }
+
+    @Override
+    public void putDialogue(String dialogueId, String nodeId) {
+        mDialogues.put(dialogueId, nodeId);
+    }
+
+    @Override
+    public String getDialogueNode(String dialogueId) {
+        return mDialogues.get(dialogueId);
+    }
+
+    @Override
+    public void removeDialogue(String dialogueId) {
+        mDialogues.remove(dialogueId);
+    }
+}
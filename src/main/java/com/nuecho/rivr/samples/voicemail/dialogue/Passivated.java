@@ -0,0 +1,32 @@
+/*
+ * Copyright (c) 2013 Nu Echo Inc. All rights reserved.
+ */
+
+package com.nuecho.rivr.samples.voicemail.dialogue;
+
+/**
+ * Thrown when a dialogue idle for too long has saved its state and ends, to be resumed by a new dialogue.
+ *
+ * @author Nu Echo Inc.
+ */
+public class Passivated extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public Passivated() {
+        super();
+    }
+
+    public Passivated(String message, Throwable cause) {
+        super(message, cause);
+    }
+
+    public Passivated(String message) {
+        super(message);
+    }
+
+    public Passivated(Throwable cause) {
+        super(cause);
+    }
+
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright (c) 2013 Nu Echo Inc. All rights reserved.
+ */
+
+package com.nuecho.rivr.samples.voicemail.dialogue;
+
+import javax.json.*;
+
+import org.w3c.dom.*;
+
+import com.nuecho.rivr.voicexml.dialogue.*;
+import com.nuecho.rivr.voicexml.turn.last.*;
+
+/**
+ * Last turn of a passivated dialogue: sends the VoiceXML browser to a new dialogue resuming it, with a
+ * <code>&lt;goto&gt;</code> to the dialogue servlet carrying the {@link VoicemailDialogue#RESUME_PARAMETER} and
+ * {@link VoicemailDialogue#RESUME_TOKEN_PARAMETER} request parameters.
+ *
+ * @author Nu Echo Inc.
+ */
+public final class ResumeRedirect extends VoiceXmlLastTurn {
+    private static final String TURN_TYPE = "resume";
+    private static final String LOCATION_PROPERTY = "location";
+
+    private final String mLocation;
+
+    /**
+     * @param location The URL of the new dialogue, relative to the server.
+     */
+    public ResumeRedirect(String name, String location) {
+        super(name);
+        mLocation = location;
+    }
+
+    public String getLocation() {
+        return mLocation;
+    }
+
+    @Override
+    protected String getOuputTurnType() {
+        return TURN_TYPE;
+    }
+
+    @Override
+    protected void addTurnProperties(JsonObjectBuilder builder) {
+        builder.add(LOCATION_PROPERTY, mLocation);
+    }
+
+    @Override
+    protected void fillVoiceXmlDocument(Document document,
+                                        Element formElement,
+                                        VoiceXmlDialogueContext dialogueContext) {
+        String namespace = formElement.getNamespaceURI();
+        Element blockElement = document.createElementNS(namespace, "block");
+        formElement.appendChild(blockElement);
+        Element gotoElement = document.createElementNS(namespace, "goto");
+        gotoElement.setAttribute("next", mLocation);
+        blockElement.appendChild(gotoElement);
+    }
+}
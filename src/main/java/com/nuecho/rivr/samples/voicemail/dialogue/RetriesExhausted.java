@@ -0,0 +1,33 @@
+/*
+ * Copyright (c) 2013 Nu Echo Inc. All rights reserved.
+ */
+
+package com.nuecho.rivr.samples.voicemail.dialogue;
+
+/**
+ * Thrown when a caller didn't answer an interaction, or didn't answer it correctly, within the reprompts allowed by
+ * its {@link com.nuecho.rivr.samples.voicemail.prompt.RepromptPolicy}, and the dialogue ends.
+ *
+ * @author Nu Echo Inc.
+ */
+public class RetriesExhausted extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public RetriesExhausted() {
+        super();
+    }
+
+    public RetriesExhausted(String message, Throwable cause) {
+        super(message, cause);
+    }
+
+    public RetriesExhausted(String message) {
+        super(message);
+    }
+
+    public RetriesExhausted(Throwable cause) {
+        super(cause);
+    }
+
+}
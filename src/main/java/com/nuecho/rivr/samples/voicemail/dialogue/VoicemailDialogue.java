@@ -4,8 +4,11 @@
 
 package com.nuecho.rivr.samples.voicemail.dialogue;
 
-import static com.nuecho.rivr.voicexml.turn.output.OutputTurns.interaction;
-import static java.lang.String.format;
+import java.io.*;
+import java.net.URLEncoder;
+import java.nio.*;
+import java.util.*;
+import java.util.concurrent.*;
 
 import javax.json.*;
 
@@ -13,24 +16,49 @@ import org.slf4j.*;
 
 import com.nuecho.rivr.core.channel.*;
 import com.nuecho.rivr.core.util.*;
+import com.nuecho.rivr.samples.voicemail.admission.*;
+import com.nuecho.rivr.samples.voicemail.auth.*;
+import com.nuecho.rivr.samples.voicemail.cdr.*;
+import com.nuecho.rivr.samples.voicemail.cluster.*;
+import com.nuecho.rivr.samples.voicemail.directory.*;
+import com.nuecho.rivr.samples.voicemail.events.*;
+import com.nuecho.rivr.samples.voicemail.flow.*;
+import com.nuecho.rivr.samples.voicemail.ingest.*;
+import com.nuecho.rivr.samples.voicemail.metrics.*;
 import com.nuecho.rivr.samples.voicemail.model.*;
+import com.nuecho.rivr.samples.voicemail.passivation.*;
+import com.nuecho.rivr.samples.voicemail.playback.*;
+import com.nuecho.rivr.samples.voicemail.prompt.*;
+import com.nuecho.rivr.samples.voicemail.servlet.*;
+import com.nuecho.rivr.samples.voicemail.store.*;
 import com.nuecho.rivr.voicexml.dialogue.*;
 import com.nuecho.rivr.voicexml.turn.*;
 import com.nuecho.rivr.voicexml.turn.first.*;
 import com.nuecho.rivr.voicexml.turn.input.*;
 import com.nuecho.rivr.voicexml.turn.last.*;
 import com.nuecho.rivr.voicexml.turn.output.*;
-import com.nuecho.rivr.voicexml.turn.output.audio.*;
-import com.nuecho.rivr.voicexml.turn.output.grammar.*;
 import com.nuecho.rivr.voicexml.util.*;
 import com.nuecho.rivr.voicexml.util.json.*;
 
 /**
+ * The voicemail dialogue: logs the caller in, then runs the {@link CallFlow}.
+ * <p>
+ * When a {@link DialogueStateStores dialogue state store} is configured, a dialogue left waiting for the VoiceXML
+ * browser longer than the idle timeout during the call flow saves its {@link DialogueState} under its dialogue id and
+ * ends, releasing its thread and heap. Its last turn, a {@link ResumeRedirect}, sends the browser to a new dialogue
+ * with that id in the {@link #RESUME_PARAMETER} request parameter and the resume token of the state in the
+ * {@link #RESUME_TOKEN_PARAMETER} one. The new dialogue picks up the call flow at the same node, playing its turn
+ * again, without logging in again. Without the right token, it starts over at the login. Recordings and message
+ * playbacks, which may outlast the idle timeout, are never passivated.
+ * <p>
+ * The dialogue id is put in the logging MDC under {@link #DIALOGUE_ID_MDC_KEY} while the dialogue runs, and the turns,
+ * login result and exit status are published to the {@link CallEventLogs call event log}, if any, without waiting.
+ * When it ends, a {@link CallDetailRecord} is handed to the {@link CallDetailRecordWriters call detail record
+ * writer}, if any. The transitions between its interactions are counted by the {@link CallPathMetrics}.
+ *
  * @author Nu Echo Inc.
  */
 public final class VoicemailDialogue implements VoiceXmlDialogue {
-    private static final Duration DEFAULT_TIMEOUT = Duration.seconds(5);
-
     private final Logger mLog = LoggerFactory.getLogger(getClass());
 
     private static final String STATUS_PROPERTY = "status";
@@ -38,26 +66,113 @@ public final class VoicemailDialogue implements VoiceXmlDialogue {
     private static final String STATUS_INTERRUPTED = "interrupted";
     private static final String STATUS_SUCCESS = "success";
     private static final String STATUS_INVALID_USER = "invalid-user";
+    private static final String STATUS_PASSIVATED = "passivated";
+    private static final String STATUS_RETRIES_EXHAUSTED = "retries-exhausted";
 
     private static final String CAUSE_PROPERTY = "cause";
+    private static final String UTTERANCE_PROPERTY = "utterance";
+    private static final String CONFIDENCE_PROPERTY = "confidence";
+
+    /**
+     * MDC key of the dialogue id, used by the logging pattern.
+     */
+    public static final String DIALOGUE_ID_MDC_KEY = "dialogId";
 
     private static final String ROBOT_MODE_DNIS_PREFIX = "495";
 
-    private static final String RECORDING_LOCATION = "application.recording";
+    /**
+     * The dialogue timeout of the dialogue servlet, which bounded calls stuck in reprompts before the reprompt
+     * policies.
+     */
+    private static final long UNBOUNDED_REPROMPT_NANOS = TimeUnit.MINUTES.toNanos(5);
+
+    /**
+     * Number of nodes kept in the menu path of the call detail record, bounding it on calls looping in the call flow.
+     */
+    private static final int MAX_MENU_PATH = 256;
+
+    /**
+     * Request parameter of the first turn holding the DNIS, when the VoiceXML browser passes it to the dialogue.
+     */
+    public static final String DNIS_PARAMETER = "dnis";
+
+    /**
+     * Request parameter of the first turn holding the id of a passivated dialogue to resume.
+     */
+    public static final String RESUME_PARAMETER = "resume";
+
+    /**
+     * Request parameter of the first turn holding the resume token of the passivated dialogue.
+     */
+    public static final String RESUME_TOKEN_PARAMETER = "token";
 
     private DialogueChannel<VoiceXmlInputTurn, VoiceXmlOutputTurn> mChannel;
+    private String mDialogueId;
     private String mContextPath;
+    private String mServletPath;
+    private PromptCatalog mPrompts;
+    private MessageStore mMessageStore;
+
+    private User mUser;
+    private VoiceMessage mCurrentMessage;
+    private Playlist mPlaylist;
+    private CallFlowNode mCurrentNode;
+    private boolean mPassivable;
+    private String mResumeToken;
+
+    // Reused from turn to turn, so that decoding DTMF input doesn't allocate.
+    private final DtmfSequence mDtmfs = new DtmfSequence();
+    private final DtmfSequence mPin = new DtmfSequence();
+    private final DtmfSequence mMoreDtmfs = new DtmfSequence();
+    // The extension to leave a message to, converted to a string only once a message is deposited.
+    private final DtmfSequence mExtension = new DtmfSequence();
 
     private boolean mNuBotMode;
+    private long mLastInputNanos;
+    private long mLastRoundTripNanos;
+    private AdmissionController mAdmissionController;
+    private CallEventLog mEvents;
+    private boolean mEventsSampled;
+
+    private String mDnis;
+    private int mLoginAttempts;
+    private final List<String> mMenuPath = new ArrayList<String>();
+    private long mServerNanos;
+    private long mBrowserNanos;
+
+    private CallPathMetrics mCallPaths;
+    private int mLastInteraction;
+    private boolean mHungUp;
 
     @Override
     public VoiceXmlLastTurn run(VoiceXmlFirstTurn firstTurn, VoiceXmlDialogueContext context) throws Exception {
+        mLastInputNanos = System.nanoTime();
+        long startMillis = System.currentTimeMillis();
+        mDialogueId = context.getDialogueId();
+        MDC.put(DIALOGUE_ID_MDC_KEY, mDialogueId);
+        mEvents = CallEventLogs.getLog();
+        mEventsSampled = mEvents != null && mEvents.isSampled(mDialogueId);
+        mCallPaths = CallPathMetrics.getInstance();
+        mLastInteraction = mCallPaths.indexOf(firstTurn.getParameter(RESUME_PARAMETER) == null
+                ? CallPathMetrics.START
+                : CallPathMetrics.RESUME);
         mContextPath = context.getContextPath();
+        mServletPath = context.getServletPath();
         mChannel = context.getDialogueChannel();
         String status;
         JsonObjectBuilder resultObjectBuilder = JsonUtils.createObjectBuilder();
+        mAdmissionController = AdmissionControllers.getAdmissionController();
+        DialogueRouter router = DialogueRouters.getRouter();
+        if (router != null) {
+            router.register(mDialogueId);
+        }
         try {
-            status = runDialogue();
+            status = runDialogue(firstTurn);
+        } catch (Passivated exception) {
+            status = STATUS_PASSIVATED;
+        } catch (RetriesExhausted exception) {
+            mLog.info(exception.getMessage());
+            status = STATUS_RETRIES_EXHAUSTED;
         } catch (InterruptedException exception) {
             Thread.currentThread().interrupt();
             status = STATUS_INTERRUPTED;
@@ -65,7 +180,24 @@ public final class VoicemailDialogue implements VoiceXmlDialogue {
             mLog.error("Error during dialogue", exception);
             status = STATUS_ERROR;
             JsonUtils.add(resultObjectBuilder, CAUSE_PROPERTY, ResultUtils.toJson(exception));
+        } finally {
+            if (router != null) {
+                router.unregister(mDialogueId);
+            }
+            if (mAdmissionController != null) {
+                mAdmissionController.release();
+            }
+            RecordingIngester ingester = RecordingIngesters.getIngester();
+            if (ingester != null) {
+                ingester.discard(mDialogueId);
+            }
+            MDC.remove(DIALOGUE_ID_MDC_KEY);
         }
+        logEvent(CallEventType.EXIT_STATUS, status, System.currentTimeMillis() - startMillis);
+        recordCall(startMillis, status);
+        mCallPaths.record(mLastInteraction, mCallPaths.indexOf(mHungUp ? CallPathMetrics.HANG_UP : "#" + status));
+
+        if (mResumeToken != null) return new ResumeRedirect(STATUS_PASSIVATED, getResumeLocation());
 
         JsonUtils.add(resultObjectBuilder, STATUS_PROPERTY, status);
         VariableList variables = VariableList.create(resultObjectBuilder.build());
@@ -73,42 +205,277 @@ public final class VoicemailDialogue implements VoiceXmlDialogue {
         return new Exit("result", variables);
     }
 
-    private String runDialogue() throws Timeout, InterruptedException {
-        detectNuBotInstrumentation();
+    private String runDialogue(VoiceXmlFirstTurn firstTurn) throws Timeout, InterruptedException {
+        CallFlow callFlow = CallFlowRepository.getInstance().getCallFlow();
+        mMessageStore = MessageStores.getMessageStore();
 
-        if (login() == null) return STATUS_INVALID_USER;
+        DialogueState state = takeDialogueState(firstTurn.getParameter(RESUME_PARAMETER),
+                                                firstTurn.getParameter(RESUME_TOKEN_PARAMETER));
+        if (state != null) {
+            int nodeIndex = resume(state, callFlow);
+            runCallFlow(callFlow, nodeIndex == CallFlow.EXIT ? callFlow.getStart() : nodeIndex);
+            return STATUS_SUCCESS;
+        }
 
-        // C03
-        DtmfRecognition dtmfConfig = dtmfBargeIn(1);
-        Interaction mainMenu = interaction("main-menu").addPrompt(dtmfConfig,
-                                                                  audio("vm-youhave"),
-                                                                  synthesis("1"),
-                                                                  audio("vm-Old"),
-                                                                  audio("vm-message"),
-                                                                  audio("vm-onefor"),
-                                                                  audio("vm-Old"),
-                                                                  audio("vm-messages"),
-                                                                  audio("vm-opts")).build(dtmfConfig, DEFAULT_TIMEOUT);
+        detectNuBotInstrumentation(firstTurn);
+        mPrompts = PromptCatalog.get(mContextPath, mNuBotMode ? PromptSet.INSTRUMENTED : PromptSet.ORIGINAL);
 
-        String selection;
-        do {
-            selection = processDtmfTurn(mainMenu);
-            if ("0".equals(selection)) {
-                mailboxConfigure();
-            } else if ("1".equals(selection)) {
-                messageMenu();
-            } else if ("3".equals(selection)) {
-                advancedOptions();
-            }
-        } while (!"#".equals(selection));
+        mUser = login();
+        if (mUser == null) return STATUS_INVALID_USER;
 
-        // C50
-        processTurn(audio("good-bye", "vm-goodbye"));
+        runCallFlow(callFlow, callFlow.getStart());
 
         return STATUS_SUCCESS;
     }
 
-    private void detectNuBotInstrumentation() throws Timeout, InterruptedException {
+    private void runCallFlow(CallFlow callFlow, int startIndex) throws Timeout, InterruptedException {
+        int nodeIndex = startIndex;
+        while (nodeIndex != CallFlow.EXIT) {
+            CallFlowNode node = callFlow.getNode(nodeIndex);
+            mCurrentNode = node;
+            mPassivable = isPassivable(node);
+            if (mMenuPath.size() < MAX_MENU_PATH) {
+                mMenuPath.add(node.getName());
+            }
+            CallFlowAction action = node.getAction();
+            VoiceXmlOutputTurn turn = node.getTurnId() == null ? null : mPrompts.getTurn(node.getTurnId());
+            switch (node.getType()) {
+                case MENU:
+                    if (action == CallFlowAction.PLAY_MESSAGE) {
+                        nodeIndex = node.transition(playMessage(turn));
+                        break;
+                    }
+                    if (action != null) {
+                        turn = preparePrompt(action, turn);
+                    }
+                    nodeIndex = node.transition(processDtmfTurn(turn, mDtmfs).getSelection());
+                    break;
+                case INPUT:
+                    boolean valid = validateInput(action, processNumberTurn(turn));
+                    nodeIndex = valid ? node.getNext() : node.getInvalid();
+                    break;
+                case RECORD:
+                    RecordingInfo recordingInfo = processTurn(turn).getRecordingInfo();
+                    if (action != null) {
+                        handleRecording(action, recordingInfo);
+                    }
+                    nodeIndex = node.getNext();
+                    break;
+                case ACTION:
+                    performAction(action);
+                    nodeIndex = node.getNext();
+                    break;
+                default:
+                    if (action != null) {
+                        turn = preparePrompt(action, turn);
+                    }
+                    processTurn(turn);
+                    nodeIndex = node.getNext();
+                    break;
+            }
+        }
+        mPassivable = false;
+    }
+
+    /**
+     * Collects a number, asking for the rest of it while the digits entered so far are only the start of a number of
+     * the directory, as when the caller paused longer than the interdigit timeout. Collection stops as soon as the
+     * digits are a number, cannot become one or are terminated by the caller, or when nothing more is entered: the
+     * request for the rest is never played again.
+     */
+    private DtmfSequence processNumberTurn(VoiceXmlOutputTurn turn) throws Timeout, InterruptedException {
+        DtmfSequence number = processDtmfTurn(turn, mDtmfs);
+        ExtensionDirectory directory = ExtensionDirectories.getDirectory();
+        while (number.getTerminator() == DtmfSymbols.NONE
+               && directory.matchPrefix(number) == ExtensionDirectory.PrefixMatch.PARTIAL) {
+            DtmfSequence more = processDtmfTurn(mPrompts.getTurn(TurnId.CONTINUE_NUMBER), mMoreDtmfs, false);
+            if (more.isEmpty() || !number.append(more)) break;
+        }
+        return number;
+    }
+
+    private boolean validateInput(CallFlowAction action, DtmfSequence input) {
+        switch (action) {
+            case VALIDATE_EXTENSION:
+                return validateExtension(input);
+            case VALIDATE_NUMBER_TO_CALL:
+                return validateNumberToCall(input);
+            default:
+                throw new IllegalArgumentException("Unsupported input action " + action);
+        }
+    }
+
+    private void handleRecording(CallFlowAction action, RecordingInfo recordingInfo) {
+        switch (action) {
+            case DEPOSIT_MESSAGE:
+                depositMessage(recordingInfo);
+                break;
+            default:
+                throw new IllegalArgumentException("Unsupported recording action " + action);
+        }
+    }
+
+    private VoiceXmlOutputTurn preparePrompt(CallFlowAction action, VoiceXmlOutputTurn turn) {
+        switch (action) {
+            case ANNOUNCE_MESSAGES:
+                return announceMessages(turn);
+            case SAVE_MESSAGE:
+                moveCurrentMessage(Folder.SAVED);
+                return turn;
+            default:
+                throw new IllegalArgumentException("Unsupported prompt action " + action);
+        }
+    }
+
+    private void performAction(CallFlowAction action) {
+        if (mPlaylist == null) return;
+        switch (action) {
+            case PREVIOUS_MESSAGE:
+                mPlaylist.previous();
+                break;
+            case REPLAY_MESSAGE:
+                mPlaylist.replay();
+                break;
+            case NEXT_MESSAGE:
+                mPlaylist.next();
+                break;
+            case SKIP_BACK:
+                mPlaylist.skip(-Playlist.SKIP_MILLIS);
+                break;
+            case SKIP_AHEAD:
+                mPlaylist.skip(Playlist.SKIP_MILLIS);
+                break;
+            default:
+                throw new IllegalArgumentException("Unsupported action " + action);
+        }
+    }
+
+    /**
+     * Recordings and message playbacks have no timeout bounding them below the idle timeout.
+     */
+    private static boolean isPassivable(CallFlowNode node) {
+        return node.getType() != CallFlowNode.Type.RECORD && node.getAction() != CallFlowAction.PLAY_MESSAGE;
+    }
+
+    /**
+     * @return the state of the passivated dialogue, or <code>null</code> if there is none or the token doesn't match
+     */
+    private DialogueState takeDialogueState(String dialogueId, String resumeToken) {
+        DialogueStateStore store = DialogueStateStores.getStore();
+        if (dialogueId == null || store == null) return null;
+        try {
+            DialogueState state = store.take(dialogueId);
+            if (state == null) {
+                mLog.info("No passivated dialogue [{}] to resume", dialogueId);
+            } else if (!state.isResumeToken(resumeToken)) {
+                mLog.warn("Invalid resume token for passivated dialogue [{}]", dialogueId);
+                // Kept for the holder of the token.
+                store.save(dialogueId, state);
+                return null;
+            }
+            return state;
+        } catch (IOException exception) {
+            mLog.error("Unable to read the state of passivated dialogue " + dialogueId, exception);
+            return null;
+        }
+    }
+
+    /**
+     * Restores the variables of a passivated dialogue.
+     *
+     * @return the index of the node to resume at, or {@link CallFlow#EXIT} if the node no longer exists
+     */
+    private int resume(DialogueState state, CallFlow callFlow) {
+        mNuBotMode = state.isInstrumented();
+        mPrompts = PromptCatalog.get(mContextPath, mNuBotMode ? PromptSet.INSTRUMENTED : PromptSet.ORIGINAL);
+        mUser = new User(state.getMailbox());
+        mExtension.clear();
+        if (state.getExtension() != null) {
+            mExtension.decode(state.getExtension(), 1);
+        }
+        if (mMessageStore != null && state.getCurrentMessageId() != DialogueState.NO_MESSAGE) {
+            mCurrentMessage = mMessageStore.getMessage(state.getCurrentMessageId());
+        }
+        mDnis = state.getDnis();
+        mLoginAttempts = state.getLoginAttempts();
+        mMenuPath.clear();
+        mMenuPath.addAll(state.getMenuPath());
+        // The call flow enters the resume node again.
+        int last = mMenuPath.size() - 1;
+        if (last >= 0 && mMenuPath.get(last).equals(state.getNodeName())) {
+            mMenuPath.remove(last);
+        }
+        mLog.info("Resuming {}", state);
+        return callFlow.indexOf(state.getNodeName());
+    }
+
+    /**
+     * Saves the state of the dialogue, if it is in the call flow, and ends it.
+     *
+     * @throws Timeout if the dialogue cannot be passivated
+     */
+    private void passivate(Timeout timeout) throws Timeout {
+        DialogueStateStore store = DialogueStateStores.getStore();
+        if (store == null || !mPassivable || mUser == null) throw timeout;
+
+        String resumeToken = DialogueState.createResumeToken();
+        DialogueState state = new DialogueState(mCurrentNode.getName(),
+                                                mUser.getUsername(),
+                                                mExtension.isEmpty() ? null : mExtension.toString(),
+                                                mCurrentMessage == null
+                                                        ? DialogueState.NO_MESSAGE
+                                                        : mCurrentMessage.getId(),
+                                                mNuBotMode,
+                                                mDnis,
+                                                mLoginAttempts,
+                                                mMenuPath,
+                                                resumeToken,
+                                                System.currentTimeMillis());
+        try {
+            store.save(mDialogueId, state);
+        } catch (IOException exception) {
+            mLog.error("Unable to passivate dialogue " + mDialogueId, exception);
+            throw timeout;
+        }
+        mResumeToken = resumeToken;
+        mLog.info("Passivated {} as [{}]", state, mDialogueId);
+        throw new Passivated();
+    }
+
+    private String getResumeLocation() {
+        try {
+            return mContextPath + mServletPath + "/?" + RESUME_PARAMETER + "=" + URLEncoder.encode(mDialogueId, "UTF-8")
+                   + "&" + RESUME_TOKEN_PARAMETER + "=" + mResumeToken;
+        } catch (UnsupportedEncodingException exception) {
+            throw new IllegalStateException(exception);
+        }
+    }
+
+    private void detectNuBotInstrumentation(VoiceXmlFirstTurn firstTurn) throws Timeout, InterruptedException {
+        long start = System.nanoTime();
+        DnisMetrics.Source source = DnisMetrics.Source.FIRST_TURN;
+        String dnis = firstTurn.getParameter(DNIS_PARAMETER);
+        if (dnis == null) {
+            dnis = fetchDnis();
+            source = dnis == null ? DnisMetrics.Source.UNAVAILABLE : DnisMetrics.Source.SCRIPT;
+        }
+        long nanos = System.nanoTime() - start;
+        DnisMetrics.record(source, nanos);
+        mLog.debug("DNIS [{}] obtained from {} in {} us", new Object[] {dnis, source, nanos / 1000});
+        mDnis = dnis;
+
+        if (dnis != null) {
+            mNuBotMode = dnis.startsWith(ROBOT_MODE_DNIS_PREFIX);
+            if (mNuBotMode) {
+                mLog.info("Running dialogue in NuBot mode (instrumented prompts)");
+            }
+        }
+    }
+
+    /**
+     * Asks the VoiceXML browser for the DNIS, at the cost of a round trip before the first prompt.
+     */
+    private String fetchDnis() throws Timeout, InterruptedException {
         Script clidAndDnisTurn = new Script("clidAndDnis");
         VariableList dnisVariables = new VariableList();
         dnisVariables.addWithExpression("dnis", "session.connection.local.uri");
@@ -116,219 +483,332 @@ public final class VoicemailDialogue implements VoiceXmlDialogue {
 
         VoiceXmlInputTurn inputTurn = processTurn(clidAndDnisTurn);
         JsonObject result = (JsonObject) inputTurn.getJsonValue();
+        return result == null ? null : result.getString("dnis");
+    }
 
-        if (result != null) {
-            String dnis = result.getString("dnis");
-            mNuBotMode = dnis.startsWith("495");
-            if (mNuBotMode) {
-                mLog.info("Running dialogue in NuBot mode (instrumented prompts)");
+    private boolean validateExtension(DtmfSequence extensionToCall) {
+        if (ExtensionDirectories.getDirectory().lookup(extensionToCall) != ExtensionType.EXTENSION) return false;
+        mExtension.clear();
+        mExtension.append(extensionToCall);
+        return true;
+    }
+
+    /**
+     * Extensions and external numbers can be dialed out.
+     */
+    private boolean validateNumberToCall(DtmfSequence numberToCall) {
+        return ExtensionDirectories.getDirectory().lookup(numberToCall) != null;
+    }
+
+    private void depositMessage(RecordingInfo recordingInfo) {
+        if (mMessageStore == null || recordingInfo == null || recordingInfo.getFile() == null) return;
+        FileUpload file = recordingInfo.getFile();
+        RecordingIngester ingester = RecordingIngesters.getIngester();
+        if (ingester != null) {
+            depositMessage(ingester, file);
+            return;
+        }
+        try {
+            VoiceMessage message = mMessageStore.deposit(mExtension.toString(),
+                                                         file.getContentType(),
+                                                         ByteBuffer.wrap(file.getContent()));
+            mLog.info("Deposited {}", message);
+        } catch (IOException exception) {
+            mLog.error("Unable to deposit message for mailbox " + mExtension, exception);
+        }
+    }
+
+    /**
+     * Deposits the recording spooled by the {@link RecordingUploadFilter}, or the posted one if it was received in the
+     * heap, through the ingester.
+     */
+    private void depositMessage(RecordingIngester ingester, FileUpload file) {
+        try {
+            if (!ingester.isSpooled(mDialogueId)) {
+                if (file.getContent().length == 0) return;
+                ingester.spool(mDialogueId, new ByteArrayInputStream(file.getContent()));
             }
+            if (ingester.deposit(mDialogueId, mExtension.toString()) != null) {
+                mLog.debug("Recording for mailbox [{}] queued for deposit", mExtension);
+            }
+        } catch (IOException exception) {
+            mLog.error("Unable to spool message for mailbox " + mExtension, exception);
         }
     }
 
-    private void mailboxConfigure() throws Timeout, InterruptedException, HangUp, PlatformError {
-        // C07
-        Interaction options = audioWithDtmf("mailbox-options", "vm-options", 1);
+    private VoiceXmlOutputTurn announceMessages(VoiceXmlOutputTurn promptsOnly) {
+        if (mMessageStore == null) return promptsOnly;
+        // The menu announces "old messages": the prompt sets have no prompt to announce new ones.
+        return mPrompts.getMainMenu(mMessageStore.getMessageCount(mUser.getUsername(), Folder.OLD));
+    }
 
-        // C08
-        Interaction record = record("record-name", "vm-rec-name");
+    /**
+     * Plays the current message of the playlist from the playback offset, while the next one is prefetched.
+     *
+     * @return the index of the DTMF symbol interrupting the playback, {@link DtmfSymbols#NONE} if the message played
+     *         to its end
+     */
+    private int playMessage(VoiceXmlOutputTurn promptsOnly) throws Timeout, InterruptedException {
+        VoiceMessage message = getPlaylistMessage();
+        if (message == null) {
+            processTurn(promptsOnly, false);
+            return DtmfSymbols.NONE;
+        }
 
-        // C09
-        // FIXME onNoMatch: sorry + reprompt. Missing sorry prompt, so always reprompt instead.
-        Interaction review = audioWithDtmf("confirm-name", "vm-review", 1);
+        if (message.getFolder() == Folder.NEW) {
+            moveCurrentMessage(Folder.OLD);
+        }
+        int offset = mPlaylist.getOffset();
+        String location = mContextPath + MessageAudioServlet.getPath(message, offset);
+        Interaction playback = offset == 0
+                ? mPrompts.createPlayMessage(location, message.getTimestamp())
+                : mPrompts.createResumeMessage(location);
+        VoiceMessage next = mPlaylist.getNext();
+        if (next != null) {
+            mMessageStore.prefetch(next);
+        }
 
-        // C10
-        Message saved = audio("message-saved", "vm-msgsaved");
+        // A noinput only means that the message played to its end.
+        RecognitionInfo recognition = processTurn(playback, false).getRecognitionInfo();
+        if (recognition == null) {
+            mPlaylist.setPlayedToEnd();
+            return DtmfSymbols.NONE;
+        }
+        MarkInfo mark = recognition.getMarkInfo();
+        boolean inRecording = mark != null && PromptCatalog.MESSAGE_MARK.equals(mark.getName());
+        mPlaylist.setElapsedMillis(inRecording ? mark.getTime().getMilliseconds() : 0);
+        decodeDtmfs(recognition, mDtmfs);
+        return mDtmfs.getSelection();
+    }
 
-        String selectedOption;
-        do {
-            selectedOption = processDtmfTurn(options);
-            if ("3".equals(selectedOption)) {
-                processTurn(record).getRecordingInfo();
-                String reviewOption = processDtmfTurn(review);
-                // 1-save, 2-listen and review, 3-rerecord
-                if ("1".equals(reviewOption)) {
-                    processTurn(saved);
-                }
-            }
-        } while (!"*".equals(selectedOption));
-    }
-
-    private Message audio(String interactionName, String audioName) {
-        return new Message(interactionName, audio(audioName));
-    }
-
-    private void messageMenu() throws Timeout, InterruptedException {
-        // C04 first message received "date" from "phone number" recording
-        Interaction playMessage = interaction("play-message").addPrompt(audio("vm-first"),
-                                                                        audio("vm-message"),
-                                                                        audio("vm-received")).build();
-        // C05
-        Interaction callMenu = audioWithDtmf("call-menu", "vm-advopts", 1);
-        // C17 which folder loop press dtmf for foldername messages
-        Interaction whichFolder = audioWithDtmf("ask-folder-to-save", "vm-savefolder", 1);
-        // C18 message 1 savedto old messages
-        Message messageSaved = audio("message-saved", "vm-savedto");
-        String menu;
-        processTurn(playMessage);
-        do {
-            menu = processDtmfTurn(callMenu);
-            if ("9".equals(menu)) {
-                String folderNum = processDtmfTurn(whichFolder);
-                if ("1".equals(folderNum)) {// TODO do something with the folder
-                    processTurn(messageSaved);
-                }
-                // TODO usually, 4 means previous, 5 replay and 6 next. just replay same for now.
-            } else if ("4".equals(menu) || "5".equals(menu) || "6".equals(menu)) {
-                processTurn(playMessage);
-            }
-        } while (!"*".equals(menu)); // TODO '#' should exit voicemail.
-    }
-
-    private void advancedOptions() throws Timeout, InterruptedException {
-        // C11
-        Interaction advancedMenu = audioWithDtmf("advanced-options", "vm-leavemsg", 1);
-        // C12
-        Interaction extension = audioWithDtmf("ask-extension", "vm-extension", 4);
-        // C14
-
-        Interaction message = record("ask-message", "vm-intro");
-        // C15
-        DtmfRecognition dtmfConfig = dtmfBargeIn("#");
-        Interaction toCall = interaction("ask-number-to-call").addPrompt(dtmfConfig, audio("vm-enter-num-to-call"))
-                                                              .build(dtmfConfig, DEFAULT_TIMEOUT);
-
-        // C16
-        Message dialOut = audio("dial-out", "vm-dialout");
-
-        String subMenu = processDtmfTurn(advancedMenu);
-        if ("4".equals(subMenu)) {
-            String numberToCall = processDtmfTurn(toCall);
-            if ("1234".equals(numberToCall)) {
-                processTurn(dialOut);
-                // TODO Transfer
-                //            defaultHandlers(wrap(new BlindTransferTurn("dial-out", numberToCall))).doTurn(mChannel, null);
-            }
-        } else if ("5".equals(subMenu)) {
-            String extensionToCall;
-            do {
-                extensionToCall = processDtmfTurn(extension);
-            } while (!validateExtension(extensionToCall));
+    /**
+     * @return the current message of the playlist, or <code>null</code> if the mailbox is empty
+     */
+    private VoiceMessage getPlaylistMessage() {
+        if (mMessageStore == null) return null;
+        if (mPlaylist == null) {
+            String mailbox = mUser.getUsername();
+            List<VoiceMessage> messages = new ArrayList<VoiceMessage>(mMessageStore.getMessages(mailbox, Folder.NEW));
+            messages.addAll(mMessageStore.getMessages(mailbox, Folder.OLD));
+            mPlaylist = new Playlist(messages,
+                                     mCurrentMessage == null ? DialogueState.NO_MESSAGE : mCurrentMessage.getId());
+        }
 
-            mChannel.doTurn(message, null); // what to do with the recording?
+        // The message may have been moved or deleted since the playlist was made.
+        VoiceMessage current = mPlaylist.getCurrent();
+        mCurrentMessage = current == null ? null : mMessageStore.getMessage(current.getId());
+        if (mCurrentMessage != null) {
+            mPlaylist.update(mCurrentMessage);
         }
+        return mCurrentMessage;
     }
 
-    private boolean validateExtension(String extensionToCall) throws Timeout, InterruptedException {
-        if (!"1234".equals(extensionToCall)) {
-            // C13
-            processTurn(audio("invalid-extension", "pbx-invalid"));
-            return false;
+    private void moveCurrentMessage(Folder folder) {
+        if (mMessageStore == null || mCurrentMessage == null) return;
+        try {
+            mCurrentMessage = mMessageStore.move(mCurrentMessage, folder);
+            if (mPlaylist != null && mCurrentMessage != null) {
+                mPlaylist.update(mCurrentMessage);
+            }
+        } catch (IOException exception) {
+            mLog.error("Unable to move " + mCurrentMessage + " to " + folder, exception);
         }
-        return true;
     }
 
     private User login() throws Timeout, InterruptedException, HangUp, PlatformError {
-        Duration timeout = Duration.seconds(10);
+        Authenticator authenticator = Authenticators.getAuthenticator();
         // C01
-        Interaction askLogin = audioWithDtmf("ask-login", "vm-login", 4, timeout);
-        // C02
-        Interaction askPassword = audioWithDtmf("ask-password", "vm-password", 4, timeout);
-        // C06
-        Interaction incorrect = audioWithDtmf("incorrect-mailbox", "vm-incorrect-mailbox", 4, timeout);
-
-        String username;
-        String password;
+        VoiceXmlOutputTurn askLogin = mPrompts.getTurn(TurnId.ASK_LOGIN);
+
+        DtmfSequence mailbox;
+        AuthenticationResult result;
         int tries = 0;
         do {
             tries++;
-            username = processDtmfTurn(askLogin);
-            password = processDtmfTurn(askPassword);
-            // Subsequent tries must use the other interaction.
-            askLogin = incorrect;
-        } while (!validate(username, password) && tries < 3);
-        if (tries == 3) {
-            processTurn(audio("goodbye", "vm-goodbye"));
+            mailbox = processDtmfTurn(askLogin, mDtmfs);
+            // C02
+            DtmfSequence pin = processDtmfTurn(mPrompts.getTurn(TurnId.ASK_PASSWORD), mPin);
+            // Subsequent tries must use the other interaction (C06).
+            askLogin = mPrompts.getTurn(TurnId.INCORRECT_MAILBOX);
+            if (mailbox.isEmpty() || pin.isEmpty()) {
+                // Nothing to check, nor to count against a mailbox.
+                result = AuthenticationResult.INVALID;
+            } else {
+                result = authenticator.authenticate(mailbox, pin);
+            }
+        } while (result == AuthenticationResult.INVALID && tries < 3);
+        mPin.clear();
+        logEvent(CallEventType.LOGIN_RESULT, result.name(), tries);
+        mLoginAttempts = tries;
+        if (result != AuthenticationResult.SUCCESS) {
+            if (result == AuthenticationResult.LOCKED_OUT) {
+                mLog.info("Mailbox [{}] is locked out", mailbox);
+            }
+            processTurn(mPrompts.getTurn(TurnId.LOGIN_GOODBYE));
             return null;
         }
-        return new User(username, password);
+        return new User(mailbox.toString());
     }
 
-    private boolean validate(String username, String password) {
-        // FIXME STUB, only to make NuBot's test scenarios work.
-        return username.equals("4069") && password.equals("6522");
+    /**
+     * @param dtmfs The sequence receiving the DTMF input, emptied if there is none.
+     * @return the sequence
+     */
+    private DtmfSequence processDtmfTurn(VoiceXmlOutputTurn outputTurn, DtmfSequence dtmfs) throws Timeout,
+            InterruptedException {
+        return processDtmfTurn(outputTurn, dtmfs, true);
     }
 
-    private AudioItem synthesis(String text) {
-        return new SpeechSynthesis(text);
+    /**
+     * @param dtmfs The sequence receiving the DTMF input, emptied if there is none.
+     * @param reprompt Whether the interaction is played again after a noinput or a nomatch.
+     * @return the sequence
+     */
+    private DtmfSequence processDtmfTurn(VoiceXmlOutputTurn outputTurn, DtmfSequence dtmfs, boolean reprompt)
+            throws Timeout, InterruptedException {
+        RecognitionInfo result = processTurn(outputTurn, reprompt).getRecognitionInfo();
+        if (result == null) {
+            dtmfs.clear();
+        } else {
+            decodeDtmfs(result, dtmfs);
+        }
+        return dtmfs;
     }
 
-    private AudioItem audio(String audioName) {
-        return AudioFile.fromLocation(audioPath(audioName));
+    /**
+     * Decodes the utterance of the best result, without copying it.
+     */
+    private void decodeDtmfs(RecognitionInfo result, DtmfSequence dtmfs) {
+        JsonObject bestResult = result.getRecognitionResult().getJsonObject(0);
+        JsonString utterance = bestResult.getJsonString(UTTERANCE_PROPERTY);
+        JsonNumber confidence = bestResult.getJsonNumber(CONFIDENCE_PROPERTY);
+        if (!dtmfs.decode(utterance == null ? "" : utterance.getString(),
+                          confidence == null ? 1 : confidence.doubleValue())) {
+            mLog.debug("Invalid DTMF result {}", bestResult);
+        }
+        mLog.trace("Received {}", dtmfs);
     }
 
-    private DtmfRecognition dtmfBargeIn(int dtmfLength) {
-        GrammarReference grammarReference = new GrammarReference("builtin:dtmf/digits?length=" + dtmfLength);
-        DtmfRecognition dtmfConfig = new DtmfRecognition(grammarReference);
-        dtmfConfig.setTermChar("A");
-        return dtmfConfig;
+    private VoiceXmlInputTurn processTurn(VoiceXmlOutputTurn outputTurn) throws Timeout, InterruptedException {
+        return processTurn(outputTurn, true);
     }
 
-    private DtmfRecognition dtmfBargeIn(String termChar) {
-        GrammarReference grammarReference = new GrammarReference("builtin:dtmf/digits");
-        DtmfRecognition dtmfConfig = new DtmfRecognition(grammarReference);
-        dtmfConfig.setTermChar(termChar);
-        return dtmfConfig;
-    }
+    /**
+     * @param reprompt Whether an interaction is played again after a noinput or a nomatch, as allowed by its
+     *            {@link RepromptPolicy}.
+     */
+    private VoiceXmlInputTurn processTurn(VoiceXmlOutputTurn outputTurn, boolean reprompt) throws Timeout,
+            InterruptedException {
+        InteractionMetrics metrics = InteractionMetrics.get(outputTurn.getName());
+        long serverNanos = System.nanoTime() - mLastInputNanos;
+        metrics.getServerTime().record(serverNanos);
+        if (mAdmissionController != null) {
+            mAdmissionController.recordLatency(serverNanos);
+        }
 
-    private Interaction audioWithDtmf(String interactionName, String audio, int dtmfLength) {
-        return audioWithDtmf(interactionName, audio, dtmfLength, DEFAULT_TIMEOUT);
+        VoiceXmlInputTurn inputTurn = doTurn(outputTurn, metrics);
+        if (reprompt && outputTurn instanceof Interaction) {
+            inputTurn = reprompt((Interaction) outputTurn, inputTurn, metrics);
+        }
+        if (VoiceXmlEvent.hasEvent(VoiceXmlEvent.CONNECTION_DISCONNECT_HANGUP, inputTurn.getEvents())) {
+            metrics.recordHangUp();
+            mHungUp = true;
+            throw new HangUp();
+        }
+        if (VoiceXmlEvent.hasEvent(VoiceXmlEvent.ERROR, inputTurn.getEvents())) throw new PlatformError();
+        return inputTurn;
     }
 
-    private Interaction audioWithDtmf(String interactionName, String audio, int dtmfLength, Duration noInputTimeout) {
-        DtmfRecognition dtmfconfig = dtmfBargeIn(dtmfLength);
-        return interaction(interactionName).addPrompt(dtmfconfig, audio(audio)).build(dtmfconfig, noInputTimeout);
-    }
+    /**
+     * Plays an interaction again after each noinput or nomatch, as allowed by its {@link RepromptPolicy}.
+     *
+     * @return the first input turn without noinput or nomatch
+     * @throws RetriesExhausted once the reprompts are used up and the exit turn is played
+     */
+    private VoiceXmlInputTurn reprompt(Interaction interaction,
+                                       VoiceXmlInputTurn firstInputTurn,
+                                       InteractionMetrics metrics) throws Timeout, InterruptedException {
+        VoiceXmlInputTurn inputTurn = firstInputTurn;
+        RepromptPolicy policy = null;
+        RepromptMetrics repromptMetrics = null;
+        int noInputs = 0;
+        int noMatches = 0;
+        long failedNanos = 0;
+        while (true) {
+            boolean noInput = VoiceXmlEvent.hasEvent(VoiceXmlEvent.NO_INPUT, inputTurn.getEvents());
+            if (!noInput && !VoiceXmlEvent.hasEvent(VoiceXmlEvent.NO_MATCH, inputTurn.getEvents())) return inputTurn;
+
+            if (policy == null) {
+                policy = RepromptPolicies.getPolicies().getPolicy(interaction.getName());
+                repromptMetrics = RepromptMetrics.get(policy.getName());
+            }
+            failedNanos += mLastRoundTripNanos;
+            if (noInput) {
+                noInputs++;
+                repromptMetrics.recordNoInput(mLastRoundTripNanos);
+            } else {
+                noMatches++;
+                repromptMetrics.recordNoMatch();
+            }
 
-    private String audioPath(String audio) {
-        String promptType = mNuBotMode ? "instrumented" : "original";
-        return format("%s/%s/%s.ulaw", mContextPath, promptType, audio);
-    }
+            if (policy.isExhausted(noInputs, noMatches)) {
+                repromptMetrics.recordExit(Math.max(0, UNBOUNDED_REPROMPT_NANOS - failedNanos));
+                VoiceXmlOutputTurn exitTurn = mPrompts.getTurn(policy.getExitTurn());
+                doTurn(exitTurn, InteractionMetrics.get(exitTurn.getName()));
+                throw new RetriesExhausted("Reprompts of " + interaction.getName() + " used up after " + noInputs
+                                           + " noinput and " + noMatches + " nomatch");
+            }
 
-    private Interaction record(String interactionName, String audio) {
-        Recording recordingConfiguration = new Recording();
-        recordingConfiguration.setBeep(true);
-        recordingConfiguration.setDtmfTerm(true);
-        recordingConfiguration.setType("audio/x-wav");
-        recordingConfiguration.setClientSideAssignationDestination(RECORDING_LOCATION);
-        GrammarReference grammarReference = new GrammarReference("builtin:dtmf/digits?length=1");
-        DtmfRecognition config = new DtmfRecognition(grammarReference);
-        recordingConfiguration.setDtmfTermRecognition(config);
-        recordingConfiguration.setPostAudioToServer(true);
+            metrics.recordReprompt();
+            if (!noInput && policy.isSorry()) {
+                processTurn(mPrompts.getTurn(TurnId.SORRY));
+            }
+            inputTurn = doTurn(interaction, metrics);
+        }
+    }
 
-        return interaction(interactionName).addPrompt(audio(audio)).build(recordingConfiguration, Duration.seconds(10));
+    private VoiceXmlInputTurn doTurn(VoiceXmlOutputTurn outputTurn, InteractionMetrics metrics) throws Timeout,
+            InterruptedException {
+        long sent = System.nanoTime();
+        mServerNanos += sent - mLastInputNanos;
+        int interaction = mCallPaths.indexOf(outputTurn.getName());
+        mCallPaths.record(mLastInteraction, interaction);
+        mLastInteraction = interaction;
+        logEvent(CallEventType.TURN_SENT, outputTurn.getName(), (sent - mLastInputNanos) / 1000);
+        Duration timeout = mPassivable ? DialogueStateStores.getIdleTimeout() : null;
+        VoiceXmlInputTurn inputTurn;
+        try {
+            inputTurn = mChannel.doTurn(outputTurn, timeout);
+        } catch (Timeout exception) {
+            if (timeout == null) throw exception;
+            passivate(exception);
+            throw exception;
+        }
+        mLastInputNanos = System.nanoTime();
+        mLastRoundTripNanos = mLastInputNanos - sent;
+        mBrowserNanos += mLastRoundTripNanos;
+        metrics.getRoundTripTime().record(mLastRoundTripNanos);
+        logEvent(CallEventType.INPUT_RECEIVED, outputTurn.getName(), mLastRoundTripNanos / 1000);
+        return inputTurn;
     }
 
-    private String processDtmfTurn(Interaction interaction) throws Timeout, InterruptedException {
-        // Is there a better way?
-        VoiceXmlInputTurn resultTurn = processTurn(interaction);
-        RecognitionInfo result = resultTurn.getRecognitionInfo();
-        if (result == null) return "";
-        String rawDtmfs = result.getRecognitionResult().getJsonObject(0).getJsonString("utterance").getString();
-        mLog.trace("Received {}", rawDtmfs);
-        return rawDtmfs.replace(" ", "");
+    private void recordCall(long startMillis, String status) {
+        CallDetailRecordWriter writer = CallDetailRecordWriters.getWriter();
+        if (writer == null) return;
+        writer.record(new CallDetailRecord(startMillis,
+                                           mDnis,
+                                           mUser == null ? null : mUser.getUsername(),
+                                           mLoginAttempts,
+                                           mMenuPath,
+                                           System.currentTimeMillis() - startMillis,
+                                           TimeUnit.NANOSECONDS.toMillis(mServerNanos),
+                                           TimeUnit.NANOSECONDS.toMillis(mBrowserNanos),
+                                           status));
     }
 
-    private VoiceXmlInputTurn processTurn(VoiceXmlOutputTurn outputTurn) throws Timeout, InterruptedException {
-        VoiceXmlInputTurn inputTurn = mChannel.doTurn(outputTurn, null);
-        while (VoiceXmlEvent.hasEvent(VoiceXmlEvent.NO_INPUT, inputTurn.getEvents())
-               || VoiceXmlEvent.hasEvent(VoiceXmlEvent.NO_MATCH, inputTurn.getEvents())) {
-            inputTurn = mChannel.doTurn(outputTurn, null);
-        }
-        if (VoiceXmlEvent.hasEvent(VoiceXmlEvent.CONNECTION_DISCONNECT_HANGUP, inputTurn.getEvents()))
-            throw new HangUp();
-        if (VoiceXmlEvent.hasEvent(VoiceXmlEvent.ERROR, inputTurn.getEvents())) throw new PlatformError();
-        return inputTurn;
+    private void logEvent(CallEventType type, String name, long value) {
+        if (mEvents == null || !type.isEssential() && !mEventsSampled) return;
+        mEvents.publish(mDialogueId, type, name, value);
     }
 
 }
\ No newline at end of file
@@ -0,0 +1,30 @@
+/*
+ * Copyright (c) 2013 Nu Echo Inc. All rights reserved.
+ */
+
+package com.nuecho.rivr.samples.voicemail.directory;
+
+/**
+ * Holds the {@link ExtensionDirectory} of the dialogues, the {@link ExtensionDirectory#DEMO demonstration directory}
+ * unless another one is set.
+ *
+ * @author Nu Echo Inc.
+ */
+public final class ExtensionDirectories {
+    private static volatile ExtensionDirectory sDirectory = ExtensionDirectory.DEMO;
+
+    private ExtensionDirectories() {}
+
+    public static ExtensionDirectory getDirectory() {
+        return sDirectory;
+    }
+
+    /**
+     * Replaces the directory. Dialogues see either the previous directory or the new one, never a partial one.
+     *
+     * @param directory The new directory, or <code>null</code> to use the demonstration directory again.
+     */
+    public static void setDirectory(ExtensionDirectory directory) {
+        sDirectory = directory == null ? ExtensionDirectory.DEMO : directory;
+    }
+}
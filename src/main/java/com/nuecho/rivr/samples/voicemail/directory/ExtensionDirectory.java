@@ -0,0 +1,249 @@
+/*
+ * Copyright (c) 2013 Nu Echo Inc. All rights reserved.
+ */
+
+package com.nuecho.rivr.samples.voicemail.directory;
+
+import static java.lang.String.format;
+
+import java.io.*;
+import java.nio.charset.*;
+import java.util.*;
+
+/**
+ * Immutable directory of the extensions and external numbers callers can reach.
+ * <p>
+ * Numbers are indexed as primitive keys in a single sorted <code>long</code> array: each key holds the number of
+ * digits of a number above its numeric value, so that numbers of the same length are contiguous and sorted by value.
+ * The numbers starting with a prefix are then, for each length, a contiguous range found by binary search. Exact and
+ * prefix lookups don't allocate and take well under a microsecond on hundreds of thousands of numbers.
+ * <p>
+ * A directory file has one number per line, followed by its {@link ExtensionType} key, <code>extension</code> when
+ * omitted:
+ *
+ * <pre>
+ * # Sales
+ * 4069 extension
+ * 18005550199 external
+ * </pre>
+ *
+ * Blank lines and lines starting with <code>#</code> are ignored. A number listed twice counts once; listed as both
+ * types, it is an extension.
+ *
+ * @author Nu Echo Inc.
+ */
+public final class ExtensionDirectory {
+    /**
+     * Maximum number of digits of a number.
+     */
+    public static final int MAX_DIGITS = 17;
+
+    /**
+     * Directory of the demonstration, used when no directory file is configured.
+     */
+    public static final ExtensionDirectory DEMO = new ExtensionDirectory(new long[] {encode(4, 1234)},
+                                                                         new ExtensionType[] {ExtensionType.EXTENSION});
+
+    private static final Charset CHARSET = Charset.forName("US-ASCII");
+
+    // 10^17 < 2^57
+    private static final int LENGTH_SHIFT = 57;
+    private static final long[] POWERS_OF_TEN = new long[MAX_DIGITS + 1];
+
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int exponent = 1; exponent <= MAX_DIGITS; exponent++) {
+            POWERS_OF_TEN[exponent] = POWERS_OF_TEN[exponent - 1] * 10;
+        }
+    }
+
+    /**
+     * How a sequence of digits relates to the numbers of the directory.
+     */
+    public enum PrefixMatch {
+        /**
+         * No number starts with the digits: collecting more is pointless.
+         */
+        NONE,
+
+        /**
+         * Longer numbers start with the digits, which aren't a number themselves.
+         */
+        PARTIAL,
+
+        /**
+         * The digits are a number and no longer number starts with them: collecting can stop.
+         */
+        COMPLETE,
+
+        /**
+         * The digits are a number, and longer numbers start with them.
+         */
+        AMBIGUOUS
+    }
+
+    private final long[] mKeys;
+    private final ExtensionType[] mTypes;
+    // Index in mKeys of the first number of each length, for lengths 0 to MAX_DIGITS + 1.
+    private final int[] mLengthStarts = new int[MAX_DIGITS + 2];
+
+    private ExtensionDirectory(long[] keys, ExtensionType[] types) {
+        mKeys = keys;
+        mTypes = types;
+        int index = 0;
+        for (int length = 0; length < mLengthStarts.length; length++) {
+            while (index < keys.length && keys[index] >>> LENGTH_SHIFT < length) {
+                index++;
+            }
+            mLengthStarts[length] = index;
+        }
+    }
+
+    /**
+     * Loads a directory file.
+     *
+     * @throws IOException if the file cannot be read
+     * @throws IllegalArgumentException if the file is invalid
+     */
+    public static ExtensionDirectory load(File file) throws IOException {
+        InputStream input = new FileInputStream(file);
+        try {
+            return load(input);
+        } finally {
+            input.close();
+        }
+    }
+
+    /**
+     * Loads a directory.
+     *
+     * @param input The stream from which the directory is read. It is not closed.
+     * @throws IOException if the directory cannot be read
+     * @throws IllegalArgumentException if the directory is invalid
+     */
+    public static ExtensionDirectory load(InputStream input) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(input, CHARSET));
+        // Key and type ordinal, packed so that a single primitive sort orders both. Keys use 62 bits, types one.
+        long[] entries = new long[1024];
+        int count = 0;
+        int lineNumber = 0;
+        String line;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) continue;
+
+            int separator = 0;
+            while (separator < line.length() && !Character.isWhitespace(line.charAt(separator))) {
+                separator++;
+            }
+            String number = line.substring(0, separator);
+            long key = toKey(number);
+            if (key < 0)
+                throw new IllegalArgumentException(format("Invalid number [%s] on line %d", number, lineNumber));
+
+            String typeKey = line.substring(separator).trim();
+            ExtensionType type = typeKey.isEmpty() ? ExtensionType.EXTENSION : ExtensionType.fromKey(typeKey);
+            if (type == null)
+                throw new IllegalArgumentException(format("Unknown type [%s] on line %d", typeKey, lineNumber));
+
+            if (count == entries.length) {
+                entries = Arrays.copyOf(entries, count * 2);
+            }
+            entries[count++] = key << 1 | type.ordinal();
+        }
+
+        Arrays.sort(entries, 0, count);
+        long[] keys = new long[count];
+        ExtensionType[] types = new ExtensionType[count];
+        ExtensionType[] allTypes = ExtensionType.values();
+        int size = 0;
+        for (int index = 0; index < count; index++) {
+            long key = entries[index] >>> 1;
+            if (size > 0 && keys[size - 1] == key) continue;
+            keys[size] = key;
+            types[size] = allTypes[(int) (entries[index] & 1)];
+            size++;
+        }
+        return new ExtensionDirectory(Arrays.copyOf(keys, size), Arrays.copyOf(types, size));
+    }
+
+    /**
+     * @return the number of numbers in the directory
+     */
+    public int size() {
+        return mKeys.length;
+    }
+
+    /**
+     * @return the type of a number, or <code>null</code> if it isn't in the directory
+     */
+    public ExtensionType lookup(CharSequence digits) {
+        long key = toKey(digits);
+        if (key < 0) return null;
+        int length = digits.length();
+        int index = Arrays.binarySearch(mKeys, mLengthStarts[length], mLengthStarts[length + 1], key);
+        return index < 0 ? null : mTypes[index];
+    }
+
+    /**
+     * Tells whether more digits could complete a number, so that digit collection can stop as soon as the collected
+     * digits are a number or cannot become one.
+     */
+    public PrefixMatch matchPrefix(CharSequence digits) {
+        long value = toKey(digits);
+        if (value < 0) return PrefixMatch.NONE;
+        int prefixLength = digits.length();
+        value &= (1L << LENGTH_SHIFT) - 1;
+
+        boolean exact = false;
+        boolean longer = false;
+        for (int length = prefixLength; length <= MAX_DIGITS && !longer; length++) {
+            int from = mLengthStarts[length];
+            int to = mLengthStarts[length + 1];
+            if (from == to) continue;
+
+            long scale = POWERS_OF_TEN[length - prefixLength];
+            long first = encode(length, value * scale);
+            long last = encode(length, (value + 1) * scale - 1);
+            int index = Arrays.binarySearch(mKeys, from, to, first);
+            if (index < 0) {
+                index = -index - 1;
+            }
+            if (index < to && mKeys[index] <= last) {
+                if (length == prefixLength) {
+                    exact = true;
+                } else {
+                    longer = true;
+                }
+            }
+        }
+
+        if (exact) return longer ? PrefixMatch.AMBIGUOUS : PrefixMatch.COMPLETE;
+        return longer ? PrefixMatch.PARTIAL : PrefixMatch.NONE;
+    }
+
+    /**
+     * @return the key of a number, or -1 if it isn't a number of at most {@link #MAX_DIGITS} digits
+     */
+    private static long toKey(CharSequence digits) {
+        int length = digits.length();
+        if (length == 0 || length > MAX_DIGITS) return -1;
+        long value = 0;
+        for (int index = 0; index < length; index++) {
+            char digit = digits.charAt(index);
+            if (digit < '0' || digit > '9') return -1;
+            value = value * 10 + digit - '0';
+        }
+        return encode(length, value);
+    }
+
+    private static long encode(int length, long value) {
+        return (long) length << LENGTH_SHIFT | value;
+    }
+
+    @Override
+    public String toString() {
+        return "ExtensionDirectory [" + mKeys.length + " numbers]";
+    }
+}
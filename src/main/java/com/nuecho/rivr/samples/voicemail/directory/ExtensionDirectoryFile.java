@@ -0,0 +1,69 @@
+/*
+ * Copyright (c) 2013 Nu Echo Inc. All rights reserved.
+ */
+
+package com.nuecho.rivr.samples.voicemail.directory;
+
+import java.io.*;
+
+import org.slf4j.*;
+
+/**
+ * Keeps the {@link ExtensionDirectories held directory} in sync with a directory file.
+ * <p>
+ * The file is loaded by {@link #load()} and then reloaded by {@link #reloadIfModified()} when it changes, meant to be
+ * called periodically from a background thread so that dialogues never wait for a load. The new directory is built
+ * aside and replaces the previous one at once. A file that fails to load is logged and the previous directory is
+ * kept.
+ *
+ * @author Nu Echo Inc.
+ */
+public final class ExtensionDirectoryFile {
+    private final Logger mLog = LoggerFactory.getLogger(getClass());
+
+    private final File mFile;
+    private long mLastModified;
+
+    public ExtensionDirectoryFile(File file) {
+        mFile = file;
+    }
+
+    /**
+     * Loads the file and makes it the held directory.
+     *
+     * @throws IOException if the file cannot be read
+     * @throws IllegalArgumentException if the file is invalid
+     */
+    public synchronized ExtensionDirectory load() throws IOException {
+        mLastModified = mFile.lastModified();
+        ExtensionDirectory directory = ExtensionDirectory.load(mFile);
+        ExtensionDirectories.setDirectory(directory);
+        return directory;
+    }
+
+    /**
+     * Reloads the file if it changed since it was last loaded.
+     *
+     * @return whether the held directory was replaced
+     */
+    public synchronized boolean reloadIfModified() {
+        long lastModified = mFile.lastModified();
+        if (lastModified == mLastModified) return false;
+        mLastModified = lastModified;
+
+        try {
+            ExtensionDirectory directory = load();
+            mLog.info("Extension directory reloaded from [{}], {} numbers", mFile, directory.size());
+            return true;
+        } catch (IOException exception) {
+            mLog.error("Unable to reload extension directory, keeping previous one", exception);
+        } catch (IllegalArgumentException exception) {
+            mLog.error("Invalid extension directory, keeping previous one", exception);
+        }
+        return false;
+    }
+
+    public File getFile() {
+        return mFile;
+    }
+}
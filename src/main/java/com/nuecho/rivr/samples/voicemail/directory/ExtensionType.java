@@ -0,0 +1,49 @@
+/*
+ * Copyright (c) 2013 Nu Echo Inc. All rights reserved.
+ */
+
+package com.nuecho.rivr.samples.voicemail.directory;
+
+import java.util.*;
+
+/**
+ * Kinds of numbers listed in an {@link ExtensionDirectory}.
+ *
+ * @author Nu Echo Inc.
+ */
+public enum ExtensionType {
+    /**
+     * An internal extension, with a mailbox that can receive messages.
+     */
+    EXTENSION("extension"),
+
+    /**
+     * An external number that can be dialed out.
+     */
+    EXTERNAL("external");
+
+    private static final Map<String, ExtensionType> BY_KEY = new HashMap<String, ExtensionType>();
+
+    static {
+        for (ExtensionType type : values()) {
+            BY_KEY.put(type.getKey(), type);
+        }
+    }
+
+    private final String mKey;
+
+    private ExtensionType(String key) {
+        mKey = key;
+    }
+
+    public String getKey() {
+        return mKey;
+    }
+
+    /**
+     * @return the type identified by the key, or <code>null</code> if there is none
+     */
+    public static ExtensionType fromKey(String key) {
+        return BY_KEY.get(key);
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright (c) 2013 Nu Echo Inc. All rights reserved.
+ */
+
+package com.nuecho.rivr.samples.voicemail.events;
+
+/**
+ * A slot of the {@link CallEventLog} ring buffer, holding an event of a dialogue. Slots are allocated with the buffer
+ * and reused: an event must not be kept once handled.
+ *
+ * @author Nu Echo Inc.
+ */
+public final class CallEvent {
+    // Sequence of the event held, written last by the publisher so that the other fields are visible once it is.
+    volatile long mSequence = -1;
+
+    long mTimestamp;
+    String mDialogueId;
+    CallEventType mType;
+    String mName;
+    long mValue;
+
+    CallEvent() {}
+
+    public long getSequence() {
+        return mSequence;
+    }
+
+    /**
+     * @return when the event occurred, in milliseconds since the epoch
+     */
+    public long getTimestamp() {
+        return mTimestamp;
+    }
+
+    public String getDialogueId() {
+        return mDialogueId;
+    }
+
+    public CallEventType getType() {
+        return mType;
+    }
+
+    public String getName() {
+        return mName;
+    }
+
+    /**
+     * @return the value of the event, whose meaning depends on its {@link CallEventType}
+     */
+    public long getValue() {
+        return mValue;
+    }
+
+    @Override
+    public String toString() {
+        return "CallEvent [" + mDialogueId + " " + mType + " " + mName + " " + mValue + "]";
+    }
+}
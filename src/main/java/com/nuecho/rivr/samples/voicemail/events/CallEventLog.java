@@ -0,0 +1,140 @@
+/*
+ * Copyright (c) 2013 Nu Echo Inc. All rights reserved.
+ */
+
+package com.nuecho.rivr.samples.voicemail.events;
+
+import java.io.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * Ring buffer of {@link CallEvent call events}, published by the dialogue threads and drained by a single
+ * {@link CallEventWriter}.
+ * <p>
+ * Slots are allocated once: publishing claims a sequence with a compare-and-set, fills the slot in place and never
+ * waits. When the writer falls behind, back-pressure is applied by discarding events rather than blocking: the
+ * non-essential events are discarded once fewer than the discarding threshold slots remain free, so that the
+ * essential ones still fit, and every event is discarded when the buffer is full. Discarded events are counted.
+ * <p>
+ * Calls can also be sampled: the turn events of a call are only logged for the given percentage of the calls, chosen
+ * by dialogue id so that a sampled call is logged whole.
+ *
+ * @author Nu Echo Inc.
+ */
+public final class CallEventLog {
+    public static final int DEFAULT_CAPACITY = 8192;
+
+    /**
+     * Handles the events drained from the buffer.
+     */
+    public interface Handler {
+        void handle(CallEvent event) throws IOException;
+    }
+
+    private final CallEvent[] mSlots;
+    private final int mMask;
+    private final int mDiscardingThreshold;
+    private final int mSamplePercent;
+
+    private final AtomicLong mClaimed = new AtomicLong();
+    private final AtomicLong mDiscarded = new AtomicLong();
+    // Sequence of the next event to drain. Only written by the writer.
+    private volatile long mDrained;
+
+    /**
+     * @param capacity The number of slots, rounded up to a power of two.
+     * @param discardingThreshold The number of free slots under which non-essential events are discarded.
+     * @param samplePercent The percentage of calls whose non-essential events are logged.
+     */
+    public CallEventLog(int capacity, int discardingThreshold, int samplePercent) {
+        if (capacity < 1) throw new IllegalArgumentException("Invalid capacity " + capacity);
+        if (discardingThreshold < 0 || discardingThreshold >= capacity)
+            throw new IllegalArgumentException("Invalid discarding threshold " + discardingThreshold);
+
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+        mSlots = new CallEvent[size];
+        for (int index = 0; index < size; index++) {
+            mSlots[index] = new CallEvent();
+        }
+        mMask = size - 1;
+        mDiscardingThreshold = discardingThreshold;
+        mSamplePercent = Math.max(0, Math.min(100, samplePercent));
+    }
+
+    /**
+     * @return whether the non-essential events of a dialogue are logged
+     */
+    public boolean isSampled(String dialogueId) {
+        return (dialogueId.hashCode() & Integer.MAX_VALUE) % 100 < mSamplePercent;
+    }
+
+    /**
+     * Publishes an event, unless the buffer is too full for it.
+     *
+     * @return whether the event was published
+     */
+    public boolean publish(String dialogueId, CallEventType type, String name, long value) {
+        int limit = type.isEssential() ? mSlots.length : mSlots.length - mDiscardingThreshold;
+        long sequence;
+        do {
+            sequence = mClaimed.get();
+            if (sequence - mDrained >= limit) {
+                mDiscarded.incrementAndGet();
+                return false;
+            }
+        } while (!mClaimed.compareAndSet(sequence, sequence + 1));
+
+        CallEvent event = mSlots[(int) sequence & mMask];
+        event.mTimestamp = System.currentTimeMillis();
+        event.mDialogueId = dialogueId;
+        event.mType = type;
+        event.mName = name;
+        event.mValue = value;
+        event.mSequence = sequence;
+        return true;
+    }
+
+    /**
+     * Hands the published events, in order, to a handler. Must only be called by one thread at a time.
+     *
+     * @param maxEvents The maximum number of events drained.
+     * @return the number of events drained
+     * @throws IOException if the handler failed; the event that failed is dropped
+     */
+    public int drain(Handler handler, int maxEvents) throws IOException {
+        long next = mDrained;
+        int count = 0;
+        try {
+            while (count < maxEvents) {
+                CallEvent event = mSlots[(int) next & mMask];
+                if (event.mSequence != next) break;
+                next++;
+                count++;
+                handler.handle(event);
+            }
+        } finally {
+            mDrained = next;
+        }
+        return count;
+    }
+
+    public int getCapacity() {
+        return mSlots.length;
+    }
+
+    /**
+     * @return the number of events discarded because the buffer was too full
+     */
+    public long getDiscarded() {
+        return mDiscarded.get();
+    }
+
+    @Override
+    public String toString() {
+        return "CallEventLog [capacity=" + mSlots.length + ", discardingThreshold=" + mDiscardingThreshold
+               + ", samplePercent=" + mSamplePercent + "]";
+    }
+}
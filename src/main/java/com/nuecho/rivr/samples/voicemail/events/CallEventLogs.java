@@ -0,0 +1,27 @@
+/*
+ * Copyright (c) 2013 Nu Echo Inc. All rights reserved.
+ */
+
+package com.nuecho.rivr.samples.voicemail.events;
+
+/**
+ * Holds the {@link CallEventLog} of the dialogues, if any. Without one, call events aren't logged.
+ *
+ * @author Nu Echo Inc.
+ */
+public final class CallEventLogs {
+    private static volatile CallEventLog sLog;
+
+    private CallEventLogs() {}
+
+    /**
+     * @return the call event log, or <code>null</code> if there is none
+     */
+    public static CallEventLog getLog() {
+        return sLog;
+    }
+
+    public static void setLog(CallEventLog log) {
+        sLog = log;
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright (c) 2013 Nu Echo Inc. All rights reserved.
+ */
+
+package com.nuecho.rivr.samples.voicemail.events;
+
+/**
+ * Kinds of {@link CallEvent}, with the meaning of their name and value.
+ *
+ * @author Nu Echo Inc.
+ */
+public enum CallEventType {
+    /**
+     * An output turn was sent to the VoiceXML browser. Named after the turn, valued with the server time before it,
+     * in microseconds.
+     */
+    TURN_SENT("turn-sent", "serverMicros", false),
+
+    /**
+     * The input turn answering an output turn was received. Named after the output turn, valued with the round trip
+     * time, in microseconds.
+     */
+    INPUT_RECEIVED("input-received", "roundTripMicros", false),
+
+    /**
+     * The login ended. Named after the {@link com.nuecho.rivr.samples.voicemail.auth.AuthenticationResult}, valued
+     * with the number of tries.
+     */
+    LOGIN_RESULT("login-result", "tries", true),
+
+    /**
+     * The dialogue ended. Named after the exit status, valued with the call duration, in milliseconds.
+     */
+    EXIT_STATUS("exit-status", "durationMillis", true);
+
+    private final String mKey;
+    private final String mValueKey;
+    private final boolean mEssential;
+
+    private CallEventType(String key, String valueKey, boolean essential) {
+        mKey = key;
+        mValueKey = valueKey;
+        mEssential = essential;
+    }
+
+    public String getKey() {
+        return mKey;
+    }
+
+    /**
+     * @return the key under which the value of the events is written
+     */
+    public String getValueKey() {
+        return mValueKey;
+    }
+
+    /**
+     * Essential events, one or two per call, are logged for every call and only discarded when the buffer is full.
+     */
+    public boolean isEssential() {
+        return mEssential;
+    }
+}
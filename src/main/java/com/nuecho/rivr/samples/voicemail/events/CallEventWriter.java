@@ -0,0 +1,208 @@
+/*
+ * Copyright (c) 2013 Nu Echo Inc. All rights reserved.
+ */
+
+package com.nuecho.rivr.samples.voicemail.events;
+
+import java.io.*;
+import java.nio.charset.*;
+import java.text.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.locks.*;
+
+import org.slf4j.*;
+
+/**
+ * Background thread draining the {@link CallEventLog} to a local file, one JSON object per line:
+ *
+ * <pre>
+ * {"time":"2013-05-02T14:03:11.482Z","dialogue":"6c0f...","event":"turn-sent","name":"play-message","serverMicros":412}
+ * </pre>
+ *
+ * Events are written in batches, with a single flush per batch, and the thread parks briefly when the buffer is empty
+ * rather than being signaled, so that publishers never touch a lock. When the file exceeds its maximum size, it is
+ * renamed with a <code>.1</code> suffix, shifting the older files, of which only the given number is kept.
+ *
+ * @author Nu Echo Inc.
+ */
+public final class CallEventWriter implements CallEventLog.Handler {
+    public static final long DEFAULT_MAX_FILE_SIZE = 10 * 1024 * 1024;
+    public static final int DEFAULT_MAX_FILES = 5;
+
+    private static final Charset CHARSET = Charset.forName("UTF-8");
+    private static final int BATCH_SIZE = 1024;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final long IDLE_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    private static final long SHUTDOWN_MILLIS = 5000;
+
+    private final Logger mLog = LoggerFactory.getLogger(getClass());
+
+    private final CallEventLog mEventLog;
+    private final File mFile;
+    private final long mMaxFileSize;
+    private final int mMaxFiles;
+    private final StringBuilder mLine = new StringBuilder(256);
+    private final DateFormat mTimeFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'", Locale.US);
+
+    private Writer mWriter;
+    private long mFileSize;
+    private Thread mThread;
+    private volatile boolean mRunning;
+
+    /**
+     * @param maxFiles The number of rolled files kept besides the current one.
+     * @throws IOException if the file cannot be opened
+     */
+    public CallEventWriter(CallEventLog eventLog, File file, long maxFileSize, int maxFiles) throws IOException {
+        mEventLog = eventLog;
+        mFile = file;
+        mMaxFileSize = maxFileSize;
+        mMaxFiles = maxFiles;
+        mTimeFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+        File directory = file.getAbsoluteFile().getParentFile();
+        if (!directory.isDirectory() && !directory.mkdirs())
+            throw new IOException("Unable to create directory " + directory);
+        open();
+    }
+
+    public void start() {
+        mRunning = true;
+        mThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                write();
+            }
+        }, "call-event-writer");
+        mThread.setDaemon(true);
+        mThread.start();
+    }
+
+    /**
+     * Stops the thread, writes the remaining events and closes the file. If the thread doesn't stop in time, the file
+     * is left to it rather than written concurrently, and the remaining events are lost.
+     */
+    public void shutdown() {
+        mRunning = false;
+        if (mThread != null) {
+            LockSupport.unpark(mThread);
+            try {
+                mThread.join(SHUTDOWN_MILLIS);
+            } catch (InterruptedException exception) {
+                Thread.currentThread().interrupt();
+            }
+            if (mThread.isAlive()) {
+                mLog.warn("Call event writer still running, the remaining events are not written to {}", mFile);
+                return;
+            }
+        }
+        try {
+            writeBatch();
+            mWriter.close();
+        } catch (IOException exception) {
+            mLog.warn("Unable to close call event file " + mFile, exception);
+        }
+    }
+
+    public File getFile() {
+        return mFile;
+    }
+
+    private void write() {
+        while (mRunning) {
+            try {
+                if (writeBatch() == 0) {
+                    LockSupport.parkNanos(IDLE_NANOS);
+                }
+            } catch (IOException exception) {
+                mLog.error("Unable to write call events to " + mFile, exception);
+                LockSupport.parkNanos(IDLE_NANOS);
+            }
+        }
+    }
+
+    /**
+     * Writes the published events and flushes the file.
+     *
+     * @return the number of events written
+     */
+    int writeBatch() throws IOException {
+        int total = 0;
+        int count;
+        do {
+            count = mEventLog.drain(this, BATCH_SIZE);
+            total += count;
+        } while (count == BATCH_SIZE);
+
+        if (total > 0) {
+            mWriter.flush();
+        }
+        return total;
+    }
+
+    @Override
+    public void handle(CallEvent event) throws IOException {
+        StringBuilder line = mLine;
+        line.setLength(0);
+        line.append("{\"time\":\"").append(mTimeFormat.format(new Date(event.getTimestamp())));
+        line.append("\",\"dialogue\":");
+        appendString(line, event.getDialogueId());
+        line.append(",\"event\":\"").append(event.getType().getKey());
+        line.append("\",\"name\":");
+        appendString(line, event.getName());
+        line.append(",\"").append(event.getType().getValueKey()).append("\":").append(event.getValue());
+        line.append("}\n");
+
+        mWriter.append(line);
+        mFileSize += line.length();
+        if (mFileSize >= mMaxFileSize) {
+            roll();
+        }
+    }
+
+    private void open() throws IOException {
+        mWriter = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(mFile, true), CHARSET), BUFFER_SIZE);
+        mFileSize = mFile.length();
+    }
+
+    private void roll() throws IOException {
+        mWriter.close();
+        for (int index = mMaxFiles; index > 0; index--) {
+            File rolled = getRolledFile(index);
+            File previous = index == 1 ? mFile : getRolledFile(index - 1);
+            if (index == mMaxFiles) {
+                rolled.delete();
+            }
+            if (previous.exists() && !previous.renameTo(rolled)) {
+                mLog.warn("Unable to rename {} to {}", previous, rolled);
+            }
+        }
+        if (mMaxFiles == 0) {
+            mFile.delete();
+        }
+        open();
+    }
+
+    File getRolledFile(int index) {
+        return new File(mFile.getPath() + "." + index);
+    }
+
+    private static void appendString(StringBuilder builder, String value) {
+        if (value == null) {
+            builder.append("null");
+            return;
+        }
+        builder.append('"');
+        for (int index = 0; index < value.length(); index++) {
+            char character = value.charAt(index);
+            if (character == '"' || character == '\\') {
+                builder.append('\\').append(character);
+            } else if (character < ' ') {
+                builder.append(String.format("\\u%04x", (int) character));
+            } else {
+                builder.append(character);
+            }
+        }
+        builder.append('"');
+    }
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright (c) 2013 Nu Echo Inc. All rights reserved.
+ */
+
+package com.nuecho.rivr.samples.voicemail.flow;
+
+/**
+ * Immutable, compiled call flow graph. Nodes are output turns and transitions between them are resolved to node
+ * indices, so that moving from one node to the next is an array lookup.
+ *
+ * @author Nu Echo Inc.
+ */
+public final class CallFlow {
+    /**
+     * Transition target ending the call flow.
+     */
+    public static final int EXIT = -1;
+
+    private final CallFlowNode[] mNodes;
+    private final int mStart;
+
+    CallFlow(CallFlowNode[] nodes, int start) {
+        mNodes = nodes;
+        mStart = start;
+    }
+
+    /**
+     * @return the index of the first node
+     */
+    public int getStart() {
+        return mStart;
+    }
+
+    public CallFlowNode getNode(int index) {
+        return mNodes[index];
+    }
+
+    public int getNodeCount() {
+        return mNodes.length;
+    }
+
+    /**
+     * @return the index of the node with that name, or {@link #EXIT} if there is none
+     */
+    public int indexOf(String name) {
+        for (CallFlowNode node : mNodes) {
+            if (node.getName().equals(name)) return node.getIndex();
+        }
+        return EXIT;
+    }
+}
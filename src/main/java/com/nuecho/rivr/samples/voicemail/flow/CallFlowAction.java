@@ -0,0 +1,67 @@
+/*
+ * Copyright (c) 2013 Nu Echo Inc. All rights reserved.
+ */
+
+package com.nuecho.rivr.samples.voicemail.flow;
+
+import java.util.*;
+
+/**
+ * Operations performed by the dialogue when processing a node. Each action applies to one {@link CallFlowNode.Type}:
+ * <ul>
+ * <li>{@link CallFlowNode.Type#INPUT INPUT} actions validate the collected digits;</li>
+ * <li>{@link CallFlowNode.Type#RECORD RECORD} actions handle the recording;</li>
+ * <li>{@link CallFlowNode.Type#MENU MENU} and {@link CallFlowNode.Type#PROMPT PROMPT} actions are performed before the
+ * prompts are played;</li>
+ * <li>{@link CallFlowNode.Type#ACTION ACTION} actions are performed alone.</li>
+ * </ul>
+ *
+ * @author Nu Echo Inc.
+ */
+public enum CallFlowAction {
+    ANNOUNCE_MESSAGES("announce-messages", CallFlowNode.Type.MENU),
+    VALIDATE_EXTENSION("validate-extension", CallFlowNode.Type.INPUT),
+    VALIDATE_NUMBER_TO_CALL("validate-number-to-call", CallFlowNode.Type.INPUT),
+    DEPOSIT_MESSAGE("deposit-message", CallFlowNode.Type.RECORD),
+    PLAY_MESSAGE("play-message", CallFlowNode.Type.MENU),
+    SAVE_MESSAGE("save-message", CallFlowNode.Type.PROMPT),
+    PREVIOUS_MESSAGE("previous-message", CallFlowNode.Type.ACTION),
+    REPLAY_MESSAGE("replay-message", CallFlowNode.Type.ACTION),
+    NEXT_MESSAGE("next-message", CallFlowNode.Type.ACTION),
+    SKIP_BACK("skip-back", CallFlowNode.Type.ACTION),
+    SKIP_AHEAD("skip-ahead", CallFlowNode.Type.ACTION);
+
+    private static final Map<String, CallFlowAction> BY_KEY = new HashMap<String, CallFlowAction>();
+
+    static {
+        for (CallFlowAction action : values()) {
+            BY_KEY.put(action.getKey(), action);
+        }
+    }
+
+    private final String mKey;
+    private final CallFlowNode.Type mNodeType;
+
+    private CallFlowAction(String key, CallFlowNode.Type nodeType) {
+        mKey = key;
+        mNodeType = nodeType;
+    }
+
+    public String getKey() {
+        return mKey;
+    }
+
+    /**
+     * @return the type of the nodes this action applies to
+     */
+    public CallFlowNode.Type getNodeType() {
+        return mNodeType;
+    }
+
+    /**
+     * @return the action identified by the key, or <code>null</code> if there is none
+     */
+    public static CallFlowAction fromKey(String key) {
+        return BY_KEY.get(key);
+    }
+}
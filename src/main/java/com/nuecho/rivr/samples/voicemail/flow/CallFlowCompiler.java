@@ -0,0 +1,178 @@
+/*
+ * Copyright (c) 2013 Nu Echo Inc. All rights reserved.
+ */
+
+package com.nuecho.rivr.samples.voicemail.flow;
+
+import static java.lang.String.format;
+
+import java.io.*;
+import java.util.*;
+
+import com.nuecho.rivr.samples.voicemail.prompt.*;
+
+/**
+ * Compiles a call flow definition into a {@link CallFlow}.
+ * <p>
+ * A definition is a properties file. The <code>start</code> property names the first node. Every other property is
+ * <code>&lt;node&gt;.&lt;attribute&gt;</code>:
+ * <ul>
+ * <li><code>type</code>: <code>menu</code>, <code>input</code>, <code>prompt</code>, <code>record</code> or
+ * <code>action</code>;</li>
+ * <li><code>turn</code>: the {@link TurnId} key of the turn played by the node, defaults to the node name. Action nodes
+ * don't play a turn;</li>
+ * <li><code>next</code>: the node following a prompt, a recording, an action or a valid input;</li>
+ * <li><code>action</code>: the key of the {@link CallFlowAction} performed by the node, required for inputs and
+ * actions;</li>
+ * <li><code>invalid</code>: the node following an invalid input;</li>
+ * <li><code>default</code>: the node a menu goes to on a symbol without transition, defaults to the menu itself;</li>
+ * <li>a single DTMF symbol (<code>0</code>-<code>9</code>, <code>*</code>, <code>#</code>, <code>A</code>-
+ * <code>D</code>): the node a menu goes to on that symbol.</li>
+ * </ul>
+ * The <code>exit</code> node name ends the call flow.
+ *
+ * @author Nu Echo Inc.
+ */
+public final class CallFlowCompiler {
+    private static final String START_PROPERTY = "start";
+    private static final String EXIT_NODE = "exit";
+
+    private static final String TYPE_ATTRIBUTE = "type";
+    private static final String TURN_ATTRIBUTE = "turn";
+    private static final String NEXT_ATTRIBUTE = "next";
+    private static final String ACTION_ATTRIBUTE = "action";
+    private static final String INVALID_ATTRIBUTE = "invalid";
+    private static final String DEFAULT_ATTRIBUTE = "default";
+
+    private final Properties mDefinition;
+    private final List<String> mNames;
+
+    private CallFlowCompiler(Properties definition) {
+        mDefinition = definition;
+
+        SortedSet<String> names = new TreeSet<String>();
+        for (String property : definition.stringPropertyNames()) {
+            if (property.equals(START_PROPERTY)) continue;
+            int separator = property.indexOf('.');
+            if (separator <= 0) throw new CallFlowException(format("Invalid property [%s]", property));
+            names.add(property.substring(0, separator));
+        }
+        mNames = new ArrayList<String>(names);
+    }
+
+    /**
+     * Loads and compiles a call flow definition.
+     *
+     * @param input The stream from which the definition is read. It is not closed.
+     * @throws IOException if the definition cannot be read
+     * @throws CallFlowException if the definition is invalid
+     */
+    public static CallFlow load(InputStream input) throws IOException {
+        Properties definition = new Properties();
+        definition.load(input);
+        return compile(definition);
+    }
+
+    /**
+     * Compiles a call flow definition.
+     *
+     * @throws CallFlowException if the definition is invalid
+     */
+    public static CallFlow compile(Properties definition) {
+        return new CallFlowCompiler(definition).compile();
+    }
+
+    private CallFlow compile() {
+        CallFlowNode[] nodes = new CallFlowNode[mNames.size()];
+        for (int index = 0; index < nodes.length; index++) {
+            nodes[index] = compileNode(index, mNames.get(index));
+        }
+
+        String start = mDefinition.getProperty(START_PROPERTY);
+        if (start == null) throw new CallFlowException("Missing start node");
+
+        return new CallFlow(nodes, resolveNode(START_PROPERTY, start));
+    }
+
+    private CallFlowNode compileNode(int index, String name) {
+        CallFlowNode.Type type = resolveType(name);
+
+        TurnId turnId = null;
+        if (type != CallFlowNode.Type.ACTION) {
+            String turnKey = getAttribute(name, TURN_ATTRIBUTE, name);
+            turnId = TurnId.fromKey(turnKey);
+            if (turnId == null)
+                throw new CallFlowException(format("Unknown turn [%s] for node [%s]", turnKey, name));
+        }
+
+        CallFlowAction action = resolveAction(name, type);
+        int[] transitions = null;
+        int next;
+        int invalid = CallFlow.EXIT;
+        switch (type) {
+            case MENU:
+                next = resolveNode(name, getAttribute(name, DEFAULT_ATTRIBUTE, name));
+                transitions = new int[DtmfSymbols.COUNT];
+                for (int symbol = 0; symbol < DtmfSymbols.COUNT; symbol++) {
+                    String target = getAttribute(name, String.valueOf(DtmfSymbols.symbolAt(symbol)), null);
+                    transitions[symbol] = target == null ? next : resolveNode(name, target);
+                }
+                break;
+            case INPUT:
+                if (action == null) throw new CallFlowException(format("Missing action for input node [%s]", name));
+                next = resolveNode(name, getRequiredAttribute(name, NEXT_ATTRIBUTE));
+                invalid = resolveNode(name, getRequiredAttribute(name, INVALID_ATTRIBUTE));
+                break;
+            case ACTION:
+                if (action == null) throw new CallFlowException(format("Missing action for action node [%s]", name));
+                next = resolveNode(name, getRequiredAttribute(name, NEXT_ATTRIBUTE));
+                break;
+            default:
+                next = resolveNode(name, getRequiredAttribute(name, NEXT_ATTRIBUTE));
+                break;
+        }
+
+        return new CallFlowNode(index, name, type, turnId, action, transitions, next, invalid);
+    }
+
+    private CallFlowNode.Type resolveType(String name) {
+        String type = getRequiredAttribute(name, TYPE_ATTRIBUTE);
+        try {
+            return CallFlowNode.Type.valueOf(type.toUpperCase(Locale.ENGLISH));
+        } catch (IllegalArgumentException exception) {
+            throw new CallFlowException(format("Unknown type [%s] for node [%s]", type, name), exception);
+        }
+    }
+
+    private CallFlowAction resolveAction(String name, CallFlowNode.Type type) {
+        String actionKey = getAttribute(name, ACTION_ATTRIBUTE, null);
+        if (actionKey == null) return null;
+        CallFlowAction action = CallFlowAction.fromKey(actionKey);
+        if (action == null) throw new CallFlowException(format("Unknown action [%s] for node [%s]", actionKey, name));
+        if (action.getNodeType() != type) {
+            throw new CallFlowException(format("Action [%s] cannot be performed by %s node [%s]",
+                                               actionKey,
+                                               type.name().toLowerCase(Locale.ENGLISH),
+                                               name));
+        }
+        return action;
+    }
+
+    private int resolveNode(String from, String target) {
+        if (target.equals(EXIT_NODE)) return CallFlow.EXIT;
+        int index = mNames.indexOf(target);
+        if (index < 0) throw new CallFlowException(format("Unknown node [%s] referenced by [%s]", target, from));
+        return index;
+    }
+
+    private String getRequiredAttribute(String name, String attribute) {
+        String value = getAttribute(name, attribute, null);
+        if (value == null) throw new CallFlowException(format("Missing attribute [%s] for node [%s]", attribute, name));
+        return value;
+    }
+
+    private String getAttribute(String name, String attribute, String defaultValue) {
+        String value = mDefinition.getProperty(name + "." + attribute);
+        return value == null ? defaultValue : value.trim();
+    }
+}
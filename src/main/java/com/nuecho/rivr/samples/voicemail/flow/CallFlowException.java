@@ -0,0 +1,32 @@
+/*
+ * Copyright (c) 2013 Nu Echo Inc. All rights reserved.
+ */
+
+package com.nuecho.rivr.samples.voicemail.flow;
+
+/**
+ * Thrown when a call flow definition cannot be loaded or compiled.
+ *
+ * @author Nu Echo Inc.
+ */
+public class CallFlowException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public CallFlowException() {
+        super();
+    }
+
+    public CallFlowException(String message, Throwable cause) {
+        super(message, cause);
+    }
+
+    public CallFlowException(String message) {
+        super(message);
+    }
+
+    public CallFlowException(Throwable cause) {
+        super(cause);
+    }
+
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright (c) 2013 Nu Echo Inc. All rights reserved.
+ */
+
+package com.nuecho.rivr.samples.voicemail.flow;
+
+import com.nuecho.rivr.samples.voicemail.prompt.*;
+
+/**
+ * Compiled node of a {@link CallFlow}. Transitions are indices of other nodes of the same call flow, or
+ * {@link CallFlow#EXIT}.
+ *
+ * @author Nu Echo Inc.
+ */
+public final class CallFlowNode {
+
+    /**
+     * How the dialogue processes the turn of a node.
+     */
+    public enum Type {
+        /**
+         * Collects a single DTMF symbol and follows the transition of that symbol.
+         */
+        MENU,
+
+        /**
+         * Collects digits, validates them with the node {@link CallFlowAction} and follows the next transition when
+         * they are valid or the invalid transition otherwise.
+         */
+        INPUT,
+
+        /**
+         * Plays prompts and follows the next transition.
+         */
+        PROMPT,
+
+        /**
+         * Records the caller and follows the next transition.
+         */
+        RECORD,
+
+        /**
+         * Performs the node {@link CallFlowAction} without playing a turn and follows the next transition.
+         */
+        ACTION
+    }
+
+    private final int mIndex;
+    private final String mName;
+    private final Type mType;
+    private final TurnId mTurnId;
+    private final CallFlowAction mAction;
+    private final int[] mTransitions;
+    private final int mNext;
+    private final int mInvalid;
+
+    CallFlowNode(int index,
+                 String name,
+                 Type type,
+                 TurnId turnId,
+                 CallFlowAction action,
+                 int[] transitions,
+                 int next,
+                 int invalid) {
+        mIndex = index;
+        mName = name;
+        mType = type;
+        mTurnId = turnId;
+        mAction = action;
+        mTransitions = transitions;
+        mNext = next;
+        mInvalid = invalid;
+    }
+
+    public int getIndex() {
+        return mIndex;
+    }
+
+    public String getName() {
+        return mName;
+    }
+
+    public Type getType() {
+        return mType;
+    }
+
+    /**
+     * @return the turn played by the node, <code>null</code> for {@link Type#ACTION ACTION} nodes
+     */
+    public TurnId getTurnId() {
+        return mTurnId;
+    }
+
+    /**
+     * @return the action performed when processing the node, <code>null</code> if there is none. Always set for
+     *         {@link Type#INPUT INPUT} and {@link Type#ACTION ACTION} nodes.
+     */
+    public CallFlowAction getAction() {
+        return mAction;
+    }
+
+    /**
+     * Returns the node to go to when a {@link Type#MENU MENU} node receives a DTMF symbol.
+     *
+     * @param symbol The index of the symbol, as returned by {@link DtmfSymbols#indexOf(String)}, possibly
+     *            {@link DtmfSymbols#NONE}.
+     */
+    public int transition(int symbol) {
+        if (symbol == DtmfSymbols.NONE) return mNext;
+        return mTransitions[symbol];
+    }
+
+    /**
+     * @return the node following a {@link Type#PROMPT PROMPT}, a {@link Type#RECORD RECORD}, an
+     *         {@link Type#ACTION ACTION} or a valid {@link Type#INPUT INPUT}, or the default transition of a
+     *         {@link Type#MENU MENU}
+     */
+    public int getNext() {
+        return mNext;
+    }
+
+    /**
+     * @return the node following an invalid {@link Type#INPUT INPUT}
+     */
+    public int getInvalid() {
+        return mInvalid;
+    }
+
+    @Override
+    public String toString() {
+        return mName;
+    }
+}
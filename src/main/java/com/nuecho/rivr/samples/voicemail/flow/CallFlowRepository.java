@@ -0,0 +1,113 @@
+/*
+ * Copyright (c) 2013 Nu Echo Inc. All rights reserved.
+ */
+
+package com.nuecho.rivr.samples.voicemail.flow;
+
+import java.io.*;
+import java.util.concurrent.*;
+
+import org.slf4j.*;
+
+/**
+ * Holds the call flow used by new dialogues.
+ * <p>
+ * The call flow is compiled from the definition bundled with the application, unless a definition file is
+ * configured. A configured file is checked for modifications at most once per check period and recompiled when it
+ * changes, so the call flow can be changed without redeploying the application. A definition that fails to compile is
+ * logged and the previous call flow is kept.
+ *
+ * @author Nu Echo Inc.
+ */
+public final class CallFlowRepository {
+    private static final String DEFAULT_DEFINITION = "voicemail-flow.properties";
+    private static final long DEFAULT_CHECK_PERIOD = TimeUnit.SECONDS.toNanos(5);
+
+    private static final CallFlowRepository INSTANCE = new CallFlowRepository();
+
+    private final Logger mLog = LoggerFactory.getLogger(getClass());
+
+    private volatile CallFlow mCallFlow;
+    private volatile File mFile;
+    private volatile long mCheckPeriod = DEFAULT_CHECK_PERIOD;
+    private volatile long mNextCheck;
+    private long mLastModified;
+
+    private CallFlowRepository() {
+        mCallFlow = loadDefault();
+    }
+
+    public static CallFlowRepository getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Uses a definition file instead of the bundled definition. The file is compiled immediately.
+     *
+     * @param file The definition file.
+     * @param checkPeriodMillis How often, in milliseconds, the file is checked for modifications.
+     * @throws CallFlowException if the file cannot be loaded or compiled
+     */
+    public synchronized void setFile(File file, long checkPeriodMillis) {
+        mFile = file;
+        mCheckPeriod = TimeUnit.MILLISECONDS.toNanos(checkPeriodMillis);
+        mLastModified = file.lastModified();
+        mCallFlow = load(file);
+        mNextCheck = System.nanoTime() + mCheckPeriod;
+        mLog.info("Call flow loaded from [{}]", file);
+    }
+
+    /**
+     * @return the current call flow
+     */
+    public CallFlow getCallFlow() {
+        if (mFile != null && System.nanoTime() - mNextCheck >= 0) {
+            reloadIfModified();
+        }
+        return mCallFlow;
+    }
+
+    private synchronized void reloadIfModified() {
+        long now = System.nanoTime();
+        if (now - mNextCheck < 0) return;
+        mNextCheck = now + mCheckPeriod;
+
+        long lastModified = mFile.lastModified();
+        if (lastModified == mLastModified) return;
+        mLastModified = lastModified;
+
+        try {
+            mCallFlow = load(mFile);
+            mLog.info("Call flow reloaded from [{}]", mFile);
+        } catch (CallFlowException exception) {
+            mLog.error("Unable to reload call flow, keeping previous one", exception);
+        }
+    }
+
+    private static CallFlow load(File file) {
+        try {
+            InputStream input = new FileInputStream(file);
+            try {
+                return CallFlowCompiler.load(input);
+            } finally {
+                input.close();
+            }
+        } catch (IOException exception) {
+            throw new CallFlowException("Unable to read call flow definition " + file, exception);
+        }
+    }
+
+    private static CallFlow loadDefault() {
+        InputStream input = CallFlowRepository.class.getResourceAsStream(DEFAULT_DEFINITION);
+        if (input == null) throw new CallFlowException("Missing call flow definition " + DEFAULT_DEFINITION);
+        try {
+            try {
+                return CallFlowCompiler.load(input);
+            } finally {
+                input.close();
+            }
+        } catch (IOException exception) {
+            throw new CallFlowException("Unable to read call flow definition " + DEFAULT_DEFINITION, exception);
+        }
+    }
+}
@@ -0,0 +1,179 @@
+/*
+ * Copyright (c) 2013 Nu Echo Inc. All rights reserved.
+ */
+
+package com.nuecho.rivr.samples.voicemail.flow;
+
+/**
+ * DTMF symbols entered by the caller during one turn, decoded from the utterance of the recognition result.
+ * <p>
+ * Symbols are kept as their {@link DtmfSymbols} index, four bits each, packed in a single <code>long</code>. A
+ * sequence is meant to be reused from turn to turn by its dialogue: decoding and reading it don't allocate, and as a
+ * {@link CharSequence}, it can be looked up in the extension directory as is.
+ * <p>
+ * A trailing <code>#</code> or <code>A</code> following other symbols is the terminator of the entry, not part of it.
+ * Alone, it is a symbol, so that menus can offer it.
+ *
+ * @author Nu Echo Inc.
+ */
+public final class DtmfSequence implements CharSequence {
+    /**
+     * Maximum number of symbols of a sequence.
+     */
+    public static final int MAX_LENGTH = 16;
+
+    /**
+     * Confidence under which a result is decoded as invalid. DTMF results normally have a confidence of 1.
+     */
+    public static final double MIN_CONFIDENCE = 0.5;
+
+    private static final int BITS_PER_SYMBOL = 4;
+    private static final int SYMBOL_MASK = (1 << BITS_PER_SYMBOL) - 1;
+    private static final int POUND = DtmfSymbols.indexOf('#');
+    private static final int A = DtmfSymbols.indexOf('A');
+
+    private long mSymbols;
+    private int mLength;
+    private int mTerminator = DtmfSymbols.NONE;
+    private double mConfidence;
+    private boolean mValid = true;
+
+    /**
+     * Empties the sequence, as after a turn without DTMF input.
+     */
+    public void clear() {
+        mSymbols = 0;
+        mLength = 0;
+        mTerminator = DtmfSymbols.NONE;
+        mConfidence = 0;
+        mValid = true;
+    }
+
+    /**
+     * Decodes an utterance in one pass. Whitespace between the symbols is ignored.
+     *
+     * @param utterance The utterance of the recognition result, e.g. <code>4 0 6 9 #</code>.
+     * @param confidence The confidence of the recognition result.
+     * @return whether the utterance is a valid sequence: only DTMF symbols, at most {@link #MAX_LENGTH} of them, with
+     *         a confidence of at least {@link #MIN_CONFIDENCE}. An invalid sequence is empty.
+     */
+    public boolean decode(CharSequence utterance, double confidence) {
+        clear();
+        mConfidence = confidence;
+        int length = 0;
+        long symbols = 0;
+        int terminator = DtmfSymbols.NONE;
+        for (int index = 0; index < utterance.length(); index++) {
+            char character = utterance.charAt(index);
+            if (Character.isWhitespace(character)) continue;
+
+            int symbol = DtmfSymbols.indexOf(character);
+            if (symbol == DtmfSymbols.NONE || terminator != DtmfSymbols.NONE) return invalid();
+            if (length > 0 && (symbol == POUND || symbol == A)) {
+                // Only a terminator if nothing follows.
+                terminator = symbol;
+                continue;
+            }
+            if (length == MAX_LENGTH) return invalid();
+            symbols |= (long) symbol << length * BITS_PER_SYMBOL;
+            length++;
+        }
+        if (confidence < MIN_CONFIDENCE) return invalid();
+
+        mSymbols = symbols;
+        mLength = length;
+        mTerminator = terminator;
+        return true;
+    }
+
+    /**
+     * Appends the symbols of another sequence, as when an entry is collected over several turns. The terminator of the
+     * other sequence becomes the terminator of this one.
+     *
+     * @return whether both sequences are valid and their symbols fit in {@link #MAX_LENGTH}. The sequence is left
+     *         unchanged otherwise.
+     */
+    public boolean append(DtmfSequence other) {
+        if (!mValid || !other.mValid || mLength + other.mLength > MAX_LENGTH) return false;
+        if (other.mLength > 0) {
+            mSymbols |= other.mSymbols << mLength * BITS_PER_SYMBOL;
+            mLength += other.mLength;
+        }
+        mTerminator = other.mTerminator;
+        mConfidence = Math.min(mConfidence, other.mConfidence);
+        return true;
+    }
+
+    private boolean invalid() {
+        mValid = false;
+        return false;
+    }
+
+    /**
+     * @return whether the last decoded utterance was valid
+     */
+    public boolean isValid() {
+        return mValid;
+    }
+
+    public boolean isEmpty() {
+        return mLength == 0;
+    }
+
+    /**
+     * @return the index of the symbol if the sequence holds exactly one, {@link DtmfSymbols#NONE} otherwise
+     */
+    public int getSelection() {
+        return mLength == 1 ? (int) mSymbols : DtmfSymbols.NONE;
+    }
+
+    /**
+     * @return the index of the symbol at a position of the sequence
+     */
+    public int getSymbol(int index) {
+        if (index < 0 || index >= mLength) throw new IndexOutOfBoundsException("Invalid index " + index);
+        return (int) (mSymbols >>> index * BITS_PER_SYMBOL) & SYMBOL_MASK;
+    }
+
+    /**
+     * @return the symbols, four bits each, the first one in the lowest bits
+     */
+    public long getPackedSymbols() {
+        return mSymbols;
+    }
+
+    /**
+     * @return the index of the terminator symbol, {@link DtmfSymbols#NONE} if the entry wasn't terminated
+     */
+    public int getTerminator() {
+        return mTerminator;
+    }
+
+    public double getConfidence() {
+        return mConfidence;
+    }
+
+    @Override
+    public int length() {
+        return mLength;
+    }
+
+    @Override
+    public char charAt(int index) {
+        return DtmfSymbols.symbolAt(getSymbol(index));
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return toString().substring(start, end);
+    }
+
+    @Override
+    public String toString() {
+        char[] characters = new char[mLength];
+        for (int index = 0; index < mLength; index++) {
+            characters[index] = charAt(index);
+        }
+        return new String(characters);
+    }
+}
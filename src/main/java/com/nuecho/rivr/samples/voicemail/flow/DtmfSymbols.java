@@ -0,0 +1,61 @@
+/*
+ * Copyright (c) 2013 Nu Echo Inc. All rights reserved.
+ */
+
+package com.nuecho.rivr.samples.voicemail.flow;
+
+/**
+ * Dense numbering of the sixteen DTMF symbols, used to index dispatch tables.
+ *
+ * @author Nu Echo Inc.
+ */
+public final class DtmfSymbols {
+    /**
+     * Number of DTMF symbols.
+     */
+    public static final int COUNT = 16;
+
+    /**
+     * Index returned for anything that isn't a single DTMF symbol.
+     */
+    public static final int NONE = -1;
+
+    private static final String SYMBOLS = "0123456789*#ABCD";
+
+    private DtmfSymbols() {}
+
+    /**
+     * @return the index of the DTMF symbol, or {@link #NONE} if the character isn't a DTMF symbol
+     */
+    public static int indexOf(char symbol) {
+        if (symbol >= '0' && symbol <= '9') return symbol - '0';
+        switch (symbol) {
+            case '*':
+                return 10;
+            case '#':
+                return 11;
+            case 'A':
+            case 'B':
+            case 'C':
+            case 'D':
+                return 12 + symbol - 'A';
+            default:
+                return NONE;
+        }
+    }
+
+    /**
+     * @return the index of the DTMF symbol if the string holds exactly one, {@link #NONE} otherwise
+     */
+    public static int indexOf(String dtmfs) {
+        if (dtmfs.length() != 1) return NONE;
+        return indexOf(dtmfs.charAt(0));
+    }
+
+    /**
+     * @return the DTMF symbol at the index
+     */
+    public static char symbolAt(int index) {
+        return SYMBOLS.charAt(index);
+    }
+}
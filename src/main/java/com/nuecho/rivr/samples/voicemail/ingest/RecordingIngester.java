@@ -0,0 +1,181 @@
+/*
+ * Copyright (c) 2013 Nu Echo Inc. All rights reserved.
+ */
+
+package com.nuecho.rivr.samples.voicemail.ingest;
+
+import java.io.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+import org.slf4j.*;
+
+import com.nuecho.rivr.samples.voicemail.store.*;
+import com.nuecho.rivr.samples.voicemail.util.*;
+
+/**
+ * Takes the recordings posted by the VoiceXML browser to the {@link MessageStore} without holding them in the heap.
+ * <p>
+ * A recording is first {@link #spool(String, InputStream) spooled} as it is received, in chunks of
+ * {@link WavTranscoder#CHUNK_SIZE} bytes, to a file of the spool directory named after its dialogue. When the dialogue
+ * deposits it, a worker of the ingester pool converts it to mu-law with the {@link WavTranscoder}, trimming the silence,
+ * and deposits the result in the store straight from the file. The dialogue doesn't wait for the deposit.
+ * <p>
+ * When every worker is busy and the queue is full, the deposit is done by the dialogue thread itself, which slows the
+ * callers down rather than piling up recordings.
+ *
+ * @author Nu Echo Inc.
+ */
+public final class RecordingIngester {
+    public static final int DEFAULT_WORKERS = 2;
+
+    private static final int QUEUE_SIZE = 100;
+    private static final String SPOOL_EXTENSION = ".wav";
+    private static final String TEMPORARY_EXTENSION = ".tmp";
+    private static final String INGESTING_EXTENSION = ".ingesting";
+    private static final String ULAW_EXTENSION = ".ulaw";
+
+    private final Logger mLog = LoggerFactory.getLogger(getClass());
+
+    private final File mDirectory;
+    private final MessageStore mMessageStore;
+    private final ThreadPoolExecutor mWorkers;
+    private final AtomicLong mNextIngestion = new AtomicLong();
+
+    /**
+     * @param directory The spool directory.
+     * @param messageStore The store receiving the recordings.
+     * @param workers The number of worker threads.
+     */
+    public RecordingIngester(File directory, MessageStore messageStore, int workers) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs())
+            throw new IOException("Unable to create directory " + directory);
+        mDirectory = directory;
+        mMessageStore = messageStore;
+
+        final AtomicInteger threadCount = new AtomicInteger();
+        mWorkers = new ThreadPoolExecutor(workers,
+                                          workers,
+                                          0,
+                                          TimeUnit.MILLISECONDS,
+                                          new ArrayBlockingQueue<Runnable>(QUEUE_SIZE),
+                                          new ThreadFactory() {
+                                              @Override
+                                              public Thread newThread(Runnable runnable) {
+                                                  Thread thread = new Thread(runnable, "recording-ingester-"
+                                                                                       + threadCount.incrementAndGet());
+                                                  thread.setDaemon(true);
+                                                  return thread;
+                                              }
+                                          },
+                                          new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    /**
+     * Writes a recording received for a dialogue to the spool, replacing any recording the dialogue didn't deposit.
+     *
+     * @param input The recording. It is read to the end but not closed.
+     * @return the number of bytes spooled
+     */
+    public long spool(String dialogueId, InputStream input) throws IOException {
+        String name = FileUtils.toFileName(dialogueId);
+        File temporary = new File(mDirectory, name + TEMPORARY_EXTENSION);
+        long length = 0;
+        boolean complete = false;
+        OutputStream output = new FileOutputStream(temporary);
+        try {
+            byte[] buffer = new byte[WavTranscoder.CHUNK_SIZE];
+            int read;
+            while ((read = input.read(buffer)) >= 0) {
+                output.write(buffer, 0, read);
+                length += read;
+            }
+            complete = true;
+        } finally {
+            output.close();
+            if (!complete) {
+                temporary.delete();
+            }
+        }
+
+        File file = new File(mDirectory, name + SPOOL_EXTENSION);
+        FileUtils.replace(temporary, file);
+        return length;
+    }
+
+    /**
+     * @return whether a recording of the dialogue is waiting in the spool
+     */
+    public boolean isSpooled(String dialogueId) {
+        return new File(mDirectory, FileUtils.toFileName(dialogueId) + SPOOL_EXTENSION).isFile();
+    }
+
+    /**
+     * Deposits the spooled recording of a dialogue in a mailbox, in the background.
+     *
+     * @return the deposit, whose message is <code>null</code> if the recording is only silence, or <code>null</code>
+     *         if no recording of the dialogue is spooled
+     */
+    public Future<VoiceMessage> deposit(String dialogueId, final String mailbox) {
+        // Renamed away first, so that the next recording of the dialogue can be spooled meanwhile.
+        String name = FileUtils.toFileName(dialogueId);
+        final File recording = new File(mDirectory,
+                                        name + "-" + mNextIngestion.incrementAndGet() + INGESTING_EXTENSION);
+        if (!new File(mDirectory, name + SPOOL_EXTENSION).renameTo(recording)) return null;
+
+        return mWorkers.submit(new Callable<VoiceMessage>() {
+            @Override
+            public VoiceMessage call() throws IOException {
+                try {
+                    return ingest(recording, mailbox);
+                } catch (IOException exception) {
+                    mLog.error("Unable to deposit recording for mailbox " + mailbox, exception);
+                    throw exception;
+                }
+            }
+        });
+    }
+
+    /**
+     * Drops the spooled recording of a dialogue, if any.
+     */
+    public void discard(String dialogueId) {
+        new File(mDirectory, FileUtils.toFileName(dialogueId) + SPOOL_EXTENSION).delete();
+    }
+
+    /**
+     * Stops the workers once the pending recordings are deposited.
+     */
+    public void shutdown() {
+        mWorkers.shutdown();
+        try {
+            mWorkers.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private VoiceMessage ingest(File recording, String mailbox) throws IOException {
+        File ulaw = new File(mDirectory, recording.getName() + ULAW_EXTENSION);
+        try {
+            WavTranscoder.Result result;
+            InputStream input = new FileInputStream(recording);
+            try {
+                result = WavTranscoder.transcode(input, ulaw);
+            } finally {
+                input.close();
+            }
+
+            if (result.isSilent()) {
+                mLog.info("Silent recording for mailbox [{}] dropped ({})", mailbox, result);
+                return null;
+            }
+            VoiceMessage message = mMessageStore.deposit(mailbox, WavTranscoder.CONTENT_TYPE, ulaw);
+            mLog.info("Deposited {} ({})", message, result);
+            return message;
+        } finally {
+            recording.delete();
+            ulaw.delete();
+        }
+    }
+}
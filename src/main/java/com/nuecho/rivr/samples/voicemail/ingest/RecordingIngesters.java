@@ -0,0 +1,28 @@
+/*
+ * Copyright (c) 2013 Nu Echo Inc. All rights reserved.
+ */
+
+package com.nuecho.rivr.samples.voicemail.ingest;
+
+/**
+ * Holds the {@link RecordingIngester} of the dialogues, if any. Without one, recordings are received in the heap and
+ * deposited as posted.
+ *
+ * @author Nu Echo Inc.
+ */
+public final class RecordingIngesters {
+    private static volatile RecordingIngester sIngester;
+
+    private RecordingIngesters() {}
+
+    /**
+     * @return the recording ingester, or <code>null</code> if there is none
+     */
+    public static RecordingIngester getIngester() {
+        return sIngester;
+    }
+
+    public static void setIngester(RecordingIngester ingester) {
+        sIngester = ingester;
+    }
+}
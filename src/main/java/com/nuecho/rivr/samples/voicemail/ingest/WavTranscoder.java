@@ -0,0 +1,284 @@
+/*
+ * Copyright (c) 2013 Nu Echo Inc. All rights reserved.
+ */
+
+package com.nuecho.rivr.samples.voicemail.ingest;
+
+import static java.lang.String.format;
+
+import java.io.*;
+
+/**
+ * Converts a WAV recording to headerless 8 kHz G.711 mu-law, the format of the prompts, in a single streaming pass.
+ * <p>
+ * The recording is read and written in chunks of {@link #CHUNK_SIZE} bytes, so the heap used doesn't depend on its
+ * length. Mono 8 kHz recordings in 8 or 16 bit linear PCM, A-law or mu-law are supported.
+ * <p>
+ * Silence is trimmed in the same pass: samples before the first one louder than the silence threshold, and after the
+ * last one, are dropped, except for {@link #PADDING_SAMPLES} samples kept around the speech. Leading samples are held
+ * in a small ring until the speech starts; trailing silence is written and the output is truncated once the end of
+ * the speech is known.
+ *
+ * @author Nu Echo Inc.
+ */
+public final class WavTranscoder {
+    public static final String CONTENT_TYPE = "audio/basic";
+    public static final int SAMPLE_RATE = 8000;
+    public static final int CHUNK_SIZE = 8192;
+    public static final int PADDING_SAMPLES = SAMPLE_RATE / 5;
+
+    static final int SILENCE_THRESHOLD = 512;
+
+    private static final int FORMAT_PCM = 1;
+    private static final int FORMAT_ALAW = 6;
+    private static final int FORMAT_MULAW = 7;
+
+    private static final int ULAW_BIAS = 0x84;
+    private static final int ULAW_CLIP = 32635;
+
+    private static final int[] ULAW_TO_LINEAR = new int[256];
+    private static final int[] ALAW_TO_LINEAR = new int[256];
+
+    static {
+        for (int i = 0; i < 256; i++) {
+            ULAW_TO_LINEAR[i] = decodeUlaw((byte) i);
+            ALAW_TO_LINEAR[i] = decodeAlaw((byte) i);
+        }
+    }
+
+    private WavTranscoder() {}
+
+    /**
+     * Converts a WAV recording.
+     *
+     * @param wav The WAV recording. It is not closed.
+     * @param ulaw The file receiving the mu-law samples. It is created or replaced.
+     * @throws IOException if the recording cannot be read or written, or if its format isn't supported
+     */
+    public static Result transcode(InputStream wav, File ulaw) throws IOException {
+        DataInputStream input = new DataInputStream(wav);
+        if (readTag(input) != tag("RIFF")) throw new IOException("Not a RIFF file");
+        readLittleEndianInt(input);
+        if (readTag(input) != tag("WAVE")) throw new IOException("Not a WAVE file");
+
+        int format = -1;
+        int bytesPerSample = 0;
+        while (true) {
+            int chunk = readTag(input);
+            long size = readLittleEndianInt(input) & 0xffffffffL;
+            if (chunk == tag("fmt ")) {
+                byte[] fmt = new byte[(int) Math.min(size, 64)];
+                input.readFully(fmt);
+                skip(input, size - fmt.length + (size & 1));
+                format = readLittleEndianShort(fmt, 0);
+                int channels = readLittleEndianShort(fmt, 2);
+                int sampleRate = readLittleEndianShort(fmt, 4) | readLittleEndianShort(fmt, 6) << 16;
+                int bits = readLittleEndianShort(fmt, 14);
+                bytesPerSample = bits / 8;
+                boolean supported = channels == 1
+                                    && sampleRate == SAMPLE_RATE
+                                    && (format == FORMAT_PCM && (bits == 8 || bits == 16)
+                                        || (format == FORMAT_ALAW || format == FORMAT_MULAW) && bits == 8);
+                if (!supported)
+                    throw new IOException(format("Unsupported WAV format %d, %d channels, %d Hz, %d bits",
+                                                 format,
+                                                 channels,
+                                                 sampleRate,
+                                                 bits));
+            } else if (chunk == tag("data")) {
+                if (format < 0) throw new IOException("WAV data before format");
+                // Recorders streaming their output can't know the size of the data.
+                long length = size == 0 || size == 0xffffffffL ? Long.MAX_VALUE : size;
+                return convert(input, length, format, bytesPerSample, ulaw);
+            } else {
+                skip(input, size + (size & 1));
+            }
+        }
+    }
+
+    private static Result convert(InputStream input, long length, int format, int bytesPerSample, File ulaw)
+            throws IOException {
+        byte[] in = new byte[CHUNK_SIZE];
+        byte[] out = new byte[CHUNK_SIZE];
+        // The padding and the first sample of the speech.
+        byte[] leading = new byte[PADDING_SAMPLES + 1];
+        int leadingCount = 0;
+        int outCount = 0;
+        long samples = 0;
+        long written = 0;
+        long speechEnd = -1;
+        long remaining = length;
+        int carry = 0;
+
+        FileOutputStream output = new FileOutputStream(ulaw);
+        try {
+            while (remaining > 0) {
+                int read = input.read(in, carry, (int) Math.min(in.length - carry, remaining));
+                if (read < 0) break;
+                remaining -= read;
+                int available = carry + read;
+                int end = available - available % bytesPerSample;
+                for (int i = 0; i < end; i += bytesPerSample) {
+                    int linear;
+                    byte encoded;
+                    if (format == FORMAT_MULAW) {
+                        encoded = in[i];
+                        linear = ULAW_TO_LINEAR[in[i] & 0xff];
+                    } else {
+                        if (format == FORMAT_ALAW) {
+                            linear = ALAW_TO_LINEAR[in[i] & 0xff];
+                        } else if (bytesPerSample == 1) {
+                            linear = ((in[i] & 0xff) - 128) << 8;
+                        } else {
+                            linear = (short) ((in[i] & 0xff) | in[i + 1] << 8);
+                        }
+                        encoded = encodeUlaw(linear);
+                    }
+                    samples++;
+                    boolean speech = linear >= SILENCE_THRESHOLD || linear <= -SILENCE_THRESHOLD;
+
+                    if (speechEnd < 0) {
+                        leading[(int) (samples % leading.length)] = encoded;
+                        leadingCount = Math.min(leadingCount + 1, leading.length);
+                        if (!speech) continue;
+
+                        for (int j = leadingCount - 1; j >= 0; j--) {
+                            if (outCount == out.length) {
+                                output.write(out, 0, outCount);
+                                outCount = 0;
+                            }
+                            out[outCount++] = leading[(int) ((samples - j) % leading.length)];
+                            written++;
+                        }
+                        speechEnd = written;
+                        continue;
+                    }
+
+                    if (outCount == out.length) {
+                        output.write(out, 0, outCount);
+                        outCount = 0;
+                    }
+                    out[outCount++] = encoded;
+                    written++;
+                    if (speech) {
+                        speechEnd = written;
+                    }
+                }
+                carry = available - end;
+                System.arraycopy(in, end, in, 0, carry);
+            }
+            output.write(out, 0, outCount);
+
+            long kept = speechEnd < 0 ? 0 : Math.min(written, speechEnd + PADDING_SAMPLES);
+            output.getChannel().truncate(kept);
+            return new Result(samples, kept);
+        } finally {
+            output.close();
+        }
+    }
+
+    /**
+     * Encodes a 16 bit linear sample in G.711 mu-law.
+     */
+    static byte encodeUlaw(int linear) {
+        int sample = linear;
+        int sign = 0;
+        if (sample < 0) {
+            sign = 0x80;
+            sample = -sample;
+        }
+        if (sample > ULAW_CLIP) {
+            sample = ULAW_CLIP;
+        }
+        sample += ULAW_BIAS;
+
+        int exponent = 7;
+        for (int mask = 0x4000; (sample & mask) == 0 && exponent > 0; mask >>= 1) {
+            exponent--;
+        }
+        int mantissa = (sample >> (exponent + 3)) & 0x0f;
+        return (byte) ~(sign | exponent << 4 | mantissa);
+    }
+
+    static int decodeUlaw(byte ulaw) {
+        int value = ~ulaw & 0xff;
+        int exponent = (value >> 4) & 0x07;
+        int sample = (((value & 0x0f) << 3) + ULAW_BIAS << exponent) - ULAW_BIAS;
+        return (value & 0x80) != 0 ? -sample : sample;
+    }
+
+    static int decodeAlaw(byte alaw) {
+        int value = (alaw ^ 0x55) & 0xff;
+        int exponent = (value >> 4) & 0x07;
+        int mantissa = value & 0x0f;
+        int sample = exponent == 0 ? (mantissa << 4) + 8 : ((mantissa << 4) + 0x108) << (exponent - 1);
+        return (value & 0x80) != 0 ? sample : -sample;
+    }
+
+    private static int tag(String tag) {
+        return tag.charAt(0) << 24 | tag.charAt(1) << 16 | tag.charAt(2) << 8 | tag.charAt(3);
+    }
+
+    private static int readTag(DataInputStream input) throws IOException {
+        return input.readInt();
+    }
+
+    private static int readLittleEndianInt(DataInputStream input) throws IOException {
+        return Integer.reverseBytes(input.readInt());
+    }
+
+    private static int readLittleEndianShort(byte[] bytes, int offset) {
+        return (bytes[offset] & 0xff) | (bytes[offset + 1] & 0xff) << 8;
+    }
+
+    private static void skip(InputStream input, long count) throws IOException {
+        long remaining = count;
+        while (remaining > 0) {
+            long skipped = input.skip(remaining);
+            if (skipped <= 0) {
+                if (input.read() < 0) throw new EOFException();
+                skipped = 1;
+            }
+            remaining -= skipped;
+        }
+    }
+
+    /**
+     * Lengths of a converted recording.
+     */
+    public static final class Result {
+        private final long mSamples;
+        private final long mKeptSamples;
+
+        Result(long samples, long keptSamples) {
+            mSamples = samples;
+            mKeptSamples = keptSamples;
+        }
+
+        /**
+         * @return the duration of the recording as received, in milliseconds
+         */
+        public long getDurationMillis() {
+            return mSamples * 1000 / SAMPLE_RATE;
+        }
+
+        /**
+         * @return the duration of the recording once the silence is trimmed, in milliseconds
+         */
+        public long getTrimmedDurationMillis() {
+            return mKeptSamples * 1000 / SAMPLE_RATE;
+        }
+
+        /**
+         * @return whether the recording is only silence
+         */
+        public boolean isSilent() {
+            return mKeptSamples == 0;
+        }
+
+        @Override
+        public String toString() {
+            return format("%d ms, %d ms once trimmed", getDurationMillis(), getTrimmedDurationMillis());
+        }
+    }
+}
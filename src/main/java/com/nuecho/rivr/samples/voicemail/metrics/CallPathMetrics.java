@@ -0,0 +1,166 @@
+/*
+ * Copyright (c) 2013 Nu Echo Inc. All rights reserved.
+ */
+
+package com.nuecho.rivr.samples.voicemail.metrics;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * Counts the transitions between the interactions of the calls over a sliding window, to show which branches callers
+ * take and where they hang up.
+ * <p>
+ * States are interaction names, plus pseudo-states starting with <code>#</code>: {@link #START} and {@link #RESUME}
+ * before the first turn of a dialogue, {@link #HANG_UP} and <code>#&lt;status&gt;</code> after its last one. At most
+ * {@link #MAX_STATES} states are tracked; later names are counted as {@link #OTHER}.
+ * <p>
+ * The window is a ring of time buckets, each holding a transition-count matrix per stripe. Recording increments a
+ * counter of the stripe of the current thread, without locking; a bucket is cleared by the first transition recorded
+ * after its time has come around again, which may lose the few increments racing with it. Memory is allocated once:
+ * buckets &times; stripes &times; {@link #MAX_STATES}<sup>2</sup> counters, whatever the number of calls.
+ *
+ * @author Nu Echo Inc.
+ */
+public final class CallPathMetrics {
+    public static final String START = "#start";
+    public static final String RESUME = "#resume";
+    public static final String HANG_UP = "#hang-up";
+    public static final String OTHER = "(other)";
+
+    public static final int MAX_STATES = 64;
+    public static final long DEFAULT_WINDOW_MILLIS = TimeUnit.MINUTES.toMillis(5);
+    public static final int DEFAULT_BUCKETS = 10;
+
+    private static final int STRIPES = 4;
+
+    private static volatile CallPathMetrics sInstance = new CallPathMetrics(DEFAULT_WINDOW_MILLIS, DEFAULT_BUCKETS);
+
+    private final ConcurrentMap<String, Integer> mIndexes = new ConcurrentHashMap<String, Integer>();
+    private final AtomicReferenceArray<String> mNames = new AtomicReferenceArray<String>(MAX_STATES);
+    private final AtomicInteger mStateCount = new AtomicInteger();
+    private final int mOtherIndex;
+
+    private final Bucket[] mBuckets;
+    private final long mBucketMillis;
+
+    private static final class Bucket {
+        final AtomicLong mPeriod = new AtomicLong(-1);
+        final AtomicLongArray[] mStripes = new AtomicLongArray[STRIPES];
+
+        Bucket() {
+            for (int stripe = 0; stripe < STRIPES; stripe++) {
+                mStripes[stripe] = new AtomicLongArray(MAX_STATES * MAX_STATES);
+            }
+        }
+
+        void clear() {
+            for (AtomicLongArray counts : mStripes) {
+                for (int index = 0; index < counts.length(); index++) {
+                    counts.lazySet(index, 0);
+                }
+            }
+        }
+    }
+
+    /**
+     * @param windowMillis The length of the window, in milliseconds.
+     * @param buckets The number of buckets the window slides by.
+     */
+    public CallPathMetrics(long windowMillis, int buckets) {
+        if (buckets < 1) throw new IllegalArgumentException("Invalid number of buckets " + buckets);
+        mBucketMillis = Math.max(1, windowMillis / buckets);
+        mBuckets = new Bucket[buckets];
+        for (int index = 0; index < buckets; index++) {
+            mBuckets[index] = new Bucket();
+        }
+        indexOf(START);
+        indexOf(RESUME);
+        indexOf(HANG_UP);
+        mOtherIndex = indexOf(OTHER);
+    }
+
+    /**
+     * @return the metrics the dialogues record to
+     */
+    public static CallPathMetrics getInstance() {
+        return sInstance;
+    }
+
+    public static void setInstance(CallPathMetrics instance) {
+        sInstance = instance;
+    }
+
+    /**
+     * @return the index of a state, registered on first use, or the index of {@link #OTHER} once all are taken
+     */
+    public int indexOf(String name) {
+        Integer index = mIndexes.get(name);
+        if (index != null) return index;
+
+        synchronized (mIndexes) {
+            index = mIndexes.get(name);
+            if (index != null) return index;
+            int count = mStateCount.get();
+            if (count == MAX_STATES) return mOtherIndex;
+            mNames.set(count, name);
+            mIndexes.put(name, count);
+            mStateCount.set(count + 1);
+            return count;
+        }
+    }
+
+    public void record(int from, int to) {
+        record(from, to, System.currentTimeMillis());
+    }
+
+    void record(int from, int to, long now) {
+        long period = now / mBucketMillis;
+        Bucket bucket = mBuckets[(int) (period % mBuckets.length)];
+        long bucketPeriod = bucket.mPeriod.get();
+        if (bucketPeriod != period) {
+            // A thread late by a whole window would count in the wrong period.
+            if (bucketPeriod > period) return;
+            if (bucket.mPeriod.compareAndSet(bucketPeriod, period)) {
+                bucket.clear();
+            }
+        }
+        int stripe = (int) Thread.currentThread().threadId() & STRIPES - 1;
+        bucket.mStripes[stripe].incrementAndGet(from * MAX_STATES + to);
+    }
+
+    /**
+     * @return the transitions counted over the window
+     */
+    public CallPathSnapshot snapshot() {
+        return snapshot(System.currentTimeMillis());
+    }
+
+    CallPathSnapshot snapshot(long now) {
+        int stateCount = mStateCount.get();
+        String[] names = new String[stateCount];
+        for (int index = 0; index < stateCount; index++) {
+            names[index] = mNames.get(index);
+        }
+
+        long period = now / mBucketMillis;
+        long[][] counts = new long[stateCount][stateCount];
+        for (Bucket bucket : mBuckets) {
+            long bucketPeriod = bucket.mPeriod.get();
+            if (bucketPeriod <= period - mBuckets.length || bucketPeriod > period) continue;
+            for (AtomicLongArray stripe : bucket.mStripes) {
+                for (int from = 0; from < stateCount; from++) {
+                    for (int to = 0; to < stateCount; to++) {
+                        counts[from][to] += stripe.get(from * MAX_STATES + to);
+                    }
+                }
+            }
+        }
+        return new CallPathSnapshot(Arrays.asList(names), counts, getWindowMillis());
+    }
+
+    public long getWindowMillis() {
+        return mBucketMillis * mBuckets.length;
+    }
+}
@@ -0,0 +1,240 @@
+/*
+ * Copyright (c) 2013 Nu Echo Inc. All rights reserved.
+ */
+
+package com.nuecho.rivr.samples.voicemail.metrics;
+
+import java.util.*;
+
+/**
+ * Transition counts of the {@link CallPathMetrics} over their window, with the analyses derived from them.
+ *
+ * @author Nu Echo Inc.
+ */
+public final class CallPathSnapshot {
+    // Bounds the search for the top paths, whatever the shape of the call flow.
+    private static final int MAX_EXPANSIONS = 10000;
+
+    private final List<String> mNames;
+    private final long[][] mCounts;
+    private final long[] mExits;
+    private final long mWindowMillis;
+
+    /**
+     * A transition between two states and how many times it was taken.
+     */
+    public static final class Transition {
+        private final String mFrom;
+        private final String mTo;
+        private final long mCount;
+
+        Transition(String from, String to, long count) {
+            mFrom = from;
+            mTo = to;
+            mCount = count;
+        }
+
+        public String getFrom() {
+            return mFrom;
+        }
+
+        public String getTo() {
+            return mTo;
+        }
+
+        public long getCount() {
+            return mCount;
+        }
+    }
+
+    /**
+     * An interaction and how many of the callers who reached it hung up during it.
+     */
+    public static final class DropOff {
+        private final String mInteraction;
+        private final long mVisits;
+        private final long mHangUps;
+
+        DropOff(String interaction, long visits, long hangUps) {
+            mInteraction = interaction;
+            mVisits = visits;
+            mHangUps = hangUps;
+        }
+
+        public String getInteraction() {
+            return mInteraction;
+        }
+
+        public long getVisits() {
+            return mVisits;
+        }
+
+        public long getHangUps() {
+            return mHangUps;
+        }
+
+        public double getRate() {
+            return mVisits == 0 ? 0 : (double) mHangUps / mVisits;
+        }
+    }
+
+    /**
+     * A path from the start of the calls to their end, with the share of the calls estimated to take it from the
+     * transition probabilities.
+     */
+    public static final class Path {
+        private final List<String> mStates;
+        private final double mShare;
+
+        Path(List<String> states, double share) {
+            mStates = Collections.unmodifiableList(states);
+            mShare = share;
+        }
+
+        public List<String> getStates() {
+            return mStates;
+        }
+
+        public double getShare() {
+            return mShare;
+        }
+    }
+
+    private static final class PartialPath implements Comparable<PartialPath> {
+        final int mState;
+        final PartialPath mPrevious;
+        final double mShare;
+        final int mLength;
+
+        PartialPath(int state, PartialPath previous, double share) {
+            mState = state;
+            mPrevious = previous;
+            mShare = share;
+            mLength = previous == null ? 1 : previous.mLength + 1;
+        }
+
+        @Override
+        public int compareTo(PartialPath other) {
+            return Double.compare(other.mShare, mShare);
+        }
+    }
+
+    CallPathSnapshot(List<String> names, long[][] counts, long windowMillis) {
+        mNames = names;
+        mCounts = counts;
+        mWindowMillis = windowMillis;
+        mExits = new long[names.size()];
+        for (int from = 0; from < names.size(); from++) {
+            for (int to = 0; to < names.size(); to++) {
+                mExits[from] += counts[from][to];
+            }
+        }
+    }
+
+    public long getWindowMillis() {
+        return mWindowMillis;
+    }
+
+    /**
+     * @return the number of calls started in the window, resumed dialogues excluded
+     */
+    public long getCalls() {
+        return mExits[mNames.indexOf(CallPathMetrics.START)];
+    }
+
+    /**
+     * @return how many times the transition was taken, 0 if either state is unknown
+     */
+    public long getCount(String from, String to) {
+        int fromIndex = mNames.indexOf(from);
+        int toIndex = mNames.indexOf(to);
+        return fromIndex < 0 || toIndex < 0 ? 0 : mCounts[fromIndex][toIndex];
+    }
+
+    /**
+     * @return the most taken transitions, most taken first
+     */
+    public List<Transition> getTopTransitions(int limit) {
+        List<Transition> transitions = new ArrayList<Transition>();
+        for (int from = 0; from < mNames.size(); from++) {
+            for (int to = 0; to < mNames.size(); to++) {
+                if (mCounts[from][to] > 0) {
+                    transitions.add(new Transition(mNames.get(from), mNames.get(to), mCounts[from][to]));
+                }
+            }
+        }
+        Collections.sort(transitions, new Comparator<Transition>() {
+            @Override
+            public int compare(Transition first, Transition second) {
+                return Long.compare(second.getCount(), first.getCount());
+            }
+        });
+        return transitions.subList(0, Math.min(limit, transitions.size()));
+    }
+
+    /**
+     * @return the interactions callers hung up during, most hang-ups first
+     */
+    public List<DropOff> getDropOffs(int limit) {
+        int hangUp = mNames.indexOf(CallPathMetrics.HANG_UP);
+        List<DropOff> dropOffs = new ArrayList<DropOff>();
+        for (int state = 0; state < mNames.size(); state++) {
+            if (mCounts[state][hangUp] > 0) {
+                dropOffs.add(new DropOff(mNames.get(state), mExits[state], mCounts[state][hangUp]));
+            }
+        }
+        Collections.sort(dropOffs, new Comparator<DropOff>() {
+            @Override
+            public int compare(DropOff first, DropOff second) {
+                return Long.compare(second.getHangUps(), first.getHangUps());
+            }
+        });
+        return dropOffs.subList(0, Math.min(limit, dropOffs.size()));
+    }
+
+    /**
+     * Finds the most likely complete paths, from {@link CallPathMetrics#START} to an end state, treating the calls as
+     * a Markov chain over the states. Paths are explored most likely first, so the first ones completed are the top
+     * ones.
+     *
+     * @param maxLength The maximum number of states of a path.
+     * @return the most likely paths, most likely first
+     */
+    public List<Path> getTopPaths(int limit, int maxLength) {
+        List<Path> paths = new ArrayList<Path>();
+        int start = mNames.indexOf(CallPathMetrics.START);
+        if (mExits[start] == 0) return paths;
+
+        PriorityQueue<PartialPath> queue = new PriorityQueue<PartialPath>();
+        queue.add(new PartialPath(start, null, 1));
+        int expansions = 0;
+        while (!queue.isEmpty() && paths.size() < limit && expansions++ < MAX_EXPANSIONS) {
+            PartialPath path = queue.poll();
+            if (path.mState != start && isEnd(path.mState)) {
+                paths.add(toPath(path));
+                continue;
+            }
+            if (path.mLength == maxLength) continue;
+            for (int next = 0; next < mNames.size(); next++) {
+                long count = mCounts[path.mState][next];
+                if (count > 0) {
+                    queue.add(new PartialPath(next, path, path.mShare * count / mExits[path.mState]));
+                }
+            }
+        }
+        return paths;
+    }
+
+    private boolean isEnd(int state) {
+        String name = mNames.get(state);
+        return name.startsWith("#") || mExits[state] == 0;
+    }
+
+    private Path toPath(PartialPath path) {
+        LinkedList<String> states = new LinkedList<String>();
+        for (PartialPath current = path; current != null; current = current.mPrevious) {
+            states.addFirst(mNames.get(current.mState));
+        }
+        return new Path(new ArrayList<String>(states), path.mShare);
+    }
+}
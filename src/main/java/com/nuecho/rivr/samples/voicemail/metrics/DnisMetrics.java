@@ -0,0 +1,76 @@
+/*
+ * Copyright (c) 2013 Nu Echo Inc. All rights reserved.
+ */
+
+package com.nuecho.rivr.samples.voicemail.metrics;
+
+import java.util.concurrent.atomic.*;
+
+/**
+ * Counts how the DNIS of each call was obtained and how long it took, from the start of the dialogue.
+ *
+ * @author Nu Echo Inc.
+ */
+public final class DnisMetrics {
+    /**
+     * Where the DNIS of a call came from.
+     */
+    public enum Source {
+        /**
+         * Parameter of the request starting the dialogue: no extra round trip.
+         */
+        FIRST_TURN,
+
+        /**
+         * Script turn reading <code>session.connection.local.uri</code>: one round trip to the VoiceXML browser.
+         */
+        SCRIPT,
+
+        /**
+         * Neither of the above.
+         */
+        UNAVAILABLE;
+    }
+
+    private static final Source[] SOURCES = Source.values();
+
+    private static final AtomicLongArray sCalls = new AtomicLongArray(SOURCES.length);
+    private static final AtomicLongArray sNanos = new AtomicLongArray(SOURCES.length);
+
+    private DnisMetrics() {}
+
+    /**
+     * Records how the DNIS of a call was obtained.
+     *
+     * @param source Where the DNIS came from.
+     * @param nanos How long it took, in nanoseconds.
+     */
+    public static void record(Source source, long nanos) {
+        sCalls.incrementAndGet(source.ordinal());
+        sNanos.addAndGet(source.ordinal(), nanos);
+    }
+
+    /**
+     * @return the number of calls whose DNIS came from a source
+     */
+    public static long getCalls(Source source) {
+        return sCalls.get(source.ordinal());
+    }
+
+    /**
+     * @return the total time, in nanoseconds, spent obtaining the DNIS from a source
+     */
+    public static long getNanos(Source source) {
+        return sNanos.get(source.ordinal());
+    }
+
+    /**
+     * Clears the counts of every source, e.g. after warming up the dialogues.
+     */
+    public static void reset() {
+        for (Source source : SOURCES) {
+            sCalls.set(source.ordinal(), 0);
+            sNanos.set(source.ordinal(), 0);
+        }
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright (c) 2013 Nu Echo Inc. All rights reserved.
+ */
+
+package com.nuecho.rivr.samples.voicemail.metrics;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * Timings and outcomes of the turns of every dialogue, by interaction name:
+ * <ul>
+ * <li>server time: from the previous input turn, or the start of the dialogue, until the output turn is sent;</li>
+ * <li>round trip time: from sending the output turn until the input turn is received, which includes the time the
+ * browser takes to play the prompts and collect the caller's input;</li>
+ * <li>reprompts: output turns sent again after a <code>noinput</code> or a <code>nomatch</code>;</li>
+ * <li>hang-ups: calls that ended during the turn.</li>
+ * </ul>
+ * At most {@link #MAX_INTERACTIONS} interaction names are tracked, the others are counted under {@link #OTHER}.
+ *
+ * @author Nu Echo Inc.
+ */
+public final class InteractionMetrics {
+    public static final int MAX_INTERACTIONS = 256;
+    public static final String OTHER = "other";
+
+    private static final ConcurrentMap<String, InteractionMetrics> INTERACTIONS = new ConcurrentHashMap<String, InteractionMetrics>();
+    private static final AtomicInteger INTERACTION_COUNT = new AtomicInteger();
+
+    private final LatencyHistogram mServerTime = new LatencyHistogram();
+    private final LatencyHistogram mRoundTripTime = new LatencyHistogram();
+    private final AtomicLong mReprompts = new AtomicLong();
+    private final AtomicLong mHangUps = new AtomicLong();
+
+    private InteractionMetrics() {}
+
+    /**
+     * @param interactionName The name of an output turn, possibly <code>null</code>.
+     * @return the metrics of the interaction
+     */
+    public static InteractionMetrics get(String interactionName) {
+        String name = interactionName == null ? OTHER : interactionName;
+        InteractionMetrics metrics = INTERACTIONS.get(name);
+        if (metrics != null) return metrics;
+
+        if (INTERACTION_COUNT.incrementAndGet() > MAX_INTERACTIONS) {
+            INTERACTION_COUNT.decrementAndGet();
+            name = OTHER;
+            metrics = INTERACTIONS.get(name);
+            if (metrics != null) return metrics;
+        }
+
+        metrics = new InteractionMetrics();
+        InteractionMetrics existing = INTERACTIONS.putIfAbsent(name, metrics);
+        if (existing != null) {
+            INTERACTION_COUNT.decrementAndGet();
+            return existing;
+        }
+        return metrics;
+    }
+
+    /**
+     * @return the metrics of every interaction seen so far, by name
+     */
+    public static SortedMap<String, InteractionMetrics> getAll() {
+        return new TreeMap<String, InteractionMetrics>(INTERACTIONS);
+    }
+
+    /**
+     * Forgets every interaction, e.g. after warming up the dialogues.
+     */
+    public static void reset() {
+        INTERACTIONS.clear();
+        INTERACTION_COUNT.set(0);
+    }
+
+    public LatencyHistogram getServerTime() {
+        return mServerTime;
+    }
+
+    public LatencyHistogram getRoundTripTime() {
+        return mRoundTripTime;
+    }
+
+    public void recordReprompt() {
+        mReprompts.incrementAndGet();
+    }
+
+    public long getReprompts() {
+        return mReprompts.get();
+    }
+
+    public void recordHangUp() {
+        mHangUps.incrementAndGet();
+    }
+
+    public long getHangUps() {
+        return mHangUps.get();
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright (c) 2013 Nu Echo Inc. All rights reserved.
+ */
+
+package com.nuecho.rivr.samples.voicemail.metrics;
+
+import java.util.concurrent.atomic.*;
+
+/**
+ * Lock-free histogram of durations with a fixed memory footprint.
+ * <p>
+ * Durations are recorded in microseconds into log-linear buckets: values under {@link #LINEAR_LIMIT} microseconds get
+ * their own bucket, larger ones are split into {@link #SUB_BUCKETS} buckets per power of two, so that a bucket never
+ * spans more than 1/8th of its lower bound. Durations above about 35 minutes fall in the last bucket. Recording a
+ * value increments two counters and never allocates.
+ *
+ * @author Nu Echo Inc.
+ */
+public final class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int LINEAR_LIMIT = SUB_BUCKETS * 2;
+    private static final int LINEAR_BITS = 4;
+    private static final int MAX_EXPONENT = 31;
+
+    static final int BUCKET_COUNT = LINEAR_LIMIT + (MAX_EXPONENT - LINEAR_BITS + 1) * SUB_BUCKETS;
+
+    private final AtomicLongArray mCounts = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong mSumMicros = new AtomicLong();
+
+    /**
+     * Records a duration.
+     *
+     * @param nanos The duration, in nanoseconds.
+     */
+    public void record(long nanos) {
+        long micros = Math.max(0, nanos / 1000);
+        mCounts.incrementAndGet(bucketOf(micros));
+        mSumMicros.addAndGet(micros);
+    }
+
+    /**
+     * @return the number of recorded durations
+     */
+    public long getCount() {
+        long count = 0;
+        for (int bucket = 0; bucket < BUCKET_COUNT; bucket++) {
+            count += mCounts.get(bucket);
+        }
+        return count;
+    }
+
+    /**
+     * @return the sum of the recorded durations, in microseconds
+     */
+    public long getSumMicros() {
+        return mSumMicros.get();
+    }
+
+    /**
+     * Estimates a quantile of the recorded durations. As samples keep being recorded while the buckets are read, the
+     * result is approximate.
+     *
+     * @param quantile The quantile, between 0 and 1.
+     * @return the upper bound, in microseconds, of the bucket holding the quantile, or 0 if nothing was recorded
+     */
+    public long getQuantileMicros(double quantile) {
+        long[] counts = new long[BUCKET_COUNT];
+        long total = 0;
+        for (int bucket = 0; bucket < BUCKET_COUNT; bucket++) {
+            counts[bucket] = mCounts.get(bucket);
+            total += counts[bucket];
+        }
+        if (total == 0) return 0;
+
+        long rank = (long) Math.ceil(quantile * total);
+        long seen = 0;
+        for (int bucket = 0; bucket < BUCKET_COUNT; bucket++) {
+            seen += counts[bucket];
+            if (seen >= rank && counts[bucket] > 0) return upperBound(bucket);
+        }
+        return upperBound(BUCKET_COUNT - 1);
+    }
+
+    static int bucketOf(long micros) {
+        if (micros < LINEAR_LIMIT) return (int) micros;
+        int exponent = 63 - Long.numberOfLeadingZeros(micros);
+        if (exponent > MAX_EXPONENT) return BUCKET_COUNT - 1;
+        int subBucket = (int) (micros >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return LINEAR_LIMIT + (exponent - LINEAR_BITS) * SUB_BUCKETS + subBucket;
+    }
+
+    /**
+     * @return the largest value, in microseconds, falling in a bucket
+     */
+    static long upperBound(int bucket) {
+        if (bucket < LINEAR_LIMIT) return bucket;
+        int exponent = (bucket - LINEAR_LIMIT) / SUB_BUCKETS + LINEAR_BITS;
+        int subBucket = (bucket - LINEAR_LIMIT) % SUB_BUCKETS;
+        long width = 1L << (exponent - SUB_BUCKET_BITS);
+        return (1L << exponent) + (subBucket + 1) * width - 1;
+    }
+}
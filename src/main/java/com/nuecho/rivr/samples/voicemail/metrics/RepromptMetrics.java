@@ -0,0 +1,97 @@
+/*
+ * Copyright (c) 2013 Nu Echo Inc. All rights reserved.
+ */
+
+package com.nuecho.rivr.samples.voicemail.metrics;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * Outcomes of the reprompts, by reprompt policy name:
+ * <ul>
+ * <li>noinputs and nomatches: interactions played again after a <code>noinput</code> or a <code>nomatch</code>;</li>
+ * <li>exits: dialogues ended because the reprompts were used up;</li>
+ * <li>dead air: time spent in turns that ended with a <code>noinput</code>;</li>
+ * <li>reclaimed: for the exits, the rest of the time a silent line would have kept the dialogue before the reprompts
+ * were bounded, estimated from the dialogue timeout.</li>
+ * </ul>
+ * The number of policies is bounded by their definition, so every name is tracked.
+ *
+ * @author Nu Echo Inc.
+ */
+public final class RepromptMetrics {
+    private static final ConcurrentMap<String, RepromptMetrics> POLICIES = new ConcurrentHashMap<String, RepromptMetrics>();
+
+    private final AtomicLong mNoInputs = new AtomicLong();
+    private final AtomicLong mNoMatches = new AtomicLong();
+    private final AtomicLong mExits = new AtomicLong();
+    private final AtomicLong mDeadAirNanos = new AtomicLong();
+    private final AtomicLong mReclaimedNanos = new AtomicLong();
+
+    private RepromptMetrics() {}
+
+    /**
+     * @return the metrics of the policy
+     */
+    public static RepromptMetrics get(String policyName) {
+        RepromptMetrics metrics = POLICIES.get(policyName);
+        if (metrics != null) return metrics;
+
+        metrics = new RepromptMetrics();
+        RepromptMetrics existing = POLICIES.putIfAbsent(policyName, metrics);
+        return existing == null ? metrics : existing;
+    }
+
+    /**
+     * @return the metrics of every policy used so far, by name
+     */
+    public static SortedMap<String, RepromptMetrics> getAll() {
+        return new TreeMap<String, RepromptMetrics>(POLICIES);
+    }
+
+    /**
+     * Forgets every policy, e.g. after warming up the dialogues.
+     */
+    public static void reset() {
+        POLICIES.clear();
+    }
+
+    public void recordNoInput(long deadAirNanos) {
+        mNoInputs.incrementAndGet();
+        mDeadAirNanos.addAndGet(deadAirNanos);
+    }
+
+    public void recordNoMatch() {
+        mNoMatches.incrementAndGet();
+    }
+
+    /**
+     * @param reclaimedNanos The estimated time, in nanoseconds, the dialogue would otherwise have gone on.
+     */
+    public void recordExit(long reclaimedNanos) {
+        mExits.incrementAndGet();
+        mReclaimedNanos.addAndGet(reclaimedNanos);
+    }
+
+    public long getNoInputs() {
+        return mNoInputs.get();
+    }
+
+    public long getNoMatches() {
+        return mNoMatches.get();
+    }
+
+    public long getExits() {
+        return mExits.get();
+    }
+
+    public long getDeadAirNanos() {
+        return mDeadAirNanos.get();
+    }
+
+    public long getReclaimedNanos() {
+        return mReclaimedNanos.get();
+    }
+}
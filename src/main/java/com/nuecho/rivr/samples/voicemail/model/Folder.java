@@ -0,0 +1,27 @@
+/*
+ * Copyright (c) 2013 Nu Echo Inc. All rights reserved.
+ */
+
+package com.nuecho.rivr.samples.voicemail.model;
+
+/**
+ * Mailbox folders.
+ *
+ * @author Nu Echo Inc.
+ */
+public enum Folder {
+    /**
+     * Messages not listened to yet.
+     */
+    NEW,
+
+    /**
+     * Messages listened to.
+     */
+    OLD,
+
+    /**
+     * Messages explicitly saved by the mailbox owner.
+     */
+    SAVED
+}
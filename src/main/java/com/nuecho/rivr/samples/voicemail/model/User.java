@@ -11,20 +11,11 @@ package com.nuecho.rivr.samples.voicemail.model;
 public final class User {
 
     private String mUsername;
-    private String mPassword;
 
-    public User(String username, String password) {
+    public User(String username) {
         mUsername = username;
-        mPassword = password;
     }
-    
-    /**
-     * @return the password
-     */
-    public String getPassword() {
-        return mPassword;
-    }
-    
+
     /**
      * @return the username
      */
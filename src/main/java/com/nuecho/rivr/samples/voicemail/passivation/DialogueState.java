@@ -0,0 +1,234 @@
+/*
+ * Copyright (c) 2013 Nu Echo Inc. All rights reserved.
+ */
+
+package com.nuecho.rivr.samples.voicemail.passivation;
+
+import java.io.*;
+import java.nio.charset.*;
+import java.security.*;
+import java.util.*;
+
+import com.nuecho.rivr.samples.voicemail.util.*;
+
+/**
+ * Position and variables of a dialogue between two turns: everything needed to resume the call flow in a new
+ * dialogue. The node is kept by name rather than by index, so that a state stays valid when the call flow is
+ * reloaded. The DNIS, login attempts and menu path of the call are kept too, so that the call detail record of a
+ * resumed dialogue covers the whole call.
+ * <p>
+ * A state is only handed back to the holder of its resume token, a random value never logged, since the dialogue id
+ * alone is no secret.
+ * <p>
+ * {@link #toBytes()} writes a compact binary form, typically under 100 bytes, which is what the
+ * {@link DialogueStateStore stores} keep.
+ *
+ * @author Nu Echo Inc.
+ */
+public final class DialogueState implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private static final int VERSION = 3;
+    private static final int FLAG_INSTRUMENTED = 1;
+    private static final int FLAG_EXTENSION = 2;
+    private static final int FLAG_DNIS = 4;
+    private static final int RESUME_TOKEN_BYTES = 16;
+    private static final Charset CHARSET = Charset.forName("UTF-8");
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    /**
+     * Value of {@link #getCurrentMessageId()} when no message is being played.
+     */
+    public static final long NO_MESSAGE = -1;
+
+    private final String mNodeName;
+    private final String mMailbox;
+    private final String mExtension;
+    private final long mCurrentMessageId;
+    private final boolean mInstrumented;
+    private final String mDnis;
+    private final int mLoginAttempts;
+    private final List<String> mMenuPath;
+    private final String mResumeToken;
+    private final long mTimestamp;
+
+    /**
+     * @param menuPath The names of the call flow nodes visited, in order, at most 65535.
+     * @param resumeToken The token required to resume the dialogue, see {@link #createResumeToken()}.
+     */
+    public DialogueState(String nodeName,
+                         String mailbox,
+                         String extension,
+                         long currentMessageId,
+                         boolean instrumented,
+                         String dnis,
+                         int loginAttempts,
+                         List<String> menuPath,
+                         String resumeToken,
+                         long timestamp) {
+        if (nodeName == null) throw new IllegalArgumentException("nodeName cannot be null");
+        if (mailbox == null) throw new IllegalArgumentException("mailbox cannot be null");
+        if (menuPath == null) throw new IllegalArgumentException("menuPath cannot be null");
+        if (menuPath.size() > 0xFFFF) throw new IllegalArgumentException("menuPath is too long: " + menuPath.size());
+        if (resumeToken == null) throw new IllegalArgumentException("resumeToken cannot be null");
+        mNodeName = nodeName;
+        mMailbox = mailbox;
+        mExtension = extension;
+        mCurrentMessageId = currentMessageId;
+        mInstrumented = instrumented;
+        mDnis = dnis;
+        mLoginAttempts = loginAttempts;
+        mMenuPath = Collections.unmodifiableList(new ArrayList<String>(menuPath));
+        mResumeToken = resumeToken;
+        mTimestamp = timestamp;
+    }
+
+    /**
+     * @return a new random resume token, 128 bits in hexadecimal
+     */
+    public static String createResumeToken() {
+        byte[] bytes = new byte[RESUME_TOKEN_BYTES];
+        RANDOM.nextBytes(bytes);
+        return HexUtils.toHex(bytes);
+    }
+
+    /**
+     * @return the name of the call flow node whose turn was pending
+     */
+    public String getNodeName() {
+        return mNodeName;
+    }
+
+    /**
+     * @return the mailbox of the logged in user
+     */
+    public String getMailbox() {
+        return mMailbox;
+    }
+
+    /**
+     * @return the extension of the message being left, or <code>null</code>
+     */
+    public String getExtension() {
+        return mExtension;
+    }
+
+    public long getCurrentMessageId() {
+        return mCurrentMessageId;
+    }
+
+    /**
+     * @return whether the dialogue plays the instrumented prompts
+     */
+    public boolean isInstrumented() {
+        return mInstrumented;
+    }
+
+    /**
+     * @return the DNIS of the call, or <code>null</code> if it was not available
+     */
+    public String getDnis() {
+        return mDnis;
+    }
+
+    public int getLoginAttempts() {
+        return mLoginAttempts;
+    }
+
+    /**
+     * @return the names of the call flow nodes visited, in order, up to and including the node whose turn was pending
+     */
+    public List<String> getMenuPath() {
+        return mMenuPath;
+    }
+
+    public String getResumeToken() {
+        return mResumeToken;
+    }
+
+    /**
+     * Compares a token with the resume token in constant time.
+     *
+     * @param token The token presented to resume the dialogue, may be <code>null</code>.
+     */
+    public boolean isResumeToken(String token) {
+        return token != null && MessageDigest.isEqual(mResumeToken.getBytes(CHARSET), token.getBytes(CHARSET));
+    }
+
+    /**
+     * @return when the state was captured, in milliseconds since the epoch
+     */
+    public long getTimestamp() {
+        return mTimestamp;
+    }
+
+    public byte[] toBytes() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        DataOutputStream output = new DataOutputStream(bytes);
+        try {
+            int flags = (mInstrumented ? FLAG_INSTRUMENTED : 0)
+                        | (mExtension != null ? FLAG_EXTENSION : 0)
+                        | (mDnis != null ? FLAG_DNIS : 0);
+            output.writeByte(VERSION);
+            output.writeByte(flags);
+            output.writeLong(mTimestamp);
+            output.writeLong(mCurrentMessageId);
+            output.writeUTF(mNodeName);
+            output.writeUTF(mMailbox);
+            output.writeUTF(mResumeToken);
+            if (mExtension != null) {
+                output.writeUTF(mExtension);
+            }
+            if (mDnis != null) {
+                output.writeUTF(mDnis);
+            }
+            output.writeInt(mLoginAttempts);
+            output.writeShort(mMenuPath.size());
+            for (String nodeName : mMenuPath) {
+                output.writeUTF(nodeName);
+            }
+            output.flush();
+        } catch (IOException exception) {
+            throw new IllegalStateException(exception);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * @throws IOException if the bytes are not a state written by {@link #toBytes()}
+     */
+    public static DialogueState fromBytes(byte[] bytes) throws IOException {
+        DataInputStream input = new DataInputStream(new ByteArrayInputStream(bytes));
+        int version = input.readUnsignedByte();
+        if (version != VERSION) throw new IOException("Unsupported dialogue state version " + version);
+        int flags = input.readUnsignedByte();
+        long timestamp = input.readLong();
+        long currentMessageId = input.readLong();
+        String nodeName = input.readUTF();
+        String mailbox = input.readUTF();
+        String resumeToken = input.readUTF();
+        String extension = (flags & FLAG_EXTENSION) != 0 ? input.readUTF() : null;
+        String dnis = (flags & FLAG_DNIS) != 0 ? input.readUTF() : null;
+        int loginAttempts = input.readInt();
+        int menuPathSize = input.readUnsignedShort();
+        List<String> menuPath = new ArrayList<String>(menuPathSize);
+        for (int index = 0; index < menuPathSize; index++) {
+            menuPath.add(input.readUTF());
+        }
+        return new DialogueState(nodeName,
+                                 mailbox,
+                                 extension,
+                                 currentMessageId,
+                                 (flags & FLAG_INSTRUMENTED) != 0,
+                                 dnis,
+                                 loginAttempts,
+                                 menuPath,
+                                 resumeToken,
+                                 timestamp);
+    }
+
+    @Override
+    public String toString() {
+        return "DialogueState[" + mNodeName + ", mailbox " + mMailbox + "]";
+    }
+}
@@ -0,0 +1,39 @@
+/*
+ * Copyright (c) 2013 Nu Echo Inc. All rights reserved.
+ */
+
+package com.nuecho.rivr.samples.voicemail.passivation;
+
+import java.io.*;
+
+/**
+ * Keeps the {@link DialogueState} of passivated dialogues, by dialogue id, until they are resumed or expire.
+ * Implementations must be thread-safe.
+ *
+ * @author Nu Echo Inc.
+ */
+public interface DialogueStateStore {
+
+    /**
+     * Saves the state of a dialogue, replacing any state saved under the same id.
+     *
+     * @throws IOException if the state cannot be saved
+     */
+    void save(String dialogueId, DialogueState state) throws IOException;
+
+    /**
+     * Removes the state of a dialogue.
+     *
+     * @return the state, or <code>null</code> if there is none
+     * @throws IOException if the state cannot be read
+     */
+    DialogueState take(String dialogueId) throws IOException;
+
+    /**
+     * Removes the states saved before a time.
+     *
+     * @param timestamp The time, in milliseconds since the epoch.
+     * @return the number of states removed
+     */
+    int purge(long timestamp);
+}
@@ -0,0 +1,43 @@
+/*
+ * Copyright (c) 2013 Nu Echo Inc. All rights reserved.
+ */
+
+package com.nuecho.rivr.samples.voicemail.passivation;
+
+import com.nuecho.rivr.core.util.*;
+
+/**
+ * Holds the {@link DialogueStateStore} of passivated dialogues and the idle timeout after which a dialogue waiting for
+ * the VoiceXML browser is passivated. Without a store, dialogues are never passivated.
+ *
+ * @author Nu Echo Inc.
+ */
+public final class DialogueStateStores {
+    private static volatile DialogueStateStore sStore;
+    private static volatile Duration sIdleTimeout;
+
+    private DialogueStateStores() {}
+
+    /**
+     * @return the state store, or <code>null</code> if passivation is disabled
+     */
+    public static DialogueStateStore getStore() {
+        return sStore;
+    }
+
+    /**
+     * @return how long a dialogue waits for an input turn before being passivated
+     */
+    public static Duration getIdleTimeout() {
+        return sIdleTimeout;
+    }
+
+    /**
+     * @param store The state store, or <code>null</code> to disable passivation.
+     * @param idleTimeout How long a dialogue waits for an input turn before being passivated.
+     */
+    public static void setStore(DialogueStateStore store, Duration idleTimeout) {
+        sIdleTimeout = idleTimeout;
+        sStore = store;
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) 2013 Nu Echo Inc. All rights reserved.
+ */
+
+package com.nuecho.rivr.samples.voicemail.passivation;
+
+import java.io.*;
+
+import com.nuecho.rivr.samples.voicemail.util.*;
+
+/**
+ * {@link DialogueStateStore} keeping each state in its own small file of a directory, named after the hexadecimal form
+ * of the dialogue id. States are written to a temporary file renamed into place, and taken by renaming them away
+ * first, so that a state is never read half written nor resumed twice, even from a directory shared by the nodes of a
+ * cluster.
+ *
+ * @author Nu Echo Inc.
+ */
+public final class FileDialogueStateStore implements DialogueStateStore {
+    private static final String STATE_EXTENSION = ".state";
+    private static final String TEMPORARY_EXTENSION = ".tmp";
+    private static final String TAKEN_EXTENSION = ".taken";
+
+    private final File mDirectory;
+
+    public FileDialogueStateStore(File directory) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs())
+            throw new IOException("Unable to create directory " + directory);
+        mDirectory = directory;
+    }
+
+    @Override
+    public void save(String dialogueId, DialogueState state) throws IOException {
+        String name = FileUtils.toFileName(dialogueId);
+        File temporary = new File(mDirectory, name + TEMPORARY_EXTENSION);
+        OutputStream output = new FileOutputStream(temporary);
+        try {
+            output.write(state.toBytes());
+        } finally {
+            output.close();
+        }
+
+        File file = new File(mDirectory, name + STATE_EXTENSION);
+        FileUtils.replace(temporary, file);
+    }
+
+    @Override
+    public DialogueState take(String dialogueId) throws IOException {
+        String name = FileUtils.toFileName(dialogueId);
+        File taken = new File(mDirectory, name + TAKEN_EXTENSION);
+        if (!new File(mDirectory, name + STATE_EXTENSION).renameTo(taken)) return null;
+
+        try {
+            byte[] bytes = new byte[(int) taken.length()];
+            DataInputStream input = new DataInputStream(new FileInputStream(taken));
+            try {
+                input.readFully(bytes);
+            } finally {
+                input.close();
+            }
+            return DialogueState.fromBytes(bytes);
+        } finally {
+            taken.delete();
+        }
+    }
+
+    @Override
+    public int purge(long timestamp) {
+        File[] files = mDirectory.listFiles();
+        if (files == null) return 0;
+
+        int purged = 0;
+        for (File file : files) {
+            if (file.getName().endsWith(STATE_EXTENSION) && file.lastModified() < timestamp && file.delete()) {
+                purged++;
+            }
+        }
+        return purged;
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright (c) 2013 Nu Echo Inc. All rights reserved.
+ */
+
+package com.nuecho.rivr.samples.voicemail.passivation;
+
+import java.io.*;
+import java.nio.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * {@link DialogueStateStore} keeping the states in direct buffers, outside of the Java heap. Only the map entries and
+ * the buffer headers remain on the heap, a few dozen bytes per passivated dialogue. States don't survive a restart.
+ *
+ * @author Nu Echo Inc.
+ */
+public final class OffHeapDialogueStateStore implements DialogueStateStore {
+    private final ConcurrentMap<String, StoredState> mStates = new ConcurrentHashMap<String, StoredState>();
+
+    @Override
+    public void save(String dialogueId, DialogueState state) {
+        byte[] bytes = state.toBytes();
+        ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length);
+        buffer.put(bytes);
+        buffer.flip();
+        mStates.put(dialogueId, new StoredState(buffer, state.getTimestamp()));
+    }
+
+    @Override
+    public DialogueState take(String dialogueId) throws IOException {
+        StoredState stored = mStates.remove(dialogueId);
+        if (stored == null) return null;
+
+        byte[] bytes = new byte[stored.mBuffer.remaining()];
+        stored.mBuffer.duplicate().get(bytes);
+        return DialogueState.fromBytes(bytes);
+    }
+
+    @Override
+    public int purge(long timestamp) {
+        int purged = 0;
+        for (Iterator<StoredState> iterator = mStates.values().iterator(); iterator.hasNext();) {
+            if (iterator.next().mTimestamp < timestamp) {
+                iterator.remove();
+                purged++;
+            }
+        }
+        return purged;
+    }
+
+    private static final class StoredState {
+        private final ByteBuffer mBuffer;
+        private final long mTimestamp;
+
+        public StoredState(ByteBuffer buffer, long timestamp) {
+            mBuffer = buffer;
+            mTimestamp = timestamp;
+        }
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright (c) 2013 Nu Echo Inc. All rights reserved.
+ */
+
+package com.nuecho.rivr.samples.voicemail.playback;
+
+import java.util.*;
+
+import com.nuecho.rivr.samples.voicemail.ingest.*;
+import com.nuecho.rivr.samples.voicemail.store.*;
+
+/**
+ * The messages a caller listens to, in order, and where the playback stands in the current one.
+ * <p>
+ * Positions are byte offsets in the recording of the current message. Each playback starts at the
+ * {@link #getOffset() offset} and the position it reached, when the caller interrupted it, is
+ * {@link #setElapsedMillis(long) recorded}. Skipping moves the next offset from that position, so that the rest of the
+ * recording is fetched from there instead of from its start. Only headerless mu-law recordings can start anywhere;
+ * other recordings always play from their start.
+ * <p>
+ * Not thread-safe: a playlist belongs to one dialogue.
+ *
+ * @author Nu Echo Inc.
+ */
+public final class Playlist {
+    /**
+     * How far a skip moves the playback, in milliseconds.
+     */
+    public static final long SKIP_MILLIS = 5000;
+
+    private static final int BYTES_PER_MILLI = WavTranscoder.SAMPLE_RATE / 1000;
+
+    private final List<VoiceMessage> mMessages;
+    private int mIndex;
+    private int mOffset;
+    private int mPosition;
+
+    /**
+     * @param messages The messages, in the order they are played.
+     * @param currentId The ID of the message to start with. The first message is used if it isn't in the list.
+     */
+    public Playlist(List<VoiceMessage> messages, long currentId) {
+        mMessages = new ArrayList<VoiceMessage>(messages);
+        for (int index = 0; index < mMessages.size(); index++) {
+            if (mMessages.get(index).getId() == currentId) {
+                mIndex = index;
+            }
+        }
+    }
+
+    /**
+     * @return the current message, or <code>null</code> if the list is empty
+     */
+    public VoiceMessage getCurrent() {
+        return mMessages.isEmpty() ? null : mMessages.get(mIndex);
+    }
+
+    /**
+     * @return the message after the current one, or <code>null</code> if there is none
+     */
+    public VoiceMessage getNext() {
+        return mIndex + 1 < mMessages.size() ? mMessages.get(mIndex + 1) : null;
+    }
+
+    /**
+     * Replaces the current message by a newer copy of it, after a move.
+     */
+    public void update(VoiceMessage message) {
+        VoiceMessage current = getCurrent();
+        if (current != null && current.getId() == message.getId()) {
+            mMessages.set(mIndex, message);
+        }
+    }
+
+    /**
+     * @return the byte offset in the recording of the current message at which the next playback starts
+     */
+    public int getOffset() {
+        return mOffset;
+    }
+
+    /**
+     * Records how long the last playback of the current message lasted, from its offset, before it was interrupted.
+     */
+    public void setElapsedMillis(long elapsedMillis) {
+        VoiceMessage current = getCurrent();
+        if (current == null || !isSeekable(current)) {
+            mPosition = 0;
+            return;
+        }
+        int remaining = current.getAudioLength() - mOffset;
+        mPosition = mOffset + (int) Math.min(remaining, Math.max(0, elapsedMillis) * BYTES_PER_MILLI);
+    }
+
+    /**
+     * Records that the last playback of the current message reached its end.
+     */
+    public void setPlayedToEnd() {
+        VoiceMessage current = getCurrent();
+        mPosition = current == null ? 0 : current.getAudioLength();
+    }
+
+    /**
+     * Moves to the previous message, or to the start of the first one.
+     */
+    public void previous() {
+        if (mIndex > 0) {
+            mIndex--;
+        }
+        replay();
+    }
+
+    /**
+     * Moves to the next message, or to the start of the last one.
+     */
+    public void next() {
+        if (mIndex + 1 < mMessages.size()) {
+            mIndex++;
+        }
+        replay();
+    }
+
+    /**
+     * Moves to the start of the current message.
+     */
+    public void replay() {
+        mOffset = 0;
+        mPosition = 0;
+    }
+
+    /**
+     * Moves the playback of the current message from the position reached by the last playback.
+     *
+     * @param millis How far to move, backward when negative.
+     */
+    public void skip(long millis) {
+        VoiceMessage current = getCurrent();
+        if (current == null || !isSeekable(current)) {
+            replay();
+            return;
+        }
+        long offset = mPosition + millis * BYTES_PER_MILLI;
+        mOffset = (int) Math.max(0, Math.min(current.getAudioLength(), offset));
+        mPosition = mOffset;
+    }
+
+    /**
+     * @return whether the recording of a message can be played from any offset
+     */
+    public static boolean isSeekable(VoiceMessage message) {
+        return WavTranscoder.CONTENT_TYPE.equals(message.getContentType());
+    }
+}
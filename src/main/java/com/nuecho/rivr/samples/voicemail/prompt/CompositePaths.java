@@ -0,0 +1,97 @@
+/*
+ * Copyright (c) 2013 Nu Echo Inc. All rights reserved.
+ */
+
+package com.nuecho.rivr.samples.voicemail.prompt;
+
+import java.util.*;
+
+/**
+ * Paths of composite prompts: the concatenation of several prompt files of a {@link PromptSet}, served as a single
+ * file. The path of a composite names its parts, <code>/&lt;directory&gt;/composite/vm-Old+vm-messages.ulaw</code>
+ * for instance, so that any composite can be built from its path alone. A composite has at most {@link #MAX_PARTS}
+ * parts.
+ *
+ * @author Nu Echo Inc.
+ */
+public final class CompositePaths {
+    public static final String PROMPT_EXTENSION = ".ulaw";
+    public static final int MAX_PARTS = 40;
+
+    private static final String COMPOSITE_DIRECTORY = "/composite/";
+    private static final char SEPARATOR = '+';
+
+    private CompositePaths() {}
+
+    /**
+     * @param promptSet The prompt set of the parts.
+     * @param audioNames The names of the parts, without extension.
+     * @return the path, relative to the context path, of the composite
+     */
+    public static String toPath(PromptSet promptSet, String... audioNames) {
+        return toPath(promptSet, Arrays.asList(audioNames));
+    }
+
+    /**
+     * @param promptSet The prompt set of the parts.
+     * @param audioNames The names of the parts, without extension.
+     * @return the path, relative to the context path, of the composite
+     */
+    public static String toPath(PromptSet promptSet, List<String> audioNames) {
+        StringBuilder builder = new StringBuilder();
+        builder.append('/').append(promptSet.getDirectory()).append(COMPOSITE_DIRECTORY);
+        for (int i = 0; i < audioNames.size(); i++) {
+            if (i > 0) {
+                builder.append(SEPARATOR);
+            }
+            builder.append(audioNames.get(i));
+        }
+        return builder.append(PROMPT_EXTENSION).toString();
+    }
+
+    /**
+     * @param path A path relative to the context path.
+     * @return the paths of the parts of the composite, or <code>null</code> if the path isn't a valid composite path
+     */
+    public static List<String> getPartPaths(String path) {
+        List<String> names = getPartNames(path);
+        if (names == null) return null;
+
+        String directory = path.substring(0, path.indexOf(COMPOSITE_DIRECTORY));
+        List<String> partPaths = new ArrayList<String>(names.size());
+        for (String name : names) {
+            partPaths.add(directory + "/" + name + PROMPT_EXTENSION);
+        }
+        return partPaths;
+    }
+
+    /**
+     * @param path A path relative to the context path.
+     * @return the names of the parts of the composite, without extension, or <code>null</code> if the path isn't a
+     *         valid composite path
+     */
+    public static List<String> getPartNames(String path) {
+        if (!path.startsWith("/") || !path.endsWith(PROMPT_EXTENSION)) return null;
+        int compositeDirectory = path.indexOf(COMPOSITE_DIRECTORY);
+        if (compositeDirectory <= 1) return null;
+
+        if (path.lastIndexOf('/', compositeDirectory - 1) > 0) return null;
+        String names = path.substring(compositeDirectory + COMPOSITE_DIRECTORY.length(),
+                                      path.length() - PROMPT_EXTENSION.length());
+
+        List<String> partNames = new ArrayList<String>();
+        int start = 0;
+        while (start <= names.length()) {
+            if (partNames.size() == MAX_PARTS) return null;
+            int end = names.indexOf(SEPARATOR, start);
+            if (end < 0) {
+                end = names.length();
+            }
+            String name = names.substring(start, end);
+            if (name.isEmpty() || name.indexOf('/') >= 0 || name.contains("..")) return null;
+            partNames.add(name);
+            start = end + 1;
+        }
+        return partNames;
+    }
+}
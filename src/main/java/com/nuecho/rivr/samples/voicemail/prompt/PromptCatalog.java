@@ -0,0 +1,403 @@
+/*
+ * Copyright (c) 2013 Nu Echo Inc. All rights reserved.
+ */
+
+package com.nuecho.rivr.samples.voicemail.prompt;
+
+import static com.nuecho.rivr.voicexml.turn.output.OutputTurns.interaction;
+import static java.lang.String.format;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import com.nuecho.rivr.core.util.*;
+import com.nuecho.rivr.voicexml.turn.output.*;
+import com.nuecho.rivr.voicexml.turn.output.audio.*;
+import com.nuecho.rivr.voicexml.turn.output.grammar.*;
+
+/**
+ * Immutable catalog of the output turns of the voicemail call flow for one {@link PromptSet} under one context path.
+ * <p>
+ * None of these turns depend on the state of a call, so they are built once per context path and shared by all
+ * dialogues instead of being rebuilt every time a caller enters a menu.
+ * <p>
+ * When the {@link SayPrompts} recordings are installed for the prompt set, numbers and dates are read from them.
+ * Otherwise, numbers are read by speech synthesis and dates are not read.
+ *
+ * @author Nu Echo Inc.
+ */
+public final class PromptCatalog {
+    private static final Duration DEFAULT_TIMEOUT = Duration.seconds(5);
+    private static final Duration LOGIN_TIMEOUT = Duration.seconds(10);
+    private static final Duration RECORDING_TIMEOUT = Duration.seconds(10);
+    private static final Duration PLAYBACK_TIMEOUT = Duration.milliseconds(500);
+
+    private static final int PREBUILT_MAIN_MENUS = 10;
+
+    private static final List<String> PLAY_MESSAGE_HEADER = Arrays.asList("vm-first", "vm-message", "vm-received");
+
+    private static final String RECORDING_LOCATION = "application.recording";
+
+    /**
+     * Name of the mark played right before the recording of a message.
+     */
+    public static final String MESSAGE_MARK = "message";
+
+    // There is no recorded sorry prompt.
+    private static final String SORRY_TEXT = "Sorry, I didn't understand.";
+    // Nor a recorded prompt asking to enter the rest of a number.
+    private static final String CONTINUE_NUMBER_TEXT = "Please continue.";
+
+    private static final ConcurrentMap<String, PromptCatalog[]> CATALOGS = new ConcurrentHashMap<String, PromptCatalog[]>();
+
+    private final String mContextPath;
+    private final PromptSet mPromptSet;
+
+    private final VoiceXmlOutputTurn[] mTurns = new VoiceXmlOutputTurn[TurnId.values().length];
+    private final Interaction[] mMainMenus;
+    private final AudioItem[] mPlayMessagePrompts;
+    private final boolean mRecordedNumbers;
+    private final Set<String> mCompositePaths = new TreeSet<String>();
+    // The parts of the composites that are not say prompts, by composite.
+    private final Set<List<String>> mCompositeSequences = new HashSet<List<String>>();
+    private boolean mBuilt;
+
+    private PromptCatalog(String contextPath, PromptSet promptSet, boolean recordedNumbers) {
+        mContextPath = contextPath;
+        mPromptSet = promptSet;
+        mRecordedNumbers = recordedNumbers;
+
+        // C03
+        mMainMenus = new Interaction[PREBUILT_MAIN_MENUS];
+        for (int messageCount = 0; messageCount < PREBUILT_MAIN_MENUS; messageCount++) {
+            mMainMenus[messageCount] = createMainMenu(messageCount);
+        }
+        // C04 first message received "date" from "phone number" recording
+        mPlayMessagePrompts = new AudioItem[] {composite(PLAY_MESSAGE_HEADER)};
+
+        for (TurnId turnId : TurnId.values()) {
+            add(turnId, createTurn(turnId));
+        }
+
+        mBuilt = true;
+    }
+
+    /**
+     * Builds a turn of the catalog. Once the catalog is built, the turn is built anew, as the dialogue used to on
+     * every visit of a menu; only the allocation benchmark does that.
+     */
+    VoiceXmlOutputTurn createTurn(TurnId turnId) {
+        switch (turnId) {
+            // C01
+            case ASK_LOGIN:
+                return audioWithDtmf("ask-login", "vm-login", 4, LOGIN_TIMEOUT);
+            // C02
+            case ASK_PASSWORD:
+                return audioWithDtmf("ask-password", "vm-password", 4, LOGIN_TIMEOUT);
+            // C06
+            case INCORRECT_MAILBOX:
+                return audioWithDtmf("incorrect-mailbox", "vm-incorrect-mailbox", 4, LOGIN_TIMEOUT);
+            case LOGIN_GOODBYE:
+                return audio("goodbye", "vm-goodbye");
+            // C03
+            case MAIN_MENU:
+                return mBuilt ? createMainMenu(0) : mMainMenus[0];
+            // C50
+            case GOOD_BYE:
+                return audio("good-bye", "vm-goodbye");
+            // C07
+            case MAILBOX_OPTIONS:
+                return audioWithDtmf("mailbox-options", "vm-options", 1);
+            // C08
+            case RECORD_NAME:
+                return record("record-name", "vm-rec-name");
+            // C09, sorry played on nomatch by the reprompt policy
+            case CONFIRM_NAME:
+                return audioWithDtmf("confirm-name", "vm-review", 1);
+            // C10
+            case NAME_SAVED:
+                return audio("message-saved", "vm-msgsaved");
+            // C04
+            case PLAY_MESSAGE:
+                AudioItem[] playMessagePrompts = mBuilt
+                        ? new AudioItem[] {composite(PLAY_MESSAGE_HEADER)}
+                        : mPlayMessagePrompts;
+                return interaction("play-message").addPrompt(playMessagePrompts).build();
+            // C05
+            case CALL_MENU:
+                return audioWithDtmf("call-menu", "vm-advopts", 1);
+            // C17 which folder loop press dtmf for foldername messages
+            case ASK_FOLDER_TO_SAVE:
+                return audioWithDtmf("ask-folder-to-save", "vm-savefolder", 1);
+            // C18 message 1 savedto old messages
+            case MESSAGE_SAVED:
+                return audio("message-saved", "vm-savedto");
+            // C11
+            case ADVANCED_OPTIONS:
+                return audioWithDtmf("advanced-options", "vm-leavemsg", 1);
+            // C12
+            case ASK_EXTENSION:
+                return audioWithDtmf("ask-extension", "vm-extension", 4);
+            // C13
+            case INVALID_EXTENSION:
+                return audio("invalid-extension", "pbx-invalid");
+            // C14
+            case ASK_MESSAGE:
+                return record("ask-message", "vm-intro");
+            // C15
+            case ASK_NUMBER_TO_CALL:
+                DtmfRecognition toCallDtmf = dtmfBargeIn("#");
+                return interaction("ask-number-to-call").addPrompt(toCallDtmf, audio("vm-enter-num-to-call"))
+                                                        .build(toCallDtmf, DEFAULT_TIMEOUT);
+            // Played when the digits entered for C12 or C15 are only the start of a number
+            case CONTINUE_NUMBER:
+                DtmfRecognition continueDtmf = dtmfBargeIn("#");
+                return interaction("continue-number").addPrompt(continueDtmf, synthesis(CONTINUE_NUMBER_TEXT))
+                                                     .build(continueDtmf, DEFAULT_TIMEOUT);
+            // C16
+            case DIAL_OUT:
+                return audio("dial-out", "vm-dialout");
+            // Played before an interaction is played again after a nomatch
+            case SORRY:
+                return new Message("sorry", synthesis(SORRY_TEXT));
+            default:
+                throw new IllegalArgumentException("Unknown turn " + turnId);
+        }
+    }
+
+    /**
+     * Builds the catalogs of every {@link PromptSet} for a context path, unless they were already built. Meant to be
+     * called once when the web application starts so that the first callers don't pay for it.
+     *
+     * @param contextPath The context path under which the prompts are served.
+     */
+    public static void initialize(String contextPath) {
+        initialize(contextPath, EnumSet.noneOf(PromptSet.class));
+    }
+
+    /**
+     * Builds the catalogs of every {@link PromptSet} for a context path, unless they were already built.
+     *
+     * @param contextPath The context path under which the prompts are served.
+     * @param recordedNumbers The prompt sets for which the {@link SayPrompts} recordings are installed.
+     */
+    public static void initialize(String contextPath, Set<PromptSet> recordedNumbers) {
+        getCatalogs(contextPath, recordedNumbers);
+    }
+
+    /**
+     * Returns the shared catalog for a context path and a prompt set, building it on first use.
+     *
+     * @param contextPath The context path under which the prompts are served.
+     * @param promptSet The prompt set.
+     */
+    public static PromptCatalog get(String contextPath, PromptSet promptSet) {
+        return getCatalogs(contextPath, EnumSet.noneOf(PromptSet.class))[promptSet.ordinal()];
+    }
+
+    private static PromptCatalog[] getCatalogs(String contextPath, Set<PromptSet> recordedNumbers) {
+        PromptCatalog[] catalogs = CATALOGS.get(contextPath);
+        if (catalogs == null) {
+            PromptSet[] promptSets = PromptSet.values();
+            catalogs = new PromptCatalog[promptSets.length];
+            for (PromptSet promptSet : promptSets) {
+                catalogs[promptSet.ordinal()] = create(contextPath, promptSet, recordedNumbers.contains(promptSet));
+            }
+
+            PromptCatalog[] existing = CATALOGS.putIfAbsent(contextPath, catalogs);
+            if (existing != null) {
+                catalogs = existing;
+            }
+        }
+        return catalogs;
+    }
+
+    /**
+     * Builds a new, unshared, catalog.
+     */
+    static PromptCatalog create(String contextPath, PromptSet promptSet, boolean recordedNumbers) {
+        return new PromptCatalog(contextPath, promptSet, recordedNumbers);
+    }
+
+    public String getContextPath() {
+        return mContextPath;
+    }
+
+    public PromptSet getPromptSet() {
+        return mPromptSet;
+    }
+
+    /**
+     * @return the paths, relative to the context path, of the composite prompts played by the turns of the catalog
+     */
+    public Set<String> getCompositePaths() {
+        // Not modified once the catalog is built.
+        return Collections.unmodifiableSet(mCompositePaths);
+    }
+
+    /**
+     * Tells whether a composite can be played by the turns of the catalog: its parts are those of a prebuilt
+     * composite, reading other numbers or dates.
+     *
+     * @param path The path of the composite, relative to the context path.
+     */
+    public boolean isPlayable(String path) {
+        if (!path.startsWith("/" + mPromptSet.getDirectory() + "/")) return false;
+        List<String> audioNames = CompositePaths.getPartNames(path);
+        return audioNames != null && mCompositeSequences.contains(getSequence(audioNames));
+    }
+
+    /**
+     * @return the prebuilt turn identified by the turn ID
+     */
+    public VoiceXmlOutputTurn getTurn(TurnId turnId) {
+        return mTurns[turnId.ordinal()];
+    }
+
+    /**
+     * Returns the C03 turn announcing the number of old messages of the mailbox. Turns for the most common counts are
+     * prebuilt.
+     */
+    public Interaction getMainMenu(int messageCount) {
+        if (messageCount < PREBUILT_MAIN_MENUS) return mMainMenus[messageCount];
+        return createMainMenu(messageCount);
+    }
+
+    /**
+     * Builds the C04 turn for a stored message: the prebuilt prompts followed by the recording. The caller may
+     * interrupt the recording with a DTMF symbol; the time elapsed since the {@link #MESSAGE_MARK} is then returned
+     * with the recognition.
+     *
+     * @param recordingLocation The URL of the recording.
+     */
+    public Interaction createPlayMessage(String recordingLocation, long timestamp) {
+        List<AudioItem> prompts = new ArrayList<AudioItem>();
+        if (mRecordedNumbers) {
+            List<String> header = new ArrayList<String>(PLAY_MESSAGE_HEADER);
+            header.addAll(SayPrompts.sayDate(timestamp, TimeZone.getDefault()));
+            prompts.add(composite(header));
+        } else {
+            prompts.addAll(Arrays.asList(mPlayMessagePrompts));
+        }
+        return createPlayback(prompts, recordingLocation);
+    }
+
+    /**
+     * Builds the C04 turn resuming the playback of a stored message: the recording alone.
+     *
+     * @param recordingLocation The URL of the rest of the recording.
+     */
+    public Interaction createResumeMessage(String recordingLocation) {
+        return createPlayback(new ArrayList<AudioItem>(), recordingLocation);
+    }
+
+    private Interaction createPlayback(List<AudioItem> prompts, String recordingLocation) {
+        DtmfRecognition playbackDtmf = dtmfBargeIn(1);
+        prompts.add(new Mark(MESSAGE_MARK));
+        prompts.add(AudioFile.fromLocation(recordingLocation));
+        return interaction("play-message").addPrompt(playbackDtmf, prompts).build(playbackDtmf, PLAYBACK_TIMEOUT);
+    }
+
+    private Interaction createMainMenu(int messageCount) {
+        DtmfRecognition mainMenuDtmf = dtmfBargeIn(1);
+        List<String> menu = Arrays.asList("vm-Old",
+                                          messageCount == 1 ? "vm-message" : "vm-messages",
+                                          "vm-onefor",
+                                          "vm-Old",
+                                          "vm-messages",
+                                          "vm-opts");
+        if (mRecordedNumbers) {
+            List<String> prompts = new ArrayList<String>();
+            prompts.add("vm-youhave");
+            prompts.addAll(SayPrompts.sayNumber(messageCount));
+            prompts.addAll(menu);
+            return interaction("main-menu").addPrompt(mainMenuDtmf, composite(prompts))
+                                           .build(mainMenuDtmf, DEFAULT_TIMEOUT);
+        }
+
+        return interaction("main-menu").addPrompt(mainMenuDtmf,
+                                                  audio("vm-youhave"),
+                                                  synthesis(String.valueOf(messageCount)),
+                                                  composite(menu)).build(mainMenuDtmf, DEFAULT_TIMEOUT);
+    }
+
+    private void add(TurnId turnId, VoiceXmlOutputTurn turn) {
+        mTurns[turnId.ordinal()] = turn;
+    }
+
+    private Message audio(String interactionName, String audioName) {
+        return new Message(interactionName, audio(audioName));
+    }
+
+    private AudioItem synthesis(String text) {
+        return new SpeechSynthesis(text);
+    }
+
+    private AudioItem audio(String audioName) {
+        return AudioFile.fromLocation(audioPath(audioName));
+    }
+
+    /**
+     * Plays a sequence of prompt files as a single {@link CompositePaths composite} file. The composites of the
+     * prebuilt turns are recorded so that they can be prepared beforehand.
+     */
+    private AudioItem composite(List<String> audioNames) {
+        String path = CompositePaths.toPath(mPromptSet, audioNames);
+        if (!mBuilt) {
+            mCompositePaths.add(path);
+            mCompositeSequences.add(getSequence(audioNames));
+        }
+        return AudioFile.fromLocation(mContextPath + path);
+    }
+
+    private static List<String> getSequence(List<String> audioNames) {
+        List<String> sequence = new ArrayList<String>(audioNames.size());
+        for (String audioName : audioNames) {
+            if (!SayPrompts.isSayPrompt(audioName)) {
+                sequence.add(audioName);
+            }
+        }
+        return sequence;
+    }
+
+    private String audioPath(String audio) {
+        return format("%s/%s/%s.ulaw", mContextPath, mPromptSet.getDirectory(), audio);
+    }
+
+    private DtmfRecognition dtmfBargeIn(int dtmfLength) {
+        GrammarReference grammarReference = new GrammarReference("builtin:dtmf/digits?length=" + dtmfLength);
+        DtmfRecognition dtmfConfig = new DtmfRecognition(grammarReference);
+        dtmfConfig.setTermChar("A");
+        return dtmfConfig;
+    }
+
+    private DtmfRecognition dtmfBargeIn(String termChar) {
+        GrammarReference grammarReference = new GrammarReference("builtin:dtmf/digits");
+        DtmfRecognition dtmfConfig = new DtmfRecognition(grammarReference);
+        dtmfConfig.setTermChar(termChar);
+        return dtmfConfig;
+    }
+
+    private Interaction audioWithDtmf(String interactionName, String audio, int dtmfLength) {
+        return audioWithDtmf(interactionName, audio, dtmfLength, DEFAULT_TIMEOUT);
+    }
+
+    private Interaction audioWithDtmf(String interactionName, String audio, int dtmfLength, Duration noInputTimeout) {
+        DtmfRecognition dtmfconfig = dtmfBargeIn(dtmfLength);
+        return interaction(interactionName).addPrompt(dtmfconfig, audio(audio)).build(dtmfconfig, noInputTimeout);
+    }
+
+    private Interaction record(String interactionName, String audio) {
+        Recording recordingConfiguration = new Recording();
+        recordingConfiguration.setBeep(true);
+        recordingConfiguration.setDtmfTerm(true);
+        recordingConfiguration.setType("audio/x-wav");
+        recordingConfiguration.setClientSideAssignationDestination(RECORDING_LOCATION);
+        GrammarReference grammarReference = new GrammarReference("builtin:dtmf/digits?length=1");
+        DtmfRecognition config = new DtmfRecognition(grammarReference);
+        recordingConfiguration.setDtmfTermRecognition(config);
+        recordingConfiguration.setPostAudioToServer(true);
+
+        return interaction(interactionName).addPrompt(audio(audio)).build(recordingConfiguration, RECORDING_TIMEOUT);
+    }
+}
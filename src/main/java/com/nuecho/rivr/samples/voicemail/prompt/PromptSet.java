@@ -0,0 +1,35 @@
+/*
+ * Copyright (c) 2013 Nu Echo Inc. All rights reserved.
+ */
+
+package com.nuecho.rivr.samples.voicemail.prompt;
+
+/**
+ * Set of recorded prompts served under the web application context path.
+ * 
+ * @author Nu Echo Inc.
+ */
+public enum PromptSet {
+    /**
+     * Prompts played to real callers.
+     */
+    ORIGINAL("original"),
+
+    /**
+     * Prompts recognizable by the NuBot test robot.
+     */
+    INSTRUMENTED("instrumented");
+
+    private final String mDirectory;
+
+    private PromptSet(String directory) {
+        mDirectory = directory;
+    }
+
+    /**
+     * @return the directory, relative to the context path, holding the prompts
+     */
+    public String getDirectory() {
+        return mDirectory;
+    }
+}
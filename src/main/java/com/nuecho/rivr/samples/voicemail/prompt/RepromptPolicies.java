@@ -0,0 +1,197 @@
+/*
+ * Copyright (c) 2013 Nu Echo Inc. All rights reserved.
+ */
+
+package com.nuecho.rivr.samples.voicemail.prompt;
+
+import static java.lang.String.format;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * The {@link RepromptPolicy reprompt policies} of the interactions, by interaction name.
+ * <p>
+ * The policies are read from a properties file where every property is <code>&lt;policy&gt;.&lt;attribute&gt;</code>:
+ * <ul>
+ * <li><code>noinput</code>: how many times the interaction is played again after a noinput;</li>
+ * <li><code>nomatch</code>: how many times the interaction is played again after a nomatch;</li>
+ * <li><code>sorry</code>: whether the sorry turn is played before playing the interaction again after a nomatch;</li>
+ * <li><code>exit</code>: the {@link TurnId} key of the turn played once the reprompts are used up;</li>
+ * <li><code>interactions</code>: the comma separated names of the interactions following the policy.</li>
+ * </ul>
+ * The {@link #DEFAULT_POLICY} policy is required and applies to the interactions not listed by any policy. The other
+ * policies take the attributes they don't define from it.
+ * <p>
+ * The policies are read from the definition bundled with the application, unless another definition is
+ * {@link #setPolicies(RepromptPolicies) set}.
+ *
+ * @author Nu Echo Inc.
+ */
+public final class RepromptPolicies {
+    public static final String DEFAULT_POLICY = "default";
+
+    private static final String DEFAULT_DEFINITION = "reprompt-policies.properties";
+
+    private static final String NO_INPUT_ATTRIBUTE = "noinput";
+    private static final String NO_MATCH_ATTRIBUTE = "nomatch";
+    private static final String SORRY_ATTRIBUTE = "sorry";
+    private static final String EXIT_ATTRIBUTE = "exit";
+    private static final String INTERACTIONS_ATTRIBUTE = "interactions";
+
+    private static volatile RepromptPolicies sPolicies = loadDefault();
+
+    private final RepromptPolicy mDefaultPolicy;
+    private final Map<String, RepromptPolicy> mPolicies;
+    private final Map<String, RepromptPolicy> mByInteraction;
+
+    private RepromptPolicies(RepromptPolicy defaultPolicy,
+                             Map<String, RepromptPolicy> policies,
+                             Map<String, RepromptPolicy> byInteraction) {
+        mDefaultPolicy = defaultPolicy;
+        mPolicies = policies;
+        mByInteraction = byInteraction;
+    }
+
+    /**
+     * @return the policies used by new turns
+     */
+    public static RepromptPolicies getPolicies() {
+        return sPolicies;
+    }
+
+    public static void setPolicies(RepromptPolicies policies) {
+        sPolicies = policies;
+    }
+
+    /**
+     * Loads policies from a definition file.
+     *
+     * @throws IllegalArgumentException if the definition is invalid
+     */
+    public static RepromptPolicies load(File file) throws IOException {
+        InputStream input = new FileInputStream(file);
+        try {
+            return load(input);
+        } finally {
+            input.close();
+        }
+    }
+
+    /**
+     * Loads policies from a definition.
+     *
+     * @param input The stream from which the definition is read. It is not closed.
+     * @throws IllegalArgumentException if the definition is invalid
+     */
+    public static RepromptPolicies load(InputStream input) throws IOException {
+        Properties definition = new Properties();
+        definition.load(input);
+        return parse(definition);
+    }
+
+    /**
+     * @throws IllegalArgumentException if the definition is invalid
+     */
+    public static RepromptPolicies parse(Properties definition) {
+        SortedSet<String> names = new TreeSet<String>();
+        for (String property : definition.stringPropertyNames()) {
+            int separator = property.indexOf('.');
+            if (separator <= 0) throw new IllegalArgumentException(format("Invalid property [%s]", property));
+            names.add(property.substring(0, separator));
+        }
+        if (!names.contains(DEFAULT_POLICY))
+            throw new IllegalArgumentException(format("Missing [%s] policy", DEFAULT_POLICY));
+
+        RepromptPolicy defaultPolicy = parsePolicy(definition, DEFAULT_POLICY, null);
+        Map<String, RepromptPolicy> policies = new LinkedHashMap<String, RepromptPolicy>();
+        Map<String, RepromptPolicy> byInteraction = new HashMap<String, RepromptPolicy>();
+        policies.put(DEFAULT_POLICY, defaultPolicy);
+        for (String name : names) {
+            if (name.equals(DEFAULT_POLICY)) continue;
+            RepromptPolicy policy = parsePolicy(definition, name, defaultPolicy);
+            policies.put(name, policy);
+            String interactions = definition.getProperty(name + "." + INTERACTIONS_ATTRIBUTE, "");
+            for (String interaction : interactions.split(",")) {
+                interaction = interaction.trim();
+                if (interaction.isEmpty()) continue;
+                RepromptPolicy existing = byInteraction.put(interaction, policy);
+                if (existing != null)
+                    throw new IllegalArgumentException(format("Interaction [%s] in policies [%s] and [%s]",
+                                                              interaction,
+                                                              existing.getName(),
+                                                              name));
+            }
+        }
+        return new RepromptPolicies(defaultPolicy,
+                                    Collections.unmodifiableMap(policies),
+                                    Collections.unmodifiableMap(byInteraction));
+    }
+
+    /**
+     * @param interactionName The name of an interaction, possibly <code>null</code>.
+     * @return the policy of the interaction
+     */
+    public RepromptPolicy getPolicy(String interactionName) {
+        RepromptPolicy policy = interactionName == null ? null : mByInteraction.get(interactionName);
+        return policy == null ? mDefaultPolicy : policy;
+    }
+
+    /**
+     * @return every policy, by name
+     */
+    public Map<String, RepromptPolicy> getAll() {
+        return mPolicies;
+    }
+
+    private static RepromptPolicy parsePolicy(Properties definition, String name, RepromptPolicy defaults) {
+        Integer defaultNoInputs = defaults == null ? null : Integer.valueOf(defaults.getMaxNoInputs());
+        Integer defaultNoMatches = defaults == null ? null : Integer.valueOf(defaults.getMaxNoMatches());
+        int maxNoInputs = getInt(definition, name, NO_INPUT_ATTRIBUTE, defaultNoInputs);
+        int maxNoMatches = getInt(definition, name, NO_MATCH_ATTRIBUTE, defaultNoMatches);
+        String sorryValue = definition.getProperty(name + "." + SORRY_ATTRIBUTE);
+        boolean sorry = sorryValue == null
+                ? defaults != null && defaults.isSorry()
+                : Boolean.parseBoolean(sorryValue.trim());
+        String exit = definition.getProperty(name + "." + EXIT_ATTRIBUTE);
+        TurnId exitTurn = exit == null ? null : TurnId.fromKey(exit.trim());
+        if (exit != null && exitTurn == null)
+            throw new IllegalArgumentException(format("Unknown exit turn [%s] in policy [%s]", exit, name));
+        if (exitTurn == null) {
+            if (defaults == null) throw new IllegalArgumentException(format("Missing exit turn in policy [%s]", name));
+            exitTurn = defaults.getExitTurn();
+        }
+
+        return new RepromptPolicy(name, maxNoInputs, maxNoMatches, sorry, exitTurn);
+    }
+
+    private static int getInt(Properties definition, String name, String attribute, Integer defaultValue) {
+        String value = definition.getProperty(name + "." + attribute);
+        if (value == null) {
+            if (defaultValue == null)
+                throw new IllegalArgumentException(format("Missing [%s] in policy [%s]", attribute, name));
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException exception) {
+            throw new IllegalArgumentException(format("Invalid [%s] in policy [%s]: %s", attribute, name, value));
+        }
+    }
+
+    private static RepromptPolicies loadDefault() {
+        InputStream input = RepromptPolicies.class.getResourceAsStream(DEFAULT_DEFINITION);
+        if (input == null) throw new IllegalStateException("Missing reprompt policies " + DEFAULT_DEFINITION);
+        try {
+            return load(input);
+        } catch (IOException exception) {
+            throw new IllegalStateException("Unable to read reprompt policies " + DEFAULT_DEFINITION, exception);
+        } finally {
+            try {
+                input.close();
+            } catch (IOException exception) {
+                // Already read.
+            }
+        }
+    }
+}
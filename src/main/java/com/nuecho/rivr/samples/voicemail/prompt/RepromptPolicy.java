@@ -0,0 +1,73 @@
+/*
+ * Copyright (c) 2013 Nu Echo Inc. All rights reserved.
+ */
+
+package com.nuecho.rivr.samples.voicemail.prompt;
+
+/**
+ * How an interaction is played again when the caller doesn't answer (<code>noinput</code>) or gives an unexpected
+ * answer (<code>nomatch</code>), and when the dialogue gives up.
+ * <p>
+ * The counts are consecutive within one turn: after more than {@link #getMaxNoInputs()} noinputs or more than
+ * {@link #getMaxNoMatches()} nomatches, the {@link #getExitTurn() exit turn} is played and the dialogue ends.
+ *
+ * @author Nu Echo Inc.
+ */
+public final class RepromptPolicy {
+    private final String mName;
+    private final int mMaxNoInputs;
+    private final int mMaxNoMatches;
+    private final boolean mSorry;
+    private final TurnId mExitTurn;
+
+    /**
+     * @param name The name of the policy.
+     * @param maxNoInputs How many times the interaction is played again after a noinput.
+     * @param maxNoMatches How many times the interaction is played again after a nomatch.
+     * @param sorry Whether the {@link TurnId#SORRY} turn is played before playing the interaction again after a
+     *            nomatch.
+     * @param exitTurn The turn played once the reprompts are used up.
+     */
+    public RepromptPolicy(String name, int maxNoInputs, int maxNoMatches, boolean sorry, TurnId exitTurn) {
+        if (maxNoInputs < 0 || maxNoMatches < 0)
+            throw new IllegalArgumentException("Negative reprompt count for policy " + name);
+        mName = name;
+        mMaxNoInputs = maxNoInputs;
+        mMaxNoMatches = maxNoMatches;
+        mSorry = sorry;
+        mExitTurn = exitTurn;
+    }
+
+    public String getName() {
+        return mName;
+    }
+
+    public int getMaxNoInputs() {
+        return mMaxNoInputs;
+    }
+
+    public int getMaxNoMatches() {
+        return mMaxNoMatches;
+    }
+
+    public boolean isSorry() {
+        return mSorry;
+    }
+
+    public TurnId getExitTurn() {
+        return mExitTurn;
+    }
+
+    /**
+     * @return whether the reprompts are used up after that many consecutive noinputs and nomatches
+     */
+    public boolean isExhausted(int noInputs, int noMatches) {
+        return noInputs > mMaxNoInputs || noMatches > mMaxNoMatches;
+    }
+
+    @Override
+    public String toString() {
+        return "RepromptPolicy [" + mName + ", noinput=" + mMaxNoInputs + ", nomatch=" + mMaxNoMatches + ", sorry="
+               + mSorry + ", exit=" + mExitTurn.getKey() + "]";
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright (c) 2013 Nu Echo Inc. All rights reserved.
+ */
+
+package com.nuecho.rivr.samples.voicemail.prompt;
+
+import java.util.*;
+
+/**
+ * Reads numbers, digit strings and dates out of recorded prompt files instead of speech synthesis.
+ * <p>
+ * The methods return the names of the prompt files to play in sequence, to be played as a {@link CompositePaths
+ * composite}. They expect the following English recordings in each prompt set directory, named after the
+ * <code>digits</code> sounds of Asterisk:
+ * <ul>
+ * <li><code>digits-0</code> to <code>digits-19</code>, <code>digits-20</code> to <code>digits-90</code> by tens,
+ * <code>digits-hundred</code>, <code>digits-thousand</code>, <code>digits-million</code>,
+ * <code>digits-billion</code> and <code>digits-minus</code>;</li>
+ * <li><code>digits-star</code> and <code>digits-pound</code>;</li>
+ * <li><code>digits-day-0</code> (Sunday) to <code>digits-day-6</code>, <code>digits-mon-0</code> (January) to
+ * <code>digits-mon-11</code>, <code>digits-h-1</code> (first) to <code>digits-h-31</code>;</li>
+ * <li><code>digits-at</code>, <code>digits-oclock</code>, <code>digits-oh</code>, <code>digits-a-m</code> and
+ * <code>digits-p-m</code>.</li>
+ * </ul>
+ * The readings of numbers under {@link #CACHED_NUMBERS} are built once and shared.
+ *
+ * @author Nu Echo Inc.
+ */
+public final class SayPrompts {
+    public static final int CACHED_NUMBERS = 1000;
+
+    /**
+     * File whose presence in a prompt set directory tells that the recordings are installed.
+     */
+    public static final String MARKER_PROMPT = "digits-0";
+
+    private static final String PREFIX = "digits-";
+
+    private static final List<List<String>> NUMBERS = createNumberCache();
+
+    private SayPrompts() {}
+
+    /**
+     * @return whether a prompt is one of those read by this class
+     */
+    public static boolean isSayPrompt(String audioName) {
+        return audioName.startsWith(PREFIX);
+    }
+
+    /**
+     * @return the prompts reading a number, "one hundred twenty three" for 123
+     */
+    public static List<String> sayNumber(int number) {
+        if (number >= 0 && number < CACHED_NUMBERS) return NUMBERS.get(number);
+        List<String> prompts = new ArrayList<String>();
+        appendNumber(prompts, number);
+        return Collections.unmodifiableList(prompts);
+    }
+
+    /**
+     * @return the prompts reading a string digit by digit, "five one four" for "514". Characters other than digits,
+     *         <code>*</code> and <code>#</code> are skipped.
+     */
+    public static List<String> sayDigits(String digits) {
+        List<String> prompts = new ArrayList<String>(digits.length());
+        for (int i = 0; i < digits.length(); i++) {
+            char digit = digits.charAt(i);
+            if (digit >= '0' && digit <= '9') {
+                prompts.add(PREFIX + digit);
+            } else if (digit == '*') {
+                prompts.add(PREFIX + "star");
+            } else if (digit == '#') {
+                prompts.add(PREFIX + "pound");
+            }
+        }
+        return prompts;
+    }
+
+    /**
+     * @return the prompts reading a date and time, "Tuesday December third at ten oh five a m"
+     */
+    public static List<String> sayDate(long timestamp, TimeZone timeZone) {
+        Calendar calendar = Calendar.getInstance(timeZone, Locale.ENGLISH);
+        calendar.setTimeInMillis(timestamp);
+
+        List<String> prompts = new ArrayList<String>();
+        prompts.add(PREFIX + "day-" + (calendar.get(Calendar.DAY_OF_WEEK) - Calendar.SUNDAY));
+        prompts.add(PREFIX + "mon-" + (calendar.get(Calendar.MONTH) - Calendar.JANUARY));
+        prompts.add(PREFIX + "h-" + calendar.get(Calendar.DAY_OF_MONTH));
+        prompts.add(PREFIX + "at");
+
+        int hour = calendar.get(Calendar.HOUR);
+        appendNumber(prompts, hour == 0 ? 12 : hour);
+        int minute = calendar.get(Calendar.MINUTE);
+        if (minute == 0) {
+            prompts.add(PREFIX + "oclock");
+        } else {
+            if (minute < 10) {
+                prompts.add(PREFIX + "oh");
+            }
+            appendNumber(prompts, minute);
+        }
+        prompts.add(PREFIX + (calendar.get(Calendar.AM_PM) == Calendar.AM ? "a-m" : "p-m"));
+        return prompts;
+    }
+
+    private static void appendNumber(List<String> prompts, long number) {
+        if (number < 0) {
+            prompts.add(PREFIX + "minus");
+            number = -number;
+        }
+        if (number == 0) {
+            prompts.add(PREFIX + "0");
+            return;
+        }
+
+        number = appendGroup(prompts, number, 1000000000, "billion");
+        number = appendGroup(prompts, number, 1000000, "million");
+        number = appendGroup(prompts, number, 1000, "thousand");
+        if (number >= 100) {
+            prompts.add(PREFIX + number / 100);
+            prompts.add(PREFIX + "hundred");
+            number %= 100;
+        }
+        if (number >= 20) {
+            prompts.add(PREFIX + number / 10 * 10);
+            number %= 10;
+        }
+        if (number > 0) {
+            prompts.add(PREFIX + number);
+        }
+    }
+
+    private static long appendGroup(List<String> prompts, long number, long scale, String scaleName) {
+        if (number < scale) return number;
+        appendNumber(prompts, number / scale);
+        prompts.add(PREFIX + scaleName);
+        return number % scale;
+    }
+
+    private static List<List<String>> createNumberCache() {
+        List<List<String>> numbers = new ArrayList<List<String>>(CACHED_NUMBERS);
+        for (int number = 0; number < CACHED_NUMBERS; number++) {
+            List<String> prompts = new ArrayList<String>(4);
+            appendNumber(prompts, number);
+            numbers.add(Collections.unmodifiableList(prompts));
+        }
+        return Collections.unmodifiableList(numbers);
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright (c) 2013 Nu Echo Inc. All rights reserved.
+ */
+
+package com.nuecho.rivr.samples.voicemail.prompt;
+
+import java.util.*;
+
+/**
+ * Identifies the prebuilt output turns of a {@link PromptCatalog}. The key is the name by which call flow
+ * definitions refer to the turn.
+ *
+ * @author Nu Echo Inc.
+ */
+public enum TurnId {
+    ASK_LOGIN("ask-login"),
+    ASK_PASSWORD("ask-password"),
+    INCORRECT_MAILBOX("incorrect-mailbox"),
+    LOGIN_GOODBYE("login-goodbye"),
+    MAIN_MENU("main-menu"),
+    GOOD_BYE("good-bye"),
+    MAILBOX_OPTIONS("mailbox-options"),
+    RECORD_NAME("record-name"),
+    CONFIRM_NAME("confirm-name"),
+    NAME_SAVED("name-saved"),
+    PLAY_MESSAGE("play-message"),
+    CALL_MENU("call-menu"),
+    ASK_FOLDER_TO_SAVE("ask-folder-to-save"),
+    MESSAGE_SAVED("message-saved"),
+    ADVANCED_OPTIONS("advanced-options"),
+    ASK_EXTENSION("ask-extension"),
+    INVALID_EXTENSION("invalid-extension"),
+    ASK_MESSAGE("ask-message"),
+    ASK_NUMBER_TO_CALL("ask-number-to-call"),
+    CONTINUE_NUMBER("continue-number"),
+    DIAL_OUT("dial-out"),
+    SORRY("sorry");
+
+    private static final Map<String, TurnId> BY_KEY = new HashMap<String, TurnId>();
+
+    static {
+        for (TurnId turnId : values()) {
+            BY_KEY.put(turnId.getKey(), turnId);
+        }
+    }
+
+    private final String mKey;
+
+    private TurnId(String key) {
+        mKey = key;
+    }
+
+    public String getKey() {
+        return mKey;
+    }
+
+    /**
+     * @return the turn identified by the key, or <code>null</code> if there is none
+     */
+    public static TurnId fromKey(String key) {
+        return BY_KEY.get(key);
+    }
+}
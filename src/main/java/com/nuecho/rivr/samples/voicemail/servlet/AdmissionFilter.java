@@ -0,0 +1,101 @@
+/*
+ * Copyright (c) 2013 Nu Echo Inc. All rights reserved.
+ */
+
+package com.nuecho.rivr.samples.voicemail.servlet;
+
+import java.io.*;
+
+import javax.servlet.*;
+import javax.servlet.http.*;
+
+import org.slf4j.*;
+
+import com.nuecho.rivr.samples.voicemail.admission.*;
+
+/**
+ * Asks the {@link AdmissionController} before each new dialogue is started. Rejected calls get the static
+ * {@link #BUSY_DOCUMENT_PATH} VoiceXML document right away, which tells the caller to call back, instead of a dialogue.
+ * <p>
+ * The admitted dialogue releases its admission when it ends. If the dialogue servlet fails to start it, the filter
+ * releases it instead. Requests for running dialogues, and all requests when there is no admission controller, go
+ * straight to the servlet.
+ *
+ * @author Nu Echo Inc.
+ */
+public final class AdmissionFilter implements Filter {
+    public static final String BUSY_DOCUMENT_PATH = "/WEB-INF/system-busy.vxml";
+
+    private static final String VOICEXML_CONTENT_TYPE = "application/voicexml+xml";
+
+    private final Logger mLog = LoggerFactory.getLogger(getClass());
+
+    private byte[] mBusyDocument;
+
+    @Override
+    public void init(FilterConfig filterConfig) throws ServletException {
+        InputStream input = filterConfig.getServletContext().getResourceAsStream(BUSY_DOCUMENT_PATH);
+        if (input == null) throw new ServletException("Missing " + BUSY_DOCUMENT_PATH);
+        try {
+            try {
+                ByteArrayOutputStream document = new ByteArrayOutputStream();
+                byte[] buffer = new byte[1024];
+                int read;
+                while ((read = input.read(buffer)) >= 0) {
+                    document.write(buffer, 0, read);
+                }
+                mBusyDocument = document.toByteArray();
+            } finally {
+                input.close();
+            }
+        } catch (IOException exception) {
+            throw new ServletException("Unable to read " + BUSY_DOCUMENT_PATH, exception);
+        }
+    }
+
+    @Override
+    public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain) throws IOException,
+            ServletException {
+        AdmissionController admissionController = AdmissionControllers.getAdmissionController();
+        String pathInfo = ((HttpServletRequest) request).getPathInfo();
+        if (admissionController == null || DialogueRoutingFilter.getDialogueId(pathInfo) != null) {
+            chain.doFilter(request, response);
+            return;
+        }
+
+        boolean admitted;
+        try {
+            admitted = admissionController.acquire();
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            admitted = false;
+        }
+        if (!admitted) {
+            mLog.warn("Call rejected: {} active dialogues, limit {}",
+                      admissionController.getActive(),
+                      admissionController.getLimit());
+            sendBusyDocument((HttpServletResponse) response);
+            return;
+        }
+
+        boolean started = false;
+        try {
+            chain.doFilter(request, response);
+            started = true;
+        } finally {
+            if (!started) {
+                admissionController.release();
+            }
+        }
+    }
+
+    @Override
+    public void destroy() {}
+
+    private void sendBusyDocument(HttpServletResponse response) throws IOException {
+        response.setContentType(VOICEXML_CONTENT_TYPE);
+        response.setHeader("Cache-Control", "no-cache");
+        response.setContentLength(mBusyDocument.length);
+        response.getOutputStream().write(mBusyDocument);
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright (c) 2013 Nu Echo Inc. All rights reserved.
+ */
+
+package com.nuecho.rivr.samples.voicemail.servlet;
+
+/**
+ * Single byte range of an HTTP <code>Range</code> header (RFC 2616, section 14.35).
+ *
+ * @author Nu Echo Inc.
+ */
+final class ByteRange {
+    private static final String BYTES_UNIT = "bytes=";
+
+    /**
+     * Returned by {@link #parse(String, long)} when the header asks for bytes beyond the end of the entity.
+     */
+    static final ByteRange UNSATISFIABLE = new ByteRange(0, -1);
+
+    private final long mFirst;
+    private final long mLast;
+
+    private ByteRange(long first, long last) {
+        mFirst = first;
+        mLast = last;
+    }
+
+    /**
+     * Parses a <code>Range</code> header.
+     *
+     * @param header The header value, possibly <code>null</code>.
+     * @param length The length of the entity.
+     * @return the requested range, {@link #UNSATISFIABLE} if no byte of the entity is requested, or <code>null</code>
+     *         if the whole entity must be sent: no header, an invalid header or several ranges.
+     */
+    static ByteRange parse(String header, long length) {
+        if (header == null || !header.startsWith(BYTES_UNIT)) return null;
+        String spec = header.substring(BYTES_UNIT.length()).trim();
+        if (spec.indexOf(',') >= 0) return null;
+
+        int dash = spec.indexOf('-');
+        if (dash < 0) return null;
+        try {
+            if (dash == 0) {
+                long suffixLength = Long.parseLong(spec.substring(1));
+                if (suffixLength == 0 || length == 0) return UNSATISFIABLE;
+                return new ByteRange(Math.max(0, length - suffixLength), length - 1);
+            }
+
+            long first = Long.parseLong(spec.substring(0, dash));
+            String lastSpec = spec.substring(dash + 1);
+            long last = length - 1;
+            if (!lastSpec.isEmpty()) {
+                long requestedLast = Long.parseLong(lastSpec);
+                if (requestedLast < first) return null;
+                last = Math.min(requestedLast, last);
+            }
+            if (first >= length) return UNSATISFIABLE;
+            return new ByteRange(first, last);
+        } catch (NumberFormatException exception) {
+            return null;
+        }
+    }
+
+    long getFirst() {
+        return mFirst;
+    }
+
+    long getLast() {
+        return mLast;
+    }
+
+    long getLength() {
+        return mLast - mFirst + 1;
+    }
+
+    /**
+     * @return the <code>Content-Range</code> header value of the range
+     */
+    String toContentRange(long length) {
+        return "bytes " + mFirst + "-" + mLast + "/" + length;
+    }
+
+    /**
+     * @return the <code>Content-Range</code> header value of an unsatisfiable range
+     */
+    static String toUnsatisfiableContentRange(long length) {
+        return "bytes */" + length;
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright (c) 2013 Nu Echo Inc. All rights reserved.
+ */
+
+package com.nuecho.rivr.samples.voicemail.servlet;
+
+import java.io.*;
+import java.util.*;
+
+import javax.servlet.*;
+import javax.servlet.http.*;
+
+import com.nuecho.rivr.samples.voicemail.metrics.*;
+
+/**
+ * Lists the top paths, transitions and drop-off points of the calls over the window of the {@link CallPathMetrics},
+ * as plain text. The {@link #TOP_PARAMETER} request parameter sets the length of the lists.
+ *
+ * @author Nu Echo Inc.
+ */
+public final class CallPathServlet extends HttpServlet {
+    /**
+     * Request parameter holding the number of entries of each list.
+     */
+    public static final String TOP_PARAMETER = "top";
+
+    private static final long serialVersionUID = 1L;
+
+    private static final int DEFAULT_TOP = 10;
+    private static final int MAX_PATH_LENGTH = 30;
+
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response) throws ServletException,
+            IOException {
+        int top = DEFAULT_TOP;
+        String topParameter = request.getParameter(TOP_PARAMETER);
+        if (topParameter != null) {
+            try {
+                top = Integer.parseInt(topParameter);
+            } catch (NumberFormatException exception) {
+                response.sendError(HttpServletResponse.SC_BAD_REQUEST);
+                return;
+            }
+        }
+
+        CallPathSnapshot snapshot = CallPathMetrics.getInstance().snapshot();
+        response.setContentType("text/plain");
+        response.setCharacterEncoding("UTF-8");
+        response.setHeader("Cache-Control", "no-cache");
+        PrintWriter writer = response.getWriter();
+        writer.println("# calls started in the last " + snapshot.getWindowMillis() / 1000 + " s: "
+                       + snapshot.getCalls());
+
+        writer.println();
+        writer.println("# share path");
+        for (CallPathSnapshot.Path path : snapshot.getTopPaths(top, MAX_PATH_LENGTH)) {
+            writer.print(String.format(Locale.US, "%.4f ", path.getShare()));
+            List<String> states = path.getStates();
+            for (int index = 0; index < states.size(); index++) {
+                if (index > 0) {
+                    writer.print(" > ");
+                }
+                writer.print(states.get(index));
+            }
+            writer.println();
+        }
+
+        writer.println();
+        writer.println("# count from to");
+        for (CallPathSnapshot.Transition transition : snapshot.getTopTransitions(top)) {
+            writer.println(transition.getCount() + " " + transition.getFrom() + " " + transition.getTo());
+        }
+
+        writer.println();
+        writer.println("# hang-ups visits rate interaction");
+        for (CallPathSnapshot.DropOff dropOff : snapshot.getDropOffs(top)) {
+            writer.println(dropOff.getHangUps() + " " + dropOff.getVisits() + " "
+                           + String.format(Locale.US, "%.4f", dropOff.getRate()) + " " + dropOff.getInteraction());
+        }
+    }
+}
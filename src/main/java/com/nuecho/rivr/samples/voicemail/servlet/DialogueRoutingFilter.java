@@ -0,0 +1,174 @@
+/*
+ * Copyright (c) 2013 Nu Echo Inc. All rights reserved.
+ */
+
+package com.nuecho.rivr.samples.voicemail.servlet;
+
+import java.io.*;
+import java.net.*;
+
+import javax.servlet.*;
+import javax.servlet.http.*;
+
+import org.slf4j.*;
+
+import com.nuecho.rivr.samples.voicemail.cluster.*;
+import com.nuecho.rivr.samples.voicemail.dialogue.*;
+
+/**
+ * Sends each request for a dialogue to the node of the cluster running it, as decided by the {@link DialogueRouter}:
+ * <ul>
+ * <li>requests for dialogues of this node, and requests starting new dialogues, go on to the dialogue servlet;</li>
+ * <li>requests for dialogues of another node are forwarded to that node and its response is copied back;</li>
+ * <li>requests for dialogues without a live node, or whose node can't be reached, are answered with a 302
+ * redirecting the browser to a new dialogue: the dialogue was lost with its node and the call starts over at the
+ * login.</li>
+ * </ul>
+ * The 302 answers the POST of the browser, so the input it posted, DTMF or recording, is dropped. Dialogues lost that
+ * way are not rehydrated: a dialogue can only be resumed, on any node, through the {@link ResumeRedirect} of its
+ * passivation, which carries its resume token. That request starts a new dialogue and is never routed.
+ * <p>
+ * The dialogue id is the first segment of the path info, as in the URLs of the Rivr dialogue servlet. Forwarded
+ * requests are marked with the {@link #FORWARDED_HEADER} header and never forwarded again, so that nodes with a
+ * different view of the cluster can't bounce a request around. Without a router, requests go straight to the servlet.
+ *
+ * @author Nu Echo Inc.
+ */
+public final class DialogueRoutingFilter implements Filter {
+    public static final String FORWARDED_HEADER = "X-Voicemail-Forwarded-By";
+
+    private static final String[] FORWARDED_REQUEST_HEADERS = {"Content-Type", "Accept", "Cookie", "User-Agent"};
+    private static final String[] FORWARDED_RESPONSE_HEADERS = {"Content-Type",
+                                                                 "Cache-Control",
+                                                                 "Set-Cookie",
+                                                                 "Location"};
+    private static final int CONNECT_TIMEOUT_MILLIS = 2000;
+    private static final int READ_TIMEOUT_MILLIS = 30000;
+    private static final int BUFFER_SIZE = 8192;
+
+    private final Logger mLog = LoggerFactory.getLogger(getClass());
+
+    @Override
+    public void init(FilterConfig filterConfig) {}
+
+    @Override
+    public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain) throws IOException,
+            ServletException {
+        DialogueRouter router = DialogueRouters.getRouter();
+        HttpServletRequest httpRequest = (HttpServletRequest) request;
+        String dialogueId = getDialogueId(httpRequest.getPathInfo());
+        if (router == null || dialogueId == null) {
+            chain.doFilter(request, response);
+            return;
+        }
+
+        HttpServletResponse httpResponse = (HttpServletResponse) response;
+        DialogueRouter.Route route = router.route(dialogueId);
+        boolean forwarded = httpRequest.getHeader(FORWARDED_HEADER) != null;
+        switch (route.getDecision()) {
+            case LOCAL:
+                chain.doFilter(request, response);
+                break;
+            case FORWARD:
+                if (forwarded || !forward(httpRequest, httpResponse, route.getNode(), router.getLocalNodeId())) {
+                    restart(httpRequest, httpResponse, dialogueId);
+                }
+                break;
+            default:
+                restart(httpRequest, httpResponse, dialogueId);
+                break;
+        }
+    }
+
+    @Override
+    public void destroy() {}
+
+    /**
+     * @return the dialogue id, or <code>null</code> if the request starts a new dialogue
+     */
+    static String getDialogueId(String pathInfo) {
+        if (pathInfo == null || pathInfo.length() <= 1) return null;
+        int end = pathInfo.indexOf('/', 1);
+        return end < 0 ? pathInfo.substring(1) : pathInfo.substring(1, end);
+    }
+
+    /**
+     * @return whether the node answered; the response is then complete
+     */
+    private boolean forward(HttpServletRequest request,
+                            HttpServletResponse response,
+                            ClusterNode node,
+                            String localNodeId) throws IOException {
+        StringBuilder url = new StringBuilder(node.getUrl());
+        url.append(request.getServletPath()).append(request.getPathInfo());
+        if (request.getQueryString() != null) {
+            url.append('?').append(request.getQueryString());
+        }
+
+        HttpURLConnection connection = (HttpURLConnection) URI.create(url.toString()).toURL().openConnection();
+        connection.setConnectTimeout(CONNECT_TIMEOUT_MILLIS);
+        connection.setReadTimeout(READ_TIMEOUT_MILLIS);
+        connection.setInstanceFollowRedirects(false);
+        connection.setRequestMethod(request.getMethod());
+        connection.setRequestProperty(FORWARDED_HEADER, localNodeId);
+        for (String header : FORWARDED_REQUEST_HEADERS) {
+            String value = request.getHeader(header);
+            if (value != null) {
+                connection.setRequestProperty(header, value);
+            }
+        }
+
+        int status;
+        try {
+            if ("POST".equals(request.getMethod())) {
+                connection.setDoOutput(true);
+                OutputStream output = connection.getOutputStream();
+                try {
+                    copy(request.getInputStream(), output);
+                } finally {
+                    output.close();
+                }
+            }
+            status = connection.getResponseCode();
+        } catch (IOException exception) {
+            mLog.warn("Unable to forward request for {} to node {}: {}",
+                      new Object[] {request.getPathInfo(), node, exception.getMessage()});
+            connection.disconnect();
+            return false;
+        }
+
+        response.setStatus(status);
+        for (String header : FORWARDED_RESPONSE_HEADERS) {
+            String value = connection.getHeaderField(header);
+            if (value != null) {
+                response.setHeader(header, value);
+            }
+        }
+        InputStream input = status >= HttpURLConnection.HTTP_BAD_REQUEST
+                ? connection.getErrorStream()
+                : connection.getInputStream();
+        if (input != null) {
+            try {
+                copy(input, response.getOutputStream());
+            } finally {
+                input.close();
+            }
+        }
+        return true;
+    }
+
+    private void restart(HttpServletRequest request, HttpServletResponse response, String dialogueId)
+            throws IOException {
+        mLog.info("Dialogue [{}] lost, restarting the call", dialogueId);
+        String location = request.getContextPath() + request.getServletPath() + "/";
+        response.sendRedirect(response.encodeRedirectURL(location));
+    }
+
+    private static void copy(InputStream input, OutputStream output) throws IOException {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        int read;
+        while ((read = input.read(buffer)) >= 0) {
+            output.write(buffer, 0, read);
+        }
+    }
+}
@@ -0,0 +1,215 @@
+/*
+ * Copyright (c) 2013 Nu Echo Inc. All rights reserved.
+ */
+
+package com.nuecho.rivr.samples.voicemail.servlet;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.charset.*;
+import java.security.*;
+
+import javax.crypto.*;
+import javax.crypto.spec.*;
+import javax.servlet.*;
+import javax.servlet.http.*;
+
+import com.nuecho.rivr.samples.voicemail.store.*;
+import com.nuecho.rivr.samples.voicemail.util.*;
+
+/**
+ * Serves the recordings of the {@link MessageStore} to the VoiceXML browser, at
+ * <code>&lt;servlet-path&gt;/&lt;mailbox&gt;/&lt;message-id&gt;</code>. Recordings are written straight from the
+ * segment mapping to the response.
+ * <p>
+ * Message ids are sequential, so a recording is only served with the {@link #TOKEN_PARAMETER} request parameter of the
+ * URL made by {@link #getPath(VoiceMessage, int)} for a playback: an HMAC of the mailbox, the message id and the
+ * {@link #EXPIRES_PARAMETER expiry} of the URL, keyed by a random key of this process. Other requests get a 403.
+ * <p>
+ * The {@link #OFFSET_PARAMETER} request parameter serves the recording from a byte offset, so that a playback resumed
+ * inside a message only fetches the rest of it. Recordings never change, so responses carry a strong entity tag and
+ * honor <code>If-None-Match</code> and single byte <code>Range</code> requests, like the {@link PromptServlet}.
+ *
+ * @author Nu Echo Inc.
+ */
+public final class MessageAudioServlet extends HttpServlet {
+
+    /**
+     * Request parameter holding the byte offset from which the recording is served.
+     */
+    public static final String OFFSET_PARAMETER = "offset";
+
+    /**
+     * Request parameter holding the time, in milliseconds since the epoch, after which the URL is refused.
+     */
+    public static final String EXPIRES_PARAMETER = "expires";
+
+    /**
+     * Request parameter holding the token authorizing the URL.
+     */
+    public static final String TOKEN_PARAMETER = "token";
+
+    /**
+     * How long, in milliseconds, the URL of a playback stays valid.
+     */
+    public static final long URL_LIFETIME_MILLIS = 60 * 60 * 1000;
+
+    private static final long serialVersionUID = 1L;
+
+    private static final String ETAG_HEADER = "ETag";
+    private static final String IF_NONE_MATCH_HEADER = "If-None-Match";
+    private static final String IF_RANGE_HEADER = "If-Range";
+    private static final String RANGE_HEADER = "Range";
+    private static final String ACCEPT_RANGES_HEADER = "Accept-Ranges";
+    private static final String CONTENT_RANGE_HEADER = "Content-Range";
+
+    private static final String MAC_ALGORITHM = "HmacSHA256";
+    private static final Charset CHARSET = Charset.forName("UTF-8");
+    private static final SecretKey KEY = createKey();
+
+    private static final ThreadLocal<Mac> MACS = new ThreadLocal<Mac>() {
+        @Override
+        protected Mac initialValue() {
+            try {
+                Mac mac = Mac.getInstance(MAC_ALGORITHM);
+                mac.init(KEY);
+                return mac;
+            } catch (GeneralSecurityException exception) {
+                throw new IllegalStateException(MAC_ALGORITHM + " is not supported", exception);
+            }
+        }
+    };
+
+    /**
+     * Returns the path, relative to the context path, of the recording of a message from a byte offset, valid for
+     * {@link #URL_LIFETIME_MILLIS}.
+     */
+    public static String getPath(VoiceMessage message, int offset) {
+        return getPath(message.getMailbox(),
+                       message.getId(),
+                       offset,
+                       System.currentTimeMillis() + URL_LIFETIME_MILLIS);
+    }
+
+    static String getPath(String mailbox, long id, int offset, long expires) {
+        return "/messages/" + mailbox + "/" + id + "?" + OFFSET_PARAMETER + "=" + offset + "&" + EXPIRES_PARAMETER
+               + "=" + expires + "&" + TOKEN_PARAMETER + "=" + createToken(mailbox, id, expires);
+    }
+
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response) throws ServletException,
+            IOException {
+        String pathInfo = request.getPathInfo();
+        int separator = pathInfo == null ? -1 : pathInfo.lastIndexOf('/');
+        if (separator <= 0) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+        String mailbox = pathInfo.substring(1, separator);
+        long id;
+        long expires;
+        try {
+            id = Long.parseLong(pathInfo.substring(separator + 1));
+            expires = Long.parseLong(request.getParameter(EXPIRES_PARAMETER));
+        } catch (NumberFormatException exception) {
+            response.sendError(HttpServletResponse.SC_FORBIDDEN);
+            return;
+        }
+        if (!isAuthorized(mailbox, id, expires, request.getParameter(TOKEN_PARAMETER), System.currentTimeMillis())) {
+            response.sendError(HttpServletResponse.SC_FORBIDDEN);
+            return;
+        }
+
+        VoiceMessage message = findMessage(mailbox, id);
+        if (message == null) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+
+        int offset = parseOffset(request.getParameter(OFFSET_PARAMETER), message.getAudioLength());
+        if (offset < 0) {
+            response.sendError(HttpServletResponse.SC_BAD_REQUEST);
+            return;
+        }
+
+        String entityTag = "\"" + message.getId() + "-" + offset + "\"";
+        response.setHeader(ETAG_HEADER, entityTag);
+        response.setHeader(ACCEPT_RANGES_HEADER, "bytes");
+        if (PromptServlet.matches(request.getHeader(IF_NONE_MATCH_HEADER), entityTag)) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+
+        ByteBuffer audio = MessageStores.getMessageStore().getAudio(message);
+        audio.position(offset);
+        audio = audio.slice();
+        int length = audio.remaining();
+        ByteRange range = null;
+        String ifRange = request.getHeader(IF_RANGE_HEADER);
+        if (ifRange == null || ifRange.trim().equals(entityTag)) {
+            range = ByteRange.parse(request.getHeader(RANGE_HEADER), length);
+        }
+
+        if (range == ByteRange.UNSATISFIABLE) {
+            response.setHeader(CONTENT_RANGE_HEADER, ByteRange.toUnsatisfiableContentRange(length));
+            response.sendError(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+            return;
+        }
+
+        response.setContentType(message.getContentType());
+        if (range != null) {
+            response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+            response.setHeader(CONTENT_RANGE_HEADER, range.toContentRange(length));
+            audio.position((int) range.getFirst());
+            audio.limit((int) range.getLast() + 1);
+        }
+        response.setContentLength(audio.remaining());
+
+        WritableByteChannel channel = Channels.newChannel(response.getOutputStream());
+        while (audio.hasRemaining()) {
+            channel.write(audio);
+        }
+    }
+
+    /**
+     * @return the offset, 0 if there is none, or -1 if it isn't an offset within the recording
+     */
+    static int parseOffset(String offset, int length) {
+        if (offset == null) return 0;
+        try {
+            int value = Integer.parseInt(offset);
+            return value >= 0 && value <= length ? value : -1;
+        } catch (NumberFormatException exception) {
+            return -1;
+        }
+    }
+
+    /**
+     * @return whether the token authorizes the recording of a message until an expiry that isn't past
+     */
+    static boolean isAuthorized(String mailbox, long id, long expires, String token, long now) {
+        if (token == null || now > expires) return false;
+        return MessageDigest.isEqual(createToken(mailbox, id, expires).getBytes(CHARSET), token.getBytes(CHARSET));
+    }
+
+    private static String createToken(String mailbox, long id, long expires) {
+        byte[] mac = MACS.get().doFinal((mailbox + "/" + id + "/" + expires).getBytes(CHARSET));
+        return HexUtils.toHex(mac);
+    }
+
+    private static SecretKey createKey() {
+        byte[] key = new byte[32];
+        new SecureRandom().nextBytes(key);
+        return new SecretKeySpec(key, MAC_ALGORITHM);
+    }
+
+    private static VoiceMessage findMessage(String mailbox, long id) {
+        MessageStore messageStore = MessageStores.getMessageStore();
+        if (messageStore == null) return null;
+
+        VoiceMessage message = messageStore.getMessage(id);
+        if (message == null || !message.getMailbox().equals(mailbox)) return null;
+        return message;
+    }
+}
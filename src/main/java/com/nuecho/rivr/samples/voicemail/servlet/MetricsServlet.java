@@ -0,0 +1,236 @@
+/*
+ * Copyright (c) 2013 Nu Echo Inc. All rights reserved.
+ */
+
+package com.nuecho.rivr.samples.voicemail.servlet;
+
+import java.io.*;
+import java.util.*;
+
+import javax.servlet.*;
+import javax.servlet.http.*;
+
+import com.nuecho.rivr.samples.voicemail.admission.*;
+import com.nuecho.rivr.samples.voicemail.events.*;
+import com.nuecho.rivr.samples.voicemail.metrics.*;
+import com.nuecho.rivr.samples.voicemail.warmup.*;
+
+/**
+ * Exposes the dialogue metrics in the Prometheus text exposition format (version 0.0.4), so that they can be scraped
+ * by Prometheus or read by any tool understanding that format.
+ * <p>
+ * Latencies are exposed as summaries, with quantiles estimated from the {@link LatencyHistogram} buckets.
+ *
+ * @author Nu Echo Inc.
+ */
+public final class MetricsServlet extends HttpServlet {
+    private static final long serialVersionUID = 1L;
+
+    private static final String CONTENT_TYPE = "text/plain; version=0.0.4";
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99};
+    private static final double MICROS_PER_SECOND = 1e6;
+    private static final double NANOS_PER_SECOND = 1e9;
+
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response) throws ServletException,
+            IOException {
+        response.setContentType(CONTENT_TYPE);
+        response.setCharacterEncoding("UTF-8");
+        response.setHeader("Cache-Control", "no-cache");
+
+        StringBuilder builder = new StringBuilder(8192);
+        writeInteractionMetrics(builder, InteractionMetrics.getAll());
+        writeDnisMetrics(builder);
+        writeRepromptMetrics(builder, RepromptMetrics.getAll());
+        writeAdmissionMetrics(builder, AdmissionControllers.getAdmissionController());
+        writeCallEventMetrics(builder, CallEventLogs.getLog());
+        writeReadinessMetrics(builder);
+
+        PrintWriter writer = response.getWriter();
+        writer.write(builder.toString());
+    }
+
+    private static void writeInteractionMetrics(StringBuilder builder,
+                                                SortedMap<String, InteractionMetrics> interactions) {
+        header(builder,
+               "voicemail_server_time_seconds",
+               "summary",
+               "Time spent by the server before sending an output turn.");
+        for (Map.Entry<String, InteractionMetrics> entry : interactions.entrySet()) {
+            summary(builder, "voicemail_server_time_seconds", entry.getKey(), entry.getValue().getServerTime());
+        }
+
+        header(builder,
+               "voicemail_round_trip_seconds",
+               "summary",
+               "Time between sending an output turn and receiving the browser's input turn.");
+        for (Map.Entry<String, InteractionMetrics> entry : interactions.entrySet()) {
+            summary(builder, "voicemail_round_trip_seconds", entry.getKey(), entry.getValue().getRoundTripTime());
+        }
+
+        header(builder, "voicemail_reprompts_total", "counter", "Turns sent again after a noinput or a nomatch.");
+        for (Map.Entry<String, InteractionMetrics> entry : interactions.entrySet()) {
+            long reprompts = entry.getValue().getReprompts();
+            sample(builder, "voicemail_reprompts_total", "interaction", entry.getKey(), null, reprompts);
+        }
+
+        header(builder, "voicemail_hangups_total", "counter", "Calls hung up during a turn.");
+        for (Map.Entry<String, InteractionMetrics> entry : interactions.entrySet()) {
+            long hangUps = entry.getValue().getHangUps();
+            sample(builder, "voicemail_hangups_total", "interaction", entry.getKey(), null, hangUps);
+        }
+    }
+
+    private static void writeDnisMetrics(StringBuilder builder) {
+        header(builder, "voicemail_dnis_lookups_total", "counter", "Calls by source of the DNIS.");
+        for (DnisMetrics.Source source : DnisMetrics.Source.values()) {
+            sample(builder,
+                   "voicemail_dnis_lookups_total",
+                   "source",
+                   source.name().toLowerCase(Locale.ENGLISH),
+                   null,
+                   DnisMetrics.getCalls(source));
+        }
+
+        header(builder, "voicemail_dnis_lookup_seconds_total", "counter", "Time spent obtaining the DNIS, by source.");
+        for (DnisMetrics.Source source : DnisMetrics.Source.values()) {
+            sample(builder,
+                   "voicemail_dnis_lookup_seconds_total",
+                   "source",
+                   source.name().toLowerCase(Locale.ENGLISH),
+                   null,
+                   DnisMetrics.getNanos(source) / NANOS_PER_SECOND);
+        }
+    }
+
+    private static void writeRepromptMetrics(StringBuilder builder, SortedMap<String, RepromptMetrics> policies) {
+        header(builder, "voicemail_reprompt_noinputs_total", "counter", "Interactions played again after a noinput.");
+        for (Map.Entry<String, RepromptMetrics> entry : policies.entrySet()) {
+            long noInputs = entry.getValue().getNoInputs();
+            sample(builder, "voicemail_reprompt_noinputs_total", "policy", entry.getKey(), null, noInputs);
+        }
+
+        header(builder, "voicemail_reprompt_nomatches_total", "counter", "Interactions played again after a nomatch.");
+        for (Map.Entry<String, RepromptMetrics> entry : policies.entrySet()) {
+            long noMatches = entry.getValue().getNoMatches();
+            sample(builder, "voicemail_reprompt_nomatches_total", "policy", entry.getKey(), null, noMatches);
+        }
+
+        header(builder, "voicemail_reprompt_exits_total", "counter", "Dialogues ended because reprompts were used up.");
+        for (Map.Entry<String, RepromptMetrics> entry : policies.entrySet()) {
+            long exits = entry.getValue().getExits();
+            sample(builder, "voicemail_reprompt_exits_total", "policy", entry.getKey(), null, exits);
+        }
+
+        header(builder,
+               "voicemail_reprompt_dead_air_seconds_total",
+               "counter",
+               "Time spent in turns ending in noinput.");
+        for (Map.Entry<String, RepromptMetrics> entry : policies.entrySet()) {
+            sample(builder,
+                   "voicemail_reprompt_dead_air_seconds_total",
+                   "policy",
+                   entry.getKey(),
+                   null,
+                   entry.getValue().getDeadAirNanos() / NANOS_PER_SECOND);
+        }
+
+        header(builder,
+               "voicemail_reprompt_reclaimed_seconds_total",
+               "counter",
+               "Estimated dialogue time saved by ending calls whose reprompts were used up.");
+        for (Map.Entry<String, RepromptMetrics> entry : policies.entrySet()) {
+            sample(builder,
+                   "voicemail_reprompt_reclaimed_seconds_total",
+                   "policy",
+                   entry.getKey(),
+                   null,
+                   entry.getValue().getReclaimedNanos() / NANOS_PER_SECOND);
+        }
+    }
+
+    private static void writeAdmissionMetrics(StringBuilder builder, AdmissionController admissionController) {
+        if (admissionController == null) return;
+
+        header(builder, "voicemail_admission_limit", "gauge", "Current limit of concurrent dialogues.");
+        sample(builder, "voicemail_admission_limit", admissionController.getLimit());
+        header(builder, "voicemail_admission_active", "gauge", "Admitted dialogues still running.");
+        sample(builder, "voicemail_admission_active", admissionController.getActive());
+        header(builder, "voicemail_admission_waiting", "gauge", "Calls waiting for admission.");
+        sample(builder, "voicemail_admission_waiting", admissionController.getWaiting());
+        header(builder, "voicemail_admission_rejected_total", "counter", "Calls rejected with the busy document.");
+        sample(builder, "voicemail_admission_rejected_total", admissionController.getRejected());
+    }
+
+    private static void writeCallEventMetrics(StringBuilder builder, CallEventLog eventLog) {
+        if (eventLog == null) return;
+
+        header(builder, "voicemail_call_events_discarded_total", "counter", "Call events discarded by back-pressure.");
+        sample(builder, "voicemail_call_events_discarded_total", eventLog.getDiscarded());
+    }
+
+    private static void writeReadinessMetrics(StringBuilder builder) {
+        header(builder, "voicemail_ready", "gauge", "Whether this node takes calls.");
+        sample(builder, "voicemail_ready", Readiness.isReady() ? 1 : 0);
+
+        WarmUpReport report = Readiness.getWarmUpReport();
+        if (report == null) return;
+        header(builder,
+               "voicemail_warmup_steady_state_seconds",
+               "gauge",
+               "Time the warm-up took to reach steady turn latency.");
+        sample(builder, "voicemail_warmup_steady_state_seconds", report.getTimeToSteadyStateMillis() / 1000.0);
+        header(builder, "voicemail_warmup_steady_turn_seconds", "gauge", "Mean turn latency once warmed up.");
+        sample(builder, "voicemail_warmup_steady_turn_seconds", report.getSteadyTurnMicros() / MICROS_PER_SECOND);
+    }
+
+    private static void summary(StringBuilder builder, String name, String interaction, LatencyHistogram histogram) {
+        for (double quantile : QUANTILES) {
+            sample(builder,
+                   name,
+                   "interaction",
+                   interaction,
+                   String.valueOf(quantile),
+                   histogram.getQuantileMicros(quantile) / MICROS_PER_SECOND);
+        }
+        sample(builder, name + "_sum", "interaction", interaction, null, histogram.getSumMicros() / MICROS_PER_SECOND);
+        sample(builder, name + "_count", "interaction", interaction, null, histogram.getCount());
+    }
+
+    private static void header(StringBuilder builder, String name, String type, String help) {
+        builder.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        builder.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    private static void sample(StringBuilder builder, String name, Object value) {
+        builder.append(name).append(' ').append(value).append('\n');
+    }
+
+    private static void sample(StringBuilder builder,
+                               String name,
+                               String label,
+                               String labelValue,
+                               String quantile,
+                               Object value) {
+        builder.append(name).append('{').append(label).append("=\"");
+        escape(builder, labelValue);
+        builder.append('"');
+        if (quantile != null) {
+            builder.append(",quantile=\"").append(quantile).append('"');
+        }
+        builder.append("} ").append(value).append('\n');
+    }
+
+    private static void escape(StringBuilder builder, String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '\\' || c == '"') {
+                builder.append('\\').append(c);
+            } else if (c == '\n') {
+                builder.append("\\n");
+            } else {
+                builder.append(c);
+            }
+        }
+    }
+}
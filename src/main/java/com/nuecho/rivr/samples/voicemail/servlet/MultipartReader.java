@@ -0,0 +1,181 @@
+/*
+ * Copyright (c) 2013 Nu Echo Inc. All rights reserved.
+ */
+
+package com.nuecho.rivr.samples.voicemail.servlet;
+
+import java.io.*;
+import java.nio.charset.*;
+import java.util.*;
+
+/**
+ * Reads a <code>multipart/form-data</code> body part by part, through a fixed-size buffer, so that a part can be
+ * streamed elsewhere without ever being held whole in the heap.
+ * <p>
+ * {@link #skipPreamble()} must be called first. Then, for each part, {@link #readHeaders()} and the body, read to its
+ * end through {@link #openBody()}, followed by {@link #nextPart()}.
+ *
+ * @author Nu Echo Inc.
+ */
+final class MultipartReader {
+    static final Charset HEADER_CHARSET = Charset.forName("ISO-8859-1");
+
+    private final InputStream mInput;
+    private final byte[] mDelimiter;
+    private final byte[] mBuffer;
+    private int mStart;
+    private int mEnd;
+
+    /**
+     * @param input The body.
+     * @param boundary The boundary of the parts, from the content type.
+     * @param bufferSize The size of the buffer, which bounds the length of a header line.
+     */
+    MultipartReader(InputStream input, String boundary, int bufferSize) {
+        mInput = input;
+        mDelimiter = ("\r\n--" + boundary).getBytes(HEADER_CHARSET);
+        mBuffer = new byte[bufferSize + mDelimiter.length];
+        // The first delimiter isn't preceded by a line break.
+        mBuffer[0] = '\r';
+        mBuffer[1] = '\n';
+        mEnd = 2;
+    }
+
+    /**
+     * Skips what precedes the first part.
+     *
+     * @return whether there is a part
+     */
+    boolean skipPreamble() throws IOException {
+        InputStream preamble = openBody();
+        while (preamble.skip(Long.MAX_VALUE) > 0) {
+            // Skipped.
+        }
+        return nextPart();
+    }
+
+    /**
+     * Reads what follows the delimiter ending a part.
+     *
+     * @return whether another part follows
+     */
+    boolean nextPart() throws IOException {
+        ensure(2);
+        if (mBuffer[mStart] == '-' && mBuffer[mStart + 1] == '-') {
+            mStart += 2;
+            return false;
+        }
+        readLine();
+        return true;
+    }
+
+    /**
+     * @return the header lines of the current part
+     */
+    List<String> readHeaders() throws IOException {
+        List<String> headers = new ArrayList<String>();
+        String line;
+        while (!(line = readLine()).isEmpty()) {
+            headers.add(line);
+        }
+        return headers;
+    }
+
+    /**
+     * @return the body of the current part, up to the next delimiter
+     */
+    InputStream openBody() {
+        return new BodyInputStream();
+    }
+
+    /**
+     * @return the value of a header in header lines, or <code>null</code> if it isn't there
+     */
+    static String getHeader(List<String> headers, String name) {
+        for (String header : headers) {
+            int separator = header.indexOf(':');
+            if (separator > 0 && header.substring(0, separator).trim().equalsIgnoreCase(name))
+                return header.substring(separator + 1).trim();
+        }
+        return null;
+    }
+
+    private String readLine() throws IOException {
+        while (true) {
+            for (int i = mStart; i < mEnd - 1; i++) {
+                if (mBuffer[i] == '\r' && mBuffer[i + 1] == '\n') {
+                    String line = new String(mBuffer, mStart, i - mStart, HEADER_CHARSET);
+                    mStart = i + 2;
+                    return line;
+                }
+            }
+            if (mStart == 0 && mEnd == mBuffer.length) throw new IOException("Multipart header line too long");
+            if (!fill()) throw new EOFException("Truncated multipart body");
+        }
+    }
+
+    private void ensure(int length) throws IOException {
+        while (mEnd - mStart < length) {
+            if (!fill()) throw new EOFException("Truncated multipart body");
+        }
+    }
+
+    /**
+     * Moves the unread bytes to the start of the buffer and reads more after them.
+     *
+     * @return whether bytes were read
+     */
+    private boolean fill() throws IOException {
+        if (mStart > 0) {
+            System.arraycopy(mBuffer, mStart, mBuffer, 0, mEnd - mStart);
+            mEnd -= mStart;
+            mStart = 0;
+        }
+        int read = mInput.read(mBuffer, mEnd, mBuffer.length - mEnd);
+        if (read < 0) return false;
+        mEnd += read;
+        return true;
+    }
+
+    private int indexOfDelimiter() {
+        int last = mEnd - mDelimiter.length;
+        for (int i = mStart; i <= last; i++) {
+            int j = 0;
+            while (j < mDelimiter.length && mBuffer[i + j] == mDelimiter[j]) {
+                j++;
+            }
+            if (j == mDelimiter.length) return i;
+        }
+        return -1;
+    }
+
+    private final class BodyInputStream extends InputStream {
+        private boolean mDone;
+
+        @Override
+        public int read() throws IOException {
+            byte[] single = new byte[1];
+            return read(single, 0, 1) < 0 ? -1 : single[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) throws IOException {
+            while (!mDone) {
+                int index = indexOfDelimiter();
+                // Without a delimiter, the last bytes may be the start of one.
+                int available = index >= 0 ? index - mStart : Math.max(0, mEnd - mDelimiter.length + 1 - mStart);
+                if (available > 0) {
+                    int count = Math.min(length, available);
+                    System.arraycopy(mBuffer, mStart, bytes, offset, count);
+                    mStart += count;
+                    return count;
+                }
+                if (index >= 0) {
+                    mStart = index + mDelimiter.length;
+                    mDone = true;
+                } else if (!fill()) throw new EOFException("Truncated multipart body");
+            }
+            return -1;
+        }
+    }
+}
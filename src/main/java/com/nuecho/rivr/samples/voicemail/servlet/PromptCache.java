@@ -0,0 +1,305 @@
+/*
+ * Copyright (c) 2013 Nu Echo Inc. All rights reserved.
+ */
+
+package com.nuecho.rivr.samples.voicemail.servlet;
+
+import static java.lang.String.format;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.zip.*;
+
+import javax.servlet.*;
+
+import org.slf4j.*;
+
+import com.nuecho.rivr.samples.voicemail.prompt.*;
+
+/**
+ * In-memory copies of the prompt files of every {@link PromptSet}, served by {@link PromptServlet}.
+ * <p>
+ * Files of an exploded web application are memory-mapped, others are read once into direct buffers. Each file gets a
+ * strong entity tag computed from its content. Files requested but not loaded yet are loaded on their first request,
+ * which is counted as a miss.
+ * <p>
+ * The cache also holds {@link CompositePaths composite} prompts. Those played by the prebuilt turns of the
+ * {@link PromptCatalog} are stitched when the cache is initialized and kept. Others are stitched when first requested,
+ * if the catalog can {@link PromptCatalog#isPlayable(String) play} them and they are small enough, and kept in a least
+ * recently used cache bounded in count and bytes. Any other composite is not found.
+ *
+ * @author Nu Echo Inc.
+ */
+public final class PromptCache {
+    private static final String PROMPT_EXTENSION = CompositePaths.PROMPT_EXTENSION;
+    private static final int MAX_DYNAMIC_COMPOSITES = 256;
+    private static final long MAX_DYNAMIC_COMPOSITE_BYTES = 16 * 1024 * 1024;
+    private static final int MAX_COMPOSITE_BYTES = 1024 * 1024;
+    private static final String DEFAULT_CONTENT_TYPE = "audio/basic";
+
+    private static volatile PromptCache sInstance;
+
+    private final Logger mLog = LoggerFactory.getLogger(getClass());
+
+    private final ServletContext mServletContext;
+    private final ConcurrentMap<String, CachedPrompt> mEntries = new ConcurrentSkipListMap<String, CachedPrompt>();
+    // Guarded by itself, along with mDynamicCompositeBytes.
+    private final Map<String, CachedPrompt> mDynamicComposites =
+            new LinkedHashMap<String, CachedPrompt>(16, 0.75f, true);
+    private long mDynamicCompositeBytes;
+
+    private PromptCache(ServletContext servletContext) {
+        mServletContext = servletContext;
+    }
+
+    /**
+     * Loads the prompt files of every prompt set and makes the cache available through {@link #getInstance()}.
+     */
+    public static PromptCache initialize(ServletContext servletContext) {
+        PromptCache cache = new PromptCache(servletContext);
+        long bytes = 0;
+        for (PromptSet promptSet : PromptSet.values()) {
+            Set<?> resources = servletContext.getResourcePaths("/" + promptSet.getDirectory() + "/");
+            if (resources == null) continue;
+            for (Object resource : resources) {
+                String path = (String) resource;
+                if (!path.endsWith(PROMPT_EXTENSION)) continue;
+                CachedPrompt entry = cache.load(path);
+                if (entry != null) {
+                    bytes += entry.getLength();
+                }
+            }
+        }
+        int fileCount = cache.mEntries.size();
+
+        for (PromptSet promptSet : PromptSet.values()) {
+            PromptCatalog catalog = PromptCatalog.get(servletContext.getContextPath(), promptSet);
+            for (String path : catalog.getCompositePaths()) {
+                CachedPrompt entry = cache.compose(path, CompositePaths.getPartPaths(path));
+                if (entry != null) {
+                    cache.mEntries.put(path, entry);
+                    bytes += entry.getLength();
+                }
+            }
+        }
+        cache.mLog.info("Prompt cache loaded with {} files and {} composites, {} bytes",
+                        new Object[] {fileCount, cache.mEntries.size() - fileCount, bytes});
+        sInstance = cache;
+        return cache;
+    }
+
+    /**
+     * @return the cache, or <code>null</code> if it isn't initialized
+     */
+    public static PromptCache getInstance() {
+        return sInstance;
+    }
+
+    /**
+     * Returns the cached prompt file at a path, loading it if needed.
+     *
+     * @param path The path of the file, relative to the context path.
+     * @return the file, or <code>null</code> if there is no prompt file at that path
+     */
+    CachedPrompt get(String path) {
+        CachedPrompt entry = mEntries.get(path);
+        if (entry != null) {
+            entry.mHits.incrementAndGet();
+            return entry;
+        }
+
+        synchronized (mDynamicComposites) {
+            entry = mDynamicComposites.get(path);
+        }
+        if (entry != null) {
+            entry.mHits.incrementAndGet();
+            return entry;
+        }
+
+        if (!path.endsWith(PROMPT_EXTENSION) || path.indexOf("..") >= 0) return null;
+        List<String> partPaths = CompositePaths.getPartPaths(path);
+        if (partPaths == null) {
+            entry = load(path);
+        } else if (isPlayable(path)) {
+            entry = compose(path, partPaths);
+            if (entry != null) {
+                putDynamicComposite(path, entry);
+            }
+        }
+        if (entry != null) {
+            entry.mMisses.incrementAndGet();
+        }
+        return entry;
+    }
+
+    /**
+     * @return a snapshot of the cached files and composites, by path
+     */
+    public SortedMap<String, CachedPrompt> getEntries() {
+        SortedMap<String, CachedPrompt> entries = new TreeMap<String, CachedPrompt>(mEntries);
+        synchronized (mDynamicComposites) {
+            entries.putAll(mDynamicComposites);
+        }
+        return entries;
+    }
+
+    private boolean isPlayable(String path) {
+        for (PromptSet promptSet : PromptSet.values()) {
+            if (PromptCatalog.get(mServletContext.getContextPath(), promptSet).isPlayable(path)) return true;
+        }
+        return false;
+    }
+
+    private void putDynamicComposite(String path, CachedPrompt entry) {
+        synchronized (mDynamicComposites) {
+            CachedPrompt replaced = mDynamicComposites.put(path, entry);
+            if (replaced != null) {
+                mDynamicCompositeBytes -= replaced.getLength();
+            }
+            mDynamicCompositeBytes += entry.getLength();
+            Iterator<CachedPrompt> eldest = mDynamicComposites.values().iterator();
+            while (mDynamicComposites.size() > MAX_DYNAMIC_COMPOSITES
+                   || mDynamicCompositeBytes > MAX_DYNAMIC_COMPOSITE_BYTES) {
+                mDynamicCompositeBytes -= eldest.next().getLength();
+                eldest.remove();
+            }
+        }
+    }
+
+    private CachedPrompt compose(String path, List<String> partPaths) {
+        CachedPrompt[] parts = new CachedPrompt[partPaths.size()];
+        int length = 0;
+        for (int i = 0; i < parts.length; i++) {
+            String partPath = partPaths.get(i);
+            CachedPrompt part = mEntries.get(partPath);
+            if (part == null) {
+                part = load(partPath);
+            }
+            if (part == null) {
+                mLog.warn("Missing part {} of composite prompt {}", partPath, path);
+                return null;
+            }
+            parts[i] = part;
+            length += part.getLength();
+            if (length > MAX_COMPOSITE_BYTES) {
+                mLog.warn("Composite prompt {} is longer than {} bytes", path, MAX_COMPOSITE_BYTES);
+                return null;
+            }
+        }
+
+        ByteBuffer content = ByteBuffer.allocateDirect(length);
+        for (CachedPrompt part : parts) {
+            content.put(part.getContent());
+        }
+        content.flip();
+        return new CachedPrompt(content, parts[0].getContentType());
+    }
+
+    private CachedPrompt load(String path) {
+        ByteBuffer content;
+        try {
+            content = read(path);
+        } catch (IOException exception) {
+            mLog.error("Unable to load prompt " + path, exception);
+            return null;
+        }
+        if (content == null) return null;
+
+        String contentType = mServletContext.getMimeType(path);
+        CachedPrompt entry = new CachedPrompt(content, contentType == null ? DEFAULT_CONTENT_TYPE : contentType);
+        CachedPrompt existing = mEntries.putIfAbsent(path, entry);
+        return existing == null ? entry : existing;
+    }
+
+    private ByteBuffer read(String path) throws IOException {
+        String realPath = mServletContext.getRealPath(path);
+        if (realPath != null && new File(realPath).isFile()) {
+            RandomAccessFile file = new RandomAccessFile(realPath, "r");
+            try {
+                FileChannel channel = file.getChannel();
+                return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            } finally {
+                file.close();
+            }
+        }
+
+        InputStream input = mServletContext.getResourceAsStream(path);
+        if (input == null) return null;
+        try {
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = input.read(buffer)) >= 0) {
+                output.write(buffer, 0, read);
+            }
+            ByteBuffer content = ByteBuffer.allocateDirect(output.size());
+            content.put(output.toByteArray()).flip();
+            return content;
+        } finally {
+            input.close();
+        }
+    }
+
+    /**
+     * Cached prompt file.
+     */
+    public static final class CachedPrompt {
+        private final ByteBuffer mContent;
+        private final String mContentType;
+        private final String mEntityTag;
+        private final AtomicLong mHits = new AtomicLong();
+        private final AtomicLong mMisses = new AtomicLong();
+
+        CachedPrompt(ByteBuffer content, String contentType) {
+            mContent = content.asReadOnlyBuffer();
+            mContentType = contentType;
+
+            CRC32 checksum = new CRC32();
+            ByteBuffer data = content.duplicate();
+            byte[] chunk = new byte[8192];
+            while (data.hasRemaining()) {
+                int length = Math.min(chunk.length, data.remaining());
+                data.get(chunk, 0, length);
+                checksum.update(chunk, 0, length);
+            }
+            mEntityTag = format("\"%x-%08x\"", content.remaining(), checksum.getValue());
+        }
+
+        /**
+         * @return a view of the file content, positioned at its start
+         */
+        ByteBuffer getContent() {
+            return mContent.duplicate();
+        }
+
+        public int getLength() {
+            return mContent.remaining();
+        }
+
+        public String getContentType() {
+            return mContentType;
+        }
+
+        public String getEntityTag() {
+            return mEntityTag;
+        }
+
+        /**
+         * @return the number of requests served from the cache
+         */
+        public long getHits() {
+            return mHits.get();
+        }
+
+        /**
+         * @return the number of requests that had to load the file
+         */
+        public long getMisses() {
+            return mMisses.get();
+        }
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright (c) 2013 Nu Echo Inc. All rights reserved.
+ */
+
+package com.nuecho.rivr.samples.voicemail.servlet;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.util.*;
+
+import javax.servlet.*;
+import javax.servlet.http.*;
+
+/**
+ * Serves the prompt files from the {@link PromptCache}, in place of the container's default servlet.
+ * <p>
+ * Responses carry a strong entity tag, so the VoiceXML browser can revalidate its cached copy with
+ * <code>If-None-Match</code>, and honor single byte <code>Range</code> requests. Content is written from the cached
+ * buffers, which are direct: the servlet output stream only takes arrays, so it goes through a small transfer array,
+ * one chunk at a time, and is never copied whole.
+ * <p>
+ * When mapped to {@link #STATISTICS_PATH}, the servlet lists the hits and misses of every cached file instead.
+ *
+ * @author Nu Echo Inc.
+ */
+public final class PromptServlet extends HttpServlet {
+    public static final String STATISTICS_PATH = "/prompt-statistics";
+
+    private static final long serialVersionUID = 1L;
+
+    private static final String ETAG_HEADER = "ETag";
+    private static final String IF_NONE_MATCH_HEADER = "If-None-Match";
+    private static final String IF_RANGE_HEADER = "If-Range";
+    private static final String RANGE_HEADER = "Range";
+    private static final String ACCEPT_RANGES_HEADER = "Accept-Ranges";
+    private static final String CONTENT_RANGE_HEADER = "Content-Range";
+
+    private transient PromptCache mCache;
+
+    @Override
+    public void init() throws ServletException {
+        mCache = PromptCache.getInstance();
+        if (mCache == null) {
+            mCache = PromptCache.initialize(getServletContext());
+        }
+    }
+
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response) throws ServletException,
+            IOException {
+        if (STATISTICS_PATH.equals(request.getServletPath())) {
+            writeStatistics(response);
+            return;
+        }
+
+        String pathInfo = request.getPathInfo();
+        PromptCache.CachedPrompt prompt = pathInfo == null ? null : mCache.get(request.getServletPath() + pathInfo);
+        if (prompt == null) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+
+        String entityTag = prompt.getEntityTag();
+        response.setHeader(ETAG_HEADER, entityTag);
+        response.setHeader(ACCEPT_RANGES_HEADER, "bytes");
+        if (matches(request.getHeader(IF_NONE_MATCH_HEADER), entityTag)) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+
+        ByteBuffer content = prompt.getContent();
+        int length = content.remaining();
+        ByteRange range = null;
+        String ifRange = request.getHeader(IF_RANGE_HEADER);
+        if (ifRange == null || ifRange.trim().equals(entityTag)) {
+            range = ByteRange.parse(request.getHeader(RANGE_HEADER), length);
+        }
+
+        if (range == ByteRange.UNSATISFIABLE) {
+            response.setHeader(CONTENT_RANGE_HEADER, ByteRange.toUnsatisfiableContentRange(length));
+            response.sendError(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+            return;
+        }
+
+        response.setContentType(prompt.getContentType());
+        if (range != null) {
+            response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+            response.setHeader(CONTENT_RANGE_HEADER, range.toContentRange(length));
+            content.position((int) range.getFirst());
+            content.limit((int) range.getLast() + 1);
+        }
+        response.setContentLength(content.remaining());
+
+        // Copies the content to the stream through a transfer array of a few kilobytes.
+        WritableByteChannel channel = Channels.newChannel(response.getOutputStream());
+        while (content.hasRemaining()) {
+            channel.write(content);
+        }
+    }
+
+    private void writeStatistics(HttpServletResponse response) throws IOException {
+        response.setContentType("text/plain");
+        response.setCharacterEncoding("UTF-8");
+        PrintWriter writer = response.getWriter();
+        writer.println("# path hits misses bytes");
+        for (Map.Entry<String, PromptCache.CachedPrompt> cached : mCache.getEntries().entrySet()) {
+            PromptCache.CachedPrompt prompt = cached.getValue();
+            writer.print(cached.getKey());
+            writer.print(' ');
+            writer.print(prompt.getHits());
+            writer.print(' ');
+            writer.print(prompt.getMisses());
+            writer.print(' ');
+            writer.println(prompt.getLength());
+        }
+    }
+
+    /**
+     * @return whether an <code>If-None-Match</code> header value matches an entity tag
+     */
+    static boolean matches(String ifNoneMatch, String entityTag) {
+        if (ifNoneMatch == null) return false;
+        for (String candidate : ifNoneMatch.split(",")) {
+            String tag = candidate.trim();
+            if (tag.equals("*") || tag.equals(entityTag)) return true;
+        }
+        return false;
+    }
+}
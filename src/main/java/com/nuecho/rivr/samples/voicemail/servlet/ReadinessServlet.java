@@ -0,0 +1,45 @@
+/*
+ * Copyright (c) 2013 Nu Echo Inc. All rights reserved.
+ */
+
+package com.nuecho.rivr.samples.voicemail.servlet;
+
+import java.io.*;
+
+import javax.servlet.*;
+import javax.servlet.http.*;
+
+import com.nuecho.rivr.samples.voicemail.warmup.*;
+
+/**
+ * Tells load balancers whether this node takes calls: 200 once the application has started and the dialogues are
+ * warmed up, 503 before and while it stops. The body, in plain text, reports the warm-up.
+ *
+ * @author Nu Echo Inc.
+ */
+public final class ReadinessServlet extends HttpServlet {
+    private static final long serialVersionUID = 1L;
+
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response) throws ServletException,
+            IOException {
+        boolean ready = Readiness.isReady();
+        response.setStatus(ready ? HttpServletResponse.SC_OK : HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+        response.setContentType("text/plain");
+        response.setCharacterEncoding("UTF-8");
+        response.setHeader("Cache-Control", "no-cache");
+        PrintWriter writer = response.getWriter();
+        writer.println(ready ? "ready" : "not ready");
+
+        WarmUpReport report = Readiness.getWarmUpReport();
+        if (report == null) return;
+        writer.println("warm-up sessions: " + report.getSessions());
+        writer.println("warm-up failures: " + report.getFailures());
+        writer.println("warm-up turns: " + report.getTurns());
+        writer.println("warm-up time ms: " + report.getElapsedMillis());
+        writer.println("first round turn latency us: " + report.getFirstRoundTurnMicros());
+        writer.println("steady turn latency us: " + report.getSteadyTurnMicros());
+        writer.println("steady state round: " + report.getSteadyStateRound() + "/" + report.getRounds());
+        writer.println("time to steady state ms: " + report.getTimeToSteadyStateMillis());
+    }
+}
@@ -0,0 +1,187 @@
+/*
+ * Copyright (c) 2013 Nu Echo Inc. All rights reserved.
+ */
+
+package com.nuecho.rivr.samples.voicemail.servlet;
+
+import java.io.*;
+import java.util.*;
+
+import javax.servlet.*;
+import javax.servlet.http.*;
+
+import org.slf4j.*;
+
+import com.nuecho.rivr.samples.voicemail.ingest.*;
+
+/**
+ * Spools the recordings posted to a running dialogue with the {@link RecordingIngester} as they are received, before
+ * the dialogue servlet reads the request.
+ * <p>
+ * The <code>multipart/form-data</code> body is read through a fixed-size buffer. The audio file parts are streamed to
+ * the spool of the dialogue and passed on to the servlet empty, so that the dialogue gets the recording information
+ * without the recording; the other parts are passed on as posted. Other requests, and all requests when there is no
+ * ingester, go straight to the servlet.
+ *
+ * @author Nu Echo Inc.
+ */
+public final class RecordingUploadFilter implements Filter {
+    private static final String MULTIPART_FORM_DATA = "multipart/form-data";
+    private static final String BOUNDARY_ATTRIBUTE = "boundary=";
+    private static final String CONTENT_LENGTH_HEADER = "Content-Length";
+    private static final String CRLF = "\r\n";
+
+    private final Logger mLog = LoggerFactory.getLogger(getClass());
+
+    @Override
+    public void init(FilterConfig filterConfig) {}
+
+    @Override
+    public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain) throws IOException,
+            ServletException {
+        RecordingIngester ingester = RecordingIngesters.getIngester();
+        HttpServletRequest httpRequest = (HttpServletRequest) request;
+        String dialogueId = DialogueRoutingFilter.getDialogueId(httpRequest.getPathInfo());
+        String boundary = getBoundary(httpRequest.getContentType());
+        if (ingester == null || dialogueId == null || boundary == null || !"POST".equals(httpRequest.getMethod())) {
+            chain.doFilter(request, response);
+            return;
+        }
+
+        byte[] body = spoolRecordings(httpRequest.getInputStream(), boundary, ingester, dialogueId);
+        chain.doFilter(new SpooledRequest(httpRequest, body), response);
+    }
+
+    @Override
+    public void destroy() {}
+
+    /**
+     * @return the boundary of a <code>multipart/form-data</code> content type, or <code>null</code> for other content
+     *         types
+     */
+    static String getBoundary(String contentType) {
+        if (contentType == null || !contentType.toLowerCase(Locale.ENGLISH).startsWith(MULTIPART_FORM_DATA))
+            return null;
+        int start = contentType.toLowerCase(Locale.ENGLISH).indexOf(BOUNDARY_ATTRIBUTE);
+        if (start < 0) return null;
+        start += BOUNDARY_ATTRIBUTE.length();
+        int end = contentType.indexOf(';', start);
+        String boundary = (end < 0 ? contentType.substring(start) : contentType.substring(start, end)).trim();
+        if (boundary.length() >= 2 && boundary.startsWith("\"") && boundary.endsWith("\"")) {
+            boundary = boundary.substring(1, boundary.length() - 1);
+        }
+        return boundary.isEmpty() ? null : boundary;
+    }
+
+    /**
+     * Spools the audio file parts of a body.
+     *
+     * @return the body to pass on, with the audio file parts emptied
+     */
+    static byte[] spoolRecordings(InputStream input, String boundary, RecordingIngester ingester, String dialogueId)
+            throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        Writer writer = new OutputStreamWriter(body, MultipartReader.HEADER_CHARSET);
+        MultipartReader reader = new MultipartReader(input, boundary, WavTranscoder.CHUNK_SIZE);
+        boolean more = reader.skipPreamble();
+        while (more) {
+            List<String> headers = reader.readHeaders();
+            writer.write("--" + boundary + CRLF);
+            for (String header : headers) {
+                writer.write(header + CRLF);
+            }
+            writer.write(CRLF);
+            writer.flush();
+
+            InputStream part = reader.openBody();
+            if (isRecording(headers)) {
+                ingester.spool(dialogueId, part);
+            } else {
+                copy(part, body);
+            }
+            writer.write(CRLF);
+            more = reader.nextPart();
+        }
+        writer.write("--" + boundary + "--" + CRLF);
+        writer.flush();
+        return body.toByteArray();
+    }
+
+    private static boolean isRecording(List<String> headers) {
+        String disposition = MultipartReader.getHeader(headers, "Content-Disposition");
+        String contentType = MultipartReader.getHeader(headers, "Content-Type");
+        return disposition != null
+               && disposition.contains("filename=")
+               && contentType != null
+               && contentType.toLowerCase(Locale.ENGLISH).startsWith("audio/");
+    }
+
+    private static void copy(InputStream input, OutputStream output) throws IOException {
+        byte[] buffer = new byte[WavTranscoder.CHUNK_SIZE];
+        int read;
+        while ((read = input.read(buffer)) >= 0) {
+            output.write(buffer, 0, read);
+        }
+    }
+
+    /**
+     * The request with its body replaced.
+     */
+    private final class SpooledRequest extends HttpServletRequestWrapper {
+        private final byte[] mBody;
+
+        SpooledRequest(HttpServletRequest request, byte[] body) {
+            super(request);
+            mBody = body;
+            mLog.debug("Recording spooled, {} bytes passed on", body.length);
+        }
+
+        @Override
+        public ServletInputStream getInputStream() {
+            final ByteArrayInputStream input = new ByteArrayInputStream(mBody);
+            return new ServletInputStream() {
+                @Override
+                public int read() {
+                    return input.read();
+                }
+
+                @Override
+                public int read(byte[] bytes, int offset, int length) {
+                    return input.read(bytes, offset, length);
+                }
+            };
+        }
+
+        @Override
+        public BufferedReader getReader() throws UnsupportedEncodingException {
+            String encoding = getCharacterEncoding();
+            return new BufferedReader(new InputStreamReader(new ByteArrayInputStream(mBody),
+                                                            encoding == null ? "ISO-8859-1" : encoding));
+        }
+
+        @Override
+        public int getContentLength() {
+            return mBody.length;
+        }
+
+        @Override
+        public String getHeader(String name) {
+            if (CONTENT_LENGTH_HEADER.equalsIgnoreCase(name)) return String.valueOf(mBody.length);
+            return super.getHeader(name);
+        }
+
+        @Override
+        public int getIntHeader(String name) {
+            if (CONTENT_LENGTH_HEADER.equalsIgnoreCase(name)) return mBody.length;
+            return super.getIntHeader(name);
+        }
+
+        @Override
+        @SuppressWarnings("rawtypes")
+        public Enumeration getHeaders(String name) {
+            if (CONTENT_LENGTH_HEADER.equalsIgnoreCase(name))
+                return Collections.enumeration(Collections.singletonList(String.valueOf(mBody.length)));
+            return super.getHeaders(name);
+        }
+    }
+}
@@ -0,0 +1,675 @@
+/*
+ * Copyright (c) 2013 Nu Echo Inc. All rights reserved.
+ */
+
+package com.nuecho.rivr.samples.voicemail.servlet;
+
+import java.io.*;
+import java.net.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+import javax.servlet.*;
+
+import org.slf4j.*;
+
+import com.nuecho.rivr.core.util.*;
+import com.nuecho.rivr.samples.voicemail.admission.*;
+import com.nuecho.rivr.samples.voicemail.auth.*;
+import com.nuecho.rivr.samples.voicemail.cdr.*;
+import com.nuecho.rivr.samples.voicemail.cluster.*;
+import com.nuecho.rivr.samples.voicemail.directory.*;
+import com.nuecho.rivr.samples.voicemail.events.*;
+import com.nuecho.rivr.samples.voicemail.flow.*;
+import com.nuecho.rivr.samples.voicemail.ingest.*;
+import com.nuecho.rivr.samples.voicemail.metrics.*;
+import com.nuecho.rivr.samples.voicemail.passivation.*;
+import com.nuecho.rivr.samples.voicemail.prompt.*;
+import com.nuecho.rivr.samples.voicemail.store.*;
+import com.nuecho.rivr.samples.voicemail.warmup.*;
+
+/**
+ * Prepares the shared resources of the voicemail application when the web application starts.
+ *
+ * @author Nu Echo Inc.
+ */
+public final class VoicemailContextListener implements ServletContextListener {
+    private static final String PARAMETER_PREFIX = "com.nuecho.rivr.samples.voicemail.";
+
+    /**
+     * Path of a call flow definition file replacing the bundled definition. Optional.
+     */
+    public static final String CALL_FLOW_FILE_PARAMETER = PARAMETER_PREFIX + "callFlow.file";
+
+    /**
+     * How often, in milliseconds, the call flow definition file is checked for modifications.
+     */
+    public static final String CALL_FLOW_CHECK_PERIOD_PARAMETER = PARAMETER_PREFIX + "callFlow.checkPeriod";
+
+    /**
+     * Reprompt policies file, replacing the definition bundled with the application. Optional. See
+     * {@link RepromptPolicies} for its format.
+     */
+    public static final String REPROMPT_FILE_PARAMETER = PARAMETER_PREFIX + "reprompt.file";
+
+    /**
+     * Path of the {@link ExtensionDirectory} file listing the extensions and external numbers callers can reach.
+     * Optional: without it, only the demonstration extension is listed.
+     */
+    public static final String DIRECTORY_FILE_PARAMETER = PARAMETER_PREFIX + "directory.file";
+
+    /**
+     * How often, in milliseconds, the extension directory file is checked for modifications.
+     */
+    public static final String DIRECTORY_CHECK_PERIOD_PARAMETER = PARAMETER_PREFIX + "directory.checkPeriod";
+
+    /**
+     * Path of the mailbox store file written by {@link FileMailboxStore}. Optional: without it, only the demonstration
+     * mailbox is available.
+     */
+    public static final String MAILBOX_FILE_PARAMETER = PARAMETER_PREFIX + "auth.mailboxFile";
+
+    /**
+     * Maximum number of cached PIN hashes.
+     */
+    public static final String PIN_CACHE_SIZE_PARAMETER = PARAMETER_PREFIX + "auth.cacheSize";
+
+    /**
+     * Number of failed logins locking out a mailbox.
+     */
+    public static final String MAX_LOGIN_FAILURES_PARAMETER = PARAMETER_PREFIX + "auth.maxFailures";
+
+    /**
+     * How long, in seconds, a mailbox stays locked out.
+     */
+    public static final String LOCKOUT_PERIOD_PARAMETER = PARAMETER_PREFIX + "auth.lockoutPeriod";
+
+    /**
+     * Directory of the message store. Defaults to <code>rivr-voicemail</code> in the temporary directory.
+     */
+    public static final String STORE_DIRECTORY_PARAMETER = PARAMETER_PREFIX + "store.directory";
+
+    /**
+     * Size, in bytes, of the message store segment files.
+     */
+    public static final String STORE_SEGMENT_SIZE_PARAMETER = PARAMETER_PREFIX + "store.segmentSize";
+
+    /**
+     * How often, in seconds, the message store is compacted.
+     */
+    public static final String STORE_COMPACTION_PERIOD_PARAMETER = PARAMETER_PREFIX + "store.compactionPeriod";
+
+    /**
+     * How long, in seconds, a dialogue waits for the VoiceXML browser before being passivated. Optional: without it,
+     * dialogues are never passivated.
+     */
+    public static final String PASSIVATION_IDLE_TIMEOUT_PARAMETER = PARAMETER_PREFIX + "passivation.idleTimeout";
+
+    /**
+     * Directory of the passivated dialogue states. Optional: without it, the states are kept off-heap and lost on
+     * restart. Required in a cluster, where it must be shared by the nodes: a passivated dialogue may resume on any
+     * node.
+     */
+    public static final String PASSIVATION_DIRECTORY_PARAMETER = PARAMETER_PREFIX + "passivation.directory";
+
+    /**
+     * How long, in seconds, a passivated dialogue can be resumed. Should match the session timeout of the dialogue
+     * servlet.
+     */
+    public static final String PASSIVATION_EXPIRY_PARAMETER = PARAMETER_PREFIX + "passivation.expiry";
+
+    /**
+     * Id of this node in the cluster. Optional: without it, the node runs alone and dialogue requests aren't routed.
+     */
+    public static final String CLUSTER_NODE_ID_PARAMETER = PARAMETER_PREFIX + "cluster.nodeId";
+
+    /**
+     * URL of the web application on this node, as reached by the other nodes, e.g.
+     * <code>http://node1:8080/rivr-voicemail</code>.
+     */
+    public static final String CLUSTER_NODE_URL_PARAMETER = PARAMETER_PREFIX + "cluster.nodeUrl";
+
+    /**
+     * Directory of the {@link FileDialogueRegistry} shared by the nodes. Optional: without it, the registry is in
+     * memory, which only makes sense for a single node.
+     */
+    public static final String CLUSTER_REGISTRY_DIRECTORY_PARAMETER = PARAMETER_PREFIX + "cluster.registryDirectory";
+
+    /**
+     * How often, in seconds, the node announces itself in the registry. A node missing three heartbeats is dead.
+     */
+    public static final String CLUSTER_HEARTBEAT_PERIOD_PARAMETER = PARAMETER_PREFIX + "cluster.heartbeatPeriod";
+
+    /**
+     * Directory where the {@link RecordingIngester} spools the recordings as they are posted. Optional: without it,
+     * recordings are received in the heap and deposited as posted.
+     */
+    public static final String INGEST_DIRECTORY_PARAMETER = PARAMETER_PREFIX + "ingest.directory";
+
+    /**
+     * Number of threads converting and depositing the spooled recordings.
+     */
+    public static final String INGEST_WORKERS_PARAMETER = PARAMETER_PREFIX + "ingest.workers";
+
+    /**
+     * Maximum number of concurrent dialogues, the initial limit of the {@link AdmissionController}. Optional: without
+     * it, every call is admitted.
+     */
+    public static final String ADMISSION_MAX_DIALOGUES_PARAMETER = PARAMETER_PREFIX + "admission.maxDialogues";
+
+    /**
+     * Lowest limit of concurrent dialogues the admission controller can adapt to.
+     */
+    public static final String ADMISSION_MIN_DIALOGUES_PARAMETER = PARAMETER_PREFIX + "admission.minDialogues";
+
+    /**
+     * Number of calls that can wait for admission.
+     */
+    public static final String ADMISSION_QUEUE_SIZE_PARAMETER = PARAMETER_PREFIX + "admission.queueSize";
+
+    /**
+     * How long, in milliseconds, a call waits for admission before being rejected.
+     */
+    public static final String ADMISSION_QUEUE_TIMEOUT_PARAMETER = PARAMETER_PREFIX + "admission.queueTimeout";
+
+    /**
+     * Average server time per turn, in milliseconds, above which the admission limit decreases.
+     */
+    public static final String ADMISSION_LATENCY_TARGET_PARAMETER = PARAMETER_PREFIX + "admission.latencyTarget";
+
+    /**
+     * Path of the file where the {@link CallEventWriter} writes the call events. Optional: without it, call events
+     * aren't logged.
+     */
+    public static final String EVENTS_FILE_PARAMETER = PARAMETER_PREFIX + "events.file";
+
+    /**
+     * Number of call events the {@link CallEventLog} buffers for the writer, rounded up to a power of two.
+     */
+    public static final String EVENTS_BUFFER_SIZE_PARAMETER = PARAMETER_PREFIX + "events.bufferSize";
+
+    /**
+     * Number of free buffer slots under which turn events are discarded. Defaults to a fifth of the buffer.
+     */
+    public static final String EVENTS_DISCARDING_THRESHOLD_PARAMETER = PARAMETER_PREFIX + "events.discardingThreshold";
+
+    /**
+     * Percentage of the calls whose turn events are logged. Login results and exit statuses are logged for every call.
+     */
+    public static final String EVENTS_SAMPLE_PERCENT_PARAMETER = PARAMETER_PREFIX + "events.samplePercent";
+
+    /**
+     * Size, in bytes, at which the call event file is rolled.
+     */
+    public static final String EVENTS_MAX_FILE_SIZE_PARAMETER = PARAMETER_PREFIX + "events.maxFileSize";
+
+    /**
+     * Number of rolled call event files kept.
+     */
+    public static final String EVENTS_MAX_FILES_PARAMETER = PARAMETER_PREFIX + "events.maxFiles";
+
+    /**
+     * Path of the file where the {@link CallDetailRecordWriter} appends a record per call. Optional: without it, no
+     * call detail record is kept. Read with {@link CallDetailRecordReader}.
+     */
+    public static final String CDR_FILE_PARAMETER = PARAMETER_PREFIX + "cdr.file";
+
+    /**
+     * Number of call detail records waiting to be written beyond which records are dropped.
+     */
+    public static final String CDR_QUEUE_SIZE_PARAMETER = PARAMETER_PREFIX + "cdr.queueSize";
+
+    /**
+     * Longest time, in milliseconds, a call detail record waits to be written.
+     */
+    public static final String CDR_FLUSH_PERIOD_PARAMETER = PARAMETER_PREFIX + "cdr.flushPeriod";
+
+    /**
+     * Length, in seconds, of the sliding window over which the {@link CallPathMetrics} count the call paths.
+     */
+    public static final String PATHS_WINDOW_PARAMETER = PARAMETER_PREFIX + "paths.window";
+
+    /**
+     * Number of time buckets the call path window slides by.
+     */
+    public static final String PATHS_BUCKETS_PARAMETER = PARAMETER_PREFIX + "paths.buckets";
+
+    /**
+     * Number of synthetic sessions played by the {@link DialogueWarmUp} before the node reports ready. 0 disables the
+     * warm-up.
+     */
+    public static final String WARMUP_SESSIONS_PARAMETER = PARAMETER_PREFIX + "warmup.sessions";
+
+    /**
+     * Longest time, in seconds, the warm-up may delay the start of the node.
+     */
+    public static final String WARMUP_MAX_TIME_PARAMETER = PARAMETER_PREFIX + "warmup.maxTime";
+
+    private static final long DEFAULT_CALL_FLOW_CHECK_PERIOD = 5000;
+    private static final long DEFAULT_DIRECTORY_CHECK_PERIOD = 5000;
+    private static final long DEFAULT_COMPACTION_PERIOD = 300;
+    private static final long DEFAULT_PASSIVATION_EXPIRY = 1800;
+    private static final long DEFAULT_HEARTBEAT_PERIOD = 5;
+    private static final int MISSED_HEARTBEATS = 3;
+    private static final long DEFAULT_ADMISSION_QUEUE_SIZE = 20;
+    private static final long DEFAULT_ADMISSION_QUEUE_TIMEOUT = 500;
+    private static final long DEFAULT_ADMISSION_LATENCY_TARGET = 250;
+    private static final long DEFAULT_EVENTS_SAMPLE_PERCENT = 100;
+    private static final long DEFAULT_WARMUP_SESSIONS = 700;
+    private static final long DEFAULT_WARMUP_MAX_TIME = 30;
+
+    private FileMailboxStore mMailboxStore;
+    private MessageStore mMessageStore;
+    private RecordingIngester mRecordingIngester;
+    private CallEventWriter mCallEventWriter;
+    private CallDetailRecordWriter mCallDetailRecordWriter;
+    private ScheduledExecutorService mPassivationPurger;
+    private ScheduledExecutorService mHeartbeat;
+    private ScheduledExecutorService mDirectoryReloader;
+    private DialogueRouter mRouter;
+
+    private final Logger mLog = LoggerFactory.getLogger(getClass());
+
+    @Override
+    public void contextInitialized(ServletContextEvent event) {
+        ServletContext servletContext = event.getServletContext();
+        String contextPath = servletContext.getContextPath();
+        Set<PromptSet> recordedNumbers = findRecordedNumbers(servletContext);
+        PromptCatalog.initialize(contextPath, recordedNumbers);
+        mLog.info("Prompt catalogs built for context path [{}], numbers recorded for {}", contextPath, recordedNumbers);
+        PromptCache.initialize(servletContext);
+
+        CallFlowRepository callFlowRepository = CallFlowRepository.getInstance();
+        String callFlowFile = servletContext.getInitParameter(CALL_FLOW_FILE_PARAMETER);
+        if (callFlowFile != null) {
+            callFlowRepository.setFile(new File(callFlowFile),
+                                       getLongParameter(servletContext,
+                                                        CALL_FLOW_CHECK_PERIOD_PARAMETER,
+                                                        DEFAULT_CALL_FLOW_CHECK_PERIOD));
+        }
+        mLog.info("Call flow ready with {} nodes", callFlowRepository.getCallFlow().getNodeCount());
+
+        String repromptFile = servletContext.getInitParameter(REPROMPT_FILE_PARAMETER);
+        if (repromptFile != null) {
+            try {
+                RepromptPolicies.setPolicies(RepromptPolicies.load(new File(repromptFile)));
+            } catch (IOException exception) {
+                throw new IllegalStateException("Unable to read reprompt policies " + repromptFile, exception);
+            }
+        }
+        mLog.info("Reprompt policies: {}", RepromptPolicies.getPolicies().getAll().values());
+
+        initializeDirectory(servletContext);
+        WarmUpReport warmUpReport = warmUp(servletContext);
+
+        long pathsWindow = getLongParameter(servletContext,
+                                            PATHS_WINDOW_PARAMETER,
+                                            TimeUnit.MILLISECONDS.toSeconds(CallPathMetrics.DEFAULT_WINDOW_MILLIS));
+        int pathsBuckets = (int) getLongParameter(servletContext,
+                                                  PATHS_BUCKETS_PARAMETER,
+                                                  CallPathMetrics.DEFAULT_BUCKETS);
+        CallPathMetrics.setInstance(new CallPathMetrics(TimeUnit.SECONDS.toMillis(pathsWindow), pathsBuckets));
+
+        String mailboxFile = servletContext.getInitParameter(MAILBOX_FILE_PARAMETER);
+        if (mailboxFile != null) {
+            try {
+                mMailboxStore = new FileMailboxStore(new File(mailboxFile));
+            } catch (IOException exception) {
+                throw new IllegalStateException("Unable to open mailbox store " + mailboxFile, exception);
+            }
+            int cacheSize = (int) getLongParameter(servletContext,
+                                                   PIN_CACHE_SIZE_PARAMETER,
+                                                   StoreAuthenticator.DEFAULT_CACHE_SIZE);
+            int maxFailures = (int) getLongParameter(servletContext,
+                                                     MAX_LOGIN_FAILURES_PARAMETER,
+                                                     StoreAuthenticator.DEFAULT_MAX_FAILURES);
+            long lockoutPeriod = getLongParameter(servletContext,
+                                                  LOCKOUT_PERIOD_PARAMETER,
+                                                  StoreAuthenticator.DEFAULT_LOCKOUT_SECONDS);
+            Authenticators.setAuthenticator(new StoreAuthenticator(mMailboxStore,
+                                                                   cacheSize,
+                                                                   maxFailures,
+                                                                   lockoutPeriod));
+            mLog.info("Mailboxes authenticated against [{}]", mailboxFile);
+        }
+
+        String storeDirectory = servletContext.getInitParameter(STORE_DIRECTORY_PARAMETER);
+        File directory = storeDirectory == null
+                ? new File(System.getProperty("java.io.tmpdir"), "rivr-voicemail")
+                : new File(storeDirectory);
+        int segmentSize = (int) getLongParameter(servletContext,
+                                                 STORE_SEGMENT_SIZE_PARAMETER,
+                                                 MessageStore.DEFAULT_SEGMENT_SIZE);
+        try {
+            mMessageStore = new MessageStore(directory, segmentSize, MessageStore.DEFAULT_COMPACTION_THRESHOLD);
+        } catch (IOException exception) {
+            throw new IllegalStateException("Unable to open message store " + directory, exception);
+        }
+        mMessageStore.startCompaction(getLongParameter(servletContext,
+                                                       STORE_COMPACTION_PERIOD_PARAMETER,
+                                                       DEFAULT_COMPACTION_PERIOD));
+        MessageStores.setMessageStore(mMessageStore);
+        mLog.info("Messages stored in [{}]", directory);
+
+        initializeIngester(servletContext);
+        initializeCallEvents(servletContext);
+        initializeCallDetailRecords(servletContext);
+        initializePassivation(servletContext);
+        initializeCluster(servletContext);
+        initializeAdmission(servletContext);
+        Readiness.setReady(warmUpReport);
+    }
+
+    /**
+     * Warms up the dialogues while no stateful resource is installed, so that they leave nothing behind.
+     */
+    private WarmUpReport warmUp(ServletContext servletContext) {
+        int sessions = (int) getLongParameter(servletContext, WARMUP_SESSIONS_PARAMETER, DEFAULT_WARMUP_SESSIONS);
+        if (sessions <= 0) return null;
+
+        long maxTime = getLongParameter(servletContext, WARMUP_MAX_TIME_PARAMETER, DEFAULT_WARMUP_MAX_TIME);
+        DialogueWarmUp warmUp = new DialogueWarmUp(servletContext.getContextPath(),
+                                                   sessions,
+                                                   TimeUnit.SECONDS.toMillis(maxTime));
+        try {
+            WarmUpReport report = warmUp.run();
+            mLog.info("Dialogues warmed up: {}", report);
+            return report;
+        } catch (IOException exception) {
+            mLog.warn("Unable to warm up the dialogues", exception);
+            return null;
+        }
+    }
+
+    private void initializeDirectory(ServletContext servletContext) {
+        String directoryFile = servletContext.getInitParameter(DIRECTORY_FILE_PARAMETER);
+        if (directoryFile == null) return;
+
+        final ExtensionDirectoryFile file = new ExtensionDirectoryFile(new File(directoryFile));
+        ExtensionDirectory directory;
+        try {
+            directory = file.load();
+        } catch (IOException exception) {
+            throw new IllegalStateException("Unable to read extension directory " + directoryFile, exception);
+        }
+
+        long checkPeriod = getLongParameter(servletContext,
+                                            DIRECTORY_CHECK_PERIOD_PARAMETER,
+                                            DEFAULT_DIRECTORY_CHECK_PERIOD);
+        mDirectoryReloader = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "extension-directory-reloader");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        mDirectoryReloader.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                file.reloadIfModified();
+            }
+        }, checkPeriod, checkPeriod, TimeUnit.MILLISECONDS);
+        mLog.info("Extension directory loaded from [{}], {} numbers", directoryFile, directory.size());
+    }
+
+    private void initializeIngester(ServletContext servletContext) {
+        String spoolDirectory = servletContext.getInitParameter(INGEST_DIRECTORY_PARAMETER);
+        if (spoolDirectory == null) return;
+
+        int workers = (int) getLongParameter(servletContext,
+                                             INGEST_WORKERS_PARAMETER,
+                                             RecordingIngester.DEFAULT_WORKERS);
+        try {
+            mRecordingIngester = new RecordingIngester(new File(spoolDirectory), mMessageStore, workers);
+        } catch (IOException exception) {
+            throw new IllegalStateException("Unable to open recording spool " + spoolDirectory, exception);
+        }
+        RecordingIngesters.setIngester(mRecordingIngester);
+        mLog.info("Recordings spooled in [{}], converted by {} workers", spoolDirectory, workers);
+    }
+
+    private void initializeCallEvents(ServletContext servletContext) {
+        String eventsFile = servletContext.getInitParameter(EVENTS_FILE_PARAMETER);
+        if (eventsFile == null) return;
+
+        int bufferSize = (int) getLongParameter(servletContext,
+                                                EVENTS_BUFFER_SIZE_PARAMETER,
+                                                CallEventLog.DEFAULT_CAPACITY);
+        int discardingThreshold = (int) getLongParameter(servletContext,
+                                                         EVENTS_DISCARDING_THRESHOLD_PARAMETER,
+                                                         bufferSize / 5);
+        int samplePercent = (int) getLongParameter(servletContext,
+                                                   EVENTS_SAMPLE_PERCENT_PARAMETER,
+                                                   DEFAULT_EVENTS_SAMPLE_PERCENT);
+        CallEventLog eventLog = new CallEventLog(bufferSize, discardingThreshold, samplePercent);
+        try {
+            mCallEventWriter = new CallEventWriter(eventLog,
+                                                   new File(eventsFile),
+                                                   getLongParameter(servletContext,
+                                                                    EVENTS_MAX_FILE_SIZE_PARAMETER,
+                                                                    CallEventWriter.DEFAULT_MAX_FILE_SIZE),
+                                                   (int) getLongParameter(servletContext,
+                                                                          EVENTS_MAX_FILES_PARAMETER,
+                                                                          CallEventWriter.DEFAULT_MAX_FILES));
+        } catch (IOException exception) {
+            throw new IllegalStateException("Unable to open call event file " + eventsFile, exception);
+        }
+        mCallEventWriter.start();
+        CallEventLogs.setLog(eventLog);
+        mLog.info("Call events written to [{}] through {}", eventsFile, eventLog);
+    }
+
+    private void initializeCallDetailRecords(ServletContext servletContext) {
+        String cdrFile = servletContext.getInitParameter(CDR_FILE_PARAMETER);
+        if (cdrFile == null) return;
+
+        int queueSize = (int) getLongParameter(servletContext,
+                                               CDR_QUEUE_SIZE_PARAMETER,
+                                               CallDetailRecordWriter.DEFAULT_QUEUE_SIZE);
+        long flushPeriod = getLongParameter(servletContext,
+                                            CDR_FLUSH_PERIOD_PARAMETER,
+                                            CallDetailRecordWriter.DEFAULT_FLUSH_PERIOD);
+        try {
+            mCallDetailRecordWriter = new CallDetailRecordWriter(new File(cdrFile), queueSize, flushPeriod);
+        } catch (IOException exception) {
+            throw new IllegalStateException("Unable to open call detail record file " + cdrFile, exception);
+        }
+        CallDetailRecordWriters.setWriter(mCallDetailRecordWriter);
+        mLog.info("Call detail records appended to [{}]", cdrFile);
+    }
+
+    private void initializeAdmission(ServletContext servletContext) {
+        int maxDialogues = (int) getLongParameter(servletContext, ADMISSION_MAX_DIALOGUES_PARAMETER, 0);
+        if (maxDialogues <= 0) return;
+
+        int minDialogues = (int) getLongParameter(servletContext,
+                                                  ADMISSION_MIN_DIALOGUES_PARAMETER,
+                                                  Math.max(1, maxDialogues / 10));
+        AdmissionController admissionController;
+        admissionController = new AdmissionController(minDialogues,
+                                                      maxDialogues,
+                                                      (int) getLongParameter(servletContext,
+                                                                             ADMISSION_QUEUE_SIZE_PARAMETER,
+                                                                             DEFAULT_ADMISSION_QUEUE_SIZE),
+                                                      getLongParameter(servletContext,
+                                                                       ADMISSION_QUEUE_TIMEOUT_PARAMETER,
+                                                                       DEFAULT_ADMISSION_QUEUE_TIMEOUT),
+                                                      getLongParameter(servletContext,
+                                                                       ADMISSION_LATENCY_TARGET_PARAMETER,
+                                                                       DEFAULT_ADMISSION_LATENCY_TARGET));
+        AdmissionControllers.setAdmissionController(admissionController);
+        mLog.info("Admitting {} to {} concurrent dialogues", minDialogues, maxDialogues);
+    }
+
+    private void initializeCluster(ServletContext servletContext) {
+        String nodeId = servletContext.getInitParameter(CLUSTER_NODE_ID_PARAMETER);
+        if (nodeId == null) return;
+        String nodeUrl = servletContext.getInitParameter(CLUSTER_NODE_URL_PARAMETER);
+        if (nodeUrl == null)
+            throw new IllegalStateException("Missing " + CLUSTER_NODE_URL_PARAMETER + " for node " + nodeId);
+
+        if (DialogueStateStores.getStore() != null
+            && servletContext.getInitParameter(PASSIVATION_DIRECTORY_PARAMETER) == null)
+            throw new IllegalStateException("Missing " + PASSIVATION_DIRECTORY_PARAMETER
+                                            + " shared by the nodes for node " + nodeId);
+
+        String registryDirectory = servletContext.getInitParameter(CLUSTER_REGISTRY_DIRECTORY_PARAMETER);
+        long heartbeatPeriod = getLongParameter(servletContext,
+                                                CLUSTER_HEARTBEAT_PERIOD_PARAMETER,
+                                                DEFAULT_HEARTBEAT_PERIOD);
+        try {
+            DialogueRegistry registry = registryDirectory == null
+                    ? new InMemoryDialogueRegistry()
+                    : new FileDialogueRegistry(new File(registryDirectory));
+            mRouter = new DialogueRouter(registry,
+                                         nodeId,
+                                         nodeUrl,
+                                         TimeUnit.SECONDS.toMillis(heartbeatPeriod * MISSED_HEARTBEATS));
+        } catch (IOException exception) {
+            throw new IllegalStateException("Unable to join the cluster through registry " + registryDirectory,
+                                            exception);
+        }
+
+        mHeartbeat = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "cluster-heartbeat");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        mHeartbeat.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    mRouter.heartbeat();
+                } catch (IOException exception) {
+                    mLog.error("Unable to update the cluster registry", exception);
+                }
+            }
+        }, heartbeatPeriod, heartbeatPeriod, TimeUnit.SECONDS);
+
+        DialogueRouters.setRouter(mRouter);
+        mLog.info("Node [{}] joined the cluster", nodeId);
+    }
+
+    private void initializePassivation(ServletContext servletContext) {
+        long idleTimeout = getLongParameter(servletContext, PASSIVATION_IDLE_TIMEOUT_PARAMETER, 0);
+        if (idleTimeout <= 0) return;
+
+        String stateDirectory = servletContext.getInitParameter(PASSIVATION_DIRECTORY_PARAMETER);
+        final DialogueStateStore store;
+        if (stateDirectory == null) {
+            store = new OffHeapDialogueStateStore();
+        } else {
+            try {
+                store = new FileDialogueStateStore(new File(stateDirectory));
+            } catch (IOException exception) {
+                throw new IllegalStateException("Unable to open dialogue state directory " + stateDirectory, exception);
+            }
+        }
+
+        final long expiryMillis = TimeUnit.SECONDS.toMillis(getLongParameter(servletContext,
+                                                                             PASSIVATION_EXPIRY_PARAMETER,
+                                                                             DEFAULT_PASSIVATION_EXPIRY));
+        mPassivationPurger = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "dialogue-state-purger");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        mPassivationPurger.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                int purged = store.purge(System.currentTimeMillis() - expiryMillis);
+                if (purged > 0) {
+                    mLog.info("Purged {} expired dialogue states", purged);
+                }
+            }
+        }, expiryMillis, expiryMillis / 10 + 1, TimeUnit.MILLISECONDS);
+
+        DialogueStateStores.setStore(store, Duration.seconds(idleTimeout));
+        mLog.info("Dialogues idle for {} s passivated to [{}]",
+                  idleTimeout,
+                  stateDirectory == null ? "off-heap memory" : stateDirectory);
+    }
+
+    @Override
+    public void contextDestroyed(ServletContextEvent event) {
+        Readiness.setNotReady();
+        AdmissionControllers.setAdmissionController(null);
+
+        if (mRecordingIngester != null) {
+            RecordingIngesters.setIngester(null);
+            mRecordingIngester.shutdown();
+        }
+
+        if (mRouter != null) {
+            DialogueRouters.setRouter(null);
+            mHeartbeat.shutdownNow();
+            mRouter.shutdown();
+        }
+
+        if (mPassivationPurger != null) {
+            DialogueStateStores.setStore(null, null);
+            mPassivationPurger.shutdownNow();
+        }
+
+        if (mDirectoryReloader != null) {
+            mDirectoryReloader.shutdownNow();
+            ExtensionDirectories.setDirectory(null);
+        }
+
+        if (mCallEventWriter != null) {
+            CallEventLog eventLog = CallEventLogs.getLog();
+            CallEventLogs.setLog(null);
+            mCallEventWriter.shutdown();
+            mLog.info("Call event log closed, {} events discarded", eventLog.getDiscarded());
+        }
+
+        if (mCallDetailRecordWriter != null) {
+            CallDetailRecordWriters.setWriter(null);
+            mCallDetailRecordWriter.shutdown();
+            mLog.info("{} call detail records written, {} dropped",
+                      mCallDetailRecordWriter.getWritten(),
+                      mCallDetailRecordWriter.getDropped());
+        }
+
+        if (mMessageStore != null) {
+            MessageStores.setMessageStore(null);
+            mMessageStore.close();
+        }
+
+        if (mMailboxStore != null) {
+            try {
+                mMailboxStore.close();
+            } catch (IOException exception) {
+                mLog.warn("Unable to close mailbox store", exception);
+            }
+        }
+    }
+
+    private static Set<PromptSet> findRecordedNumbers(ServletContext servletContext) {
+        Set<PromptSet> recordedNumbers = EnumSet.noneOf(PromptSet.class);
+        for (PromptSet promptSet : PromptSet.values()) {
+            String marker = "/" + promptSet.getDirectory() + "/" + SayPrompts.MARKER_PROMPT
+                            + CompositePaths.PROMPT_EXTENSION;
+            try {
+                if (servletContext.getResource(marker) != null) {
+                    recordedNumbers.add(promptSet);
+                }
+            } catch (MalformedURLException exception) {
+                throw new IllegalStateException("Invalid prompt path " + marker, exception);
+            }
+        }
+        return recordedNumbers;
+    }
+
+    private static long getLongParameter(ServletContext servletContext, String name, long defaultValue) {
+        String value = servletContext.getInitParameter(name);
+        return value == null ? defaultValue : Long.parseLong(value.trim());
+    }
+}
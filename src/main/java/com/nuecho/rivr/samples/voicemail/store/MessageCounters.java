@@ -0,0 +1,377 @@
+/*
+ * Copyright (c) 2013 Nu Echo Inc. All rights reserved.
+ */
+
+package com.nuecho.rivr.samples.voicemail.store;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+import org.slf4j.*;
+
+import com.nuecho.rivr.samples.voicemail.model.*;
+
+/**
+ * Number of messages in each folder of each mailbox, maintained as messages are deposited, moved and deleted so that
+ * counting never scans a mailbox.
+ * <p>
+ * Changes are applied at once to per-mailbox atomic counters and queued, never waiting, to a background thread that
+ * appends them to a log. Once the log holds enough changes, the thread writes the counts it has logged to a snapshot
+ * file and truncates the log. When the counters are opened, the snapshot is loaded and the log replayed over it.
+ * Neither reads nor changes lock.
+ * <p>
+ * The last changes are lost if the application stops before the thread logs them: the {@link MessageStore} reconciles
+ * the counters with its messages when it is opened.
+ *
+ * @author Nu Echo Inc.
+ */
+public final class MessageCounters implements Closeable {
+    public static final int DEFAULT_CHECKPOINT_INTERVAL = 10000;
+
+    private static final String SNAPSHOT_FILE = "counters.snapshot";
+    private static final String LOG_FILE = "counters.log";
+    private static final int SNAPSHOT_VERSION = 1;
+    private static final long SHUTDOWN_MILLIS = 5000;
+    // Longest wait for a change, bounding how long the thread takes to notice a shutdown.
+    private static final long POLL_MILLIS = 100;
+
+    private static final Folder[] FOLDERS = Folder.values();
+
+    private final Logger mLog = LoggerFactory.getLogger(getClass());
+
+    private final File mSnapshotFile;
+    private final File mLogFile;
+    private final int mCheckpointInterval;
+
+    private final ConcurrentMap<String, AtomicIntegerArray> mCounters =
+            new ConcurrentHashMap<String, AtomicIntegerArray>();
+    private final BlockingQueue<Change> mQueue = new LinkedBlockingQueue<Change>();
+    private final Thread mThread;
+    private volatile boolean mRunning = true;
+
+    // Only used by the thread: the counts as of the logged changes, and the log.
+    private final Map<String, int[]> mLogged = new HashMap<String, int[]>();
+    private DataOutputStream mLogOutput;
+    private int mLogEntries;
+
+    private static final class Change {
+        final String mMailbox;
+        final int mFolder;
+        final int mDelta;
+        // Set on the markers of flush().
+        final CountDownLatch mLoggedSignal;
+
+        Change(String mailbox, int folder, int delta, CountDownLatch loggedSignal) {
+            mMailbox = mailbox;
+            mFolder = folder;
+            mDelta = delta;
+            mLoggedSignal = loggedSignal;
+        }
+    }
+
+    /**
+     * Opens the counters stored in a directory, creating them if there are none.
+     *
+     * @param directory The directory of the snapshot and log files.
+     * @param checkpointInterval The number of logged changes triggering a snapshot.
+     * @throws IOException if the counters cannot be read
+     */
+    public MessageCounters(File directory, int checkpointInterval) throws IOException {
+        mSnapshotFile = new File(directory, SNAPSHOT_FILE);
+        mLogFile = new File(directory, LOG_FILE);
+        mCheckpointInterval = checkpointInterval;
+
+        loadSnapshot();
+        long logLength = replayLog();
+        truncate(mLogFile, logLength);
+        mLogOutput = openLog();
+
+        mThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                write();
+            }
+        }, "message-counters-writer");
+        mThread.setDaemon(true);
+        mThread.start();
+    }
+
+    /**
+     * @return the number of messages in a folder of a mailbox
+     */
+    public int getCount(String mailbox, Folder folder) {
+        AtomicIntegerArray counters = mCounters.get(mailbox);
+        return counters == null ? 0 : counters.get(folder.ordinal());
+    }
+
+    /**
+     * Records that messages were added to a folder, or removed from it if <code>delta</code> is negative. Never
+     * waits: the change is logged in the background.
+     */
+    public void add(String mailbox, Folder folder, int delta) {
+        apply(mCounters, mailbox, folder.ordinal(), delta);
+        mQueue.add(new Change(mailbox, folder.ordinal(), delta, null));
+    }
+
+    /**
+     * Records that a message was moved from a folder to another.
+     */
+    public void move(String mailbox, Folder from, Folder to) {
+        if (from == to) return;
+        add(mailbox, from, -1);
+        add(mailbox, to, 1);
+    }
+
+    /**
+     * Waits until the changes recorded so far are logged.
+     *
+     * @throws InterruptedIOException if interrupted while waiting
+     */
+    public void flush() throws InterruptedIOException {
+        CountDownLatch loggedSignal = new CountDownLatch(1);
+        mQueue.add(new Change(null, 0, 0, loggedSignal));
+        try {
+            loggedSignal.await();
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while flushing message counters");
+        }
+    }
+
+    /**
+     * Writes the logged counts to the snapshot file and truncates the log. Only called by the thread, or once it has
+     * ended.
+     */
+    private void checkpoint() throws IOException {
+        File temporary = new File(mSnapshotFile.getPath() + ".tmp");
+        FileOutputStream fileOutput = new FileOutputStream(temporary);
+        DataOutputStream output = new DataOutputStream(new BufferedOutputStream(fileOutput));
+        try {
+            output.writeInt(SNAPSHOT_VERSION);
+            output.writeInt(mLogged.size());
+            for (Map.Entry<String, int[]> entry : mLogged.entrySet()) {
+                output.writeUTF(entry.getKey());
+                int[] counts = entry.getValue();
+                for (int folder = 0; folder < FOLDERS.length; folder++) {
+                    output.writeInt(counts[folder]);
+                }
+            }
+            output.flush();
+            fileOutput.getFD().sync();
+        } finally {
+            output.close();
+        }
+
+        // The snapshot is complete on disk before it replaces the previous one, and it includes every logged change.
+        if (mSnapshotFile.exists() && !mSnapshotFile.delete() || !temporary.renameTo(mSnapshotFile)) {
+            throw new IOException("Unable to replace counter snapshot " + mSnapshotFile);
+        }
+        mLogOutput.close();
+        truncate(mLogFile, 0);
+        mLogOutput = openLog();
+        mLogEntries = 0;
+    }
+
+    /**
+     * Replaces the counters of a mailbox folder if they differ from the actual number of messages. Only called before
+     * the counters are changed.
+     *
+     * @return whether the counter was corrected
+     */
+    boolean reconcile(String mailbox, Folder folder, int count) {
+        int delta = count - getCount(mailbox, folder);
+        if (delta == 0) return false;
+        add(mailbox, folder, delta);
+        return true;
+    }
+
+    /**
+     * @return the mailboxes having counters
+     */
+    Set<String> getMailboxes() {
+        return mCounters.keySet();
+    }
+
+    /**
+     * Stops the thread, logs the queued changes, writes a snapshot and closes the log.
+     *
+     * @throws IOException if the snapshot cannot be written
+     */
+    @Override
+    public void close() throws IOException {
+        // Not interrupted: an interrupt during a write would leave a partial entry in the log.
+        mRunning = false;
+        try {
+            mThread.join(SHUTDOWN_MILLIS);
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        }
+        if (mThread.isAlive()) {
+            mLog.warn("Message counters writer still running, the counts will be reconciled on restart");
+            return;
+        }
+        try {
+            log(drain());
+            checkpoint();
+        } finally {
+            mLogOutput.close();
+        }
+    }
+
+    private void write() {
+        while (mRunning) {
+            try {
+                Change change = mQueue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (change == null) continue;
+                List<Change> changes = drain();
+                changes.add(0, change);
+                log(changes);
+                if (mLogEntries >= mCheckpointInterval) {
+                    checkpoint();
+                }
+            } catch (InterruptedException exception) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (IOException exception) {
+                mLog.error("Unable to log message counter changes to " + mLogFile, exception);
+            }
+        }
+    }
+
+    private List<Change> drain() {
+        List<Change> changes = new ArrayList<Change>();
+        mQueue.drainTo(changes);
+        return changes;
+    }
+
+    /**
+     * Appends changes to the log, then signals the {@link #flush()} markers among them.
+     */
+    private void log(List<Change> changes) throws IOException {
+        try {
+            for (Change change : changes) {
+                if (change.mMailbox == null) continue;
+                mLogOutput.writeUTF(change.mMailbox);
+                mLogOutput.writeByte(change.mFolder);
+                mLogOutput.writeInt(change.mDelta);
+                apply(mLogged, change.mMailbox, change.mFolder, change.mDelta);
+                mLogEntries++;
+            }
+            mLogOutput.flush();
+        } finally {
+            for (Change change : changes) {
+                if (change.mLoggedSignal != null) {
+                    change.mLoggedSignal.countDown();
+                }
+            }
+        }
+    }
+
+    private static void apply(ConcurrentMap<String, AtomicIntegerArray> counters,
+                              String mailbox,
+                              int folder,
+                              int delta) {
+        AtomicIntegerArray mailboxCounters = counters.get(mailbox);
+        if (mailboxCounters == null) {
+            mailboxCounters = new AtomicIntegerArray(FOLDERS.length);
+            AtomicIntegerArray existing = counters.putIfAbsent(mailbox, mailboxCounters);
+            if (existing != null) {
+                mailboxCounters = existing;
+            }
+        }
+        mailboxCounters.addAndGet(folder, delta);
+    }
+
+    private static void apply(Map<String, int[]> counts, String mailbox, int folder, int delta) {
+        int[] mailboxCounts = counts.get(mailbox);
+        if (mailboxCounts == null) {
+            mailboxCounts = new int[FOLDERS.length];
+            counts.put(mailbox, mailboxCounts);
+        }
+        mailboxCounts[folder] += delta;
+    }
+
+    private void loadSnapshot() throws IOException {
+        if (!mSnapshotFile.exists()) return;
+        DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(mSnapshotFile)));
+        try {
+            int version = input.readInt();
+            if (version != SNAPSHOT_VERSION) throw new IOException("Unsupported counter snapshot version " + version);
+            int mailboxCount = input.readInt();
+            for (int i = 0; i < mailboxCount; i++) {
+                String mailbox = input.readUTF();
+                for (int folder = 0; folder < FOLDERS.length; folder++) {
+                    int count = input.readInt();
+                    apply(mCounters, mailbox, folder, count);
+                    apply(mLogged, mailbox, folder, count);
+                }
+            }
+        } finally {
+            input.close();
+        }
+    }
+
+    /**
+     * @return the length of the complete entries of the log
+     */
+    private long replayLog() throws IOException {
+        if (!mLogFile.exists()) return 0;
+        DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(mLogFile)));
+        long length = 0;
+        try {
+            while (true) {
+                String mailbox;
+                int folder;
+                int delta;
+                try {
+                    mailbox = input.readUTF();
+                    folder = input.readUnsignedByte();
+                    delta = input.readInt();
+                } catch (EOFException exception) {
+                    break;
+                }
+                if (folder >= FOLDERS.length) break;
+                apply(mCounters, mailbox, folder, delta);
+                apply(mLogged, mailbox, folder, delta);
+                length += 2 + utfLength(mailbox) + 1 + 4;
+                mLogEntries++;
+            }
+        } finally {
+            input.close();
+        }
+        if (length < mLogFile.length()) {
+            mLog.warn("Discarding incomplete entry at the end of counter log {}", mLogFile);
+        }
+        return length;
+    }
+
+    private DataOutputStream openLog() throws IOException {
+        return new DataOutputStream(new BufferedOutputStream(new FileOutputStream(mLogFile, true)));
+    }
+
+    private static void truncate(File file, long length) throws IOException {
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+        try {
+            randomAccessFile.setLength(length);
+        } finally {
+            randomAccessFile.close();
+        }
+    }
+
+    private static int utfLength(String string) {
+        int length = 0;
+        for (int i = 0; i < string.length(); i++) {
+            char c = string.charAt(i);
+            if (c >= 0x0001 && c <= 0x007f) {
+                length++;
+            } else if (c > 0x07ff) {
+                length += 3;
+            } else {
+                length += 2;
+            }
+        }
+        return length;
+    }
+}
@@ -0,0 +1,686 @@
+/*
+ * Copyright (c) 2013 Nu Echo Inc. All rights reserved.
+ */
+
+package com.nuecho.rivr.samples.voicemail.store;
+
+import static java.lang.String.format;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.charset.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+import org.slf4j.*;
+
+import com.nuecho.rivr.samples.voicemail.model.*;
+
+/**
+ * Persistent store of voicemail messages.
+ * <p>
+ * Recordings are appended, with their mailbox and folder, to memory-mapped {@link Segment segment} files. Moves and
+ * deletions are appended as well, so the log is never modified in place. When the store is opened, the segments are
+ * replayed from the oldest to rebuild the per-mailbox index of the messages. Deposits only contend when the current
+ * segment is full and a new one must be created.
+ * <p>
+ * Segments whose live content has dropped below the compaction threshold are compacted in the background, oldest
+ * first: the messages still stored in them are appended again to the current segment and the segment file is deleted.
+ * The moves and deletions held by the oldest segment can safely be dropped. Those held by a newer segment may apply to
+ * messages of an older one, so they are appended again as well.
+ * <p>
+ * The type and length of a record are written when its space is reserved, before any later record is reserved, and its
+ * magic number last, once the record is complete. The record is then forced to disk, along with the lengths of the
+ * records reserved before it, before the change is acknowledged. On restart, records that were not completely written
+ * are skipped over using their length, and appends resume in a new segment so that nothing found after the last
+ * replayed record is ever overwritten.
+ * <p>
+ * The changes of a message are appended under a lock striped by message ID, together with the matching update of the
+ * index, so that the log replays them in the order they were applied.
+ * <p>
+ * The number of messages in each folder is kept by {@link MessageCounters} stored in the same directory. They are
+ * checked against the replayed messages when the store is opened, in case the store stopped before its last changes
+ * were logged.
+ *
+ * @author Nu Echo Inc.
+ */
+public final class MessageStore implements Closeable {
+    public static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+    public static final double DEFAULT_COMPACTION_THRESHOLD = 0.5;
+
+    private static final int MAGIC = 0x564d4c47;
+    private static final byte DEPOSIT = 1;
+    private static final byte MOVE = 2;
+    private static final byte DELETE = 3;
+
+    // magic, type, body length
+    private static final int HEADER_LENGTH = 4 + 1 + 4;
+    // id, timestamp, folder, mailbox length, content type length, audio length (mailbox and content type excluded)
+    private static final int DEPOSIT_FIXED_LENGTH = 8 + 8 + 1 + 2 + 2 + 4;
+    // id, folder
+    private static final int MOVE_LENGTH = 8 + 1;
+    // id
+    private static final int DELETE_LENGTH = 8;
+
+    private static final int PAGE_SIZE = 4096;
+    private static final int LOCK_STRIPES = 64;
+    private static final int PREFETCH_QUEUE_SIZE = 32;
+
+    private static final Charset CHARSET = Charset.forName("UTF-8");
+    private static final Folder[] FOLDERS = Folder.values();
+
+    private final Logger mLog = LoggerFactory.getLogger(getClass());
+
+    private final File mDirectory;
+    private final int mSegmentSize;
+    private final double mCompactionThreshold;
+
+    private final ConcurrentNavigableMap<Long, Segment> mSegments = new ConcurrentSkipListMap<Long, Segment>();
+    private volatile Segment mCurrentSegment;
+
+    private final AtomicLong mNextMessageId = new AtomicLong(1);
+    private final ConcurrentMap<Long, VoiceMessage> mMessages = new ConcurrentHashMap<Long, VoiceMessage>();
+    private final ConcurrentMap<String, Set<Long>> mMailboxes = new ConcurrentHashMap<String, Set<Long>>();
+    private final Object[] mLocks = new Object[LOCK_STRIPES];
+
+    private final MessageCounters mCounters;
+
+    private ScheduledExecutorService mCompactor;
+    private ExecutorService mPrefetcher;
+    private volatile int mPrefetched;
+
+    /**
+     * Opens a store, creating it if the directory is empty.
+     *
+     * @param directory The directory of the segment files.
+     * @param segmentSize The size, in bytes, of new segment files. This is also the maximum size of a recording.
+     * @param compactionThreshold The ratio of live content under which a segment is compacted.
+     * @throws IOException if the store cannot be read or created
+     */
+    public MessageStore(File directory, int segmentSize, double compactionThreshold) throws IOException {
+        mDirectory = directory;
+        mSegmentSize = segmentSize;
+        mCompactionThreshold = compactionThreshold;
+        for (int index = 0; index < LOCK_STRIPES; index++) {
+            mLocks[index] = new Object();
+        }
+
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Unable to create message store directory " + directory);
+        }
+
+        recover();
+        mCounters = new MessageCounters(directory, MessageCounters.DEFAULT_CHECKPOINT_INTERVAL);
+        reconcileCounters();
+    }
+
+    /**
+     * Compacts the store periodically on a background thread.
+     *
+     * @param periodSeconds The time, in seconds, between compactions.
+     */
+    public synchronized void startCompaction(long periodSeconds) {
+        if (mCompactor != null) return;
+        mCompactor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "message-store-compactor");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        mCompactor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    compact();
+                } catch (Exception exception) {
+                    mLog.error("Unable to compact message store", exception);
+                }
+            }
+        }, periodSeconds, periodSeconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Adds a message to the {@link Folder#NEW} folder of a mailbox.
+     *
+     * @param mailbox The mailbox receiving the message.
+     * @param contentType The content type of the recording.
+     * @param audio The recording. Its remaining bytes are stored.
+     * @throws IOException if the recording cannot be stored
+     */
+    public VoiceMessage deposit(String mailbox, String contentType, ByteBuffer audio) throws IOException {
+        long id = mNextMessageId.getAndIncrement();
+        VoiceMessage message = appendDeposit(id, mailbox, Folder.NEW, System.currentTimeMillis(), contentType, audio);
+        message.getSegment().addLiveBytes(message.getRecordLength());
+        mMessages.put(id, message);
+        getMailbox(mailbox).add(id);
+        mCounters.add(mailbox, Folder.NEW, 1);
+        return message;
+    }
+
+    /**
+     * Adds a message to the {@link Folder#NEW} folder of a mailbox, copying the recording from a file mapping to the
+     * segment mapping so that it never goes through the heap.
+     *
+     * @param mailbox The mailbox receiving the message.
+     * @param contentType The content type of the recording.
+     * @param audio The file of the recording.
+     * @throws IOException if the recording cannot be read or stored
+     */
+    public VoiceMessage deposit(String mailbox, String contentType, File audio) throws IOException {
+        RandomAccessFile file = new RandomAccessFile(audio, "r");
+        try {
+            long length = file.length();
+            if (length > mSegmentSize) {
+                throw new IOException(format("Recording of %d bytes exceeds segment size of %d bytes",
+                                             length,
+                                             mSegmentSize));
+            }
+            // The mapping stays valid once the file is closed.
+            return deposit(mailbox, contentType, file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, length));
+        } finally {
+            file.close();
+        }
+    }
+
+    /**
+     * @return the message with that ID, or <code>null</code> if there is none
+     */
+    public VoiceMessage getMessage(long id) {
+        return mMessages.get(id);
+    }
+
+    /**
+     * @return the messages of a mailbox folder, oldest first
+     */
+    public List<VoiceMessage> getMessages(String mailbox, Folder folder) {
+        List<VoiceMessage> messages = new ArrayList<VoiceMessage>();
+        Set<Long> ids = mMailboxes.get(mailbox);
+        if (ids == null) return messages;
+        for (Long id : ids) {
+            VoiceMessage message = mMessages.get(id);
+            if (message != null && message.getFolder() == folder) {
+                messages.add(message);
+            }
+        }
+        return messages;
+    }
+
+    /**
+     * @return the number of messages in a mailbox folder, without scanning the mailbox
+     */
+    public int getMessageCount(String mailbox, Folder folder) {
+        return mCounters.getCount(mailbox, folder);
+    }
+
+    /**
+     * Moves a message to another folder.
+     *
+     * @return the moved message, or <code>null</code> if the message was deleted
+     * @throws IOException if the move cannot be stored
+     */
+    public VoiceMessage move(VoiceMessage message, Folder folder) throws IOException {
+        long id = message.getId();
+        synchronized (getLock(id)) {
+            VoiceMessage current = mMessages.get(id);
+            if (current == null) return null;
+            appendMove(id, folder);
+            VoiceMessage moved = current.withFolder(folder);
+            mMessages.put(id, moved);
+            mCounters.move(current.getMailbox(), current.getFolder(), folder);
+            return moved;
+        }
+    }
+
+    /**
+     * Deletes a message.
+     *
+     * @throws IOException if the deletion cannot be stored
+     */
+    public void delete(VoiceMessage message) throws IOException {
+        long id = message.getId();
+        synchronized (getLock(id)) {
+            appendDelete(id);
+            VoiceMessage removed = mMessages.remove(id);
+            if (removed != null) {
+                removed.getSegment().addLiveBytes(-removed.getRecordLength());
+                getMailbox(removed.getMailbox()).remove(id);
+                mCounters.add(removed.getMailbox(), removed.getFolder(), -1);
+            }
+        }
+    }
+
+    /**
+     * Returns the recording of a message. The returned buffer is a read-only view of the segment holding the message:
+     * the recording isn't copied.
+     */
+    public ByteBuffer getAudio(VoiceMessage message) {
+        return message.getSegment().read(message.getAudioOffset(), message.getAudioLength());
+    }
+
+    /**
+     * Reads the recording of a message in the background, so that its pages are in memory when it is served. When the
+     * background thread falls behind, the oldest requests are dropped; once the store is closed, all of them are.
+     */
+    public void prefetch(VoiceMessage message) {
+        final ByteBuffer audio = getAudio(message);
+        getPrefetcher().execute(new Runnable() {
+            @Override
+            public void run() {
+                int sum = 0;
+                for (int index = 0; index < audio.limit(); index += PAGE_SIZE) {
+                    sum += audio.get(index);
+                }
+                // Keeps the reads from being optimized away.
+                mPrefetched = sum;
+            }
+        });
+    }
+
+    private synchronized ExecutorService getPrefetcher() {
+        if (mPrefetcher == null) {
+            mPrefetcher = new ThreadPoolExecutor(1,
+                                                 1,
+                                                 0,
+                                                 TimeUnit.MILLISECONDS,
+                                                 new ArrayBlockingQueue<Runnable>(PREFETCH_QUEUE_SIZE),
+                                                 new ThreadFactory() {
+                                                     @Override
+                                                     public Thread newThread(Runnable runnable) {
+                                                         Thread thread = new Thread(runnable,
+                                                                                    "message-store-prefetcher");
+                                                         thread.setDaemon(true);
+                                                         return thread;
+                                                     }
+                                                 },
+                                                 new ThreadPoolExecutor.DiscardOldestPolicy());
+        }
+        return mPrefetcher;
+    }
+
+    /**
+     * Compacts, oldest first, the segments whose live content is under the compaction threshold.
+     *
+     * @throws IOException if messages cannot be moved out of a segment
+     */
+    public void compact() throws IOException {
+        for (Segment segment : mSegments.values()) {
+            if (segment == mCurrentSegment) return;
+            if (segment.getLiveBytes() <= mCompactionThreshold * segment.getCapacity()) {
+                compact(segment);
+            }
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        if (mCompactor != null) {
+            mCompactor.shutdownNow();
+        }
+        if (mPrefetcher != null) {
+            mPrefetcher.shutdownNow();
+        }
+        mCurrentSegment.force();
+        try {
+            mCounters.close();
+        } catch (IOException exception) {
+            mLog.warn("Unable to close message counters", exception);
+        }
+    }
+
+    private void compact(final Segment segment) throws IOException {
+        final List<VoiceMessage> live = new ArrayList<VoiceMessage>();
+        final List<Long> moved = new ArrayList<Long>();
+        final List<Long> deleted = new ArrayList<Long>();
+        scan(segment, new RecordHandler() {
+            @Override
+            public void deposit(VoiceMessage message) {
+                VoiceMessage current = mMessages.get(message.getId());
+                if (current != null
+                    && current.getSegment() == segment
+                    && current.getRecordOffset() == message.getRecordOffset()) {
+                    live.add(current);
+                }
+            }
+
+            @Override
+            public void move(long id, Folder folder) {
+                moved.add(id);
+            }
+
+            @Override
+            public void delete(long id) {
+                deleted.add(id);
+            }
+        });
+
+        for (VoiceMessage message : live) {
+            relocate(message);
+        }
+        if (segment.getId() != mSegments.firstKey()) {
+            for (Long id : moved) {
+                preserveMove(id, segment);
+            }
+            for (Long id : deleted) {
+                if (!mMessages.containsKey(id)) {
+                    appendDelete(id);
+                }
+            }
+        }
+
+        mCurrentSegment.force();
+        mSegments.remove(segment.getId());
+        if (!segment.delete()) {
+            mLog.warn("Unable to delete compacted segment {}", segment);
+        }
+        mLog.info("Compacted segment {}, {} messages relocated", segment, live.size());
+    }
+
+    private void relocate(VoiceMessage message) throws IOException {
+        long id = message.getId();
+        VoiceMessage relocated = appendDeposit(id,
+                                               message.getMailbox(),
+                                               message.getFolder(),
+                                               message.getTimestamp(),
+                                               message.getContentType(),
+                                               getAudio(message));
+
+        // The message may have been moved or deleted since it was copied. The log must then record it again after
+        // the copy, otherwise the copy would override the move or the deletion on replay.
+        synchronized (getLock(id)) {
+            VoiceMessage current = mMessages.get(id);
+            if (current == null) {
+                appendDelete(id);
+                return;
+            }
+            if (current.getFolder() != relocated.getFolder()) {
+                appendMove(id, current.getFolder());
+                relocated = relocated.withFolder(current.getFolder());
+            }
+            mMessages.put(id, relocated);
+            relocated.getSegment().addLiveBytes(relocated.getRecordLength());
+            current.getSegment().addLiveBytes(-current.getRecordLength());
+        }
+    }
+
+    /**
+     * Appends again the folder of a message moved by a record of a compacted segment, if the message is stored in an
+     * older segment.
+     */
+    private void preserveMove(long id, Segment segment) throws IOException {
+        synchronized (getLock(id)) {
+            VoiceMessage current = mMessages.get(id);
+            if (current == null || current.getSegment().getId() >= segment.getId()) return;
+            appendMove(id, current.getFolder());
+        }
+    }
+
+    /**
+     * @return the lock under which the changes of a message are appended and applied
+     */
+    private Object getLock(long id) {
+        return mLocks[(int) (id ^ id >>> 32) & LOCK_STRIPES - 1];
+    }
+
+    private VoiceMessage appendDeposit(long id,
+                                       String mailbox,
+                                       Folder folder,
+                                       long timestamp,
+                                       String contentType,
+                                       ByteBuffer audio) throws IOException {
+        byte[] mailboxBytes = mailbox.getBytes(CHARSET);
+        byte[] contentTypeBytes = contentType.getBytes(CHARSET);
+        ByteBuffer audioSource = audio.duplicate();
+        int audioLength = audioSource.remaining();
+
+        ByteBuffer body = ByteBuffer.allocate(DEPOSIT_FIXED_LENGTH + mailboxBytes.length + contentTypeBytes.length);
+        body.putLong(id).putLong(timestamp).put((byte) folder.ordinal());
+        body.putShort((short) mailboxBytes.length).put(mailboxBytes);
+        body.putShort((short) contentTypeBytes.length).put(contentTypeBytes);
+        body.putInt(audioLength);
+        body.flip();
+        int audioStart = HEADER_LENGTH + body.remaining();
+
+        Segment[] segment = new Segment[1];
+        int offset = append(DEPOSIT, body, audioSource, segment);
+        return new VoiceMessage(id,
+                                mailbox,
+                                folder,
+                                timestamp,
+                                contentType,
+                                segment[0],
+                                offset,
+                                audioStart + audioLength,
+                                offset + audioStart,
+                                audioLength);
+    }
+
+    private void appendMove(long id, Folder folder) throws IOException {
+        ByteBuffer body = ByteBuffer.allocate(MOVE_LENGTH);
+        body.putLong(id).put((byte) folder.ordinal()).flip();
+        append(MOVE, body, null);
+    }
+
+    private void appendDelete(long id) throws IOException {
+        ByteBuffer body = ByteBuffer.allocate(DELETE_LENGTH);
+        body.putLong(id).flip();
+        append(DELETE, body, null);
+    }
+
+    private int append(byte type, ByteBuffer body, ByteBuffer audio) throws IOException {
+        return append(type, body, audio, new Segment[1]);
+    }
+
+    /**
+     * Appends a record to the current segment.
+     *
+     * @param segment Receives the segment the record was appended to.
+     * @return the offset of the record in its segment
+     */
+    private int append(byte type, ByteBuffer body, ByteBuffer audio, Segment[] segment) throws IOException {
+        int bodyLength = body.remaining() + (audio == null ? 0 : audio.remaining());
+        int length = HEADER_LENGTH + bodyLength;
+        if (length > mSegmentSize) {
+            throw new IOException(format("Record of %d bytes exceeds segment size of %d bytes", length, mSegmentSize));
+        }
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH - 4);
+        header.put(type).putInt(bodyLength).flip();
+        while (true) {
+            Segment current = mCurrentSegment;
+            int offset = current.reserve(length, 4, header.duplicate());
+            if (offset >= 0) {
+                current.write(offset + HEADER_LENGTH, body);
+                if (audio != null) {
+                    current.write(offset + HEADER_LENGTH + body.limit(), audio);
+                }
+                current.writeInt(offset, MAGIC);
+                current.force(offset, length);
+                segment[0] = current;
+                return offset;
+            }
+            rollOver(current);
+        }
+    }
+
+    private synchronized void rollOver(Segment full) throws IOException {
+        if (mCurrentSegment != full) return;
+        full.seal();
+        full.force();
+        Segment next = Segment.create(mDirectory, full.getId() + 1, mSegmentSize);
+        mSegments.put(next.getId(), next);
+        mCurrentSegment = next;
+    }
+
+    private Set<Long> getMailbox(String mailbox) {
+        Set<Long> ids = mMailboxes.get(mailbox);
+        if (ids == null) {
+            ids = new ConcurrentSkipListSet<Long>();
+            Set<Long> existing = mMailboxes.putIfAbsent(mailbox, ids);
+            if (existing != null) {
+                ids = existing;
+            }
+        }
+        return ids;
+    }
+
+    private void recover() throws IOException {
+        File[] files = mDirectory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (Segment.isSegmentFile(file)) {
+                    Segment segment = Segment.open(file);
+                    mSegments.put(segment.getId(), segment);
+                }
+            }
+        }
+
+        for (Segment segment : mSegments.values()) {
+            scan(segment, new RecordHandler() {
+                @Override
+                public void deposit(VoiceMessage message) {
+                    useId(message.getId());
+                    message.getSegment().addLiveBytes(message.getRecordLength());
+                    VoiceMessage previous = mMessages.put(message.getId(), message);
+                    if (previous != null) {
+                        previous.getSegment().addLiveBytes(-previous.getRecordLength());
+                    }
+                    getMailbox(message.getMailbox()).add(message.getId());
+                }
+
+                @Override
+                public void move(long id, Folder folder) {
+                    useId(id);
+                    VoiceMessage message = mMessages.get(id);
+                    if (message != null) {
+                        mMessages.put(id, message.withFolder(folder));
+                    }
+                }
+
+                @Override
+                public void delete(long id) {
+                    useId(id);
+                    VoiceMessage message = mMessages.remove(id);
+                    if (message != null) {
+                        message.getSegment().addLiveBytes(-message.getRecordLength());
+                        getMailbox(message.getMailbox()).remove(id);
+                    }
+                }
+            });
+        }
+
+        // Records found after the last one replayed, if any, must not be overwritten: appends resume in a new segment.
+        Segment segment = Segment.create(mDirectory, mSegments.isEmpty() ? 1 : mSegments.lastKey() + 1, mSegmentSize);
+        mSegments.put(segment.getId(), segment);
+        mCurrentSegment = segment;
+
+        mLog.info("Message store opened with {} messages in {} segments", mMessages.size(), mSegments.size());
+    }
+
+    /**
+     * Keeps the IDs of deleted messages from being reused, so that a deletion appended again by a compaction never
+     * applies to a newer message.
+     */
+    private void useId(long id) {
+        if (id >= mNextMessageId.get()) {
+            mNextMessageId.set(id + 1);
+        }
+    }
+
+    private void reconcileCounters() {
+        Map<String, int[]> counts = new HashMap<String, int[]>();
+        for (String mailbox : mCounters.getMailboxes()) {
+            counts.put(mailbox, new int[FOLDERS.length]);
+        }
+        for (VoiceMessage message : mMessages.values()) {
+            int[] mailboxCounts = counts.get(message.getMailbox());
+            if (mailboxCounts == null) {
+                mailboxCounts = new int[FOLDERS.length];
+                counts.put(message.getMailbox(), mailboxCounts);
+            }
+            mailboxCounts[message.getFolder().ordinal()]++;
+        }
+
+        for (Map.Entry<String, int[]> entry : counts.entrySet()) {
+            for (Folder folder : FOLDERS) {
+                if (mCounters.reconcile(entry.getKey(), folder, entry.getValue()[folder.ordinal()])) {
+                    mLog.warn("Corrected {} message count of mailbox [{}]", folder, entry.getKey());
+                }
+            }
+        }
+    }
+
+    /**
+     * Replays the records of a segment, skipping over those that were not completely written. The replay stops at the
+     * first record without a length: its space was never reserved, since lengths are written, and forced, in the order
+     * the space is reserved.
+     */
+    private void scan(Segment segment, RecordHandler handler) {
+        ByteBuffer buffer = segment.read(0, segment.getCapacity());
+        int offset = 0;
+        while (buffer.limit() - offset >= HEADER_LENGTH) {
+            byte type = buffer.get(offset + 4);
+            int bodyLength = buffer.getInt(offset + 5);
+            int bodyOffset = offset + HEADER_LENGTH;
+            if (bodyLength <= 0 || bodyLength > buffer.limit() - bodyOffset) break;
+            if (buffer.getInt(offset) != MAGIC) {
+                mLog.warn("Skipping incomplete record at offset {} of segment {}", offset, segment);
+                offset = bodyOffset + bodyLength;
+                continue;
+            }
+
+            buffer.position(bodyOffset);
+            switch (type) {
+                case DEPOSIT:
+                    handler.deposit(readDeposit(buffer, segment, offset, HEADER_LENGTH + bodyLength));
+                    break;
+                case MOVE:
+                    handler.move(buffer.getLong(), FOLDERS[buffer.get()]);
+                    break;
+                case DELETE:
+                    handler.delete(buffer.getLong());
+                    break;
+                default:
+                    mLog.warn("Skipping record of unknown type {} in segment {}", type, segment);
+                    break;
+            }
+            offset = bodyOffset + bodyLength;
+        }
+    }
+
+    private static VoiceMessage readDeposit(ByteBuffer buffer, Segment segment, int offset, int length) {
+        long id = buffer.getLong();
+        long timestamp = buffer.getLong();
+        Folder folder = FOLDERS[buffer.get()];
+        String mailbox = readString(buffer);
+        String contentType = readString(buffer);
+        int audioLength = buffer.getInt();
+        return new VoiceMessage(id,
+                                mailbox,
+                                folder,
+                                timestamp,
+                                contentType,
+                                segment,
+                                offset,
+                                length,
+                                buffer.position(),
+                                audioLength);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getShort()];
+        buffer.get(bytes);
+        return new String(bytes, CHARSET);
+    }
+
+    private interface RecordHandler {
+        void deposit(VoiceMessage message);
+
+        void move(long id, Folder folder);
+
+        void delete(long id);
+    }
+}
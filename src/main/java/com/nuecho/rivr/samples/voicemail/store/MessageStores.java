@@ -0,0 +1,28 @@
+/*
+ * Copyright (c) 2013 Nu Echo Inc. All rights reserved.
+ */
+
+package com.nuecho.rivr.samples.voicemail.store;
+
+/**
+ * Holds the {@link MessageStore} used by the dialogues, if any. Without a message store, recordings are discarded and
+ * the message menu only plays its prompts.
+ *
+ * @author Nu Echo Inc.
+ */
+public final class MessageStores {
+    private static volatile MessageStore sMessageStore;
+
+    private MessageStores() {}
+
+    /**
+     * @return the message store, or <code>null</code> if there is none
+     */
+    public static MessageStore getMessageStore() {
+        return sMessageStore;
+    }
+
+    public static void setMessageStore(MessageStore messageStore) {
+        sMessageStore = messageStore;
+    }
+}
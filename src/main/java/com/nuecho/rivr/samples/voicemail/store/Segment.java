@@ -0,0 +1,199 @@
+/*
+ * Copyright (c) 2013 Nu Echo Inc. All rights reserved.
+ */
+
+package com.nuecho.rivr.samples.voicemail.store;
+
+import static java.lang.String.format;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * Append-only, memory-mapped segment file of a {@link MessageStore}.
+ * <p>
+ * The file is allocated to its full capacity when created and mapped once. Writers reserve a range of the segment
+ * under a short lock, which also writes the header of the record so that every reserved range has a readable length,
+ * and then fill it independently, so concurrent appends only wait on each other for the reservation. Readers get views
+ * of the mapping and never copy the recordings.
+ *
+ * @author Nu Echo Inc.
+ */
+final class Segment {
+    private static final String FILE_PREFIX = "segment-";
+    private static final String FILE_SUFFIX = ".log";
+
+    private final long mId;
+    private final File mFile;
+    private final MappedByteBuffer mBuffer;
+    private final int mCapacity;
+    private final AtomicInteger mPosition;
+    // Offset under which every header written by a reservation is on disk.
+    private final AtomicInteger mForced;
+    private final AtomicLong mLiveBytes = new AtomicLong();
+
+    private Segment(long id, File file, MappedByteBuffer buffer, int position) {
+        mId = id;
+        mFile = file;
+        mBuffer = buffer;
+        mCapacity = buffer.capacity();
+        mPosition = new AtomicInteger(position);
+        mForced = new AtomicInteger(position);
+    }
+
+    /**
+     * Creates a new, empty, segment.
+     */
+    static Segment create(File directory, long id, int capacity) throws IOException {
+        File file = new File(directory, format("%s%016d%s", FILE_PREFIX, id, FILE_SUFFIX));
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+        try {
+            randomAccessFile.setLength(capacity);
+            MappedByteBuffer buffer = randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+            return new Segment(id, file, buffer, 0);
+        } finally {
+            // The mapping stays valid once the file is closed.
+            randomAccessFile.close();
+        }
+    }
+
+    /**
+     * Opens an existing segment, sealed: no more records are appended to it.
+     */
+    static Segment open(File file) throws IOException {
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+        try {
+            long length = randomAccessFile.length();
+            if (length > Integer.MAX_VALUE) throw new IOException("Segment too large: " + file);
+            MappedByteBuffer buffer = randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, length);
+            return new Segment(parseId(file), file, buffer, (int) length);
+        } finally {
+            randomAccessFile.close();
+        }
+    }
+
+    /**
+     * @return whether the file is named like a segment file
+     */
+    static boolean isSegmentFile(File file) {
+        String name = file.getName();
+        return name.startsWith(FILE_PREFIX) && name.endsWith(FILE_SUFFIX);
+    }
+
+    private static long parseId(File file) throws IOException {
+        String name = file.getName();
+        try {
+            return Long.parseLong(name.substring(FILE_PREFIX.length(), name.length() - FILE_SUFFIX.length()));
+        } catch (NumberFormatException exception) {
+            throw new IOException("Invalid segment file name: " + file);
+        }
+    }
+
+    long getId() {
+        return mId;
+    }
+
+    File getFile() {
+        return mFile;
+    }
+
+    int getCapacity() {
+        return mCapacity;
+    }
+
+    int getPosition() {
+        return mPosition.get();
+    }
+
+    /**
+     * Reserves space at the end of the segment and writes a header in it, so that the header of a reserved range is
+     * always written before the next range is reserved.
+     *
+     * @param headerOffset The offset of the header in the reserved space.
+     * @return the offset of the reserved space, or -1 if the segment doesn't have enough space left
+     */
+    synchronized int reserve(int length, int headerOffset, ByteBuffer header) {
+        int position = mPosition.get();
+        if (length > mCapacity - position) return -1;
+        write(position + headerOffset, header);
+        mPosition.set(position + length);
+        return position;
+    }
+
+    /**
+     * Marks the segment as full so that no more records are appended to it.
+     */
+    synchronized void seal() {
+        mPosition.set(mCapacity);
+    }
+
+    /**
+     * Copies the remaining bytes of a buffer at an offset previously {@link #reserve(int) reserved}.
+     */
+    void write(int offset, ByteBuffer source) {
+        ByteBuffer target = mBuffer.duplicate();
+        target.position(offset);
+        target.put(source);
+    }
+
+    /**
+     * Writes a record header. Called last when appending a record, so that a record only becomes visible to
+     * {@link #read(int, int)} once complete.
+     */
+    void writeInt(int offset, int value) {
+        mBuffer.duplicate().putInt(offset, value);
+    }
+
+    /**
+     * @return a read-only view of a range of the segment
+     */
+    ByteBuffer read(int offset, int length) {
+        ByteBuffer view = mBuffer.duplicate();
+        view.limit(offset + length);
+        view.position(offset);
+        return view.slice().asReadOnlyBuffer();
+    }
+
+    long getLiveBytes() {
+        return mLiveBytes.get();
+    }
+
+    void addLiveBytes(long bytes) {
+        mLiveBytes.addAndGet(bytes);
+    }
+
+    /**
+     * Flushes the segment to disk.
+     */
+    void force() {
+        mBuffer.force();
+    }
+
+    /**
+     * Flushes a range of the segment to disk, along with the headers of the ranges reserved before it that may not be
+     * on disk yet. A range acknowledged as written is thus never preceded, after a crash, by a range without a length.
+     */
+    void force(int offset, int length) {
+        int end = offset + length;
+        int start = Math.min(offset, mForced.get());
+        mBuffer.force(start, end - start);
+        while (true) {
+            int forced = mForced.get();
+            if (forced >= end || mForced.compareAndSet(forced, end)) return;
+        }
+    }
+
+    /**
+     * Deletes the segment file. Views of the segment handed out before remain readable.
+     */
+    boolean delete() {
+        return mFile.delete();
+    }
+
+    @Override
+    public String toString() {
+        return mFile.getName();
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright (c) 2013 Nu Echo Inc. All rights reserved.
+ */
+
+package com.nuecho.rivr.samples.voicemail.store;
+
+import com.nuecho.rivr.samples.voicemail.model.*;
+
+/**
+ * Immutable description of a message of a {@link MessageStore}. Moving a message creates a new instance.
+ *
+ * @author Nu Echo Inc.
+ */
+public final class VoiceMessage {
+    private final long mId;
+    private final String mMailbox;
+    private final Folder mFolder;
+    private final long mTimestamp;
+    private final String mContentType;
+
+    private final Segment mSegment;
+    private final int mRecordOffset;
+    private final int mRecordLength;
+    private final int mAudioOffset;
+    private final int mAudioLength;
+
+    VoiceMessage(long id,
+                 String mailbox,
+                 Folder folder,
+                 long timestamp,
+                 String contentType,
+                 Segment segment,
+                 int recordOffset,
+                 int recordLength,
+                 int audioOffset,
+                 int audioLength) {
+        mId = id;
+        mMailbox = mailbox;
+        mFolder = folder;
+        mTimestamp = timestamp;
+        mContentType = contentType;
+        mSegment = segment;
+        mRecordOffset = recordOffset;
+        mRecordLength = recordLength;
+        mAudioOffset = audioOffset;
+        mAudioLength = audioLength;
+    }
+
+    public long getId() {
+        return mId;
+    }
+
+    public String getMailbox() {
+        return mMailbox;
+    }
+
+    public Folder getFolder() {
+        return mFolder;
+    }
+
+    /**
+     * @return when the message was deposited, in milliseconds since the epoch
+     */
+    public long getTimestamp() {
+        return mTimestamp;
+    }
+
+    public String getContentType() {
+        return mContentType;
+    }
+
+    /**
+     * @return the size of the recording, in bytes
+     */
+    public int getAudioLength() {
+        return mAudioLength;
+    }
+
+    Segment getSegment() {
+        return mSegment;
+    }
+
+    int getRecordOffset() {
+        return mRecordOffset;
+    }
+
+    int getRecordLength() {
+        return mRecordLength;
+    }
+
+    int getAudioOffset() {
+        return mAudioOffset;
+    }
+
+    VoiceMessage withFolder(Folder folder) {
+        return new VoiceMessage(mId,
+                                mMailbox,
+                                folder,
+                                mTimestamp,
+                                mContentType,
+                                mSegment,
+                                mRecordOffset,
+                                mRecordLength,
+                                mAudioOffset,
+                                mAudioLength);
+    }
+
+    @Override
+    public String toString() {
+        return "message " + mId + " of mailbox " + mMailbox + " in " + mFolder;
+    }
+}
@@ -0,0 +1,26 @@
+/*
+ * Copyright (c) 2013 Nu Echo Inc. All rights reserved.
+ */
+
+package com.nuecho.rivr.samples.voicemail.util;
+
+/**
+ * Hashing of character sequences, such as the DTMF sequences entered by callers, without converting them to strings.
+ *
+ * @author Nu Echo Inc.
+ */
+public final class CharSequenceUtils {
+
+    private CharSequenceUtils() {}
+
+    /**
+     * @return the hash code of the string of the sequence, {@link String#hashCode()}, computed from the sequence
+     */
+    public static int hashCode(CharSequence sequence) {
+        int hash = 0;
+        for (int index = 0; index < sequence.length(); index++) {
+            hash = 31 * hash + sequence.charAt(index);
+        }
+        return hash;
+    }
+}
@@ -0,0 +1,41 @@
+/*
+ * Copyright (c) 2013 Nu Echo Inc. All rights reserved.
+ */
+
+package com.nuecho.rivr.samples.voicemail.util;
+
+import java.io.*;
+import java.nio.charset.*;
+
+/**
+ * File helpers shared by the stores keeping one small file per dialogue or node.
+ *
+ * @author Nu Echo Inc.
+ */
+public final class FileUtils {
+    private static final Charset CHARSET = Charset.forName("UTF-8");
+
+    private FileUtils() {}
+
+    /**
+     * @return the hexadecimal form of the UTF-8 bytes of an id, safe as a file name whatever the id holds
+     */
+    public static String toFileName(String id) {
+        return HexUtils.toHex(id.getBytes(CHARSET));
+    }
+
+    /**
+     * Renames a completely written temporary file into place. Where renaming doesn't replace an existing file, the
+     * file is deleted first. The temporary file is deleted if it can't be renamed.
+     *
+     * @throws IOException if the temporary file can't be renamed
+     */
+    public static void replace(File temporary, File file) throws IOException {
+        if (temporary.renameTo(file)) return;
+        file.delete();
+        if (!temporary.renameTo(file)) {
+            temporary.delete();
+            throw new IOException("Unable to rename " + temporary + " to " + file);
+        }
+    }
+}
@@ -0,0 +1,28 @@
+/*
+ * Copyright (c) 2013 Nu Echo Inc. All rights reserved.
+ */
+
+package com.nuecho.rivr.samples.voicemail.util;
+
+/**
+ * Hexadecimal form of bytes, for file names, tokens and hashes.
+ *
+ * @author Nu Echo Inc.
+ */
+public final class HexUtils {
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private HexUtils() {}
+
+    /**
+     * @return the bytes as lowercase hexadecimal digits, two per byte
+     */
+    public static String toHex(byte[] bytes) {
+        char[] hex = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            hex[i * 2] = HEX_DIGITS[(bytes[i] >> 4) & 0xf];
+            hex[i * 2 + 1] = HEX_DIGITS[bytes[i] & 0xf];
+        }
+        return new String(hex);
+    }
+}
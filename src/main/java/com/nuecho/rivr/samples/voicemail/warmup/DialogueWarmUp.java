@@ -0,0 +1,180 @@
+/*
+ * Copyright (c) 2013 Nu Echo Inc. All rights reserved.
+ */
+
+package com.nuecho.rivr.samples.voicemail.warmup;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+import org.slf4j.*;
+
+import com.nuecho.rivr.core.channel.synchronous.step.*;
+import com.nuecho.rivr.core.util.*;
+import com.nuecho.rivr.samples.voicemail.auth.*;
+import com.nuecho.rivr.samples.voicemail.dialogue.*;
+import com.nuecho.rivr.samples.voicemail.metrics.*;
+import com.nuecho.rivr.samples.voicemail.store.*;
+import com.nuecho.rivr.voicexml.dialogue.*;
+import com.nuecho.rivr.voicexml.test.*;
+import com.nuecho.rivr.voicexml.turn.first.*;
+import com.nuecho.rivr.voicexml.turn.input.*;
+import com.nuecho.rivr.voicexml.turn.last.*;
+import com.nuecho.rivr.voicexml.turn.output.*;
+import com.nuecho.rivr.voicexml.util.json.*;
+
+/**
+ * Plays synthetic {@link VoicemailDialogue} sessions through in-memory channels, so that the code of the dialogues is
+ * compiled before the first real call: input parsing, turn rendering, prompt paths, message store access.
+ * <p>
+ * Meant to run while the application starts, before the stateful resources are installed: for its duration, the
+ * dialogues log in against the demonstration mailbox of their own {@link Authenticator}, store messages in a temporary
+ * {@link MessageStore} and count their call paths apart. The interaction, DNIS and reprompt metrics recorded by the
+ * sessions are reset afterwards.
+ *
+ * @author Nu Echo Inc.
+ */
+public final class DialogueWarmUp {
+    private static final Duration TURN_TIMEOUT = Duration.seconds(10);
+    private static final int SEGMENT_SIZE = 1024 * 1024;
+    private static final int RECORDING_SIZE = 8000;
+
+    private final Logger mLog = LoggerFactory.getLogger(getClass());
+
+    private final String mContextPath;
+    private final int mSessions;
+    private final long mMaxNanos;
+    private final RecordingInfo mRecording;
+
+    // Turns played in the current round and their total latency.
+    private int mTurns;
+    private long mTurnNanos;
+
+    /**
+     * @param contextPath The context path of the web application, used by the dialogues to build prompt paths.
+     * @param sessions The number of sessions to play.
+     * @param maxMillis The time, in milliseconds, after which no new session is started.
+     */
+    public DialogueWarmUp(String contextPath, int sessions, long maxMillis) {
+        mContextPath = contextPath;
+        mSessions = sessions;
+        mMaxNanos = TimeUnit.MILLISECONDS.toNanos(maxMillis);
+
+        byte[] audio = new byte[RECORDING_SIZE];
+        Arrays.fill(audio, (byte) 0xFF);
+        FileUpload file = new FileUpload("recording", "audio/basic", audio, new HashMap<String, String>());
+        mRecording = new RecordingInfo(file, Duration.milliseconds(RECORDING_SIZE / 8), false, "#");
+    }
+
+    /**
+     * Plays the sessions, then puts the authenticator, message store and call path metrics back.
+     *
+     * @throws IOException if the temporary message store cannot be created
+     */
+    public WarmUpReport run() throws IOException {
+        File directory = File.createTempFile("warm-up", "");
+        directory.delete();
+        MessageStore store = new MessageStore(directory, SEGMENT_SIZE, MessageStore.DEFAULT_COMPACTION_THRESHOLD);
+
+        Authenticator authenticator = Authenticators.getAuthenticator();
+        MessageStore messageStore = MessageStores.getMessageStore();
+        CallPathMetrics callPaths = CallPathMetrics.getInstance();
+        InMemoryMailboxStore mailboxStore = new InMemoryMailboxStore();
+        mailboxStore.putMailbox("4069", "6522");
+        Authenticators.setAuthenticator(new StoreAuthenticator(mailboxStore));
+        MessageStores.setMessageStore(store);
+        CallPathMetrics.setInstance(new CallPathMetrics(CallPathMetrics.DEFAULT_WINDOW_MILLIS, 1));
+        try {
+            return playSessions();
+        } finally {
+            Authenticators.setAuthenticator(authenticator);
+            MessageStores.setMessageStore(messageStore);
+            CallPathMetrics.setInstance(callPaths);
+            InteractionMetrics.reset();
+            DnisMetrics.reset();
+            RepromptMetrics.reset();
+
+            store.close();
+            for (File file : directory.listFiles()) {
+                file.delete();
+            }
+            directory.delete();
+        }
+    }
+
+    private WarmUpReport playSessions() {
+        WarmUpScript[] scripts = WarmUpScript.values();
+        int maxRounds = (mSessions + scripts.length - 1) / scripts.length;
+        long[] roundTurnNanos = new long[maxRounds];
+        int[] roundTurns = new int[maxRounds];
+        long[] roundEndNanos = new long[maxRounds];
+
+        long start = System.nanoTime();
+        int sessions = 0;
+        int failures = 0;
+        int rounds = 0;
+        while (rounds < maxRounds && System.nanoTime() - start < mMaxNanos) {
+            mTurns = 0;
+            mTurnNanos = 0;
+            for (int index = 0; index < scripts.length && sessions < mSessions; index++) {
+                if (!play(scripts[index], "warm-up-" + sessions)) {
+                    failures++;
+                }
+                sessions++;
+            }
+            roundTurnNanos[rounds] = mTurnNanos;
+            roundTurns[rounds] = mTurns;
+            roundEndNanos[rounds] = System.nanoTime() - start;
+            rounds++;
+        }
+
+        return WarmUpReport.create(sessions, failures, roundTurnNanos, roundTurns, roundEndNanos, rounds);
+    }
+
+    /**
+     * @return whether the session completed without error
+     */
+    private boolean play(WarmUpScript script, String dialogueId) {
+        VoiceXmlTestDialogueChannel channel = new VoiceXmlTestDialogueChannel("Warm-up", TURN_TIMEOUT);
+        boolean failed = false;
+        try {
+            VoiceXmlDialogueContext context = new VoiceXmlDialogueContext(channel,
+                                                                          mLog,
+                                                                          dialogueId,
+                                                                          mContextPath,
+                                                                          "/dialogue");
+            channel.startDialogue(new VoicemailDialogue(), new VoiceXmlFirstTurn(), context);
+            for (String action : script.getActions()) {
+                long start = System.nanoTime();
+                Step<VoiceXmlOutputTurn, VoiceXmlLastTurn> step = perform(channel, action);
+                mTurnNanos += System.nanoTime() - start;
+                mTurns++;
+
+                if (step instanceof ErrorStep) {
+                    mLog.warn("Warm-up session [{}] failed during {}", dialogueId, script);
+                    failed = true;
+                    break;
+                }
+                if (step instanceof LastTurnStep) break;
+            }
+        } catch (RuntimeException exception) {
+            mLog.warn("Warm-up session [" + dialogueId + "] failed during " + script, exception);
+            failed = true;
+        } finally {
+            channel.dispose();
+        }
+        return !failed;
+    }
+
+    private Step<VoiceXmlOutputTurn, VoiceXmlLastTurn> perform(VoiceXmlTestDialogueChannel channel, String action) {
+        if (action.equals(WarmUpScript.RECORDING)) return channel.processRecording(mRecording);
+        if (action.equals(WarmUpScript.NO_INPUT)) return channel.processNoInput();
+        if (action.equals(WarmUpScript.NO_MATCH)) return channel.processNoMatch();
+        if (action.equals(WarmUpScript.HANG_UP)) return channel.processHangup();
+
+        StringBuilder builder = new StringBuilder();
+        StringUtils.join(builder, action.toCharArray(), " ");
+        return channel.processDtmfRecognition(builder.toString(), JsonUtils.wrap(action), null);
+    }
+}
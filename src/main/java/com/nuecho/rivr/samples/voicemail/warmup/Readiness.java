@@ -0,0 +1,41 @@
+/*
+ * Copyright (c) 2013 Nu Echo Inc. All rights reserved.
+ */
+
+package com.nuecho.rivr.samples.voicemail.warmup;
+
+/**
+ * Whether this node is ready to take calls: not until the application has started and the dialogues are warmed up,
+ * and no longer once it is stopping.
+ *
+ * @author Nu Echo Inc.
+ */
+public final class Readiness {
+    private static volatile boolean sReady;
+    private static volatile WarmUpReport sWarmUpReport;
+
+    private Readiness() {}
+
+    public static boolean isReady() {
+        return sReady;
+    }
+
+    /**
+     * @return the report of the warm-up, <code>null</code> if the dialogues weren't warmed up
+     */
+    public static WarmUpReport getWarmUpReport() {
+        return sWarmUpReport;
+    }
+
+    /**
+     * @param warmUpReport The report of the warm-up, <code>null</code> if the dialogues weren't warmed up.
+     */
+    public static void setReady(WarmUpReport warmUpReport) {
+        sWarmUpReport = warmUpReport;
+        sReady = true;
+    }
+
+    public static void setNotReady() {
+        sReady = false;
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright (c) 2013 Nu Echo Inc. All rights reserved.
+ */
+
+package com.nuecho.rivr.samples.voicemail.warmup;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Outcome of a {@link DialogueWarmUp}, with the latency of its turns as the code got compiled.
+ * <p>
+ * Sessions are played in rounds, one session of each {@link WarmUpScript} per round, so that every round does the same
+ * work. The steady latency is the median of the mean turn latencies of the last quarter of the rounds, and steady
+ * state is reached with the first round whose mean turn latency is within {@link #STEADY_STATE_TOLERANCE} of it.
+ *
+ * @author Nu Echo Inc.
+ */
+public final class WarmUpReport {
+    public static final double STEADY_STATE_TOLERANCE = 1.2;
+
+    private final int mSessions;
+    private final int mFailures;
+    private final long mTurns;
+    private final long mElapsedMillis;
+    private final int mRounds;
+    private final long mFirstRoundTurnMicros;
+    private final long mSteadyTurnMicros;
+    private final int mSteadyStateRound;
+    private final long mTimeToSteadyStateMillis;
+
+    private WarmUpReport(int sessions,
+                         int failures,
+                         long turns,
+                         long elapsedMillis,
+                         int rounds,
+                         long firstRoundTurnMicros,
+                         long steadyTurnMicros,
+                         int steadyStateRound,
+                         long timeToSteadyStateMillis) {
+        mSessions = sessions;
+        mFailures = failures;
+        mTurns = turns;
+        mElapsedMillis = elapsedMillis;
+        mRounds = rounds;
+        mFirstRoundTurnMicros = firstRoundTurnMicros;
+        mSteadyTurnMicros = steadyTurnMicros;
+        mSteadyStateRound = steadyStateRound;
+        mTimeToSteadyStateMillis = timeToSteadyStateMillis;
+    }
+
+    /**
+     * @param roundTurnNanos The total latency, in nanoseconds, of the turns of each round.
+     * @param roundTurns The number of turns of each round.
+     * @param roundEndNanos When each round ended, in nanoseconds since the start of the warm-up.
+     * @param rounds The number of rounds played, possibly fewer than the length of the arrays.
+     */
+    static WarmUpReport create(int sessions,
+                               int failures,
+                               long[] roundTurnNanos,
+                               int[] roundTurns,
+                               long[] roundEndNanos,
+                               int rounds) {
+        long turns = 0;
+        long[] means = new long[rounds];
+        for (int round = 0; round < rounds; round++) {
+            turns += roundTurns[round];
+            means[round] = roundTurns[round] == 0 ? 0 : roundTurnNanos[round] / roundTurns[round];
+        }
+        if (rounds == 0) return new WarmUpReport(sessions, failures, turns, 0, 0, 0, 0, 0, 0);
+
+        int tail = Math.max(1, rounds / 4);
+        long[] lastMeans = Arrays.copyOfRange(means, rounds - tail, rounds);
+        Arrays.sort(lastMeans);
+        long steady = lastMeans[tail / 2];
+
+        int steadyStateRound = 0;
+        while (means[steadyStateRound] > steady * STEADY_STATE_TOLERANCE) {
+            steadyStateRound++;
+        }
+
+        return new WarmUpReport(sessions,
+                                failures,
+                                turns,
+                                TimeUnit.NANOSECONDS.toMillis(roundEndNanos[rounds - 1]),
+                                rounds,
+                                TimeUnit.NANOSECONDS.toMicros(means[0]),
+                                TimeUnit.NANOSECONDS.toMicros(steady),
+                                steadyStateRound + 1,
+                                TimeUnit.NANOSECONDS.toMillis(roundEndNanos[steadyStateRound]));
+    }
+
+    public int getSessions() {
+        return mSessions;
+    }
+
+    /**
+     * @return the number of sessions that ended with an error step or didn't complete
+     */
+    public int getFailures() {
+        return mFailures;
+    }
+
+    public long getTurns() {
+        return mTurns;
+    }
+
+    public long getElapsedMillis() {
+        return mElapsedMillis;
+    }
+
+    public int getRounds() {
+        return mRounds;
+    }
+
+    public long getFirstRoundTurnMicros() {
+        return mFirstRoundTurnMicros;
+    }
+
+    public long getSteadyTurnMicros() {
+        return mSteadyTurnMicros;
+    }
+
+    /**
+     * @return the first round in steady state, counting from 1, or 0 if no round was played
+     */
+    public int getSteadyStateRound() {
+        return mSteadyStateRound;
+    }
+
+    /**
+     * @return the time from the start of the warm-up to the end of the first round in steady state
+     */
+    public long getTimeToSteadyStateMillis() {
+        return mTimeToSteadyStateMillis;
+    }
+
+    @Override
+    public String toString() {
+        return mSessions + " sessions (" + mFailures + " failed), " + mTurns + " turns in " + mElapsedMillis
+               + " ms: first round " + mFirstRoundTurnMicros + " us/turn, steady " + mSteadyTurnMicros
+               + " us/turn, reached in round " + mSteadyStateRound + "/" + mRounds + " after "
+               + mTimeToSteadyStateMillis + " ms";
+    }
+}
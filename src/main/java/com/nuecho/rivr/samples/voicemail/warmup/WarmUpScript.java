@@ -0,0 +1,94 @@
+/*
+ * Copyright (c) 2013 Nu Echo Inc. All rights reserved.
+ */
+
+package com.nuecho.rivr.samples.voicemail.warmup;
+
+import java.util.*;
+
+/**
+ * Scripts played by the warm-up sessions. Together, they take every transition of the bundled call flow, plus the
+ * login failure, reprompt and silent-line paths. Each action of a script is either a DTMF string or one of
+ * {@link #RECORDING}, {@link #NO_INPUT}, {@link #NO_MATCH} and {@link #HANG_UP}.
+ *
+ * @author Nu Echo Inc.
+ */
+public enum WarmUpScript {
+    SILENT_LINE(WarmUpScript.NO_INPUT,
+                WarmUpScript.NO_INPUT,
+                WarmUpScript.NO_INPUT,
+                WarmUpScript.NO_INPUT,
+                WarmUpScript.NO_INPUT),
+    LOGIN_INCORRECT("4069",
+                    "4243",
+                    "4069",
+                    "6522",
+                    WarmUpScript.NO_MATCH,
+                    WarmUpScript.NO_INPUT,
+                    "#",
+                    WarmUpScript.NO_INPUT),
+    MAILBOX_OPTIONS("4069",
+                    "6522",
+                    "0",
+                    "3",
+                    WarmUpScript.RECORDING,
+                    "2",
+                    "3",
+                    WarmUpScript.RECORDING,
+                    "1",
+                    WarmUpScript.NO_INPUT,
+                    "*",
+                    WarmUpScript.HANG_UP),
+    LEAVE_MESSAGE("4069",
+                  "6522",
+                  "3",
+                  "5",
+                  "9999",
+                  WarmUpScript.NO_INPUT,
+                  "1234",
+                  WarmUpScript.RECORDING,
+                  WarmUpScript.HANG_UP),
+    DIAL_OUT("4069", "6522", "3", "4", "1234", WarmUpScript.NO_INPUT, "3", "4", "9999", WarmUpScript.HANG_UP),
+    PLAY_MESSAGE("4069",
+                 "6522",
+                 "1",
+                 "4",
+                 "6",
+                 "*",
+                 "#",
+                 "5",
+                 WarmUpScript.NO_INPUT,
+                 "4",
+                 "6",
+                 "5",
+                 WarmUpScript.NO_INPUT,
+                 "*",
+                 WarmUpScript.HANG_UP),
+    SAVE_MESSAGE("4069",
+                 "6522",
+                 "1",
+                 WarmUpScript.NO_INPUT,
+                 "9",
+                 "2",
+                 "9",
+                 "1",
+                 WarmUpScript.NO_INPUT,
+                 "*",
+                 "#",
+                 WarmUpScript.NO_INPUT);
+
+    public static final String RECORDING = "recording";
+    public static final String NO_INPUT = "noinput";
+    public static final String NO_MATCH = "nomatch";
+    public static final String HANG_UP = "hangup";
+
+    private final List<String> mActions;
+
+    private WarmUpScript(String... actions) {
+        mActions = Collections.unmodifiableList(Arrays.asList(actions));
+    }
+
+    public List<String> getActions() {
+        return mActions;
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) 2013 Nu Echo Inc. All rights reserved.
+ */
+
+package com.nuecho.rivr.samples.voicemail.admission;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.*;
+
+import org.junit.*;
+
+/**
+ * @author Nu Echo Inc.
+ */
+public class AdmissionControllerTests {
+
+    private static final long FAST = TimeUnit.MILLISECONDS.toNanos(10);
+    private static final long SLOW = TimeUnit.MILLISECONDS.toNanos(500);
+
+    @Test
+    public void rejectWhenQueueFull() throws InterruptedException {
+        AdmissionController controller = new AdmissionController(1, 2, 0, 100, 250);
+        assertTrue(controller.acquire());
+        assertTrue(controller.acquire());
+        assertFalse(controller.acquire());
+        assertEquals(1, controller.getRejected());
+
+        controller.release();
+        assertTrue(controller.acquire());
+        assertEquals(2, controller.getActive());
+    }
+
+    @Test
+    public void rejectAfterQueueTimeout() throws InterruptedException {
+        AdmissionController controller = new AdmissionController(1, 1, 1, 20, 250);
+        assertTrue(controller.acquire());
+        long start = System.nanoTime();
+        assertFalse(controller.acquire());
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(20));
+        assertEquals(0, controller.getWaiting());
+    }
+
+    @Test
+    public void admitWhenReleasedWhileWaiting() throws Exception {
+        final AdmissionController controller = new AdmissionController(1, 1, 1, 5000, 250);
+        assertTrue(controller.acquire());
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<Boolean> waiting = executor.submit(new Callable<Boolean>() {
+                @Override
+                public Boolean call() throws InterruptedException {
+                    return controller.acquire();
+                }
+            });
+            while (controller.getWaiting() == 0) {
+                Thread.sleep(1);
+            }
+            controller.release();
+            assertTrue(waiting.get(5, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void adaptLimit() throws InterruptedException {
+        AdmissionController controller = new AdmissionController(5, 10, 0, 0, 250);
+        recordWindow(controller, SLOW);
+        assertEquals(9, controller.getLimit());
+        for (int i = 0; i < 20; i++) {
+            recordWindow(controller, SLOW);
+        }
+        assertEquals(5, controller.getLimit());
+
+        recordWindow(controller, FAST);
+        assertEquals("no increase without saturation", 5, controller.getLimit());
+
+        for (int i = 0; i < 6; i++) {
+            controller.acquire();
+        }
+        recordWindow(controller, FAST);
+        assertEquals(6, controller.getLimit());
+    }
+
+    private static void recordWindow(AdmissionController controller, long nanos) {
+        for (int i = 0; i < AdmissionController.WINDOW_SAMPLES; i++) {
+            controller.recordLatency(nanos);
+        }
+    }
+}
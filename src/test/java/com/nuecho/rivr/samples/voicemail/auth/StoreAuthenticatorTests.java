@@ -0,0 +1,151 @@
+/*
+ * Copyright (c) 2013 Nu Echo Inc. All rights reserved.
+ */
+
+package com.nuecho.rivr.samples.voicemail.auth;
+
+import static org.junit.Assert.*;
+
+import java.io.*;
+import java.util.*;
+
+import org.junit.*;
+
+import com.nuecho.rivr.samples.voicemail.flow.*;
+
+/**
+ * @author Nu Echo Inc.
+ */
+public class StoreAuthenticatorTests {
+
+    private InMemoryMailboxStore mStore;
+    private Authenticator mAuthenticator;
+
+    @Before
+    public void createAuthenticator() {
+        mStore = new InMemoryMailboxStore();
+        mStore.putMailbox("4069", "6522");
+        mAuthenticator = new StoreAuthenticator(mStore, 10, 3, 60);
+    }
+
+    @Test
+    public void validPin() {
+        assertEquals(AuthenticationResult.SUCCESS, mAuthenticator.authenticate("4069", "6522"));
+    }
+
+    @Test
+    public void dtmfSequences() {
+        DtmfSequence mailbox = new DtmfSequence();
+        DtmfSequence pin = new DtmfSequence();
+        mailbox.decode("4 0 6 9", 1);
+        pin.decode("4 2 4 3 #", 1);
+        assertEquals(AuthenticationResult.INVALID, mAuthenticator.authenticate(mailbox, pin));
+        pin.decode("6 5 2 2 #", 1);
+        assertEquals(AuthenticationResult.SUCCESS, mAuthenticator.authenticate(mailbox, pin));
+        assertTrue(PinHash.create("6522").matches(new StringBuilder("6522")));
+    }
+
+    @Test
+    public void invalidPin() {
+        assertEquals(AuthenticationResult.INVALID, mAuthenticator.authenticate("4069", "4243"));
+    }
+
+    @Test
+    public void unknownMailbox() {
+        assertEquals(AuthenticationResult.INVALID, mAuthenticator.authenticate("1111", ""));
+        assertEquals(AuthenticationResult.INVALID, mAuthenticator.authenticate("1111", "6522"));
+    }
+
+    @Test
+    public void lockout() {
+        assertEquals(AuthenticationResult.INVALID, mAuthenticator.authenticate("4069", "0000"));
+        assertEquals(AuthenticationResult.INVALID, mAuthenticator.authenticate("4069", "0001"));
+        assertEquals(AuthenticationResult.LOCKED_OUT, mAuthenticator.authenticate("4069", "0002"));
+        assertEquals(AuthenticationResult.LOCKED_OUT, mAuthenticator.authenticate("4069", "6522"));
+    }
+
+    @Test
+    public void unknownMailboxIsNotCounted() {
+        for (int attempt = 0; attempt < 5; attempt++) {
+            assertEquals(AuthenticationResult.INVALID, mAuthenticator.authenticate("1111", "000" + attempt));
+        }
+    }
+
+    @Test
+    public void collidingMailboxDoesNotResetFailures() {
+        // 14639 shared the counter slot of 4069 when counters were hashed.
+        mStore.putMailbox("14639", "1234");
+        for (int attempt = 0; attempt < 2; attempt++) {
+            assertEquals(AuthenticationResult.INVALID, mAuthenticator.authenticate("4069", "000" + attempt));
+            assertEquals(AuthenticationResult.INVALID, mAuthenticator.authenticate("14639", "000" + attempt));
+        }
+        assertEquals(AuthenticationResult.LOCKED_OUT, mAuthenticator.authenticate("4069", "0002"));
+        assertEquals(AuthenticationResult.LOCKED_OUT, mAuthenticator.authenticate("14639", "0002"));
+        assertEquals(AuthenticationResult.LOCKED_OUT, mAuthenticator.authenticate("4069", "6522"));
+    }
+
+    @Test
+    public void countersAreBounded() {
+        LoginAttemptCounters counters = new LoginAttemptCounters(16, 3, 60);
+        assertFalse(counters.recordFailure("42"));
+        assertFalse(counters.recordFailure("42"));
+        assertTrue(counters.recordFailure("42"));
+        for (int mailbox = 0; mailbox < 1000; mailbox++) {
+            counters.recordFailure(String.valueOf(mailbox + 1000));
+        }
+        assertEquals(16, counters.size());
+        // A locked-out mailbox is never displaced.
+        assertTrue(counters.isLockedOut("42"));
+        assertFalse(counters.isLockedOut("43"));
+
+        counters.reset("42");
+        assertFalse(counters.isLockedOut("42"));
+    }
+
+    @Test
+    public void lockoutLastsFromItsStart() {
+        LoginAttemptCounters counters = new LoginAttemptCounters(16, 3, 60);
+        assertFalse(counters.recordFailure("42", 0));
+        assertFalse(counters.recordFailure("42", 50));
+        assertTrue(counters.recordFailure("42", 55));
+        assertTrue(counters.isLockedOut("42", 100));
+        assertTrue(counters.isLockedOut("42", 114));
+        assertFalse(counters.isLockedOut("42", 115));
+        // An expired lockout starts a new count.
+        assertFalse(counters.recordFailure("42", 115));
+    }
+
+    @Test
+    public void successResetsFailures() {
+        mAuthenticator.authenticate("4069", "0000");
+        mAuthenticator.authenticate("4069", "0001");
+        assertEquals(AuthenticationResult.SUCCESS, mAuthenticator.authenticate("4069", "6522"));
+        assertEquals(AuthenticationResult.INVALID, mAuthenticator.authenticate("4069", "0002"));
+    }
+
+    @Test
+    public void fileStore() throws IOException {
+        Map<String, PinHash> pinHashes = new HashMap<String, PinHash>();
+        for (int mailbox = 1000; mailbox < 1100; mailbox++) {
+            pinHashes.put(String.valueOf(mailbox), PinHash.create("p" + mailbox));
+        }
+
+        File file = File.createTempFile("mailboxes", ".db");
+        try {
+            FileMailboxStore.write(file, pinHashes);
+            FileMailboxStore store = new FileMailboxStore(file);
+            try {
+                assertTrue(store.getPinHash("1000").matches("p1000"));
+                assertTrue(store.getPinHash("1057").matches("p1057"));
+                assertTrue(store.getPinHash("1099").matches("p1099"));
+                assertFalse(store.getPinHash("1057").matches("p1058"));
+                assertNull(store.getPinHash("999"));
+                assertNull(store.getPinHash("10570"));
+            } finally {
+                store.close();
+            }
+        } finally {
+            file.delete();
+        }
+    }
+}
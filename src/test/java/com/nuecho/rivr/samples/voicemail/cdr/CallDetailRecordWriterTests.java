@@ -0,0 +1,147 @@
+/*
+ * Copyright (c) 2013 Nu Echo Inc. All rights reserved.
+ */
+
+package com.nuecho.rivr.samples.voicemail.cdr;
+
+import static org.junit.Assert.*;
+
+import java.io.*;
+import java.util.*;
+
+import org.junit.*;
+
+/**
+ * @author Nu Echo Inc.
+ */
+public class CallDetailRecordWriterTests {
+
+    private File mFile;
+
+    @Before
+    public void createFile() throws IOException {
+        mFile = File.createTempFile("calls", ".cdr");
+        mFile.delete();
+    }
+
+    @After
+    public void deleteFile() {
+        mFile.delete();
+    }
+
+    @Test
+    public void writeAndRead() throws IOException {
+        List<CallDetailRecord> records = new ArrayList<CallDetailRecord>();
+        long startTime = 1367503391482L;
+        for (int index = 0; index < 2500; index++) {
+            records.add(new CallDetailRecord(startTime + index * 1000 - index % 3 * 5000,
+                                             index % 2 == 0 ? "5145551234" : null,
+                                             index % 5 == 0 ? null : "1234",
+                                             1 + index % 3,
+                                             Arrays.asList("main-menu", "play-message", "call-menu"),
+                                             60000 + index,
+                                             12,
+                                             59000,
+                                             index % 5 == 0 ? "invalid-user" : "success"));
+        }
+
+        CallDetailRecordWriter writer = new CallDetailRecordWriter(mFile, 10000, 60000);
+        for (CallDetailRecord record : records) {
+            assertTrue(writer.record(record));
+        }
+        writer.shutdown();
+        assertEquals(records.size(), writer.getWritten());
+        assertFalse(writer.record(records.get(0)));
+        assertEquals(1, writer.getDropped());
+        assertTrue(mFile.length() < records.size() * 20);
+
+        // Appended to the same file.
+        writer = new CallDetailRecordWriter(mFile, 10, 60000);
+        writer.record(records.get(1));
+        writer.shutdown();
+
+        List<CallDetailRecord> read = readAll();
+        assertEquals(records.size() + 1, read.size());
+        assertEquals(records, read.subList(0, records.size()));
+        assertEquals(records.get(1), read.get(records.size()));
+    }
+
+    @Test(timeout = 10000)
+    public void flushPeriod() throws Exception {
+        CallDetailRecordWriter writer = new CallDetailRecordWriter(mFile, 10, 50);
+        writer.record(new CallDetailRecord(1, null, null, 0, Collections.<String> emptyList(), 0, 0, 0, "error"));
+        while (writer.getWritten() == 0) {
+            Thread.sleep(10);
+        }
+        assertEquals(1, readAll().size());
+
+        long start = System.currentTimeMillis();
+        writer.shutdown();
+        assertTrue(System.currentTimeMillis() - start < 1000);
+    }
+
+    @Test
+    public void truncated() throws IOException {
+        CallDetailRecord record = new CallDetailRecord(1,
+                                                       "5145551234",
+                                                       "1234",
+                                                       1,
+                                                       Collections.<String> emptyList(),
+                                                       2,
+                                                       3,
+                                                       4,
+                                                       "success");
+        byte[] block = CallDetailRecordFormat.encode(Collections.singletonList(record));
+        FileOutputStream output = new FileOutputStream(mFile);
+        output.write(block);
+        output.write(block, 0, block.length - 1);
+        output.close();
+
+        CallDetailRecordReader reader = new CallDetailRecordReader(mFile);
+        assertEquals(1, reader.readBlock().size());
+        assertNull(reader.readBlock());
+        assertTrue(reader.isTruncated());
+        assertEquals(block.length, reader.getOffset());
+        reader.close();
+    }
+
+    @Test
+    public void appendAfterTruncatedBlock() throws IOException {
+        CallDetailRecord record = new CallDetailRecord(1,
+                                                       null,
+                                                       "1234",
+                                                       1,
+                                                       Collections.<String> emptyList(),
+                                                       2,
+                                                       3,
+                                                       4,
+                                                       "success");
+        byte[] block = CallDetailRecordFormat.encode(Collections.singletonList(record));
+        FileOutputStream output = new FileOutputStream(mFile);
+        output.write(block);
+        output.write(block, 0, block.length / 2);
+        output.close();
+
+        CallDetailRecordWriter writer = new CallDetailRecordWriter(mFile, 10, 60000);
+        assertEquals(block.length, mFile.length());
+        writer.record(record);
+        writer.shutdown();
+
+        assertEquals(Arrays.asList(record, record), readAll());
+    }
+
+    private List<CallDetailRecord> readAll() throws IOException {
+        List<CallDetailRecord> records = new ArrayList<CallDetailRecord>();
+        CallDetailRecordReader reader = new CallDetailRecordReader(mFile);
+        try {
+            List<CallDetailRecord> block;
+            while ((block = reader.readBlock()) != null) {
+                records.addAll(block);
+            }
+            assertFalse(reader.isTruncated());
+        } finally {
+            reader.close();
+        }
+        return records;
+    }
+}
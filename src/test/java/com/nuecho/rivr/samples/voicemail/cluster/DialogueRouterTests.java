@@ -0,0 +1,85 @@
+/*
+ * Copyright (c) 2013 Nu Echo Inc. All rights reserved.
+ */
+
+package com.nuecho.rivr.samples.voicemail.cluster;
+
+import static org.junit.Assert.*;
+
+import java.io.*;
+import java.util.*;
+
+import org.junit.*;
+
+/**
+ * @author Nu Echo Inc.
+ */
+public class DialogueRouterTests {
+
+    private static final int KEYS = 10000;
+    private static final long NODE_TIMEOUT = 60000;
+
+    @Test
+    public void ringBalance() {
+        ConsistentHashRing ring = new ConsistentHashRing(Arrays.asList("node1", "node2", "node3", "node4"));
+        Map<String, Integer> counts = new HashMap<String, Integer>();
+        for (int i = 0; i < KEYS; i++) {
+            String node = ring.getNode("dialogue-" + i);
+            Integer count = counts.get(node);
+            counts.put(node, count == null ? 1 : count + 1);
+        }
+
+        assertEquals(4, counts.size());
+        for (int count : counts.values()) {
+            assertTrue("unbalanced: " + counts, count > KEYS / 4 * 0.7 && count < KEYS / 4 * 1.3);
+        }
+    }
+
+    @Test
+    public void ringAddNode() {
+        ConsistentHashRing before = new ConsistentHashRing(Arrays.asList("node1", "node2", "node3"));
+        ConsistentHashRing after = new ConsistentHashRing(Arrays.asList("node1", "node2", "node3", "node4"));
+
+        int moved = 0;
+        for (int i = 0; i < KEYS; i++) {
+            String key = "dialogue-" + i;
+            String node = after.getNode(key);
+            if (!node.equals(before.getNode(key))) {
+                assertEquals("keys only move to the new node", "node4", node);
+                moved++;
+            }
+        }
+        assertTrue("moved: " + moved, moved > KEYS / 4 * 0.7 && moved < KEYS / 4 * 1.3);
+    }
+
+    @Test
+    public void route() throws IOException {
+        InMemoryDialogueRegistry registry = new InMemoryDialogueRegistry();
+        DialogueRouter router1 = new DialogueRouter(registry, "node1", "http://node1", NODE_TIMEOUT);
+        DialogueRouter router2 = new DialogueRouter(registry, "node2", "http://node2", NODE_TIMEOUT);
+        router1.heartbeat();
+
+        router1.register("a");
+        assertEquals(DialogueRouter.Decision.LOCAL, router1.route("a").getDecision());
+        DialogueRouter.Route route = router2.route("a");
+        assertEquals(DialogueRouter.Decision.FORWARD, route.getDecision());
+        assertEquals("http://node1", route.getNode().getUrl());
+
+        router1.unregister("a");
+        DialogueRouter.Route route1 = router1.route("a");
+        DialogueRouter.Route route2 = router2.route("a");
+        assertEquals("both nodes pick the same node", route1.getNode().getId(), route2.getNode().getId());
+        assertTrue(route1.getDecision() == DialogueRouter.Decision.RESTART
+                   ^ route2.getDecision() == DialogueRouter.Decision.RESTART);
+    }
+
+    @Test
+    public void deadNode() throws IOException {
+        InMemoryDialogueRegistry registry = new InMemoryDialogueRegistry();
+        registry.putNode(new ClusterNode("node2", "http://node2", System.currentTimeMillis() - NODE_TIMEOUT * 2));
+        registry.putDialogue("a", "node2");
+        DialogueRouter router = new DialogueRouter(registry, "node1", "http://node1", NODE_TIMEOUT);
+
+        assertEquals(DialogueRouter.Decision.RESTART, router.route("a").getDecision());
+    }
+}
@@ -5,16 +5,29 @@
 package com.nuecho.rivr.samples.voicemail.dialogue;
 
 import static com.nuecho.rivr.samples.voicemail.helpers.DialogueMatchers.*;
+import static org.junit.Assert.*;
 
+import java.io.*;
+import java.net.URLDecoder;
+import java.nio.*;
 import java.util.*;
 
 import org.junit.*;
 
+import com.nuecho.rivr.core.channel.synchronous.step.*;
 import com.nuecho.rivr.core.dialogue.*;
 import com.nuecho.rivr.core.util.*;
+import com.nuecho.rivr.samples.voicemail.ingest.*;
+import com.nuecho.rivr.samples.voicemail.passivation.*;
+import com.nuecho.rivr.samples.voicemail.prompt.*;
+import com.nuecho.rivr.samples.voicemail.servlet.*;
+import com.nuecho.rivr.samples.voicemail.store.*;
 import com.nuecho.rivr.voicexml.dialogue.*;
 import com.nuecho.rivr.voicexml.servlet.*;
+import com.nuecho.rivr.voicexml.turn.first.*;
 import com.nuecho.rivr.voicexml.turn.input.*;
+import com.nuecho.rivr.voicexml.turn.last.*;
+import com.nuecho.rivr.voicexml.turn.output.*;
 import com.nuecho.rivr.voicexml.util.json.*;
 
 /**
@@ -22,8 +35,13 @@ import com.nuecho.rivr.voicexml.util.json.*;
  */
 public class DialogueTests {
 
+    private static final String MAILBOX = "4069";
+    private static final int MESSAGE_SEGMENT_SIZE = 1024 * 1024;
+
     @Rule
     private final TestDialogueChannel mChannel;
+    private File mMessageDirectory;
+    private MessageStore mMessageStore;
 
     public DialogueTests() throws DialogueFactoryException {
         mChannel = new TestDialogueChannel(new SimpleVoiceXmlDialogueFactory(VoicemailDialogue.class));
@@ -53,6 +71,29 @@ public class DialogueTests {
         mChannel.processHangup();
     }
 
+    @Test
+    public void loginSilentLine() {
+        for (int i = 0; i < 3; i++) {
+            assertLastInteractionName("ask-login");
+            mChannel.processNoInput();
+        }
+        assertLastInteractionName("ask-login");
+        mChannel.processNoInput();
+        assertLastInteractionName("goodbye");
+        mChannel.processNoInput();
+        mChannel.checkThat(isDone());
+    }
+
+    @Test
+    public void sorryOnNoMatch() {
+        login();
+        mChannel.processNoMatch();
+        assertLastInteractionName("sorry");
+        mChannel.processNoInput();
+        assertLastInteractionName("main-menu");
+        mChannel.processHangup();
+    }
+
     @Test
     public void exitOnPound() {
         login();
@@ -92,6 +133,32 @@ public class DialogueTests {
         mChannel.processHangup();
     }
 
+    @Test
+    public void dialOutInTwoParts() {
+        login();
+        sendDtmfAnswer("3");
+        sendDtmfAnswer("4");
+        // The start of the demo extension: the rest is collected.
+        sendDtmfAnswer("12");
+        assertLastInteractionName("continue-number");
+        sendDtmfAnswer("34");
+        assertLastInteractionName("dial-out");
+        mChannel.processHangup();
+    }
+
+    @Test
+    public void noInputEndsNumber() {
+        login();
+        sendDtmfAnswer("3");
+        sendDtmfAnswer("4");
+        sendDtmfAnswer("12");
+        assertLastInteractionName("continue-number");
+        mChannel.processNoInput();
+        // 12 is not a number.
+        assertLastInteractionName("main-menu");
+        mChannel.processHangup();
+    }
+
     @Test
     public void leaveMessage() {
         login();
@@ -174,6 +241,26 @@ public class DialogueTests {
         mChannel.processHangup();
     }
 
+    @Test
+    public void navigateDuringPlayback() throws IOException {
+        VoiceMessage first = depositMessage(10);
+        VoiceMessage second = depositMessage(10);
+        login();
+        sendDtmfAnswer("1");
+        assertPlayback(first, 0);
+        // 2 s into the recording, then 5 s ahead.
+        sendDtmfAnswer("#", Duration.seconds(2));
+        assertPlayback(first, 56000);
+        // 1 s further, then 5 s back.
+        sendDtmfAnswer("*", Duration.seconds(1));
+        assertPlayback(first, 24000);
+        sendDtmfAnswer("6");
+        assertPlayback(second, 0);
+        sendDtmfAnswer("1");
+        assertLastInteractionName("call-menu");
+        mChannel.processHangup();
+    }
+
     @Test
     public void saveMessage() {
         login();
@@ -188,18 +275,117 @@ public class DialogueTests {
         mChannel.processHangup();
     }
 
+    @Test
+    public void passivateAndResume() throws Exception {
+        DialogueStateStores.setStore(new OffHeapDialogueStateStore(), Duration.milliseconds(200));
+        login();
+        assertLastInteractionName("main-menu");
+        Thread.sleep(500);
+
+        Step<VoiceXmlOutputTurn, VoiceXmlLastTurn> step = mChannel.processNoInput();
+        mChannel.checkThat(isDone());
+        VoiceXmlLastTurn lastTurn = ((LastTurnStep<VoiceXmlOutputTurn, VoiceXmlLastTurn>) step).getLastTurn();
+        ResumeRedirect redirect = (ResumeRedirect) lastTurn;
+        Map<String, String> parameters = getQueryParameters(redirect.getLocation());
+        assertEquals("testDialogueId", parameters.get(VoicemailDialogue.RESUME_PARAMETER));
+        assertNotNull(parameters.get(VoicemailDialogue.RESUME_TOKEN_PARAMETER));
+
+        mChannel.dispose();
+        mChannel.start(new VoiceXmlFirstTurn(parameters));
+        assertLastInteractionName("main-menu");
+        mChannel.processHangup();
+    }
+
+    @Test
+    public void resumeWithWrongToken() throws Exception {
+        DialogueStateStores.setStore(new OffHeapDialogueStateStore(), Duration.milliseconds(200));
+        login();
+        Thread.sleep(500);
+        mChannel.processNoInput();
+        mChannel.checkThat(isDone());
+
+        Map<String, String> parameters = new HashMap<String, String>();
+        parameters.put(VoicemailDialogue.RESUME_PARAMETER, "testDialogueId");
+        parameters.put(VoicemailDialogue.RESUME_TOKEN_PARAMETER, "0123456789abcdef0123456789abcdef");
+        mChannel.dispose();
+        mChannel.start(new VoiceXmlFirstTurn(parameters));
+        assertLastInteractionName("ask-login");
+        mChannel.processHangup();
+    }
+
+    @After
+    public void resetDialogueStateStore() {
+        DialogueStateStores.setStore(null, null);
+    }
+
+    @After
+    public void deleteMessageStore() {
+        if (mMessageStore == null) return;
+        MessageStores.setMessageStore(null);
+        mMessageStore.close();
+        for (File file : mMessageDirectory.listFiles()) {
+            file.delete();
+        }
+        mMessageDirectory.delete();
+    }
+
+    /**
+     * Deposits a mu-law message in the mailbox of the tests, in a message store installed for the test.
+     */
+    private VoiceMessage depositMessage(int seconds) throws IOException {
+        if (mMessageStore == null) {
+            mMessageDirectory = File.createTempFile("message-store", "");
+            mMessageDirectory.delete();
+            mMessageStore = new MessageStore(mMessageDirectory, MESSAGE_SEGMENT_SIZE, 0.5);
+            MessageStores.setMessageStore(mMessageStore);
+        }
+        ByteBuffer audio = ByteBuffer.allocate(seconds * WavTranscoder.SAMPLE_RATE);
+        return mMessageStore.deposit(MAILBOX, WavTranscoder.CONTENT_TYPE, audio);
+    }
+
+    private static Map<String, String> getQueryParameters(String location) throws Exception {
+        Map<String, String> parameters = new HashMap<String, String>();
+        for (String parameter : location.substring(location.indexOf('?') + 1).split("&")) {
+            int separator = parameter.indexOf('=');
+            parameters.put(parameter.substring(0, separator),
+                           URLDecoder.decode(parameter.substring(separator + 1), "UTF-8"));
+        }
+        return parameters;
+    }
+
     private void login() {
-        sendDtmfAnswer("4069");
+        sendDtmfAnswer(MAILBOX);
         sendDtmfAnswer("6522");
     }
 
     private void sendDtmfAnswer(String dtmfs) {
+        sendDtmfAnswer(dtmfs, (MarkInfo) null);
+    }
+
+    /**
+     * Interrupts a message playback.
+     *
+     * @param elapsed The time elapsed since the start of the recording.
+     */
+    private void sendDtmfAnswer(String dtmfs, Duration elapsed) {
+        sendDtmfAnswer(dtmfs, new MarkInfo(PromptCatalog.MESSAGE_MARK, elapsed));
+    }
+
+    private void sendDtmfAnswer(String dtmfs, MarkInfo markInfo) {
         StringBuilder builder = new StringBuilder();
         StringUtils.join(builder, dtmfs.toCharArray(), " ");
 
         // The answer received from a voicexml plateform will have the dtmf digits seperated by spaces in
         // the utterance property and have them joined in the interpretation property.
-        mChannel.processDtmfRecognition(builder.toString(), JsonUtils.wrap(dtmfs), null);
+        mChannel.processDtmfRecognition(builder.toString(), JsonUtils.wrap(dtmfs), markInfo);
+    }
+
+    private void assertPlayback(VoiceMessage message, int offset) {
+        assertLastInteractionName("play-message");
+        // The expiry and token of the URL follow.
+        String location = "contextPath/messages/" + MAILBOX + "/" + message.getId() + "?"
+                          + MessageAudioServlet.OFFSET_PARAMETER + "=" + offset + "&";
+        mChannel.checkThat(lastInteraction(playsAudio(location)));
     }
 
     private void sendRecording() {
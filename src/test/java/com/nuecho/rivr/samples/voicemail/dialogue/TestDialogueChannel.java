@@ -47,6 +47,25 @@ public class TestDialogueChannel extends ExternalResource {
 
     @Override
     protected void before() throws Throwable {
+        start();
+    }
+
+    @Override
+    protected void after() {
+        dispose();
+    }
+
+    /**
+     * Starts a new dialogue. Called before each test when used as a rule.
+     */
+    public void start() throws DialogueFactoryException {
+        start(new VoiceXmlFirstTurn());
+    }
+
+    /**
+     * Starts a new dialogue with a first turn, e.g. one holding request parameters.
+     */
+    public void start(VoiceXmlFirstTurn firstTurn) throws DialogueFactoryException {
         mDialogueChannel = new VoiceXmlTestDialogueChannel("Dialog Tests", mTimeout);
         VoiceXmlDialogueContext context = new VoiceXmlDialogueContext(mDialogueChannel,
                                                                       mLogger,
@@ -55,11 +74,13 @@ public class TestDialogueChannel extends ExternalResource {
                                                                       "servletPath");
         mFactory.create(new TestDialogueInitializationInfo(context));
         VoicemailDialogue dialogue = new VoicemailDialogue();
-        mDialogueChannel.startDialogue(dialogue, new VoiceXmlFirstTurn(), context);
+        mDialogueChannel.startDialogue(dialogue, firstTurn, context);
     }
 
-    @Override
-    protected void after() {
+    /**
+     * Disposes of the dialogue. Called after each test when used as a rule.
+     */
+    public void dispose() {
         mDialogueChannel.dispose();
     }
 
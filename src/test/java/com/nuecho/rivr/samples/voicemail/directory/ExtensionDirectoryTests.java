@@ -0,0 +1,78 @@
+/*
+ * Copyright (c) 2013 Nu Echo Inc. All rights reserved.
+ */
+
+package com.nuecho.rivr.samples.voicemail.directory;
+
+import static org.junit.Assert.*;
+
+import java.io.*;
+
+import org.junit.*;
+
+import com.nuecho.rivr.samples.voicemail.directory.ExtensionDirectory.PrefixMatch;
+
+/**
+ * @author Nu Echo Inc.
+ */
+public class ExtensionDirectoryTests {
+
+    private static final String DIRECTORY = "# Sales\n"
+                                            + "4069 extension\n"
+                                            + "\n"
+                                            + "40691\n"
+                                            + "0123 external\n"
+                                            + "18005550199   external\n"
+                                            + "4069 external\n"
+                                            + "99999999999999999 external\n";
+
+    @Test
+    public void lookup() throws IOException {
+        ExtensionDirectory directory = load(DIRECTORY);
+        assertEquals(5, directory.size());
+        assertEquals(ExtensionType.EXTENSION, directory.lookup("4069"));
+        assertEquals(ExtensionType.EXTENSION, directory.lookup("40691"));
+        assertEquals(ExtensionType.EXTERNAL, directory.lookup("0123"));
+        assertEquals(ExtensionType.EXTERNAL, directory.lookup("18005550199"));
+        assertEquals(ExtensionType.EXTERNAL, directory.lookup("99999999999999999"));
+        assertNull(directory.lookup("123"));
+        assertNull(directory.lookup("406"));
+        assertNull(directory.lookup(""));
+        assertNull(directory.lookup("40*9"));
+        assertNull(directory.lookup("999999999999999999"));
+    }
+
+    @Test
+    public void prefix() throws IOException {
+        ExtensionDirectory directory = load(DIRECTORY);
+        assertEquals(PrefixMatch.PARTIAL, directory.matchPrefix("4"));
+        assertEquals(PrefixMatch.PARTIAL, directory.matchPrefix("1800"));
+        assertEquals(PrefixMatch.AMBIGUOUS, directory.matchPrefix("4069"));
+        assertEquals(PrefixMatch.COMPLETE, directory.matchPrefix("40691"));
+        assertEquals(PrefixMatch.COMPLETE, directory.matchPrefix("0123"));
+        assertEquals(PrefixMatch.PARTIAL, directory.matchPrefix("0"));
+        assertEquals(PrefixMatch.NONE, directory.matchPrefix("123"));
+        assertEquals(PrefixMatch.NONE, directory.matchPrefix("406910"));
+        assertEquals(PrefixMatch.NONE, directory.matchPrefix("#"));
+    }
+
+    @Test
+    public void demo() {
+        assertEquals(ExtensionType.EXTENSION, ExtensionDirectory.DEMO.lookup("1234"));
+        assertEquals(PrefixMatch.PARTIAL, ExtensionDirectory.DEMO.matchPrefix("12"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidNumber() throws IOException {
+        load("40a9\n");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unknownType() throws IOException {
+        load("4069 fax\n");
+    }
+
+    private static ExtensionDirectory load(String directory) throws IOException {
+        return ExtensionDirectory.load(new ByteArrayInputStream(directory.getBytes("US-ASCII")));
+    }
+}
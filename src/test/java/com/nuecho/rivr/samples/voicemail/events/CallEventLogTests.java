@@ -0,0 +1,177 @@
+/*
+ * Copyright (c) 2013 Nu Echo Inc. All rights reserved.
+ */
+
+package com.nuecho.rivr.samples.voicemail.events;
+
+import static org.junit.Assert.*;
+
+import java.io.*;
+import java.util.*;
+
+import org.junit.*;
+
+/**
+ * @author Nu Echo Inc.
+ */
+public class CallEventLogTests {
+
+    private final List<String> mHandled = new ArrayList<String>();
+    private final CallEventLog.Handler mHandler = new CallEventLog.Handler() {
+        @Override
+        public void handle(CallEvent event) {
+            mHandled.add(event.getDialogueId() + " " + event.getType() + " " + event.getName() + " "
+                         + event.getValue());
+        }
+    };
+
+    private File mDirectory;
+
+    @Before
+    public void createDirectory() throws IOException {
+        mDirectory = File.createTempFile("call-events", "");
+        mDirectory.delete();
+    }
+
+    @After
+    public void deleteDirectory() {
+        File[] files = mDirectory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        mDirectory.delete();
+    }
+
+    @Test
+    public void publishAndDrain() throws IOException {
+        CallEventLog log = new CallEventLog(5, 0, 100);
+        assertEquals(8, log.getCapacity());
+        for (int round = 0; round < 3; round++) {
+            assertTrue(log.publish("d1", CallEventType.TURN_SENT, "ask-login", round));
+            assertTrue(log.publish("d1", CallEventType.INPUT_RECEIVED, "ask-login", 10));
+        }
+        assertEquals(2, log.drain(mHandler, 2));
+        assertEquals(4, log.drain(mHandler, 100));
+        assertEquals(0, log.drain(mHandler, 100));
+        assertEquals(Arrays.asList("d1 TURN_SENT ask-login 0",
+                                   "d1 INPUT_RECEIVED ask-login 10",
+                                   "d1 TURN_SENT ask-login 1",
+                                   "d1 INPUT_RECEIVED ask-login 10",
+                                   "d1 TURN_SENT ask-login 2",
+                                   "d1 INPUT_RECEIVED ask-login 10"),
+                     mHandled);
+    }
+
+    @Test
+    public void discard() throws IOException {
+        CallEventLog log = new CallEventLog(4, 2, 100);
+        assertTrue(log.publish("d1", CallEventType.TURN_SENT, "ask-login", 1));
+        assertTrue(log.publish("d1", CallEventType.INPUT_RECEIVED, "ask-login", 2));
+        assertFalse(log.publish("d1", CallEventType.TURN_SENT, "ask-password", 3));
+        assertTrue(log.publish("d1", CallEventType.LOGIN_RESULT, "SUCCESS", 1));
+        assertTrue(log.publish("d2", CallEventType.EXIT_STATUS, "success", 4));
+        assertFalse(log.publish("d3", CallEventType.EXIT_STATUS, "success", 5));
+        assertEquals(2, log.getDiscarded());
+
+        assertEquals(4, log.drain(mHandler, 100));
+        assertTrue(log.publish("d1", CallEventType.TURN_SENT, "ask-password", 3));
+        assertEquals(1, log.drain(mHandler, 100));
+        assertEquals("d1 TURN_SENT ask-password 3", mHandled.get(4));
+    }
+
+    @Test
+    public void sample() {
+        assertTrue(new CallEventLog(8, 0, 100).isSampled("d1"));
+        assertFalse(new CallEventLog(8, 0, 0).isSampled("d1"));
+
+        CallEventLog log = new CallEventLog(8, 0, 50);
+        int sampled = 0;
+        for (int index = 0; index < 1000; index++) {
+            String dialogueId = UUID.randomUUID().toString();
+            if (log.isSampled(dialogueId)) {
+                sampled++;
+                assertTrue(log.isSampled(dialogueId));
+            }
+        }
+        assertTrue(sampled > 400 && sampled < 600);
+    }
+
+    @Test(timeout = 10000)
+    public void concurrentPublishers() throws Exception {
+        final CallEventLog log = new CallEventLog(64, 0, 100);
+        final int events = 10000;
+        Thread[] publishers = new Thread[4];
+        for (int index = 0; index < publishers.length; index++) {
+            final String dialogueId = "d" + index;
+            publishers[index] = new Thread() {
+                @Override
+                public void run() {
+                    for (int event = 0; event < events; event++) {
+                        while (!log.publish(dialogueId, CallEventType.TURN_SENT, "menu", event)) {
+                            Thread.yield();
+                        }
+                    }
+                }
+            };
+            publishers[index].start();
+        }
+
+        final long[] nextValues = new long[publishers.length];
+        CallEventLog.Handler handler = new CallEventLog.Handler() {
+            @Override
+            public void handle(CallEvent event) {
+                int publisher = Integer.parseInt(event.getDialogueId().substring(1));
+                assertEquals(nextValues[publisher]++, event.getValue());
+            }
+        };
+        int drained = 0;
+        while (drained < events * publishers.length) {
+            drained += log.drain(handler, 16);
+        }
+        for (Thread publisher : publishers) {
+            publisher.join();
+        }
+        assertEquals(events * publishers.length, drained);
+    }
+
+    @Test
+    public void writeAndRoll() throws IOException {
+        CallEventLog log = new CallEventLog(16, 0, 100);
+        File file = new File(mDirectory, "call-events.log");
+        CallEventWriter writer = new CallEventWriter(log, file, 200, 1);
+        log.publish("d\"1", CallEventType.LOGIN_RESULT, "SUCCESS", 1);
+        assertEquals(1, writer.writeBatch());
+        String line = readLines(file).get(0);
+        assertTrue(line, line.startsWith("{\"time\":\""));
+        assertTrue(line, line.endsWith("\"dialogue\":\"d\\\"1\",\"event\":\"login-result\","
+                                       + "\"name\":\"SUCCESS\",\"tries\":1}"));
+
+        for (int index = 0; index < 4; index++) {
+            log.publish("d1", CallEventType.EXIT_STATUS, "success", index);
+        }
+        assertEquals(4, writer.writeBatch());
+        writer.shutdown();
+
+        assertTrue(writer.getRolledFile(1).exists());
+        assertFalse(writer.getRolledFile(2).exists());
+        List<String> lines = readLines(writer.getRolledFile(1));
+        lines.addAll(readLines(file));
+        assertTrue(lines.get(lines.size() - 1).endsWith("\"durationMillis\":3}"));
+    }
+
+    private static List<String> readLines(File file) throws IOException {
+        List<String> lines = new ArrayList<String>();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lines.add(line);
+            }
+        } finally {
+            reader.close();
+        }
+        return lines;
+    }
+}
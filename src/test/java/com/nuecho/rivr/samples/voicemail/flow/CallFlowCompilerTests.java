@@ -0,0 +1,94 @@
+/*
+ * Copyright (c) 2013 Nu Echo Inc. All rights reserved.
+ */
+
+package com.nuecho.rivr.samples.voicemail.flow;
+
+import static org.junit.Assert.*;
+
+import java.util.*;
+
+import org.junit.*;
+
+import com.nuecho.rivr.samples.voicemail.prompt.*;
+
+/**
+ * @author Nu Echo Inc.
+ */
+public class CallFlowCompilerTests {
+
+    @Test
+    public void bundledDefinition() {
+        CallFlow callFlow = CallFlowRepository.getInstance().getCallFlow();
+        CallFlowNode mainMenu = callFlow.getNode(callFlow.getStart());
+        assertEquals("main-menu", mainMenu.getName());
+        assertEquals(CallFlowNode.Type.MENU, mainMenu.getType());
+        assertEquals(TurnId.MAIN_MENU, mainMenu.getTurnId());
+
+        assertEquals("mailbox-options", callFlow.getNode(mainMenu.transition(DtmfSymbols.indexOf("0"))).getName());
+        assertEquals("good-bye", callFlow.getNode(mainMenu.transition(DtmfSymbols.indexOf("#"))).getName());
+        assertEquals(mainMenu.getIndex(), mainMenu.transition(DtmfSymbols.indexOf("7")));
+        assertEquals(mainMenu.getIndex(), mainMenu.transition(DtmfSymbols.indexOf("")));
+
+        CallFlowNode goodBye = callFlow.getNode(callFlow.indexOf("good-bye"));
+        assertEquals(CallFlow.EXIT, goodBye.getNext());
+    }
+
+    @Test
+    public void input() {
+        Properties definition = new Properties();
+        definition.setProperty("start", "ask");
+        definition.setProperty("ask.type", "input");
+        definition.setProperty("ask.turn", "ask-extension");
+        definition.setProperty("ask.action", "validate-extension");
+        definition.setProperty("ask.next", "exit");
+        definition.setProperty("ask.invalid", "ask");
+
+        CallFlow callFlow = CallFlowCompiler.compile(definition);
+        CallFlowNode ask = callFlow.getNode(callFlow.getStart());
+        assertEquals(CallFlowAction.VALIDATE_EXTENSION, ask.getAction());
+        assertEquals(CallFlow.EXIT, ask.getNext());
+        assertEquals(ask.getIndex(), ask.getInvalid());
+    }
+
+    @Test
+    public void action() {
+        Properties definition = new Properties();
+        definition.setProperty("start", "next");
+        definition.setProperty("next.type", "action");
+        definition.setProperty("next.action", "next-message");
+        definition.setProperty("next.next", "exit");
+
+        CallFlow callFlow = CallFlowCompiler.compile(definition);
+        CallFlowNode next = callFlow.getNode(callFlow.getStart());
+        assertEquals(CallFlowAction.NEXT_MESSAGE, next.getAction());
+        assertNull(next.getTurnId());
+        assertEquals(CallFlow.EXIT, next.getNext());
+    }
+
+    @Test(expected = CallFlowException.class)
+    public void actionWithoutAction() {
+        Properties definition = new Properties();
+        definition.setProperty("start", "next");
+        definition.setProperty("next.type", "action");
+        definition.setProperty("next.next", "exit");
+        CallFlowCompiler.compile(definition);
+    }
+
+    @Test(expected = CallFlowException.class)
+    public void unknownNode() {
+        Properties definition = new Properties();
+        definition.setProperty("start", "main-menu");
+        definition.setProperty("main-menu.type", "menu");
+        definition.setProperty("main-menu.1", "nowhere");
+        CallFlowCompiler.compile(definition);
+    }
+
+    @Test(expected = CallFlowException.class)
+    public void unknownTurn() {
+        Properties definition = new Properties();
+        definition.setProperty("start", "menu");
+        definition.setProperty("menu.type", "menu");
+        CallFlowCompiler.compile(definition);
+    }
+}
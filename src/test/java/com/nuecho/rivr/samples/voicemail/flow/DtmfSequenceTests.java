@@ -0,0 +1,102 @@
+/*
+ * Copyright (c) 2013 Nu Echo Inc. All rights reserved.
+ */
+
+package com.nuecho.rivr.samples.voicemail.flow;
+
+import static org.junit.Assert.*;
+
+import org.junit.*;
+
+/**
+ * @author Nu Echo Inc.
+ */
+public class DtmfSequenceTests {
+
+    private final DtmfSequence mSequence = new DtmfSequence();
+
+    @Test
+    public void digits() {
+        assertTrue(mSequence.decode("4 0 6 9", 1));
+        assertEquals(4, mSequence.length());
+        assertEquals("4069", mSequence.toString());
+        assertEquals(0x9604L, mSequence.getPackedSymbols());
+        assertEquals(DtmfSymbols.NONE, mSequence.getSelection());
+        assertEquals(DtmfSymbols.NONE, mSequence.getTerminator());
+        assertEquals(1.0, mSequence.getConfidence(), 0);
+    }
+
+    @Test
+    public void selection() {
+        assertTrue(mSequence.decode("*", 1));
+        assertEquals(DtmfSymbols.indexOf('*'), mSequence.getSelection());
+
+        // Alone, a terminator is a selection.
+        assertTrue(mSequence.decode("#", 1));
+        assertEquals(DtmfSymbols.indexOf('#'), mSequence.getSelection());
+        assertEquals(DtmfSymbols.NONE, mSequence.getTerminator());
+    }
+
+    @Test
+    public void terminator() {
+        assertTrue(mSequence.decode("1 2 3 4 #", 1));
+        assertEquals("1234", mSequence.toString());
+        assertEquals(DtmfSymbols.indexOf('#'), mSequence.getTerminator());
+
+        assertTrue(mSequence.decode("5A", 1));
+        assertEquals(DtmfSymbols.indexOf('5'), mSequence.getSelection());
+        assertEquals(DtmfSymbols.indexOf('A'), mSequence.getTerminator());
+
+        assertTrue(mSequence.decode("##", 1));
+        assertEquals(DtmfSymbols.indexOf('#'), mSequence.getSelection());
+
+        assertFalse(mSequence.decode("1#2", 1));
+    }
+
+    @Test
+    public void invalid() {
+        assertFalse(mSequence.decode("1 2 x", 1));
+        assertFalse(mSequence.isValid());
+        assertTrue(mSequence.isEmpty());
+        assertEquals(DtmfSymbols.NONE, mSequence.getSelection());
+
+        assertFalse(mSequence.decode("1", DtmfSequence.MIN_CONFIDENCE / 2));
+        assertTrue(mSequence.isEmpty());
+
+        StringBuilder tooLong = new StringBuilder();
+        for (int index = 0; index <= DtmfSequence.MAX_LENGTH; index++) {
+            tooLong.append('D');
+        }
+        assertFalse(mSequence.decode(tooLong, 1));
+        assertTrue(mSequence.decode(tooLong.substring(1), 1));
+        assertEquals(tooLong.substring(1), mSequence.toString());
+
+        mSequence.clear();
+        assertTrue(mSequence.isValid());
+        assertTrue(mSequence.isEmpty());
+    }
+
+    @Test
+    public void append() {
+        DtmfSequence rest = new DtmfSequence();
+        assertTrue(mSequence.decode("1 2", 1));
+        assertTrue(rest.decode("3 4 #", 0.9));
+        assertTrue(mSequence.append(rest));
+        assertEquals("1234", mSequence.toString());
+        assertEquals(DtmfSymbols.indexOf('#'), mSequence.getTerminator());
+        assertEquals(0.9, mSequence.getConfidence(), 0);
+
+        StringBuilder full = new StringBuilder();
+        for (int index = 0; index < DtmfSequence.MAX_LENGTH - 4; index++) {
+            full.append('5');
+        }
+        assertTrue(rest.decode(full, 1));
+        assertTrue(mSequence.append(rest));
+        assertEquals(DtmfSequence.MAX_LENGTH, mSequence.length());
+        assertEquals('5', mSequence.charAt(DtmfSequence.MAX_LENGTH - 1));
+
+        assertTrue(rest.decode("6", 1));
+        assertFalse(mSequence.append(rest));
+        assertEquals(DtmfSequence.MAX_LENGTH, mSequence.length());
+    }
+}
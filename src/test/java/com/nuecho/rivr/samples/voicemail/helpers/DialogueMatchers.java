@@ -25,6 +25,15 @@ public final class DialogueMatchers {
         return new InteractionNameMatcher(name);
     }
 
+    /**
+     * Matches the interaction playing the audio file at the supplied location.
+     * 
+     * @param location The location of the audio file, or its start.
+     */
+    public static Matcher<Interaction> playsAudio(String location) {
+        return new InteractionAudioMatcher(location);
+    }
+
     /**
      * Matches the last interaction turn made on the channel with the supplied
      * name.
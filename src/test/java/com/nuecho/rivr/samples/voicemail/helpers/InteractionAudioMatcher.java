@@ -0,0 +1,40 @@
+/*
+ * Copyright (c) 2013 Nu Echo Inc. All rights reserved.
+ */
+
+package com.nuecho.rivr.samples.voicemail.helpers;
+
+import static java.lang.String.*;
+
+import org.hamcrest.*;
+
+import com.nuecho.rivr.voicexml.turn.output.*;
+
+/**
+ * Matches an interaction playing an audio file whose location starts with a prefix, e.g. one without its query
+ * parameters.
+ * 
+ * @author Nu Echo Inc.
+ */
+public final class InteractionAudioMatcher extends BaseMatcher<Interaction> {
+    private final String mLocation;
+
+    /**
+     * @param location The location of the audio file, or its start.
+     */
+    public InteractionAudioMatcher(String location) {
+        mLocation = location;
+    }
+
+    @Override
+    public boolean matches(Object arg0) {
+        if (!(arg0 instanceof Interaction)) return false;
+        Interaction turn = (Interaction) arg0;
+        return turn.asJson().toString().contains("\"" + mLocation);
+    }
+
+    @Override
+    public void describeTo(Description arg0) {
+        arg0.appendText(format("plays [%s]", mLocation));
+    }
+}
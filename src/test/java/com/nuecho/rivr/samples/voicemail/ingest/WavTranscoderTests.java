@@ -0,0 +1,109 @@
+/*
+ * Copyright (c) 2013 Nu Echo Inc. All rights reserved.
+ */
+
+package com.nuecho.rivr.samples.voicemail.ingest;
+
+import static org.junit.Assert.*;
+
+import java.io.*;
+
+import org.junit.*;
+
+/**
+ * @author Nu Echo Inc.
+ */
+public class WavTranscoderTests {
+
+    private static final int SILENCE = WavTranscoder.SAMPLE_RATE;
+    private static final int SPEECH = WavTranscoder.SAMPLE_RATE * 2;
+
+    private File mOutput;
+
+    @Before
+    public void before() throws IOException {
+        mOutput = File.createTempFile("transcoded", ".ulaw");
+    }
+
+    @After
+    public void after() {
+        mOutput.delete();
+    }
+
+    @Test
+    public void ulawRoundTrip() {
+        for (int linear = -32000; linear <= 32000; linear += 7) {
+            int decoded = WavTranscoder.decodeUlaw(WavTranscoder.encodeUlaw(linear));
+            assertTrue(linear + " decoded as " + decoded, Math.abs(decoded - linear) <= Math.abs(linear) / 16 + 8);
+        }
+    }
+
+    @Test
+    public void trimSilence() throws IOException {
+        WavTranscoder.Result result = WavTranscoder.transcode(createPcmWav(SILENCE, SPEECH, SILENCE), mOutput);
+
+        assertEquals(4000, result.getDurationMillis());
+        assertEquals(SPEECH + 2 * WavTranscoder.PADDING_SAMPLES, mOutput.length());
+        assertEquals(mOutput.length() * 1000 / WavTranscoder.SAMPLE_RATE, result.getTrimmedDurationMillis());
+    }
+
+    @Test
+    public void shortSilence() throws IOException {
+        WavTranscoder.Result result = WavTranscoder.transcode(createPcmWav(10, SPEECH, 10), mOutput);
+
+        assertEquals(SPEECH + 20, mOutput.length());
+        assertFalse(result.isSilent());
+    }
+
+    @Test
+    public void silentRecording() throws IOException {
+        WavTranscoder.Result result = WavTranscoder.transcode(createPcmWav(SILENCE, 0, 0), mOutput);
+
+        assertTrue(result.isSilent());
+        assertEquals(0, mOutput.length());
+    }
+
+    @Test(expected = IOException.class)
+    public void unsupportedSampleRate() throws IOException {
+        WavTranscoder.transcode(createWav(1, 16000, 16, new byte[100]), mOutput);
+    }
+
+    private static InputStream createPcmWav(int leadingSilence, int speech, int trailingSilence) {
+        int samples = leadingSilence + speech + trailingSilence;
+        byte[] data = new byte[samples * 2];
+        for (int i = 0; i < speech; i++) {
+            short sample = (short) (Math.sin(i * 0.3) * 8000);
+            if (Math.abs(sample) < WavTranscoder.SILENCE_THRESHOLD) {
+                sample = (short) (sample < 0 ? -WavTranscoder.SILENCE_THRESHOLD : WavTranscoder.SILENCE_THRESHOLD);
+            }
+            int index = (leadingSilence + i) * 2;
+            data[index] = (byte) sample;
+            data[index + 1] = (byte) (sample >> 8);
+        }
+        return createWav(1, WavTranscoder.SAMPLE_RATE, 16, data);
+    }
+
+    private static InputStream createWav(int format, int sampleRate, int bits, byte[] data) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream output = new DataOutputStream(bytes);
+        try {
+            output.writeBytes("RIFF");
+            output.writeInt(Integer.reverseBytes(36 + data.length));
+            output.writeBytes("WAVE");
+            output.writeBytes("fmt ");
+            output.writeInt(Integer.reverseBytes(16));
+            output.writeShort(Short.reverseBytes((short) format));
+            output.writeShort(Short.reverseBytes((short) 1));
+            output.writeInt(Integer.reverseBytes(sampleRate));
+            output.writeInt(Integer.reverseBytes(sampleRate * bits / 8));
+            output.writeShort(Short.reverseBytes((short) (bits / 8)));
+            output.writeShort(Short.reverseBytes((short) bits));
+            output.writeBytes("data");
+            output.writeInt(Integer.reverseBytes(data.length));
+            output.write(data);
+        } catch (IOException exception) {
+            throw new AssertionError(exception);
+        }
+        return new ByteArrayInputStream(bytes.toByteArray());
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright (c) 2013 Nu Echo Inc. All rights reserved.
+ */
+
+package com.nuecho.rivr.samples.voicemail.metrics;
+
+import static org.junit.Assert.*;
+
+import java.util.*;
+
+import org.junit.*;
+
+/**
+ * @author Nu Echo Inc.
+ */
+public class CallPathMetricsTests {
+
+    private static final long NOW = 1367503391482L;
+
+    private final CallPathMetrics mMetrics = new CallPathMetrics(60000, 6);
+
+    @Test
+    public void paths() {
+        for (int call = 0; call < 10; call++) {
+            if (call < 6) {
+                call(NOW, "ask-login", "ask-password", "main-menu", "call-menu", "#success");
+            } else if (call < 9) {
+                call(NOW, "ask-login", "ask-password", "main-menu", "#success");
+            } else {
+                call(NOW, "ask-login", "ask-password", CallPathMetrics.HANG_UP);
+            }
+        }
+
+        CallPathSnapshot snapshot = mMetrics.snapshot(NOW);
+        assertEquals(10, snapshot.getCalls());
+        assertEquals(9, snapshot.getCount("ask-password", "main-menu"));
+        assertEquals(0, snapshot.getCount("ask-password", "unknown"));
+
+        List<CallPathSnapshot.Transition> transitions = snapshot.getTopTransitions(2);
+        assertEquals(2, transitions.size());
+        assertEquals(10, transitions.get(0).getCount());
+
+        List<CallPathSnapshot.DropOff> dropOffs = snapshot.getDropOffs(10);
+        assertEquals(1, dropOffs.size());
+        assertEquals("ask-password", dropOffs.get(0).getInteraction());
+        assertEquals(10, dropOffs.get(0).getVisits());
+        assertEquals(0.1, dropOffs.get(0).getRate(), 1e-9);
+
+        List<CallPathSnapshot.Path> paths = snapshot.getTopPaths(10, 10);
+        assertEquals(3, paths.size());
+        assertEquals(Arrays.asList(CallPathMetrics.START,
+                                   "ask-login",
+                                   "ask-password",
+                                   "main-menu",
+                                   "call-menu",
+                                   "#success"),
+                     paths.get(0).getStates());
+        assertEquals(0.6, paths.get(0).getShare(), 1e-9);
+        assertEquals("#success", paths.get(1).getStates().get(4));
+        assertEquals(0.1, paths.get(2).getShare(), 1e-9);
+    }
+
+    @Test
+    public void slidingWindow() {
+        call(NOW, "ask-login", "#invalid-user");
+        call(NOW + 30000, "ask-login", "#invalid-user");
+        assertEquals(2, mMetrics.snapshot(NOW + 30000).getCalls());
+        assertEquals(1, mMetrics.snapshot(NOW + 65000).getCalls());
+        assertEquals(0, mMetrics.snapshot(NOW + 95000).getCalls());
+
+        // The bucket of the first call is reused.
+        call(NOW + 60000, "ask-login", "#invalid-user");
+        assertEquals(2, mMetrics.snapshot(NOW + 60000).getCalls());
+        assertEquals(0, mMetrics.snapshot(NOW).getCalls());
+    }
+
+    @Test
+    public void boundedStates() {
+        for (int index = 0; index < CallPathMetrics.MAX_STATES * 2; index++) {
+            mMetrics.indexOf("interaction-" + index);
+        }
+        assertEquals(mMetrics.indexOf(CallPathMetrics.OTHER), mMetrics.indexOf("interaction-1000"));
+
+        call(NOW, "interaction-0", "interaction-1000", "interaction-1001");
+        CallPathSnapshot snapshot = mMetrics.snapshot(NOW);
+        assertEquals(1, snapshot.getCount("interaction-0", CallPathMetrics.OTHER));
+        assertEquals(1, snapshot.getCount(CallPathMetrics.OTHER, CallPathMetrics.OTHER));
+    }
+
+    private void call(long now, String... interactions) {
+        int previous = mMetrics.indexOf(CallPathMetrics.START);
+        for (String interaction : interactions) {
+            int next = mMetrics.indexOf(interaction);
+            mMetrics.record(previous, next, now);
+            previous = next;
+        }
+    }
+}
@@ -0,0 +1,47 @@
+/*
+ * Copyright (c) 2013 Nu Echo Inc. All rights reserved.
+ */
+
+package com.nuecho.rivr.samples.voicemail.metrics;
+
+import static org.junit.Assert.*;
+
+import org.junit.*;
+
+/**
+ * @author Nu Echo Inc.
+ */
+public class LatencyHistogramTests {
+
+    @Test
+    public void bucketsCoverValues() {
+        long previousUpperBound = -1;
+        for (int bucket = 0; bucket < LatencyHistogram.BUCKET_COUNT; bucket++) {
+            long upperBound = LatencyHistogram.upperBound(bucket);
+            assertEquals(bucket, LatencyHistogram.bucketOf(upperBound));
+            assertEquals(bucket, LatencyHistogram.bucketOf(previousUpperBound + 1));
+            previousUpperBound = upperBound;
+        }
+        assertEquals(LatencyHistogram.BUCKET_COUNT - 1, LatencyHistogram.bucketOf(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void quantiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.getQuantileMicros(0.5));
+
+        for (int millis = 1; millis <= 100; millis++) {
+            histogram.record(millis * 1000000L);
+        }
+        assertEquals(100, histogram.getCount());
+        assertEquals(5050000, histogram.getSumMicros());
+
+        assertWithin(50000, histogram.getQuantileMicros(0.5));
+        assertWithin(99000, histogram.getQuantileMicros(0.99));
+    }
+
+    private static void assertWithin(long expected, long actual) {
+        assertTrue(actual + " isn't within 1/8th of " + expected,
+                   actual >= expected && actual <= expected + expected / 8);
+    }
+}
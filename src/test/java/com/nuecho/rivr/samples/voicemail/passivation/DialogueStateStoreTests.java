@@ -0,0 +1,102 @@
+/*
+ * Copyright (c) 2013 Nu Echo Inc. All rights reserved.
+ */
+
+package com.nuecho.rivr.samples.voicemail.passivation;
+
+import static org.junit.Assert.*;
+
+import java.io.*;
+import java.util.*;
+
+import org.junit.*;
+
+/**
+ * @author Nu Echo Inc.
+ */
+public class DialogueStateStoreTests {
+
+    private static final List<String> NO_PATH = Collections.emptyList();
+
+    private File mDirectory;
+
+    @Before
+    public void createDirectory() throws IOException {
+        mDirectory = File.createTempFile("dialogue-states", "");
+        mDirectory.delete();
+    }
+
+    @After
+    public void deleteDirectory() {
+        File[] files = mDirectory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        mDirectory.delete();
+    }
+
+    @Test
+    public void bytes() throws IOException {
+        String token = DialogueState.createResumeToken();
+        List<String> path = Arrays.asList("main-menu", "call-menu");
+        DialogueState state = new DialogueState("call-menu", "4069", "1234", 42, true, "5551234", 2, path, token, 1000);
+        DialogueState copy = DialogueState.fromBytes(state.toBytes());
+
+        assertEquals("call-menu", copy.getNodeName());
+        assertEquals("4069", copy.getMailbox());
+        assertEquals("1234", copy.getExtension());
+        assertEquals(42, copy.getCurrentMessageId());
+        assertTrue(copy.isInstrumented());
+        assertEquals("5551234", copy.getDnis());
+        assertEquals(2, copy.getLoginAttempts());
+        assertEquals(path, copy.getMenuPath());
+        assertEquals(1000, copy.getTimestamp());
+        assertTrue(copy.isResumeToken(token));
+
+        state = new DialogueState("main-menu", "4069", null, -1, false, null, 0, NO_PATH, "a", 0);
+        copy = DialogueState.fromBytes(state.toBytes());
+        assertNull(copy.getExtension());
+        assertFalse(copy.isInstrumented());
+        assertNull(copy.getDnis());
+        assertTrue(copy.getMenuPath().isEmpty());
+    }
+
+    @Test
+    public void resumeToken() {
+        String token = DialogueState.createResumeToken();
+        DialogueState state = new DialogueState("main-menu", "4069", null, -1, false, null, 0, NO_PATH, token, 0);
+
+        assertEquals(32, token.length());
+        assertFalse(token.equals(DialogueState.createResumeToken()));
+        assertTrue(state.isResumeToken(token));
+        assertFalse(state.isResumeToken(null));
+        assertFalse(state.isResumeToken(""));
+        assertFalse(state.isResumeToken(DialogueState.createResumeToken()));
+    }
+
+    @Test
+    public void fileStore() throws IOException {
+        checkStore(new FileDialogueStateStore(mDirectory));
+    }
+
+    @Test
+    public void offHeapStore() throws IOException {
+        checkStore(new OffHeapDialogueStateStore());
+    }
+
+    private static void checkStore(DialogueStateStore store) throws IOException {
+        long now = System.currentTimeMillis();
+        store.save("dialogue/1", new DialogueState("main-menu", "4069", null, -1, false, null, 0, NO_PATH, "a", now));
+        store.save("dialogue/2", new DialogueState("call-menu", "4069", null, 7, false, null, 0, NO_PATH, "b", now));
+
+        assertNull(store.take("dialogue/3"));
+        assertEquals("main-menu", store.take("dialogue/1").getNodeName());
+        assertNull(store.take("dialogue/1"));
+
+        assertEquals(0, store.purge(now - 60000));
+        assertEquals(1, store.purge(now + 60000));
+        assertNull(store.take("dialogue/2"));
+    }
+}
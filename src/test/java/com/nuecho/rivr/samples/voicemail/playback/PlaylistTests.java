@@ -0,0 +1,108 @@
+/*
+ * Copyright (c) 2013 Nu Echo Inc. All rights reserved.
+ */
+
+package com.nuecho.rivr.samples.voicemail.playback;
+
+import static org.junit.Assert.*;
+
+import java.io.*;
+import java.nio.*;
+import java.util.*;
+
+import org.junit.*;
+
+import com.nuecho.rivr.samples.voicemail.store.*;
+
+/**
+ * @author Nu Echo Inc.
+ */
+public class PlaylistTests {
+
+    // Ten seconds of mu-law.
+    private static final int LENGTH = 80000;
+
+    private File mDirectory;
+    private MessageStore mStore;
+    private VoiceMessage mFirst;
+    private VoiceMessage mSecond;
+    private VoiceMessage mWav;
+
+    @Before
+    public void openStore() throws IOException {
+        mDirectory = File.createTempFile("message-store", "");
+        mDirectory.delete();
+        mStore = new MessageStore(mDirectory, 4 * LENGTH, 0.5);
+        mFirst = mStore.deposit("1234", "audio/basic", ByteBuffer.allocate(LENGTH));
+        mSecond = mStore.deposit("1234", "audio/basic", ByteBuffer.allocate(LENGTH));
+        mWav = mStore.deposit("1234", "audio/x-wav", ByteBuffer.allocate(LENGTH));
+    }
+
+    @After
+    public void deleteStore() {
+        mStore.close();
+        for (File file : mDirectory.listFiles()) {
+            file.delete();
+        }
+        mDirectory.delete();
+    }
+
+    @Test
+    public void navigate() {
+        Playlist playlist = new Playlist(Arrays.asList(mFirst, mSecond), mSecond.getId());
+        assertSame(mSecond, playlist.getCurrent());
+        assertNull(playlist.getNext());
+
+        playlist.next();
+        assertSame(mSecond, playlist.getCurrent());
+        playlist.previous();
+        assertSame(mFirst, playlist.getCurrent());
+        assertSame(mSecond, playlist.getNext());
+        playlist.previous();
+        assertSame(mFirst, playlist.getCurrent());
+    }
+
+    @Test
+    public void empty() {
+        Playlist playlist = new Playlist(Collections.<VoiceMessage> emptyList(), mFirst.getId());
+        assertNull(playlist.getCurrent());
+        assertNull(playlist.getNext());
+        playlist.next();
+        playlist.skip(Playlist.SKIP_MILLIS);
+        assertEquals(0, playlist.getOffset());
+    }
+
+    @Test
+    public void skip() {
+        Playlist playlist = new Playlist(Arrays.asList(mFirst, mSecond), mFirst.getId());
+        playlist.setElapsedMillis(3000);
+        playlist.skip(Playlist.SKIP_MILLIS);
+        assertEquals(64000, playlist.getOffset());
+
+        playlist.setElapsedMillis(1000);
+        playlist.skip(-Playlist.SKIP_MILLIS);
+        assertEquals(32000, playlist.getOffset());
+
+        playlist.setElapsedMillis(60000);
+        playlist.skip(Playlist.SKIP_MILLIS);
+        assertEquals(LENGTH, playlist.getOffset());
+
+        playlist.skip(-3 * Playlist.SKIP_MILLIS);
+        assertEquals(0, playlist.getOffset());
+
+        playlist.setPlayedToEnd();
+        playlist.skip(-Playlist.SKIP_MILLIS);
+        assertEquals(LENGTH - 40000, playlist.getOffset());
+
+        playlist.next();
+        assertEquals(0, playlist.getOffset());
+    }
+
+    @Test
+    public void skipWav() {
+        Playlist playlist = new Playlist(Collections.singletonList(mWav), mWav.getId());
+        playlist.setElapsedMillis(3000);
+        playlist.skip(Playlist.SKIP_MILLIS);
+        assertEquals(0, playlist.getOffset());
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright (c) 2013 Nu Echo Inc. All rights reserved.
+ */
+
+package com.nuecho.rivr.samples.voicemail.prompt;
+
+import static org.junit.Assert.*;
+
+import java.util.*;
+
+import org.junit.*;
+
+/**
+ * @author Nu Echo Inc.
+ */
+public class CompositePathsTests {
+
+    @Test
+    public void roundTrip() {
+        String path = CompositePaths.toPath(PromptSet.ORIGINAL, "vm-first", "vm-message", "vm-received");
+        assertEquals("/original/composite/vm-first+vm-message+vm-received.ulaw", path);
+        assertEquals(Arrays.asList("/original/vm-first.ulaw", "/original/vm-message.ulaw", "/original/vm-received.ulaw"),
+                     CompositePaths.getPartPaths(path));
+    }
+
+    @Test
+    public void invalidPaths() {
+        assertNull(CompositePaths.getPartPaths("/original/vm-first.ulaw"));
+        assertNull(CompositePaths.getPartPaths("/original/composite/vm-first++vm-message.ulaw"));
+        assertNull(CompositePaths.getPartPaths("/original/composite/..+vm-message.ulaw"));
+        assertNull(CompositePaths.getPartPaths("/a/b/composite/vm-first.ulaw"));
+
+        StringBuilder tooMany = new StringBuilder("/original/composite/vm-first");
+        for (int part = 1; part < CompositePaths.MAX_PARTS; part++) {
+            tooMany.append("+digits-1");
+        }
+        assertNotNull(CompositePaths.getPartPaths(tooMany + ".ulaw"));
+        assertNull(CompositePaths.getPartPaths(tooMany + "+digits-1.ulaw"));
+    }
+
+    @Test
+    public void playableComposites() {
+        PromptCatalog catalog = PromptCatalog.create("/voicemail", PromptSet.ORIGINAL, true);
+        List<String> header = new ArrayList<String>(Arrays.asList("vm-first", "vm-message", "vm-received"));
+        assertTrue(catalog.isPlayable(CompositePaths.toPath(PromptSet.ORIGINAL, header)));
+        header.addAll(SayPrompts.sayDate(0, TimeZone.getTimeZone("UTC")));
+        assertTrue(catalog.isPlayable(CompositePaths.toPath(PromptSet.ORIGINAL, header)));
+
+        assertFalse(catalog.isPlayable(CompositePaths.toPath(PromptSet.INSTRUMENTED, header)));
+        assertFalse(catalog.isPlayable(CompositePaths.toPath(PromptSet.ORIGINAL, "vm-first", "vm-first")));
+        assertFalse(catalog.isPlayable(CompositePaths.toPath(PromptSet.ORIGINAL, "vm-message", "vm-first",
+                                                             "vm-received")));
+    }
+}
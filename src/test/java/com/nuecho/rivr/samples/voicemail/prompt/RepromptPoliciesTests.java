@@ -0,0 +1,68 @@
+/*
+ * Copyright (c) 2013 Nu Echo Inc. All rights reserved.
+ */
+
+package com.nuecho.rivr.samples.voicemail.prompt;
+
+import static org.junit.Assert.*;
+
+import java.util.*;
+
+import org.junit.*;
+
+/**
+ * @author Nu Echo Inc.
+ */
+public class RepromptPoliciesTests {
+
+    @Test
+    public void bundledPolicies() {
+        RepromptPolicies policies = RepromptPolicies.getPolicies();
+        assertEquals("login", policies.getPolicy("ask-password").getName());
+        assertEquals(TurnId.LOGIN_GOODBYE, policies.getPolicy("ask-password").getExitTurn());
+        assertEquals(RepromptPolicies.DEFAULT_POLICY, policies.getPolicy("main-menu").getName());
+        assertEquals(RepromptPolicies.DEFAULT_POLICY, policies.getPolicy(null).getName());
+    }
+
+    @Test
+    public void inheritDefault() {
+        Properties definition = new Properties();
+        definition.setProperty("default.noinput", "2");
+        definition.setProperty("default.nomatch", "3");
+        definition.setProperty("default.sorry", "true");
+        definition.setProperty("default.exit", "good-bye");
+        definition.setProperty("quick.noinput", "0");
+        definition.setProperty("quick.interactions", "a, b");
+
+        RepromptPolicy policy = RepromptPolicies.parse(definition).getPolicy("b");
+        assertEquals("quick", policy.getName());
+        assertEquals(0, policy.getMaxNoInputs());
+        assertEquals(3, policy.getMaxNoMatches());
+        assertTrue(policy.isSorry());
+        assertEquals(TurnId.GOOD_BYE, policy.getExitTurn());
+    }
+
+    @Test
+    public void exhausted() {
+        RepromptPolicy policy = new RepromptPolicy("test", 2, 1, false, TurnId.GOOD_BYE);
+        assertFalse(policy.isExhausted(2, 1));
+        assertTrue(policy.isExhausted(3, 0));
+        assertTrue(policy.isExhausted(0, 2));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void missingDefault() {
+        Properties definition = new Properties();
+        definition.setProperty("quick.noinput", "0");
+        RepromptPolicies.parse(definition);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unknownExitTurn() {
+        Properties definition = new Properties();
+        definition.setProperty("default.noinput", "2");
+        definition.setProperty("default.nomatch", "2");
+        definition.setProperty("default.exit", "hang-up");
+        RepromptPolicies.parse(definition);
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright (c) 2013 Nu Echo Inc. All rights reserved.
+ */
+
+package com.nuecho.rivr.samples.voicemail.prompt;
+
+import static org.junit.Assert.*;
+
+import java.util.*;
+
+import org.junit.*;
+
+/**
+ * @author Nu Echo Inc.
+ */
+public class SayPromptsTests {
+
+    @Test
+    public void numbers() {
+        assertEquals(Arrays.asList("digits-0"), SayPrompts.sayNumber(0));
+        assertEquals(Arrays.asList("digits-17"), SayPrompts.sayNumber(17));
+        assertEquals(Arrays.asList("digits-40"), SayPrompts.sayNumber(40));
+        assertEquals(Arrays.asList("digits-1", "digits-hundred", "digits-20", "digits-3"), SayPrompts.sayNumber(123));
+        assertEquals(Arrays.asList("digits-2", "digits-thousand", "digits-5"), SayPrompts.sayNumber(2005));
+        assertEquals(Arrays.asList("digits-minus", "digits-3", "digits-million"), SayPrompts.sayNumber(-3000000));
+    }
+
+    @Test
+    public void cachedNumbers() {
+        assertSame(SayPrompts.sayNumber(999), SayPrompts.sayNumber(999));
+    }
+
+    @Test
+    public void digits() {
+        assertEquals(Arrays.asList("digits-5", "digits-1", "digits-4", "digits-star", "digits-pound"),
+                     SayPrompts.sayDigits("51-4*#"));
+    }
+
+    @Test
+    public void date() {
+        TimeZone utc = TimeZone.getTimeZone("UTC");
+        Calendar calendar = Calendar.getInstance(utc);
+        calendar.clear();
+        calendar.set(2013, Calendar.DECEMBER, 3, 22, 5);
+
+        assertEquals(Arrays.asList("digits-day-2",
+                                   "digits-mon-11",
+                                   "digits-h-3",
+                                   "digits-at",
+                                   "digits-10",
+                                   "digits-oh",
+                                   "digits-5",
+                                   "digits-p-m"), SayPrompts.sayDate(calendar.getTimeInMillis(), utc));
+    }
+}
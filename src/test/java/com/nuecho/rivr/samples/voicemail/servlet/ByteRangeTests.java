@@ -0,0 +1,50 @@
+/*
+ * Copyright (c) 2013 Nu Echo Inc. All rights reserved.
+ */
+
+package com.nuecho.rivr.samples.voicemail.servlet;
+
+import static org.junit.Assert.*;
+
+import org.junit.*;
+
+/**
+ * @author Nu Echo Inc.
+ */
+public class ByteRangeTests {
+
+    @Test
+    public void wholeEntity() {
+        assertNull(ByteRange.parse(null, 100));
+        assertNull(ByteRange.parse("items=0-10", 100));
+        assertNull(ByteRange.parse("bytes=0-10,20-30", 100));
+        assertNull(ByteRange.parse("bytes=20-10", 100));
+        assertNull(ByteRange.parse("bytes=a-b", 100));
+    }
+
+    @Test
+    public void firstAndLast() {
+        assertRange(10, 19, ByteRange.parse("bytes=10-19", 100));
+        assertRange(90, 99, ByteRange.parse("bytes=90-150", 100));
+        assertRange(50, 99, ByteRange.parse("bytes=50-", 100));
+        assertEquals("bytes 10-19/100", ByteRange.parse("bytes=10-19", 100).toContentRange(100));
+    }
+
+    @Test
+    public void suffix() {
+        assertRange(80, 99, ByteRange.parse("bytes=-20", 100));
+        assertRange(0, 99, ByteRange.parse("bytes=-200", 100));
+    }
+
+    @Test
+    public void unsatisfiable() {
+        assertSame(ByteRange.UNSATISFIABLE, ByteRange.parse("bytes=100-", 100));
+        assertSame(ByteRange.UNSATISFIABLE, ByteRange.parse("bytes=-0", 100));
+    }
+
+    private static void assertRange(long first, long last, ByteRange range) {
+        assertEquals(first, range.getFirst());
+        assertEquals(last, range.getLast());
+        assertEquals(last - first + 1, range.getLength());
+    }
+}
@@ -0,0 +1,47 @@
+/*
+ * Copyright (c) 2013 Nu Echo Inc. All rights reserved.
+ */
+
+package com.nuecho.rivr.samples.voicemail.servlet;
+
+import static org.junit.Assert.*;
+
+import java.util.*;
+
+import org.junit.*;
+
+/**
+ * @author Nu Echo Inc.
+ */
+public class MessageAudioServletTests {
+
+    private static final long NOW = 1367503391482L;
+    private static final long EXPIRES = NOW + MessageAudioServlet.URL_LIFETIME_MILLIS;
+
+    @Test
+    public void token() {
+        String token = getToken(MessageAudioServlet.getPath("1234", 12, 0, EXPIRES));
+
+        assertTrue(MessageAudioServlet.isAuthorized("1234", 12, EXPIRES, token, NOW));
+        assertFalse("other message", MessageAudioServlet.isAuthorized("1234", 13, EXPIRES, token, NOW));
+        assertFalse("other mailbox", MessageAudioServlet.isAuthorized("4069", 12, EXPIRES, token, NOW));
+        assertFalse("extended", MessageAudioServlet.isAuthorized("1234", 12, EXPIRES + 1, token, NOW));
+        assertFalse("expired", MessageAudioServlet.isAuthorized("1234", 12, EXPIRES, token, EXPIRES + 1));
+        assertFalse("missing", MessageAudioServlet.isAuthorized("1234", 12, EXPIRES, null, NOW));
+    }
+
+    @Test
+    public void path() {
+        String path = MessageAudioServlet.getPath("1234", 12, 800, EXPIRES);
+        assertTrue(path, path.startsWith("/messages/1234/12?offset=800&expires=" + EXPIRES + "&token="));
+    }
+
+    private static String getToken(String path) {
+        Map<String, String> parameters = new HashMap<String, String>();
+        for (String parameter : path.substring(path.indexOf('?') + 1).split("&")) {
+            int separator = parameter.indexOf('=');
+            parameters.put(parameter.substring(0, separator), parameter.substring(separator + 1));
+        }
+        return parameters.get(MessageAudioServlet.TOKEN_PARAMETER);
+    }
+}
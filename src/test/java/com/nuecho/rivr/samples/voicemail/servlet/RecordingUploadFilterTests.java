@@ -0,0 +1,94 @@
+/*
+ * Copyright (c) 2013 Nu Echo Inc. All rights reserved.
+ */
+
+package com.nuecho.rivr.samples.voicemail.servlet;
+
+import static org.junit.Assert.*;
+
+import java.io.*;
+
+import org.junit.*;
+
+import com.nuecho.rivr.samples.voicemail.ingest.*;
+
+/**
+ * @author Nu Echo Inc.
+ */
+public class RecordingUploadFilterTests {
+
+    private static final String BOUNDARY = "----boundary42";
+    private static final String DIALOGUE_ID = "dialogue-1";
+
+    private File mDirectory;
+    private RecordingIngester mIngester;
+
+    @Before
+    public void before() throws IOException {
+        mDirectory = File.createTempFile("spool", "");
+        mDirectory.delete();
+        mIngester = new RecordingIngester(mDirectory, null, 1);
+    }
+
+    @After
+    public void after() {
+        mIngester.shutdown();
+        File[] files = mDirectory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        mDirectory.delete();
+    }
+
+    @Test
+    public void boundary() {
+        assertEquals("abc", RecordingUploadFilter.getBoundary("multipart/form-data; boundary=abc"));
+        assertEquals("a b", RecordingUploadFilter.getBoundary("Multipart/Form-Data; boundary=\"a b\"; charset=UTF-8"));
+        assertNull(RecordingUploadFilter.getBoundary("application/x-www-form-urlencoded"));
+        assertNull(RecordingUploadFilter.getBoundary(null));
+    }
+
+    @Test
+    public void spoolRecording() throws IOException {
+        // Larger than the buffer, with a partial delimiter inside.
+        StringBuilder audio = new StringBuilder();
+        for (int i = 0; i < 5000; i++) {
+            audio.append("\r\n--");
+        }
+        String body = "preamble\r\n"
+                      + part("name=\"status\"", null, "done")
+                      + part("name=\"recording\"; filename=\"recording.wav\"", "audio/x-wav", audio.toString())
+                      + "--" + BOUNDARY + "--\r\n";
+
+        byte[] passedOn = RecordingUploadFilter.spoolRecordings(new ByteArrayInputStream(bytes(body)),
+                                                                BOUNDARY,
+                                                                mIngester,
+                                                                DIALOGUE_ID);
+
+        String expected = part("name=\"status\"", null, "done")
+                          + part("name=\"recording\"; filename=\"recording.wav\"", "audio/x-wav", "")
+                          + "--" + BOUNDARY + "--\r\n";
+        assertEquals(expected, new String(passedOn, "ISO-8859-1"));
+        assertTrue(mIngester.isSpooled(DIALOGUE_ID));
+        File[] files = mDirectory.listFiles();
+        assertEquals(1, files.length);
+        assertEquals(audio.length(), files[0].length());
+    }
+
+    @Test(expected = EOFException.class)
+    public void truncatedBody() throws IOException {
+        String body = "--" + BOUNDARY + "\r\nContent-Disposition: form-data; name=\"status\"\r\n\r\ndone";
+        RecordingUploadFilter.spoolRecordings(new ByteArrayInputStream(bytes(body)), BOUNDARY, mIngester, DIALOGUE_ID);
+    }
+
+    private static String part(String disposition, String contentType, String content) {
+        return "--" + BOUNDARY + "\r\nContent-Disposition: form-data; " + disposition + "\r\n"
+               + (contentType == null ? "" : "Content-Type: " + contentType + "\r\n") + "\r\n" + content + "\r\n";
+    }
+
+    private static byte[] bytes(String string) throws UnsupportedEncodingException {
+        return string.getBytes("ISO-8859-1");
+    }
+}
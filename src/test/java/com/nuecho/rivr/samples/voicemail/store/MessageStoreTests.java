@@ -0,0 +1,251 @@
+/*
+ * Copyright (c) 2013 Nu Echo Inc. All rights reserved.
+ */
+
+package com.nuecho.rivr.samples.voicemail.store;
+
+import static org.junit.Assert.*;
+
+import java.io.*;
+import java.nio.*;
+import java.util.*;
+
+import org.junit.*;
+
+import com.nuecho.rivr.samples.voicemail.model.*;
+
+/**
+ * @author Nu Echo Inc.
+ */
+public class MessageStoreTests {
+
+    private static final int SEGMENT_SIZE = 4096;
+    private static final String CONTENT_TYPE = "audio/x-wav";
+
+    private File mDirectory;
+    private MessageStore mStore;
+
+    @Before
+    public void openStore() throws IOException {
+        mDirectory = File.createTempFile("message-store", "");
+        mDirectory.delete();
+        mStore = new MessageStore(mDirectory, SEGMENT_SIZE, 0.5);
+    }
+
+    @After
+    public void deleteStore() {
+        mStore.close();
+        for (File file : mDirectory.listFiles()) {
+            file.delete();
+        }
+        mDirectory.delete();
+    }
+
+    @Test
+    public void deposit() throws IOException {
+        VoiceMessage message = mStore.deposit("1234", CONTENT_TYPE, audio(100, 1));
+
+        assertEquals(Folder.NEW, message.getFolder());
+        assertEquals(CONTENT_TYPE, message.getContentType());
+        assertEquals(audio(100, 1), mStore.getAudio(message));
+        assertEquals(Collections.singletonList(message), mStore.getMessages("1234", Folder.NEW));
+        assertTrue(mStore.getMessages("4069", Folder.NEW).isEmpty());
+    }
+
+    @Test
+    public void moveAndDelete() throws IOException {
+        VoiceMessage first = mStore.deposit("1234", CONTENT_TYPE, audio(10, 1));
+        VoiceMessage second = mStore.deposit("1234", CONTENT_TYPE, audio(10, 2));
+
+        VoiceMessage moved = mStore.move(first, Folder.SAVED);
+        assertEquals(Folder.SAVED, moved.getFolder());
+        assertEquals(Collections.singletonList(moved), mStore.getMessages("1234", Folder.SAVED));
+
+        mStore.delete(second);
+        assertNull(mStore.getMessage(second.getId()));
+        assertTrue(mStore.getMessages("1234", Folder.NEW).isEmpty());
+        assertNull(mStore.move(second, Folder.OLD));
+    }
+
+    @Test
+    public void recovery() throws IOException {
+        VoiceMessage first = mStore.deposit("1234", CONTENT_TYPE, audio(1000, 1));
+        VoiceMessage second = mStore.deposit("1234", CONTENT_TYPE, audio(3000, 2));
+        VoiceMessage third = mStore.deposit("1234", CONTENT_TYPE, audio(1000, 3));
+        mStore.move(first, Folder.OLD);
+        mStore.delete(second);
+        reopen();
+
+        assertEquals(Folder.OLD, mStore.getMessage(first.getId()).getFolder());
+        assertNull(mStore.getMessage(second.getId()));
+        assertEquals(audio(1000, 3), mStore.getAudio(mStore.getMessage(third.getId())));
+
+        VoiceMessage fourth = mStore.deposit("1234", CONTENT_TYPE, audio(10, 4));
+        assertTrue(fourth.getId() > third.getId());
+    }
+
+    @Test
+    public void compaction() throws IOException {
+        VoiceMessage kept = mStore.deposit("1234", CONTENT_TYPE, audio(1000, 1));
+        VoiceMessage deleted = mStore.deposit("1234", CONTENT_TYPE, audio(2000, 2));
+        mStore.deposit("1234", CONTENT_TYPE, audio(2000, 3));
+        mStore.delete(deleted);
+        mStore.move(kept, Folder.SAVED);
+        assertEquals(2, segmentFiles().length);
+
+        mStore.compact();
+        assertEquals(1, segmentFiles().length);
+        assertEquals(audio(1000, 1), mStore.getAudio(mStore.getMessage(kept.getId())));
+
+        reopen();
+        VoiceMessage relocated = mStore.getMessage(kept.getId());
+        assertEquals(Folder.SAVED, relocated.getFolder());
+        assertEquals(audio(1000, 1), mStore.getAudio(relocated));
+        assertNull(mStore.getMessage(deleted.getId()));
+        assertEquals(2, mStore.getMessages("1234", Folder.NEW).size() + mStore.getMessages("1234", Folder.SAVED).size());
+    }
+
+    @Test
+    public void incompleteRecordIsSkipped() throws IOException {
+        VoiceMessage incomplete = mStore.deposit("1234", CONTENT_TYPE, audio(1000, 1));
+        VoiceMessage complete = mStore.deposit("1234", CONTENT_TYPE, audio(1000, 2));
+        mStore.close();
+
+        // As if the first deposit had not been completely written when the second one was.
+        RandomAccessFile file = new RandomAccessFile(segmentFiles()[0], "rw");
+        try {
+            file.writeInt(0);
+        } finally {
+            file.close();
+        }
+        mStore = new MessageStore(mDirectory, SEGMENT_SIZE, 0.5);
+
+        assertNull(mStore.getMessage(incomplete.getId()));
+        assertEquals(audio(1000, 2), mStore.getAudio(mStore.getMessage(complete.getId())));
+        VoiceMessage third = mStore.deposit("1234", CONTENT_TYPE, audio(1000, 3));
+        reopen();
+        assertEquals(audio(1000, 2), mStore.getAudio(mStore.getMessage(complete.getId())));
+        assertEquals(audio(1000, 3), mStore.getAudio(mStore.getMessage(third.getId())));
+    }
+
+    @Test(timeout = 10000)
+    public void concurrentMovesReplayInOrder() throws Exception {
+        final VoiceMessage message = mStore.deposit("1234", CONTENT_TYPE, audio(10, 1));
+        final Folder[] folders = Folder.values();
+        Thread[] movers = new Thread[4];
+        final IOException[] failure = new IOException[1];
+        for (int index = 0; index < movers.length; index++) {
+            final Folder folder = folders[index % folders.length];
+            movers[index] = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        for (int move = 0; move < 200; move++) {
+                            mStore.move(message, folder);
+                        }
+                    } catch (IOException e) {
+                        failure[0] = e;
+                    }
+                }
+            };
+            movers[index].start();
+        }
+        for (Thread mover : movers) {
+            mover.join();
+        }
+        assertNull(failure[0]);
+
+        Folder folder = mStore.getMessage(message.getId()).getFolder();
+        reopen();
+        assertEquals(folder, mStore.getMessage(message.getId()).getFolder());
+        assertEquals(audio(10, 1), mStore.getAudio(mStore.getMessage(message.getId())));
+    }
+
+    @Test
+    public void compactionOfNewerSegment() throws IOException {
+        VoiceMessage kept = mStore.deposit("1234", CONTENT_TYPE, audio(2500, 1));
+        VoiceMessage deletedFromOldest = mStore.deposit("1234", CONTENT_TYPE, audio(1000, 2));
+        VoiceMessage deleted = mStore.deposit("1234", CONTENT_TYPE, audio(2000, 3));
+        VoiceMessage relocated = mStore.deposit("1234", CONTENT_TYPE, audio(1500, 4));
+        mStore.delete(deletedFromOldest);
+        mStore.delete(deleted);
+        mStore.move(kept, Folder.SAVED);
+        mStore.deposit("1234", CONTENT_TYPE, audio(2000, 5));
+        assertEquals(3, segmentFiles().length);
+
+        // The oldest segment is above the threshold, the next one is not.
+        mStore.compact();
+        assertEquals(2, segmentFiles().length);
+
+        reopen();
+        assertEquals(Folder.SAVED, mStore.getMessage(kept.getId()).getFolder());
+        assertNull(mStore.getMessage(deletedFromOldest.getId()));
+        assertNull(mStore.getMessage(deleted.getId()));
+        assertEquals(audio(1500, 4), mStore.getAudio(mStore.getMessage(relocated.getId())));
+    }
+
+    @Test
+    public void counters() throws IOException {
+        VoiceMessage first = mStore.deposit("1234", CONTENT_TYPE, audio(10, 1));
+        VoiceMessage second = mStore.deposit("1234", CONTENT_TYPE, audio(10, 2));
+        mStore.deposit("1234", CONTENT_TYPE, audio(10, 3));
+        mStore.deposit("4069", CONTENT_TYPE, audio(10, 4));
+        mStore.move(first, Folder.OLD);
+        mStore.delete(second);
+
+        assertCounts(1, 1, 0);
+        reopen();
+        assertCounts(1, 1, 0);
+        assertEquals(1, mStore.getMessageCount("4069", Folder.NEW));
+    }
+
+    @Test
+    public void countersSnapshotAndLog() throws IOException {
+        File directory = new File(mDirectory, "counters");
+        directory.mkdir();
+        MessageCounters counters = new MessageCounters(directory, 2);
+        counters.add("1234", Folder.NEW, 1);
+        counters.add("1234", Folder.NEW, 1);
+        counters.move("1234", Folder.NEW, Folder.SAVED);
+        counters.flush();
+
+        // Not closed: the last change is only in the log.
+        MessageCounters recovered = new MessageCounters(directory, 2);
+        assertEquals(1, recovered.getCount("1234", Folder.NEW));
+        assertEquals(1, recovered.getCount("1234", Folder.SAVED));
+        counters.close();
+        recovered.close();
+        for (File file : directory.listFiles()) {
+            file.delete();
+        }
+        directory.delete();
+    }
+
+    private void assertCounts(int newCount, int oldCount, int savedCount) {
+        assertEquals(newCount, mStore.getMessageCount("1234", Folder.NEW));
+        assertEquals(oldCount, mStore.getMessageCount("1234", Folder.OLD));
+        assertEquals(savedCount, mStore.getMessageCount("1234", Folder.SAVED));
+    }
+
+    private void reopen() throws IOException {
+        mStore.close();
+        mStore = new MessageStore(mDirectory, SEGMENT_SIZE, 0.5);
+    }
+
+    private File[] segmentFiles() {
+        return mDirectory.listFiles(new FileFilter() {
+            @Override
+            public boolean accept(File file) {
+                return Segment.isSegmentFile(file);
+            }
+        });
+    }
+
+    private static ByteBuffer audio(int length, int seed) {
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = (byte) (i * seed);
+        }
+        return ByteBuffer.wrap(bytes);
+    }
+}
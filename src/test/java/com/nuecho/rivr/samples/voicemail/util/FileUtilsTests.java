@@ -0,0 +1,61 @@
+/*
+ * Copyright (c) 2013 Nu Echo Inc. All rights reserved.
+ */
+
+package com.nuecho.rivr.samples.voicemail.util;
+
+import static org.junit.Assert.*;
+
+import java.io.*;
+
+import org.junit.*;
+
+/**
+ * @author Nu Echo Inc.
+ */
+public class FileUtilsTests {
+
+    @Test
+    public void toFileName() {
+        assertEquals("61", FileUtils.toFileName("a"));
+        assertEquals("2e2e2f78", FileUtils.toFileName("../x"));
+        assertEquals("c3a9", FileUtils.toFileName("\u00e9"));
+        assertEquals("", FileUtils.toFileName(""));
+    }
+
+    @Test
+    public void replace() throws IOException {
+        File file = File.createTempFile("file-utils", ".txt");
+        File temporary = new File(file.getPath() + ".tmp");
+        try {
+            write(file, "old");
+            write(temporary, "new");
+
+            FileUtils.replace(temporary, file);
+
+            assertFalse(temporary.exists());
+            assertEquals("new", read(file));
+        } finally {
+            file.delete();
+            temporary.delete();
+        }
+    }
+
+    private static void write(File file, String content) throws IOException {
+        Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+        try {
+            writer.write(content);
+        } finally {
+            writer.close();
+        }
+    }
+
+    private static String read(File file) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+        try {
+            return reader.readLine();
+        } finally {
+            reader.close();
+        }
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright (c) 2013 Nu Echo Inc. All rights reserved.
+ */
+
+package com.nuecho.rivr.samples.voicemail.warmup;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.*;
+
+import org.junit.*;
+
+/**
+ * @author Nu Echo Inc.
+ */
+public class WarmUpReportTests {
+
+    private static final long[] MEAN_MICROS = {1000, 500, 200, 115, 100, 105, 95, 100, 0, 0};
+    private static final int TURNS = 10;
+
+    @Test
+    public void steadyState() {
+        WarmUpReport report = create(8);
+
+        assertEquals(56, report.getSessions());
+        assertEquals(1, report.getFailures());
+        assertEquals(80, report.getTurns());
+        assertEquals(80, report.getElapsedMillis());
+        assertEquals(8, report.getRounds());
+        assertEquals(1000, report.getFirstRoundTurnMicros());
+        assertEquals(100, report.getSteadyTurnMicros());
+        assertEquals(4, report.getSteadyStateRound());
+        assertEquals(40, report.getTimeToSteadyStateMillis());
+    }
+
+    @Test
+    public void singleRound() {
+        WarmUpReport report = create(1);
+
+        assertEquals(1000, report.getFirstRoundTurnMicros());
+        assertEquals(1000, report.getSteadyTurnMicros());
+        assertEquals(1, report.getSteadyStateRound());
+        assertEquals(10, report.getTimeToSteadyStateMillis());
+    }
+
+    @Test
+    public void noRound() {
+        WarmUpReport report = create(0);
+
+        assertEquals(0, report.getTurns());
+        assertEquals(0, report.getRounds());
+        assertEquals(0, report.getSteadyStateRound());
+    }
+
+    private static WarmUpReport create(int rounds) {
+        long[] roundTurnNanos = new long[MEAN_MICROS.length];
+        int[] roundTurns = new int[MEAN_MICROS.length];
+        long[] roundEndNanos = new long[MEAN_MICROS.length];
+        for (int round = 0; round < rounds; round++) {
+            roundTurnNanos[round] = TimeUnit.MICROSECONDS.toNanos(MEAN_MICROS[round]) * TURNS;
+            roundTurns[round] = TURNS;
+            roundEndNanos[round] = TimeUnit.MILLISECONDS.toNanos(10 * (round + 1));
+        }
+        return WarmUpReport.create(rounds * WarmUpScript.values().length,
+                                   1,
+                                   roundTurnNanos,
+                                   roundTurns,
+                                   roundEndNanos,
+                                   rounds);
+    }
+}